@@ -0,0 +1,102 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import apijson.boot.jolt.JoltSpecCache;
+import apijson.boot.jolt.JoltSpecRegistry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DataFlowDemoController 完整步骤链：查询 → APIJSON 格式 → JOLT → ECharts 配置。
+ * 查询由 StubJdbcTemplate 返回固定行，只测应用内的转换开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataFlowBenchmark {
+
+    @Param({"10", "1000"})
+    public int rows;
+
+    private DataFlowDemoController controller;
+
+    @Setup
+    public void setup() throws Exception {
+        JdbcTemplate jdbcTemplate = new StubJdbcTemplate(rows);
+        // 不触发 ApplicationReadyEvent，registry 只使用内置 spec
+        JoltSpecRegistry specRegistry = new JoltSpecRegistry(jdbcTemplate, new JoltSpecCache(256, true));
+        // 关闭聚合缓存和直方图，每次都走完整步骤链
+        StudentHistograms histograms = new StudentHistograms(jdbcTemplate, false, 0);
+        controller = new DataFlowDemoController(jdbcTemplate, specRegistry, new AggregateCache(false, 0)
+                , histograms, new DashboardStream(histograms, 1000, 0, 0, 0, 0, 1)
+                , new StudentTrends(jdbcTemplate, false, 0, 0), new DashboardExecutor(3000, false, 4, 64)
+                , new StudentColumns(jdbcTemplate, false, 1000, 0, 0)
+                , new StudentSketches(jdbcTemplate, false, 14, 100, 5, 2048, 20, 0)
+                , new TableStatistics(jdbcTemplate, "Student,Parent", 60, false, 10000), "full");
+
+        for (JSONObject result : new JSONObject[]{gradeDistribution(), genderDistribution(), ageDistribution()}) {
+            if (result.getBooleanValue("success") == false) {
+                throw new IllegalStateException("数据流执行失败: " + result.getString("error"));
+            }
+        }
+    }
+
+    @Benchmark
+    public JSONObject gradeDistribution() throws Exception {
+        return controller.getGradeDistributionFlow(null, null);
+    }
+
+    @Benchmark
+    public JSONObject genderDistribution() throws Exception {
+        return controller.getGenderDistributionFlow(null, null);
+    }
+
+    @Benchmark
+    public JSONObject ageDistribution() throws Exception {
+        return controller.getAgeDistributionFlow(null, null);
+    }
+
+    /**
+     * 按 SQL 中分组的列返回 rows 行 {列: 值, count: n}
+     */
+    static class StubJdbcTemplate extends JdbcTemplate {
+        private final Map<String, List<Map<String, Object>>> resultMap = new LinkedHashMap<>();
+
+        StubJdbcTemplate(int rows) {
+            resultMap.put("GROUP BY grade", rows(rows, "grade", i -> "年级" + i));
+            resultMap.put("GROUP BY gender", rows(rows, "gender", i -> i % 3 == 0 ? "男" : (i % 3 == 1 ? "女" : "未知")));
+            resultMap.put("GROUP BY age", rows(rows, "age", i -> 6 + i));
+        }
+
+        private static List<Map<String, Object>> rows(int rows, String column, java.util.function.IntFunction<Object> value) {
+            List<Map<String, Object>> list = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put(column, value.apply(i));
+                row.put("count", (long) (i + 1));
+                list.add(row);
+            }
+            return list;
+        }
+
+        @Override
+        public List<Map<String, Object>> queryForList(String sql) {
+            for (Map.Entry<String, List<Map<String, Object>>> entry : resultMap.entrySet()) {
+                if (sql.contains(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+            throw new IllegalArgumentException("StubJdbcTemplate 不支持的 SQL: " + sql);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Student[] 响应在 fastjson 和 Jackson 之间的解析、序列化耗时。
+ * APIJSON 用 fastjson 生成 JSONObject，Spring MVC 默认再用 Jackson 写出，jacksonWriteJSONObject 对应实际响应路径
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class JsonConversionBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int rows;
+
+    private JSONObject fastjsonObject;
+    private Map<String, Object> jacksonMap;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws Exception {
+        String[] grades = {"七年级", "八年级", "九年级"};
+        JSONArray students = new JSONArray(rows);
+        for (int i = 0; i < rows; i++) {
+            JSONObject student = new JSONObject(true);
+            student.put("id", 100000 + i);
+            student.put("name", "学生" + i);
+            student.put("gender", i % 2);
+            student.put("age", 12 + i % 5);
+            student.put("grade", grades[i % grades.length]);
+            student.put("status", 1);
+            students.add(student);
+        }
+        fastjsonObject = new JSONObject(true);
+        fastjsonObject.put("Student[]", students);
+
+        bytes = JSON.toJSONBytes(fastjsonObject);
+        jacksonMap = MAPPER.readValue(bytes, MAP_TYPE);
+    }
+
+    @Benchmark
+    public Object fastjsonParse() {
+        return JSON.parseObject(bytes, JSONObject.class);
+    }
+
+    @Benchmark
+    public Object jacksonParse() throws Exception {
+        return MAPPER.readValue(bytes, MAP_TYPE);
+    }
+
+    @Benchmark
+    public byte[] fastjsonWrite() {
+        return JSON.toJSONBytes(fastjsonObject);
+    }
+
+    @Benchmark
+    public byte[] jacksonWrite() throws Exception {
+        return MAPPER.writeValueAsBytes(jacksonMap);
+    }
+
+    @Benchmark
+    public byte[] jacksonWriteJSONObject() throws Exception {
+        return MAPPER.writeValueAsBytes(fastjsonObject);
+    }
+}
@@ -0,0 +1,124 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ResultSet 行映射：逐列处理（和 APIJSON 的 onPutColumn 一样每个单元格读取列名、判断隐藏、按值类型转换）
+ * 与按形状缓存的 JsonRowMapper 对比。rows 计数器为每秒映射的行数
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowMapperBenchmark {
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    private Connection connection;
+    private PreparedStatement statement;
+
+    /**
+     * 每秒映射的行数
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:rowmapper" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement create = connection.createStatement()) {
+            create.execute("CREATE TABLE BenchStudent (id BIGINT PRIMARY KEY, name VARCHAR(20), gender VARCHAR(4), age INT"
+                    + ", grade VARCHAR(20), score DECIMAL(5, 2), active BOOLEAN, tags VARCHAR(100), createTime TIMESTAMP, \"_version\" INT)");
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO BenchStudent VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                insert.setLong(1, i);
+                insert.setString(2, "学生" + i);
+                insert.setString(3, i % 2 == 0 ? "男" : "女");
+                insert.setInt(4, 6 + i % 12);
+                insert.setString(5, (1 + i % 6) + "年级");
+                insert.setBigDecimal(6, java.math.BigDecimal.valueOf(6000 + i % 4000, 2));
+                insert.setBoolean(7, i % 3 != 0);
+                insert.setString(8, "[\"t" + i % 5 + "\"]");
+                insert.setTimestamp(9, new Timestamp(1700000000000L + i * 1000L));
+                insert.setInt(10, 1);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        statement = connection.prepareStatement("SELECT * FROM BenchStudent");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void perCell(RowCounter counter, Blackhole blackhole) throws SQLException {
+        List<String> jsonColumns = List.of("TAGS");
+        try (ResultSet rs = statement.executeQuery()) {
+            ResultSetMetaData rsmd = rs.getMetaData();
+            int length = rsmd.getColumnCount();
+            while (rs.next()) {
+                JSONObject row = new JSONObject(true);
+                for (int i = 1; i <= length; i++) {
+                    if (rsmd.getColumnName(i).startsWith("_")) {
+                        continue;
+                    }
+                    String label = rsmd.getColumnLabel(i);
+                    Object value = rs.getObject(i);
+                    boolean json = false;
+                    if (value instanceof Timestamp || value instanceof java.sql.Date) {
+                        value = value.toString();
+                    } else if (value instanceof byte[]) {
+                        value = new String((byte[]) value, StandardCharsets.UTF_8);
+                        json = jsonColumns.contains(label) || rsmd.getColumnTypeName(i).toLowerCase().contains("json");
+                    } else if (value instanceof String) {
+                        json = jsonColumns.contains(label) || rsmd.getColumnTypeName(i).toLowerCase().contains("json");
+                    }
+                    row.put(label, json ? JSON.parse((String) value) : value);
+                }
+                blackhole.consume(row);
+                counter.rows++;
+            }
+        }
+    }
+
+    @Benchmark
+    public void cachedMapper(RowCounter counter, Blackhole blackhole) throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            JsonRowMapper mapper = JsonRowMapper.of("BenchStudent", null, List.of("TAGS"), rs.getMetaData());
+            while (rs.next()) {
+                blackhole.consume(mapper.map(rs));
+                counter.rows++;
+            }
+        }
+    }
+}
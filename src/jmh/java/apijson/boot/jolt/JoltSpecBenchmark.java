@@ -0,0 +1,71 @@
+package apijson.boot.jolt;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.bazaarvoice.jolt.Chainr;
+import com.bazaarvoice.jolt.JsonUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 三个内置图表 spec 的编译与转换耗时：Chainr.fromSpec、Chainr.transform、JoltSpecCompiler 编译后的 transform
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JoltSpecBenchmark {
+
+    @Param({"grade-distribution", "gender-distribution", "age-distribution"})
+    public String name;
+
+    @Param({"10", "1000"})
+    public int rows;
+
+    private List<Object> spec;
+    private Chainr chainr;
+    private Chainr compiled;
+    private JSONObject input;
+
+    @Setup
+    public void setup() {
+        spec = JsonUtils.jsonToList(JoltSpecRegistry.BUILTIN_SPEC_MAP.get(name));
+        chainr = Chainr.fromSpec(spec);
+        compiled = JoltSpecCompiler.compile(spec, chainr);
+        if (compiled == null) {
+            throw new IllegalStateException("内置 spec 无法编译: " + name);
+        }
+
+        String[] grades = {"七年级", "八年级", "九年级"};
+        JSONArray students = new JSONArray(rows);
+        for (int i = 0; i < rows; i++) {
+            JSONObject student = new JSONObject(true);
+            student.put("grade", grades[i % grades.length]);
+            student.put("gender", i % 2);
+            student.put("age", 12 + i % 5);
+            student.put("count", i);
+            students.add(student);
+        }
+        input = new JSONObject(true);
+        input.put("Student[]", students);
+    }
+
+    @Benchmark
+    public Chainr fromSpec() {
+        return Chainr.fromSpec(spec);
+    }
+
+    @Benchmark
+    public Object transform() {
+        return chainr.transform(input);
+    }
+
+    @Benchmark
+    public Object compiledTransform() {
+        return compiled.transform(input);
+    }
+}
@@ -0,0 +1,106 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 聚合查询结果缓存
+ * 缓存项记录计算时的 TableVersions 版本，表被写入后下次读取重新计算。
+ * 重新计算后 stale-millis 内的写入不触发失效，避免连续写入时每次读取都重新聚合。
+ */
+@Component
+public class AggregateCache {
+
+    private final boolean enabled;
+    private final long staleMillis;
+
+    private final Map<String, Entry> entryMap = new ConcurrentHashMap<>();
+    private final Map<String, Object> lockMap = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder staleHitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public AggregateCache(@Value("${dataflow.cache.enabled:true}") boolean enabled
+            , @Value("${dataflow.cache.stale-millis:1000}") long staleMillis) {
+        this.enabled = enabled;
+        this.staleMillis = Math.max(0, staleMillis);
+    }
+
+    /**获取缓存的聚合结果，不存在或已失效时用 loader 计算，同一 key 同时只计算一次
+     * @param key 缓存 key，例如 SQL
+     * @param table 聚合依赖的表
+     * @param loader 计算聚合结果，返回值会被多个请求共享，不能再修改
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, String table, Supplier<T> loader) {
+        if (enabled == false) {
+            return loader.get();
+        }
+
+        Entry entry = entryMap.get(key);
+        if (entry != null && isValid(entry, table)) {
+            return (T) entry.value;
+        }
+
+        synchronized (lockMap.computeIfAbsent(key, k -> new Object())) {
+            entry = entryMap.get(key);
+            if (entry != null && isValid(entry, table)) {
+                return (T) entry.value;
+            }
+
+            missCount.increment();
+            // 先取版本再查询，查询期间的写入会让下次读取重新计算
+            long version = TableVersions.get(table);
+            T value = loader.get();
+            entryMap.put(key, new Entry(value, version, System.currentTimeMillis()));
+            return value;
+        }
+    }
+
+    private boolean isValid(Entry entry, String table) {
+        if (entry.version == TableVersions.get(table)) {
+            hitCount.increment();
+            return true;
+        }
+        if (System.currentTimeMillis() - entry.loadTime < staleMillis) {
+            staleHitCount.increment();
+            return true;
+        }
+        return false;
+    }
+
+    public void clear() {
+        entryMap.clear();
+    }
+
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject(true);
+        stats.put("enabled", enabled);
+        stats.put("staleMillis", staleMillis);
+        stats.put("size", entryMap.size());
+        stats.put("hitCount", hitCount.sum());
+        stats.put("staleHitCount", staleHitCount.sum());
+        stats.put("missCount", missCount.sum());
+        stats.put("tableVersions", TableVersions.getAll());
+        return stats;
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long version;
+        final long loadTime;
+
+        Entry(Object value, long version, long loadTime) {
+            this.value = value;
+            this.version = version;
+            this.loadTime = loadTime;
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package apijson.boot;
+
+import apijson.boot.StudentColumns.Snapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * StudentColumns 快照上的过滤、分组、聚合
+ * <pre>
+ * filter: status=1,age>=10,age<15,grade=七年级|八年级,class_name!=九年级(1)班   多个条件为 AND，= 和 != 可用 | 分隔多个值
+ * group:  grade,gender,age:5   age:5 表示按 5 岁一段分组，值为每段的起始年龄
+ * agg:    count,avg(age),min(age)   输出为 count、avg_age、min_age，sum、avg、min、max 只支持 age、gender、status
+ * </pre>
+ * 按列逐个处理：每个条件对一段行做一次原始数组循环得到选择向量，再对选中的行计算分组下标并累加，
+ * 行数较多时分段并行，每段独立累加后合并。null 和 SQL 一样不满足任何条件，分组时单独成组并排在最前面。
+ */
+public class ColumnarQuery {
+
+    /**
+     * 分组组合数上限，每段按组合数分配累加数组
+     */
+    public static final int MAX_GROUPS = 1 << 18;
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    public enum Column {
+        AGE("age", true), GENDER("gender", true), STATUS("status", true), GRADE("grade", false), CLASS_NAME("class_name", false);
+
+        public final String key;
+        final boolean numeric;
+
+        Column(String key, boolean numeric) {
+            this.key = key;
+            this.numeric = numeric;
+        }
+
+        static Column of(String key) {
+            for (Column column : values()) {
+                if (column.key.equalsIgnoreCase(key.trim())) {
+                    return column;
+                }
+            }
+            throw new IllegalArgumentException("不支持的列: " + key + "，可选 age, gender, status, grade, class_name");
+        }
+    }
+
+    enum Func {
+        COUNT, SUM, AVG, MIN, MAX
+    }
+
+    /**
+     * 数值列转为区间 [lo, hi]（negate 时取反）或值集合，字符串列转为可接受的字典编码
+     */
+    static final class Condition {
+        final Column column;
+        final String op;
+        final String[] values;
+        int lo = Integer.MIN_VALUE + 1;
+        int hi = Integer.MAX_VALUE;
+        boolean negate;
+        int[] set;
+
+        Condition(Column column, String op, String[] values) {
+            this.column = column;
+            this.op = op;
+            this.values = values;
+
+            if (column.numeric == false) {
+                if ("=".equals(op) == false && "!=".equals(op) == false) {
+                    throw new IllegalArgumentException(column.key + " 只支持 = 和 !=");
+                }
+                return;
+            }
+
+            int[] ints = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                try {
+                    ints[i] = Integer.parseInt(values[i].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(column.key + " 的值必须是整数: " + values[i]);
+                }
+            }
+            if (ints.length > 1 && ("=".equals(op) || "!=".equals(op))) {
+                set = ints;
+                negate = "!=".equals(op);
+                return;
+            }
+            if (ints.length > 1) {
+                throw new IllegalArgumentException(op + " 只能有一个值");
+            }
+
+            int v = ints[0];
+            switch (op) {
+                case "=": lo = v; hi = v; break;
+                case "!=": lo = v; hi = v; negate = true; break;
+                case ">": lo = v == Integer.MAX_VALUE ? 1 : v + 1; hi = v == Integer.MAX_VALUE ? 0 : hi; break;
+                case ">=": lo = v; break;
+                case "<": hi = v == Integer.MIN_VALUE ? v : v - 1; break;
+                case "<=": hi = v; break;
+                default: throw new IllegalArgumentException("不支持的运算符: " + op);
+            }
+        }
+
+        void apply(Snapshot s, int from, int to, boolean[] selected) {
+            switch (column) {
+                case AGE:
+                    applyInts(s.age, StudentColumns.NULL_INT, from, to, selected);
+                    break;
+                case GENDER:
+                    applyBytes(s.gender, from, to, selected);
+                    break;
+                case STATUS:
+                    applyBytes(s.status, from, to, selected);
+                    break;
+                case GRADE:
+                    applyCodes(s.grade, accepted(s.gradeDict), from, to, selected);
+                    break;
+                default:
+                    applyCodes(s.className, accepted(s.classNameDict), from, to, selected);
+                    break;
+            }
+        }
+
+        private void applyInts(int[] column, int nullValue, int from, int to, boolean[] selected) {
+            if (set != null) {
+                for (int i = from; i < to; i++) {
+                    int v = column[i];
+                    selected[i - from] &= v != nullValue && contains(set, v) != negate;
+                }
+                return;
+            }
+            int lo = this.lo;
+            int hi = this.hi;
+            boolean negate = this.negate;
+            for (int i = from; i < to; i++) {
+                int v = column[i];
+                selected[i - from] &= v != nullValue && (v >= lo && v <= hi) != negate;
+            }
+        }
+
+        private void applyBytes(byte[] column, int from, int to, boolean[] selected) {
+            if (set != null) {
+                for (int i = from; i < to; i++) {
+                    byte v = column[i];
+                    selected[i - from] &= v != StudentColumns.NULL_BYTE && contains(set, v) != negate;
+                }
+                return;
+            }
+            int lo = this.lo;
+            int hi = this.hi;
+            boolean negate = this.negate;
+            for (int i = from; i < to; i++) {
+                byte v = column[i];
+                selected[i - from] &= v != StudentColumns.NULL_BYTE && (v >= lo && v <= hi) != negate;
+            }
+        }
+
+        private static void applyCodes(int[] column, boolean[] accepted, int from, int to, boolean[] selected) {
+            for (int i = from; i < to; i++) {
+                int c = column[i];
+                selected[i - from] &= c >= 0 && accepted[c];
+            }
+        }
+
+        private static boolean contains(int[] set, int v) {
+            for (int s : set) {
+                if (s == v) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 字典中不存在的值：= 不匹配任何行，!= 匹配所有非 null 的行
+         */
+        private boolean[] accepted(String[] dict) {
+            boolean negate = "!=".equals(op);
+            boolean[] accepted = new boolean[dict.length];
+            Arrays.fill(accepted, negate);
+            for (String value : values) {
+                int code = Arrays.binarySearch(dict, value.trim());
+                if (code >= 0) {
+                    accepted[code] = negate == false;
+                }
+            }
+            return accepted;
+        }
+    }
+
+    /**
+     * 分组下标：null 为 0，其余从 1 开始
+     */
+    static final class Group {
+        final Column column;
+        final int width;
+        int base;
+        int cardinality;
+
+        Group(Column column, int width) {
+            this.column = column;
+            this.width = width;
+        }
+
+        void prepare(Snapshot s) {
+            switch (column) {
+                case AGE:
+                    base = Math.floorDiv(s.minAge, width);
+                    cardinality = Math.floorDiv(s.maxAge, width) - base + 2;
+                    break;
+                case GENDER:
+                case STATUS:
+                    cardinality = 256;
+                    break;
+                case GRADE:
+                    cardinality = s.gradeDict.length + 1;
+                    break;
+                default:
+                    cardinality = s.classNameDict.length + 1;
+                    break;
+            }
+        }
+
+        void addKeys(Snapshot s, int from, int to, int stride, int[] keys) {
+            switch (column) {
+                case AGE:
+                    int[] age = s.age;
+                    for (int i = from; i < to; i++) {
+                        int v = age[i];
+                        keys[i - from] += (v == StudentColumns.NULL_INT ? 0 : Math.floorDiv(v, width) - base + 1) * stride;
+                    }
+                    break;
+                case GENDER:
+                case STATUS:
+                    byte[] bytes = column == Column.GENDER ? s.gender : s.status;
+                    for (int i = from; i < to; i++) {
+                        // NULL_BYTE 为 Byte.MIN_VALUE，正好映射为 0
+                        keys[i - from] += (bytes[i] - Byte.MIN_VALUE) * stride;
+                    }
+                    break;
+                default:
+                    int[] codes = column == Column.GRADE ? s.grade : s.className;
+                    for (int i = from; i < to; i++) {
+                        keys[i - from] += (codes[i] + 1) * stride;
+                    }
+                    break;
+            }
+        }
+
+        Object decode(Snapshot s, int code) {
+            if (code == 0) {
+                return null;
+            }
+            switch (column) {
+                case AGE:
+                    return (code - 1 + base) * width;
+                case GENDER:
+                case STATUS:
+                    return code + Byte.MIN_VALUE;
+                case GRADE:
+                    return s.gradeDict[code - 1];
+                default:
+                    return s.classNameDict[code - 1];
+            }
+        }
+    }
+
+    static final class Agg {
+        final Func func;
+        final Column column;
+        final String key;
+
+        Agg(Func func, Column column) {
+            if (func != Func.COUNT && (column == null || column.numeric == false)) {
+                throw new IllegalArgumentException(func.name().toLowerCase() + " 只支持 age, gender, status");
+            }
+            this.func = func;
+            this.column = column;
+            this.key = func == Func.COUNT ? "count" : func.name().toLowerCase() + "_" + column.key;
+        }
+    }
+
+    /**
+     * 一段行的累加结果，按分组下标存放
+     */
+    static final class Partial {
+        final long[] count;
+        final long[][] sum;
+        final long[][] nonNull;
+        final int[][] min;
+        final int[][] max;
+
+        Partial(int cardinality, int aggCount) {
+            count = new long[cardinality];
+            sum = new long[aggCount][];
+            nonNull = new long[aggCount][];
+            min = new int[aggCount][];
+            max = new int[aggCount][];
+        }
+
+        Partial merge(Partial other) {
+            for (int k = 0; k < count.length; k++) {
+                count[k] += other.count[k];
+            }
+            for (int a = 0; a < sum.length; a++) {
+                if (sum[a] == null) {
+                    continue;
+                }
+                for (int k = 0; k < count.length; k++) {
+                    sum[a][k] += other.sum[a][k];
+                    nonNull[a][k] += other.nonNull[a][k];
+                    min[a][k] = Math.min(min[a][k], other.min[a][k]);
+                    max[a][k] = Math.max(max[a][k], other.max[a][k]);
+                }
+            }
+            return this;
+        }
+    }
+
+    private final List<Condition> conditions;
+    private final List<Group> groups;
+    private final List<Agg> aggs;
+
+    private ColumnarQuery(List<Condition> conditions, List<Group> groups, List<Agg> aggs) {
+        this.conditions = conditions;
+        this.groups = groups;
+        this.aggs = aggs;
+    }
+
+    /**解析查询表达式，格式见类注释
+     * @throws IllegalArgumentException 表达式不合法
+     */
+    public static ColumnarQuery parse(String filter, String group, String agg) {
+        List<Condition> conditions = new ArrayList<>();
+        for (String item : split(filter)) {
+            int index = -1;
+            String op = null;
+            for (String candidate : new String[]{"!=", ">=", "<=", "=", ">", "<"}) {
+                int i = item.indexOf(candidate);
+                if (i > 0 && (index < 0 || i < index)) {
+                    index = i;
+                    op = candidate;
+                }
+            }
+            if (op == null) {
+                throw new IllegalArgumentException("无法解析的过滤条件: " + item);
+            }
+            // 同一位置 > 和 >= 都能匹配时取更长的
+            for (String candidate : new String[]{"!=", ">=", "<="}) {
+                if (item.startsWith(candidate, index)) {
+                    op = candidate;
+                    break;
+                }
+            }
+            String value = item.substring(index + op.length());
+            conditions.add(new Condition(Column.of(item.substring(0, index)), op, value.split("\\|", -1)));
+        }
+
+        List<Group> groups = new ArrayList<>();
+        for (String item : split(group)) {
+            int colon = item.indexOf(':');
+            Column column = Column.of(colon < 0 ? item : item.substring(0, colon));
+            int width = 1;
+            if (colon >= 0) {
+                if (column != Column.AGE) {
+                    throw new IllegalArgumentException("只有 age 支持按区间分组");
+                }
+                try {
+                    width = Integer.parseInt(item.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    width = 0;
+                }
+                if (width <= 0) {
+                    throw new IllegalArgumentException("区间宽度必须是正整数: " + item);
+                }
+            }
+            groups.add(new Group(column, width));
+        }
+
+        List<Agg> aggs = new ArrayList<>();
+        List<String> aggItems = split(agg);
+        if (aggItems.isEmpty()) {
+            aggItems = List.of("count");
+        }
+        for (String item : aggItems) {
+            String lower = item.toLowerCase();
+            if ("count".equals(lower) || "count(*)".equals(lower)) {
+                aggs.add(new Agg(Func.COUNT, null));
+                continue;
+            }
+            int open = lower.indexOf('(');
+            if (open <= 0 || lower.endsWith(")") == false) {
+                throw new IllegalArgumentException("无法解析的聚合: " + item + "，可选 count, sum(col), avg(col), min(col), max(col)");
+            }
+            Func func;
+            try {
+                func = Func.valueOf(lower.substring(0, open).trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的聚合函数: " + item);
+            }
+            aggs.add(new Agg(func, Column.of(lower.substring(open + 1, lower.length() - 1))));
+        }
+
+        return new ColumnarQuery(conditions, groups, aggs);
+    }
+
+    private static List<String> split(String expression) {
+        List<String> items = new ArrayList<>();
+        if (expression == null) {
+            return items;
+        }
+        for (String item : expression.split(",")) {
+            if (item.isBlank() == false) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    /**执行查询
+     * @param parallelThreshold 行数不少于该值时分段并行，0 表示总是串行
+     * @return 按分组值升序的 [{group..., count, avg_age...}]，只包含有数据的组
+     */
+    public List<Map<String, Object>> execute(Snapshot s, int parallelThreshold) {
+        long total = 1;
+        int[] strides = new int[groups.size()];
+        for (int g = groups.size() - 1; g >= 0; g--) {
+            Group group = groups.get(g);
+            group.prepare(s);
+            strides[g] = (int) total;
+            total *= group.cardinality;
+            if (total > MAX_GROUPS) {
+                throw new IllegalArgumentException("分组组合数超过 " + MAX_GROUPS + "，请减少分组列或增大 age 区间");
+            }
+        }
+        int cardinality = (int) total;
+
+        int chunkCount = (s.size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream chunks = IntStream.range(0, chunkCount);
+        if (parallelThreshold > 0 && s.size >= parallelThreshold) {
+            chunks = chunks.parallel();
+        }
+        Partial result = chunks
+                .mapToObj(c -> aggregate(s, c * CHUNK_SIZE, Math.min(s.size, (c + 1) * CHUNK_SIZE), strides, cardinality))
+                .reduce(Partial::merge)
+                .orElseGet(() -> newPartial(cardinality));
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int k = 0; k < cardinality; k++) {
+            if (result.count[k] <= 0) {
+                continue;
+            }
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            int rest = k;
+            for (int g = 0; g < groups.size(); g++) {
+                Group group = groups.get(g);
+                row.put(group.column.key, group.decode(s, rest / strides[g]));
+                rest %= strides[g];
+            }
+            for (int a = 0; a < aggs.size(); a++) {
+                Agg agg = aggs.get(a);
+                long n = agg.func == Func.COUNT ? 0 : result.nonNull[a][k];
+                switch (agg.func) {
+                    case COUNT:
+                        row.put(agg.key, result.count[k]);
+                        break;
+                    case SUM:
+                        row.put(agg.key, n <= 0 ? null : result.sum[a][k]);
+                        break;
+                    case AVG:
+                        row.put(agg.key, n <= 0 ? null : (double) result.sum[a][k] / n);
+                        break;
+                    case MIN:
+                        row.put(agg.key, n <= 0 ? null : result.min[a][k]);
+                        break;
+                    default:
+                        row.put(agg.key, n <= 0 ? null : result.max[a][k]);
+                        break;
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private Partial newPartial(int cardinality) {
+        Partial partial = new Partial(cardinality, aggs.size());
+        for (int a = 0; a < aggs.size(); a++) {
+            if (aggs.get(a).func != Func.COUNT) {
+                partial.sum[a] = new long[cardinality];
+                partial.nonNull[a] = new long[cardinality];
+                partial.min[a] = new int[cardinality];
+                partial.max[a] = new int[cardinality];
+                Arrays.fill(partial.min[a], Integer.MAX_VALUE);
+                Arrays.fill(partial.max[a], Integer.MIN_VALUE);
+            }
+        }
+        return partial;
+    }
+
+    private Partial aggregate(Snapshot s, int from, int to, int[] strides, int cardinality) {
+        int length = to - from;
+        boolean[] selected = new boolean[length];
+        Arrays.fill(selected, true);
+        for (Condition condition : conditions) {
+            condition.apply(s, from, to, selected);
+        }
+
+        int[] keys = new int[length];
+        for (int g = 0; g < groups.size(); g++) {
+            groups.get(g).addKeys(s, from, to, strides[g], keys);
+        }
+
+        Partial partial = newPartial(cardinality);
+        long[] count = partial.count;
+        for (int i = 0; i < length; i++) {
+            if (selected[i]) {
+                count[keys[i]]++;
+            }
+        }
+
+        for (int a = 0; a < aggs.size(); a++) {
+            Agg agg = aggs.get(a);
+            if (agg.func == Func.COUNT) {
+                continue;
+            }
+
+            long[] sum = partial.sum[a];
+            long[] nonNull = partial.nonNull[a];
+            int[] min = partial.min[a];
+            int[] max = partial.max[a];
+            if (agg.column == Column.AGE) {
+                int[] column = s.age;
+                for (int i = 0; i < length; i++) {
+                    int v = column[from + i];
+                    if (selected[i] && v != StudentColumns.NULL_INT) {
+                        int k = keys[i];
+                        sum[k] += v;
+                        nonNull[k]++;
+                        min[k] = Math.min(min[k], v);
+                        max[k] = Math.max(max[k], v);
+                    }
+                }
+            } else {
+                byte[] column = agg.column == Column.GENDER ? s.gender : s.status;
+                for (int i = 0; i < length; i++) {
+                    byte v = column[from + i];
+                    if (selected[i] && v != StudentColumns.NULL_BYTE) {
+                        int k = keys[i];
+                        sum[k] += v;
+                        nonNull[k]++;
+                        min[k] = Math.min(min[k], v);
+                        max[k] = Math.max(max[k], v);
+                    }
+                }
+            }
+        }
+        return partial;
+    }
+}
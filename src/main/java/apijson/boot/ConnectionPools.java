@@ -0,0 +1,215 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONObject;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import apijson.Log;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * APIJSON 使用的连接池
+ * 默认数据源为 Spring 按 spring.datasource.* 和 spring.datasource.hikari.* 创建的 HikariCP 连接池，
+ * 其它数据源按 apijson.pools.名称.* 配置（属性和 spring.datasource.hikari.* 相同，如 jdbc-url、maximum-pool-size、leak-detection-threshold），
+ * 请求中 @datasource 为该名称时使用，每个连接池单独设置大小和泄漏检测。
+ * 每次租借记录等待时间，归还时记录持有时间，和 HikariCP 的活跃、空闲、等待线程数一起在 /infra/status 输出
+ */
+@Component
+public class ConnectionPools {
+    private static final String TAG = "ConnectionPools";
+
+    public static final String DEFAULT = "default";
+
+    private final Map<String, Pool> poolMap = new LinkedHashMap<>();
+
+    /**
+     * 一个数据源及其租借统计
+     */
+    static final class Pool {
+        final String name;
+        final DataSource dataSource;
+        final boolean owned;
+
+        final AtomicLong leaseCount = new AtomicLong();
+        final AtomicLong releaseCount = new AtomicLong();
+        final AtomicLong timeoutCount = new AtomicLong();
+        final AtomicLong waitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final AtomicLong holdNanos = new AtomicLong();
+        final AtomicLong maxHoldNanos = new AtomicLong();
+
+        Pool(String name, DataSource dataSource, boolean owned) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.owned = owned;
+        }
+    }
+
+    public ConnectionPools(DataSource dataSource, Environment environment) {
+        poolMap.put(DEFAULT, new Pool(DEFAULT, dataSource, false));
+
+        Map<String, HikariConfig> configMap = Binder.get(environment)
+                .bind("apijson.pools", Bindable.mapOf(String.class, HikariConfig.class))
+                .orElse(Map.of());
+        for (Map.Entry<String, HikariConfig> entry : configMap.entrySet()) {
+            String name = entry.getKey();
+            HikariConfig config = entry.getValue();
+            if (config.getPoolName() == null) {
+                config.setPoolName("apijson-" + name);
+            }
+            poolMap.put(name, new Pool(name, new HikariDataSource(config), true));
+            Log.d(TAG, "ConnectionPools  创建连接池 " + name + ", maximumPoolSize = " + config.getMaximumPoolSize());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Pool pool : poolMap.values()) {
+            if (pool.owned) {
+                ((HikariDataSource) pool.dataSource).close();
+            }
+        }
+    }
+
+    /**
+     * @param name 为空或没有对应配置时使用默认数据源
+     */
+    Pool getPool(String name) {
+        Pool pool = name == null || name.isEmpty() ? null : poolMap.get(name);
+        return pool == null ? poolMap.get(DEFAULT) : pool;
+    }
+
+    public DataSource getDataSource(String name) {
+        return getPool(name).dataSource;
+    }
+
+    /**
+     * @return 是否有 apijson.pools.name.* 配置的连接池
+     */
+    public boolean contains(String name) {
+        return name != null && poolMap.containsKey(name);
+    }
+
+    /**
+     * @return 已租借未归还的连接数
+     */
+    public long getOutstanding(String name) {
+        Pool pool = getPool(name);
+        return pool.leaseCount.get() - pool.releaseCount.get();
+    }
+
+    /**从连接池租借一个连接，使用方负责在 release 时关闭
+     * @return 连接和租借信息
+     */
+    public Lease lease(String name) throws SQLException {
+        Pool pool = getPool(name);
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = pool.dataSource.getConnection();
+        } catch (SQLTransientConnectionException e) {  // HikariCP 等待 connection-timeout 后仍没有空闲连接
+            pool.timeoutCount.incrementAndGet();
+            throw e;
+        }
+
+        long now = System.nanoTime();
+        record(pool.waitNanos, pool.maxWaitNanos, now - start);
+        pool.leaseCount.incrementAndGet();
+        return new Lease(pool, connection, now);
+    }
+
+    private static void record(AtomicLong total, AtomicLong max, long nanos) {
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * 一次租借，release 关闭连接即归还给连接池，重复调用只归还一次
+     */
+    public static final class Lease {
+        private final Pool pool;
+        private final Connection connection;
+        private final long startNanos;
+        private boolean released;
+
+        private Lease(Pool pool, Connection connection, long startNanos) {
+            this.pool = pool;
+            this.connection = connection;
+            this.startNanos = startNanos;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public String getPoolName() {
+            return pool.name;
+        }
+
+        public synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+
+            record(pool.holdNanos, pool.maxHoldNanos, System.nanoTime() - startNanos);
+            pool.releaseCount.incrementAndGet();
+            try {
+                if (connection.isClosed() == false) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                Log.e(TAG, "release  catch (SQLException e) = " + e.getMessage());
+            }
+        }
+    }
+
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject(true);
+        for (Pool pool : poolMap.values()) {
+            JSONObject item = new JSONObject(true);
+            if (pool.dataSource instanceof HikariDataSource) {
+                HikariDataSource hikari = (HikariDataSource) pool.dataSource;
+                item.put("poolName", hikari.getPoolName());
+                item.put("maximumPoolSize", hikari.getMaximumPoolSize());
+                item.put("connectionTimeoutMillis", hikari.getConnectionTimeout());
+                item.put("leakDetectionThresholdMillis", hikari.getLeakDetectionThreshold());
+                HikariPoolMXBean mxBean = hikari.getHikariPoolMXBean();
+                if (mxBean != null) {  // 还没有租借过连接时连接池尚未启动
+                    item.put("active", mxBean.getActiveConnections());
+                    item.put("idle", mxBean.getIdleConnections());
+                    item.put("total", mxBean.getTotalConnections());
+                    item.put("threadsAwaiting", mxBean.getThreadsAwaitingConnection());
+                }
+            } else {
+                item.put("type", pool.dataSource.getClass().getName());
+            }
+
+            long leases = pool.leaseCount.get();
+            long releases = pool.releaseCount.get();
+            item.put("leaseCount", leases);
+            item.put("outstanding", leases - releases);
+            item.put("timeoutCount", pool.timeoutCount.get());
+            item.put("avgWaitMillis", leases <= 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(pool.waitNanos.get() / leases) / 1000.0);
+            item.put("maxWaitMillis", TimeUnit.NANOSECONDS.toMicros(pool.maxWaitNanos.get()) / 1000.0);
+            item.put("avgHoldMillis", releases <= 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(pool.holdNanos.get() / releases) / 1000.0);
+            item.put("maxHoldMillis", TimeUnit.NANOSECONDS.toMicros(pool.maxHoldNanos.get()) / 1000.0);
+            stats.put(pool.name, item);
+        }
+        return stats;
+    }
+}
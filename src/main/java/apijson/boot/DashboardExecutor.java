@@ -0,0 +1,333 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONObject;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import apijson.Log;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 仪表盘组合查询执行器
+ * 各部分（JDBC 查询 + JOLT 转换）同时提交，各自有截止时间，超时的部分取消并记为失败，其余部分照常返回，
+ * 总耗时接近最慢的一个而不是所有部分之和。
+ * 截止时间传到数据库：withDeadline 返回的 JdbcTemplate 在部分内执行的语句按剩余时间设置查询超时，
+ * 到达截止时间时还会主动 cancel 正在执行的语句，连接随之归还连接池。JOLT 转换不响应中断，靠输入大小限制保证能结束。
+ * 运行在 Java 21+ 时使用虚拟线程（项目按 Java 17 编译，通过反射获取），否则使用固定大小、有界队列的平台线程池，排队已满时该部分直接失败。
+ */
+@Component
+public class DashboardExecutor {
+    private static final String TAG = "DashboardExecutor";
+
+    private final long maxTimeoutMillis;
+    private final ExecutorService executor;
+    private final boolean virtual;
+
+    /**
+     * 当前线程正在执行的部分，withDeadline 的 JdbcTemplate 据此设置查询超时
+     */
+    private static final ThreadLocal<Part> CURRENT_PART = new ThreadLocal<>();
+
+    private final AtomicLong partCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong cancelledStatementCount = new AtomicLong();
+
+    public DashboardExecutor(@Value("${dataflow.dashboard.timeout-ms:3000}") long maxTimeoutMillis
+            , @Value("${dataflow.dashboard.virtual-threads:true}") boolean virtualThreads
+            , @Value("${dataflow.dashboard.pool-size:16}") int poolSize
+            , @Value("${dataflow.dashboard.queue-capacity:64}") int queueCapacity) {
+        this.maxTimeoutMillis = maxTimeoutMillis > 0 ? maxTimeoutMillis : 3000;
+
+        ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+        this.virtual = virtualExecutor != null;
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+        } else {
+            int size = Math.max(1, poolSize);
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS
+                    , new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                Thread thread = new Thread(runnable, "dashboard-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            Log.d(TAG, "newVirtualThreadExecutor  当前 JVM 不支持虚拟线程，使用平台线程池");
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 请求中的 timeout 只能比配置的上限更小
+     */
+    public long getTimeoutMillis(Long requestTimeoutMillis) {
+        return requestTimeoutMillis == null || requestTimeoutMillis <= 0 ? maxTimeoutMillis : Math.min(requestTimeoutMillis, maxTimeoutMillis);
+    }
+
+    public Fanout fanout() {
+        return new Fanout();
+    }
+
+    /**
+     * 和 template 使用同一个 DataSource，在部分内执行时查询超时不超过该部分的剩余时间，部分外和 template 相同
+     */
+    public JdbcTemplate withDeadline(JdbcTemplate template) {
+        JdbcTemplate deadlineTemplate = new JdbcTemplate(template.getDataSource()) {
+            @Override
+            protected void applyStatementSettings(Statement stmt) throws SQLException {
+                super.applyStatementSettings(stmt);
+                Part part = CURRENT_PART.get();
+                if (part == null) {
+                    return;
+                }
+
+                long remainingNanos = part.deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    throw new SQLTimeoutException("超过 " + part.timeoutMillis + " 毫秒未完成");
+                }
+                // JDBC 的查询超时以秒为单位，向上取整；更精确的截止由 join 超时时 cancel 保证
+                int seconds = (int) Math.max(1, (remainingNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+                if (stmt.getQueryTimeout() <= 0 || stmt.getQueryTimeout() > seconds) {
+                    stmt.setQueryTimeout(seconds);
+                }
+                part.statements.add(stmt);
+            }
+        };
+        deadlineTemplate.setFetchSize(template.getFetchSize());
+        deadlineTemplate.setMaxRows(template.getMaxRows());
+        deadlineTemplate.setQueryTimeout(template.getQueryTimeout());
+        return deadlineTemplate;
+    }
+
+    /**
+     * 一次组合查询，add 时立即开始执行，join 按各自截止时间等待
+     */
+    public final class Fanout {
+        private final List<Part> parts = new ArrayList<>();
+
+        private Fanout() {
+        }
+
+        /**
+         * @param timeoutMillis 从提交开始计算的截止时间
+         */
+        public Fanout add(String name, Callable<?> task, long timeoutMillis) {
+            Part part = new Part(name, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), timeoutMillis);
+            partCount.incrementAndGet();
+            parts.add(part);
+            try {
+                part.future = executor.submit(track(part, task));
+            } catch (RejectedExecutionException e) {
+                rejectedCount.incrementAndGet();
+                part.rejected = true;
+            }
+            return this;
+        }
+
+        /**等待所有部分完成或到达各自截止时间
+         * @return 按 add 顺序排列的结果
+         */
+        public Result join() {
+            Result result = new Result();
+            for (Part part : parts) {
+                if (part.rejected) {
+                    failureCount.incrementAndGet();
+                    result.errors.put(part.name, "执行线程池已满，未执行");
+                    continue;
+                }
+                try {
+                    long remaining = part.deadlineNanos - System.nanoTime();
+                    result.values.put(part.name, part.future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS));
+                    result.elapsedMillis.put(part.name, TimeUnit.NANOSECONDS.toMillis(part.elapsedNanos));
+                } catch (TimeoutException e) {
+                    cancel(part);
+                    timeoutCount.incrementAndGet();
+                    result.timeouts.add(part.name);
+                    result.errors.put(part.name, "超过 " + part.timeoutMillis + " 毫秒未完成");
+                } catch (ExecutionException e) {
+                    failureCount.incrementAndGet();
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    result.errors.put(part.name, cause.getMessage() == null ? cause.toString() : cause.getMessage());
+                    result.elapsedMillis.put(part.name, TimeUnit.NANOSECONDS.toMillis(part.elapsedNanos));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelAll();
+                    result.errors.put(part.name, "等待被中断");
+                    break;
+                }
+            }
+            return result;
+        }
+
+        private void cancelAll() {
+            for (Part part : parts) {
+                if (part.rejected == false) {
+                    cancel(part);
+                }
+            }
+        }
+    }
+
+    /**单个任务按截止时间执行，查询超时和超时后的取消与 fanout 的部分相同
+     * @throws TimeoutException 超过 timeoutMillis 未完成，任务和它执行的语句已取消
+     * @throws ExecutionException 任务抛出异常
+     * @throws RejectedExecutionException 执行线程池已满
+     */
+    public <T> T call(String name, Callable<T> task, long timeoutMillis) throws TimeoutException, ExecutionException, InterruptedException {
+        Part part = new Part(name, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), timeoutMillis);
+        partCount.incrementAndGet();
+        Future<T> future;
+        try {
+            future = executor.submit(track(part, task));
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            throw e;
+        }
+        part.future = future;
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            cancel(part);
+            timeoutCount.incrementAndGet();
+            throw e;
+        } catch (ExecutionException e) {
+            failureCount.incrementAndGet();
+            throw e;
+        } catch (InterruptedException e) {
+            cancel(part);
+            throw e;
+        }
+    }
+
+    /**
+     * 执行期间把 part 设为当前部分，withDeadline 的 JdbcTemplate 据此设置查询超时
+     */
+    private static <T> Callable<T> track(Part part, Callable<T> task) {
+        return () -> {
+            long start = System.nanoTime();
+            CURRENT_PART.set(part);
+            try {
+                return task.call();
+            } finally {
+                CURRENT_PART.remove();
+                part.elapsedNanos = System.nanoTime() - start;
+            }
+        };
+    }
+
+    /**
+     * 中断该部分的线程，并 cancel 它执行过的语句，已结束的语句 cancel 会失败，忽略即可
+     */
+    private void cancel(Part part) {
+        part.future.cancel(true);
+        for (Statement statement : part.statements) {
+            try {
+                if (statement.isClosed() == false) {
+                    statement.cancel();
+                    cancelledStatementCount.incrementAndGet();
+                }
+            } catch (SQLException e) {
+                Log.d(TAG, "cancel  statement.cancel 失败：" + e.getMessage());
+            }
+        }
+        part.statements.clear();
+    }
+
+    private static final class Part {
+        final String name;
+        final long deadlineNanos;
+        final long timeoutMillis;
+        Future<?> future;
+        boolean rejected;
+        volatile long elapsedNanos;
+        /**
+         * 该部分执行过的语句，超时时 cancel
+         */
+        final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+
+        Part(String name, long deadlineNanos, long timeoutMillis) {
+            this.name = name;
+            this.deadlineNanos = deadlineNanos;
+            this.timeoutMillis = timeoutMillis;
+        }
+    }
+
+    /**
+     * 成功的部分在 values 中，失败和超时的部分在 errors 中
+     */
+    public static final class Result {
+        private final Map<String, Object> values = new LinkedHashMap<>();
+        private final Map<String, String> errors = new LinkedHashMap<>();
+        private final List<String> timeouts = new ArrayList<>();
+        private final Map<String, Long> elapsedMillis = new LinkedHashMap<>();
+
+        public Map<String, Object> getValues() {
+            return values;
+        }
+
+        public Map<String, String> getErrors() {
+            return errors;
+        }
+
+        public List<String> getTimeouts() {
+            return timeouts;
+        }
+
+        public Map<String, Long> getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isPartial() {
+            return errors.isEmpty() == false;
+        }
+    }
+
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject(true);
+        stats.put("virtualThreads", virtual);
+        stats.put("maxTimeoutMillis", maxTimeoutMillis);
+        stats.put("partCount", partCount.get());
+        stats.put("timeoutCount", timeoutCount.get());
+        stats.put("failureCount", failureCount.get());
+        stats.put("rejectedCount", rejectedCount.get());
+        stats.put("cancelledStatementCount", cancelledStatementCount.get());
+        return stats;
+    }
+}
@@ -0,0 +1,366 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import apijson.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * /dataflow/stream 的 SSE 推送，status = 1 学生的 grade、gender、age 分布
+ * 单线程按固定间隔读取一次 StudentHistograms（未就绪时在 Student 版本变化后扫描一次数据库），和上次比较得到变化的桶，
+ * 序列化一次后推送给所有连接，间隔内的多次写入合并为一个 delta。
+ * 新连接先收到 snapshot 事件，之后只收到 delta 事件，其中 count 为当前值，0 表示该值已没有学生，所以重复或合并应用都是幂等的。
+ * 发送慢的连接不阻塞其它连接：积压的 delta 合并为一个，积压超过 max-lag-ms 时断开，由 EventSource 重连后重新拿 snapshot。
+ */
+@Component
+public class DashboardStream {
+    private static final String TAG = "DashboardStream";
+
+    private static final SerializerFeature[] FEATURES = {SerializerFeature.WriteMapNullValue, SerializerFeature.DisableCircularReferenceDetect};
+
+    private final StudentHistograms histograms;
+    private final long intervalMillis;
+    private final long heartbeatMillis;
+    private final long maxLagMillis;
+    private final long timeoutMillis;
+    private final int maxClients;
+
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dashboard-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService sendPool;
+
+    // 以下只由 scheduler 线程写入
+    private Map<String, Map<Object, Long>> lastSnapshot;
+    private volatile String snapshotText;
+    private long lastScanVersion = -1;
+    private long lastHeartbeatTime;
+
+    private final AtomicLong tickCount = new AtomicLong();
+    private final AtomicLong deltaCount = new AtomicLong();
+    private final AtomicLong sendCount = new AtomicLong();
+    private final AtomicLong coalesceCount = new AtomicLong();
+    private final AtomicLong dropCount = new AtomicLong();
+
+    public DashboardStream(StudentHistograms histograms
+            , @Value("${dataflow.stream.interval-ms:1000}") long intervalMillis
+            , @Value("${dataflow.stream.heartbeat-seconds:15}") long heartbeatSeconds
+            , @Value("${dataflow.stream.max-lag-ms:30000}") long maxLagMillis
+            , @Value("${dataflow.stream.timeout-ms:1800000}") long timeoutMillis
+            , @Value("${dataflow.stream.max-clients:1000}") int maxClients
+            , @Value("${dataflow.stream.send-threads:4}") int sendThreads) {
+        this.histograms = histograms;
+        this.intervalMillis = intervalMillis > 0 ? intervalMillis : 1000;
+        this.heartbeatMillis = TimeUnit.SECONDS.toMillis(heartbeatSeconds);
+        this.maxLagMillis = maxLagMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.maxClients = maxClients;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.sendPool = Executors.newFixedThreadPool(Math.max(1, sendThreads), runnable -> {
+            Thread thread = new Thread(runnable, "dashboard-stream-send-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        scheduler.scheduleWithFixedDelay(this::tickQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        sendPool.shutdownNow();
+        for (Client client : clients) {
+            client.emitter.complete();
+        }
+        clients.clear();
+    }
+
+    /**
+     * @return 连接数已达上限时返回 null
+     */
+    public SseEmitter subscribe() {
+        if (maxClients > 0 && clients.size() >= maxClients) {
+            return null;
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Client client = new Client(emitter);
+        emitter.onCompletion(() -> clients.remove(client));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> clients.remove(client));
+        // snapshot 由下一次 tick 发送，最多等一个间隔
+        clients.add(client);
+        return emitter;
+    }
+
+    private void tickQuietly() {
+        try {
+            tick();
+        } catch (Exception e) {
+            Log.e(TAG, "tick  catch (Exception e) = " + e.getMessage());
+        }
+    }
+
+    void tick() {
+        if (clients.isEmpty()) {
+            // 没有连接时不读取，下次有连接时重新取 snapshot
+            lastSnapshot = null;
+            snapshotText = null;
+            return;
+        }
+        tickCount.incrementAndGet();
+
+        Map<String, Map<Object, Long>> current = read();
+        Map<String, Map<Object, Long>> delta = null;
+        String deltaText = null;
+        if (lastSnapshot == null) {
+            snapshotText = toText(current);
+        } else if (current != lastSnapshot) {
+            delta = diff(lastSnapshot, current);
+            if (delta.isEmpty()) {
+                delta = null;
+            } else {
+                snapshotText = toText(current);
+                deltaText = toText(delta);
+                deltaCount.incrementAndGet();
+            }
+        }
+        lastSnapshot = current;
+
+        long now = System.currentTimeMillis();
+        boolean heartbeat = heartbeatMillis > 0 && now - lastHeartbeatTime >= heartbeatMillis;
+        if (heartbeat) {
+            lastHeartbeatTime = now;
+        }
+
+        for (Client client : clients) {
+            client.offer(delta, deltaText, heartbeat, now);
+        }
+    }
+
+    private Map<String, Map<Object, Long>> read() {
+        if (histograms.isReady()) {
+            return histograms.getSnapshot();
+        }
+
+        long version = TableVersions.get(StudentHistograms.TABLE);
+        if (lastSnapshot == null || version != lastScanVersion) {
+            lastScanVersion = version;
+            return histograms.scan(1);
+        }
+        return lastSnapshot;
+    }
+
+    /**
+     * 只保留 current 中和 previous 不同的桶，previous 有而 current 没有的记为 0
+     */
+    static Map<String, Map<Object, Long>> diff(Map<String, Map<Object, Long>> previous, Map<String, Map<Object, Long>> current) {
+        Map<String, Map<Object, Long>> delta = new LinkedHashMap<>();
+        for (String column : StudentHistograms.COLUMNS) {
+            Map<Object, Long> before = previous.getOrDefault(column, Collections.emptyMap());
+            Map<Object, Long> after = current.getOrDefault(column, Collections.emptyMap());
+
+            Map<Object, Long> changed = new HashMap<>();
+            for (Map.Entry<Object, Long> entry : after.entrySet()) {
+                if (Objects.equals(entry.getValue(), before.get(entry.getKey())) == false) {
+                    changed.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (Object key : before.keySet()) {
+                if (after.containsKey(key) == false) {
+                    changed.put(key, 0L);
+                }
+            }
+            if (changed.isEmpty() == false) {
+                delta.put(column, changed);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * 每列转为和 /dataflow 第一步相同的 [{column: value, count: n}]
+     */
+    static String toText(Map<String, Map<Object, Long>> histogramMap) {
+        JSONObject data = new JSONObject(true);
+        for (Map.Entry<String, Map<Object, Long>> entry : histogramMap.entrySet()) {
+            data.put(entry.getKey(), StudentHistograms.toRows(entry.getKey(), entry.getValue()));
+        }
+        return JSON.toJSONString(data, FEATURES);
+    }
+
+    /**
+     * 一个 SSE 连接，同一时刻最多有一个发送任务
+     */
+    private final class Client {
+        final SseEmitter emitter;
+
+        // 以下由 this 保护
+        boolean needSnapshot = true;
+        /**
+         * 待发送的 delta，pendingText 不为 null 时就是某次 tick 共享的 delta，不能修改
+         */
+        Map<String, Map<Object, Long>> pending;
+        String pendingText;
+        boolean heartbeat;
+        boolean sending;
+        long pendingSince;
+        /**
+         * 积压过多，当前发送完成后由发送线程关闭，避免 tick 线程等待阻塞中的发送
+         */
+        boolean dropped;
+
+        Client(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(Map<String, Map<Object, Long>> delta, String deltaText, boolean heartbeat, long now) {
+            synchronized (this) {
+                if (delta != null && needSnapshot == false) {
+                    if (pending == null) {
+                        pending = delta;
+                        pendingText = deltaText;
+                    } else {
+                        if (pendingText != null) {
+                            pending = copy(pending);
+                            pendingText = null;
+                        }
+                        for (Map.Entry<String, Map<Object, Long>> entry : delta.entrySet()) {
+                            pending.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).putAll(entry.getValue());
+                        }
+                        coalesceCount.incrementAndGet();
+                    }
+                }
+                this.heartbeat |= heartbeat;
+
+                boolean hasWork = needSnapshot ? snapshotText != null : pending != null || this.heartbeat;
+                if (hasWork == false) {
+                    return;
+                }
+                if (pendingSince <= 0) {
+                    pendingSince = now;
+                }
+
+                if (sending) {
+                    if (maxLagMillis > 0 && now - pendingSince > maxLagMillis && dropped == false) {
+                        dropped = true;
+                        clients.remove(this);
+                        dropCount.incrementAndGet();
+                        Log.w(TAG, "offer  连接积压超过 " + maxLagMillis + " 毫秒，断开");
+                    }
+                    return;
+                }
+                sending = true;
+            }
+
+            try {
+                sendPool.execute(this::flush);
+            } catch (Exception e) {
+                clients.remove(this);
+            }
+        }
+
+        private void flush() {
+            while (true) {
+                String name;
+                String text;
+                synchronized (this) {
+                    if (dropped) {
+                        sending = false;
+                        break;
+                    }
+                    if (needSnapshot && snapshotText != null) {
+                        name = "snapshot";
+                        text = snapshotText;
+                        needSnapshot = false;
+                        pending = null;
+                        pendingText = null;
+                    } else if (needSnapshot == false && pending != null) {
+                        name = "delta";
+                        text = pendingText != null ? pendingText : toText(pending);
+                        pending = null;
+                        pendingText = null;
+                    } else if (heartbeat) {
+                        name = null;
+                        text = null;
+                    } else {
+                        sending = false;
+                        pendingSince = 0;
+                        return;
+                    }
+                    heartbeat = false;
+                    pendingSince = 0;
+                }
+
+                try {
+                    if (name == null) {
+                        emitter.send(SseEmitter.event().comment("ping"));
+                    } else {
+                        emitter.send(SseEmitter.event().name(name).data(text, MediaType.APPLICATION_JSON));
+                    }
+                    sendCount.incrementAndGet();
+                } catch (Exception e) {
+                    // 客户端已断开
+                    clients.remove(this);
+                    synchronized (this) {
+                        sending = false;
+                    }
+                    return;
+                }
+            }
+            emitter.complete();
+        }
+    }
+
+    private static Map<String, Map<Object, Long>> copy(Map<String, Map<Object, Long>> histogramMap) {
+        Map<String, Map<Object, Long>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<Object, Long>> entry : histogramMap.entrySet()) {
+            copy.put(entry.getKey(), new HashMap<>(entry.getValue()));
+        }
+        return copy;
+    }
+
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject(true);
+        stats.put("clients", clients.size());
+        stats.put("maxClients", maxClients);
+        stats.put("intervalMillis", intervalMillis);
+        stats.put("maxLagMillis", maxLagMillis);
+        stats.put("tickCount", tickCount.get());
+        stats.put("deltaCount", deltaCount.get());
+        stats.put("sendCount", sendCount.get());
+        stats.put("coalesceCount", coalesceCount.get());
+        stats.put("dropCount", dropCount.get());
+        return stats;
+    }
+}
@@ -1,19 +1,34 @@
 package apijson.boot;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
-import com.bazaarvoice.jolt.Chainr;
-import com.bazaarvoice.jolt.JsonUtils;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import apijson.boot.jolt.JoltResponseMode;
+import apijson.boot.jolt.JoltSpecRegistry;
+import apijson.boot.jolt.JoltSpecRegistry.JoltSpecEntry;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 完整数据流演示控制器
  * 演示：数据库 → 扁平化APIJSON格式 → JOLT转换 → ECharts图表格式
+ * StudentHistograms 就绪后第一步直接读取内存直方图，不再执行 GROUP BY
+ * 参数 mode=full 返回每一步的中间数据，output-only 只返回最终结果，raw 直接返回最终结果本身，默认见 jolt.response.default-mode
  */
 @RestController
 @RequestMapping("/dataflow")
@@ -21,22 +36,50 @@ import java.util.Map;
 public class DataFlowDemoController {
 
     private final JdbcTemplate jdbcTemplate;
+    private final JoltSpecRegistry specRegistry;
+    private final AggregateCache aggregateCache;
+    private final StudentHistograms histograms;
+    private final DashboardStream dashboardStream;
+    private final StudentTrends trends;
+    private final DashboardExecutor dashboardExecutor;
+    private final StudentColumns columns;
+    private final StudentSketches sketches;
+    private final TableStatistics tableStatistics;
+    private final JoltResponseMode defaultMode;
 
-    public DataFlowDemoController(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
+    public DataFlowDemoController(JdbcTemplate jdbcTemplate, JoltSpecRegistry specRegistry, AggregateCache aggregateCache
+            , StudentHistograms histograms, DashboardStream dashboardStream, StudentTrends trends
+            , DashboardExecutor dashboardExecutor, StudentColumns columns, StudentSketches sketches
+            , TableStatistics tableStatistics, @Value("${jolt.response.default-mode:full}") String defaultMode) {
+        this.jdbcTemplate = dashboardExecutor.withDeadline(jdbcTemplate);  // /dashboard 的扫描按剩余时间设置查询超时
+        this.specRegistry = specRegistry;
+        this.aggregateCache = aggregateCache;
+        this.histograms = histograms;
+        this.dashboardStream = dashboardStream;
+        this.trends = trends;
+        this.dashboardExecutor = dashboardExecutor;
+        this.columns = columns;
+        this.sketches = sketches;
+        this.tableStatistics = tableStatistics;
+        this.defaultMode = JoltResponseMode.of(defaultMode, JoltResponseMode.OUTPUT_ONLY);
     }
 
     /**
      * 完整数据流演示 - 年级分布
      */
     @GetMapping("/grade-distribution")
-    public JSONObject getGradeDistributionFlow() {
+    public JSONObject getGradeDistributionFlow(@RequestParam(required = false) String mode, HttpServletResponse response) throws IOException {
+        return respond(gradeDistributionFlow(), "step4_echarts_config", mode, response);
+    }
+
+    private JSONObject gradeDistributionFlow() {
         JSONObject result = new JSONObject();
         
         try {
             // 步骤1: 从数据库直接获取数据
             String sql = "SELECT grade, COUNT(*) as count FROM Student WHERE status = 1 GROUP BY grade ORDER BY grade";
-            List<Map<String, Object>> rawData = jdbcTemplate.queryForList(sql);
+            List<Map<String, Object>> rawData = histograms.isReady() ? histograms.getRows("grade")
+                : aggregateCache.get(sql, "Student", () -> jdbcTemplate.queryForList(sql));
             result.put("step1_raw_data", rawData);
             
             // 步骤2: 转换为APIJSON扁平化格式
@@ -53,14 +96,13 @@ public class DataFlowDemoController {
             result.put("step2_apijson_format", apijsonFormat);
             
             // 步骤3: JOLT转换为ECharts格式
-            List<Object> joltSpec = getGradeDistributionSpec();
-            Chainr chainr = Chainr.fromSpec(joltSpec);
-            Object echartsData = chainr.transform(apijsonFormat);
-            result.put("step3_jolt_spec", joltSpec);
+            JoltSpecEntry joltSpec = specRegistry.get("grade-distribution");
+            Object echartsData = joltSpec.getChainr().transform(apijsonFormat);
+            result.put("step3_jolt_spec", joltSpec.getSpec());
             result.put("step3_echarts_data", echartsData);
             
             // 步骤4: 生成最终ECharts配置
-            JSONObject echartsConfig = generateBarChartConfig(echartsData, "学生年级分布");
+            EChartsOption echartsConfig = EChartsOption.fromCategoryValues(EChartsOption.Template.BAR, "学生年级分布", echartsData);
             result.put("step4_echarts_config", echartsConfig);
             
             result.put("success", true);
@@ -80,7 +122,11 @@ public class DataFlowDemoController {
      * 完整数据流演示 - 性别分布
      */
     @GetMapping("/gender-distribution")
-    public JSONObject getGenderDistributionFlow() {
+    public JSONObject getGenderDistributionFlow(@RequestParam(required = false) String mode, HttpServletResponse response) throws IOException {
+        return respond(genderDistributionFlow(), "step4_echarts_config", mode, response);
+    }
+
+    private JSONObject genderDistributionFlow() {
         JSONObject result = new JSONObject();
         
         try {
@@ -94,7 +140,8 @@ public class DataFlowDemoController {
                 GROUP BY gender 
                 ORDER BY gender
                 """;
-            List<Map<String, Object>> rawData = jdbcTemplate.queryForList(sql);
+            List<Map<String, Object>> rawData = histograms.isReady() ? toGenderNameRows(histograms.getRows("gender"))
+                : aggregateCache.get(sql, "Student", () -> jdbcTemplate.queryForList(sql));
             result.put("step1_raw_data", rawData);
             
             // 步骤2: 转换为APIJSON扁平化格式
@@ -111,14 +158,13 @@ public class DataFlowDemoController {
             result.put("step2_apijson_format", apijsonFormat);
             
             // 步骤3: JOLT转换为ECharts格式
-            List<Object> joltSpec = getGenderDistributionSpec();
-            Chainr chainr = Chainr.fromSpec(joltSpec);
-            Object echartsData = chainr.transform(apijsonFormat);
-            result.put("step3_jolt_spec", joltSpec);
+            JoltSpecEntry joltSpec = specRegistry.get("gender-name-distribution");
+            Object echartsData = joltSpec.getChainr().transform(apijsonFormat);
+            result.put("step3_jolt_spec", joltSpec.getSpec());
             result.put("step3_echarts_data", echartsData);
             
             // 步骤4: 生成最终ECharts饼图配置
-            JSONObject echartsConfig = generatePieChartConfig(echartsData, "学生性别分布");
+            EChartsOption echartsConfig = EChartsOption.pie("学生性别分布").series((List<?>) echartsData);
             result.put("step4_echarts_config", echartsConfig);
             
             result.put("success", true);
@@ -137,13 +183,18 @@ public class DataFlowDemoController {
      * 完整数据流演示 - 年龄分布
      */
     @GetMapping("/age-distribution")
-    public JSONObject getAgeDistributionFlow() {
+    public JSONObject getAgeDistributionFlow(@RequestParam(required = false) String mode, HttpServletResponse response) throws IOException {
+        return respond(ageDistributionFlow(), "step4_echarts_config", mode, response);
+    }
+
+    private JSONObject ageDistributionFlow() {
         JSONObject result = new JSONObject();
         
         try {
             // 步骤1: 从数据库获取年龄分布数据
             String sql = "SELECT age, COUNT(*) as count FROM Student WHERE status = 1 GROUP BY age ORDER BY age";
-            List<Map<String, Object>> rawData = jdbcTemplate.queryForList(sql);
+            List<Map<String, Object>> rawData = histograms.isReady() ? histograms.getRows("age")
+                : aggregateCache.get(sql, "Student", () -> jdbcTemplate.queryForList(sql));
             result.put("step1_raw_data", rawData);
             
             // 步骤2: 转换为APIJSON扁平化格式
@@ -160,14 +211,13 @@ public class DataFlowDemoController {
             result.put("step2_apijson_format", apijsonFormat);
             
             // 步骤3: JOLT转换为ECharts格式
-            List<Object> joltSpec = getAgeDistributionSpec();
-            Chainr chainr = Chainr.fromSpec(joltSpec);
-            Object echartsData = chainr.transform(apijsonFormat);
-            result.put("step3_jolt_spec", joltSpec);
+            JoltSpecEntry joltSpec = specRegistry.get("age-distribution");
+            Object echartsData = joltSpec.getChainr().transform(apijsonFormat);
+            result.put("step3_jolt_spec", joltSpec.getSpec());
             result.put("step3_echarts_data", echartsData);
             
             // 步骤4: 生成最终ECharts折线图配置
-            JSONObject echartsConfig = generateLineChartConfig(echartsData, "学生年龄分布");
+            EChartsOption echartsConfig = EChartsOption.fromCategoryValues(EChartsOption.Template.LINE, "学生年龄分布", echartsData);
             result.put("step4_echarts_config", echartsConfig);
             
             result.put("success", true);
@@ -182,38 +232,316 @@ public class DataFlowDemoController {
         return result;
     }
 
+    /**
+     * 完整数据流演示 - 入学、离校趋势
+     * 只读 StudentDaily 汇总表，不扫描 Student。unit 为 day、week、month，from、to 为 yyyy-MM-dd，默认到今天；
+     * 点数超过 maxPoints（默认见 dataflow.trend.max-points）时按 metric（enrolled、churned、net、total，默认 total）做 LTTB 降采样
+     */
+    @GetMapping("/enrollment-trend")
+    public JSONObject getEnrollmentTrendFlow(@RequestParam(required = false) String unit, @RequestParam(required = false) String from
+            , @RequestParam(required = false) String to, @RequestParam(required = false) Integer maxPoints
+            , @RequestParam(required = false) String metric, @RequestParam(required = false) String mode
+            , HttpServletResponse response) throws IOException {
+        JSONObject result = new JSONObject();
+
+        try {
+            if (trends.isReady() == false) {
+                throw new IllegalStateException("趋势汇总表尚未就绪，请稍后重试");
+            }
+
+            StudentTrends.Unit trendUnit = StudentTrends.Unit.of(unit);
+            LocalDate toDate = to == null || to.isBlank() ? LocalDate.now() : LocalDate.parse(to.trim());
+            LocalDate fromDate = from == null || from.isBlank() ? trendUnit.defaultFrom(toDate) : LocalDate.parse(from.trim());
+            String sampleMetric = metric == null || metric.isBlank() ? "total" : metric.trim();
+            if (Arrays.asList(StudentTrends.METRICS).contains(sampleMetric) == false) {
+                throw new IllegalArgumentException("不支持的 metric: " + metric + "，可选 " + String.join(", ", StudentTrends.METRICS));
+            }
+
+            // 步骤1: 从汇总表按粒度合并
+            List<Map<String, Object>> rawData = trends.query(trendUnit, fromDate, toDate);
+            result.put("step1_raw_data", rawData);
+
+            // 步骤2: 降采样后转换为APIJSON扁平化格式
+            List<Map<String, Object>> sampled = StudentTrends.downsample(rawData, sampleMetric
+                    , maxPoints == null ? trends.getMaxPoints() : maxPoints);
+            JSONObject apijsonFormat = new JSONObject();
+            apijsonFormat.put("Student[]", sampled);
+            result.put("step2_apijson_format", apijsonFormat);
+            result.put("step2_point_count", sampled.size() + "/" + rawData.size());
+
+            // 步骤3: JOLT转换为ECharts格式
+            JoltSpecEntry joltSpec = specRegistry.get("enrollment-trend");
+            Map<?, ?> echartsData = (Map<?, ?>) joltSpec.getChainr().transform(apijsonFormat);
+            result.put("step3_jolt_spec", joltSpec.getSpec());
+            result.put("step3_echarts_data", echartsData);
+
+            // 步骤4: 生成最终ECharts折线图配置
+            EChartsOption echartsConfig = EChartsOption.line("学生入学、离校趋势")
+                    .categories((List<?>) echartsData.get("categories"))
+                    .series("入学", (List<?>) echartsData.get("enrolled"))
+                    .series("离校", (List<?>) echartsData.get("churned"))
+                    .series("在读", (List<?>) echartsData.get("total"));
+            result.put("step4_echarts_config", echartsConfig);
+
+            result.put("success", true);
+            result.put("message", "入学趋势数据流演示成功");
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+
+        return respond(result, "step4_echarts_config", mode, response);
+    }
+
+    /**
+     * 图表页一次加载所需的全部数据：三个分布图的 ECharts 数据和总数、年级数、平均年龄、男生比例。
+     * 一次流式扫描 Student 在内存中同时聚合（MySQL 不支持 GROUPING SETS），status = 1 且直方图就绪时不执行 SQL。
+     * 参数 status 为空时统计全部学生；扫描在 DashboardExecutor 上执行，超过 timeout（毫秒，不超过 dataflow.dashboard.timeout-ms）
+     * 时取消查询并返回失败，图表页随后改为逐个加载
+     */
+    @GetMapping("/dashboard")
+    public JSONObject getDashboard(@RequestParam(required = false) Integer status, @RequestParam(required = false) Long timeout
+            , @RequestParam(required = false) String mode, HttpServletResponse response) throws IOException {
+        JSONObject result = new JSONObject();
+
+        try {
+            // 步骤1: 各列计数，直方图或一次扫描
+            boolean fromHistogram = status != null && status == 1 && histograms.isReady();
+            Map<String, Map<Object, Long>> histogramMap;
+            if (fromHistogram) {
+                histogramMap = histograms.getSnapshot();
+            } else {
+                long timeoutMillis = dashboardExecutor.getTimeoutMillis(timeout);
+                try {
+                    histogramMap = dashboardExecutor.call("scan", () -> histograms.scan(jdbcTemplate, status), timeoutMillis);
+                } catch (TimeoutException e) {
+                    throw new IllegalStateException("扫描 Student 超过 " + timeoutMillis + " 毫秒未完成");
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+
+            Map<String, List<Map<String, Object>>> rowsMap = new LinkedHashMap<>();
+            for (String column : StudentHistograms.COLUMNS) {
+                rowsMap.put(column, StudentHistograms.toRows(column, histogramMap.get(column)));
+            }
+            JSONObject rawData = new JSONObject(true);
+            rawData.putAll(rowsMap);
+            result.put("step1_source", fromHistogram ? "histogram" : "scan");
+            result.put("step1_raw_data", rawData);
+
+            // 步骤2: JOLT 转换为 ECharts 数据
+            JSONObject charts = new JSONObject(true);
+            charts.put("grade", transform("grade-distribution", rowsMap.get("grade")));
+            charts.put("gender", transform("gender-name-distribution", toGenderNameRows(StudentHistograms.toRows("gender", histogramMap.get("gender")))));
+            charts.put("age", transform("age-distribution", rowsMap.get("age")));
+
+            JSONObject dashboard = new JSONObject(true);
+            dashboard.put("charts", charts);
+            dashboard.put("stats", computeStats(histogramMap));
+            result.put("dashboard", dashboard);
+
+            result.put("success", true);
+            result.put("message", "仪表盘数据聚合成功");
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+
+        return respond(result, "dashboard", mode, response);
+    }
+
+    /**
+     * status = 1 学生分布的 SSE 推送，所有连接共用一次聚合。
+     * 先发 snapshot 事件，之后 Student 变化时按 dataflow.stream.interval-ms 合并，只发变化的桶 delta，
+     * 格式都是 {"grade": [{"grade": "一年级", "count": 3}], "gender": [...], "age": [...]}，delta 中 count 为 0 表示该值已没有学生
+     */
+    @GetMapping("/stream")
+    public ResponseEntity<?> stream() {
+        SseEmitter emitter = dashboardStream.subscribe();
+        if (emitter == null) {
+            JSONObject error = new JSONObject();
+            error.put("success", false);
+            error.put("error", "推送连接数已达上限，请稍后重试");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).contentType(MediaType.APPLICATION_JSON).body(error);
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * 基于 StudentColumns 列式快照的即席查询，不访问数据库，需开启 dataflow.columnar.enabled。
+     * filter、group、agg 的写法见 ColumnarQuery，例如 filter=status=1,age>=10&group=grade&agg=count,avg(age)；
+     * 传 spec 时把结果作为 Student[] 交给对应的 JOLT 规范转换，例如 group=grade&spec=grade-distribution
+     */
+    @GetMapping("/query")
+    public JSONObject getColumnarQueryFlow(@RequestParam(required = false) String filter, @RequestParam(required = false) String group
+            , @RequestParam(required = false) String agg, @RequestParam(required = false) String spec
+            , @RequestParam(required = false) String mode, HttpServletResponse response) throws IOException {
+        JSONObject result = new JSONObject();
+        boolean hasSpec = spec != null && spec.isBlank() == false;
+
+        try {
+            StudentColumns.Snapshot snapshot = columns.getSnapshot();
+            if (snapshot == null) {
+                throw new IllegalStateException(columns.isEnabled() ? "列式快照尚未加载，请稍后重试" : "未开启 dataflow.columnar.enabled");
+            }
+
+            // 步骤1: 在列式快照上过滤、分组、聚合
+            ColumnarQuery query = ColumnarQuery.parse(filter, group, agg);
+            long start = System.nanoTime();
+            List<Map<String, Object>> rawData = query.execute(snapshot, columns.getParallelThreshold());
+            result.put("step1_raw_data", rawData);
+            result.put("step1_elapsed_micros", (System.nanoTime() - start) / 1000);
+            result.put("step1_snapshot_rows", snapshot.size);
+            result.put("step1_snapshot_version", snapshot.version);
+
+            if (hasSpec) {
+                JoltSpecEntry joltSpec = specRegistry.get(spec.trim());
+                if (joltSpec == null) {
+                    throw new IllegalArgumentException("JOLT 规范不存在: " + spec);
+                }
+
+                // 步骤2: 转换为APIJSON扁平化格式
+                JSONObject apijsonFormat = new JSONObject();
+                apijsonFormat.put("Student[]", rawData);
+                result.put("step2_apijson_format", apijsonFormat);
+
+                // 步骤3: JOLT转换
+                result.put("step3_jolt_spec", joltSpec.getSpec());
+                result.put("step3_echarts_data", joltSpec.getChainr().transform(apijsonFormat));
+            }
+
+            result.put("success", true);
+            result.put("message", "列式快照查询成功");
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+
+        return respond(result, hasSpec ? "step3_echarts_data" : "step1_raw_data", mode, response);
+    }
+
+    /**
+     * 近似统计：不同值个数、高频值、平均值和分位数，只读 StudentSketches，不执行 SQL，每项都带误差范围。
+     * column 为空时返回全部列，q 为逗号分隔的分位数，默认 0.5,0.9,0.99，top 为高频值个数，默认 10
+     */
+    @GetMapping("/approx")
+    public JSONObject getApproxStats(@RequestParam(required = false) String column, @RequestParam(required = false) String q
+            , @RequestParam(required = false) Integer top, @RequestParam(required = false) String mode
+            , HttpServletResponse response) throws IOException {
+        JSONObject result = new JSONObject();
+
+        try {
+            if (sketches.isReady() == false) {
+                throw new IllegalStateException("近似统计草图尚未就绪，请稍后重试");
+            }
+
+            String[] items = q == null || q.isBlank() ? new String[]{"0.5", "0.9", "0.99"} : q.split(",");
+            double[] quantiles = new double[items.length];
+            for (int i = 0; i < items.length; i++) {
+                try {
+                    quantiles[i] = Double.parseDouble(items[i].trim());
+                } catch (NumberFormatException e) {
+                    quantiles[i] = Double.NaN;
+                }
+                if ((quantiles[i] >= 0 && quantiles[i] <= 1) == false) {
+                    throw new IllegalArgumentException("分位数必须在 0 ~ 1 之间: " + items[i]);
+                }
+            }
+
+            JSONObject approx = new JSONObject(true);
+            for (String name : column == null || column.isBlank() ? StudentHistograms.COLUMNS : column.split(",")) {
+                approx.put(name.trim(), sketches.query(name.trim(), quantiles, top == null ? 10 : top));
+            }
+            result.put("approx", approx);
+            result.put("success", true);
+            result.put("message", "近似统计查询成功");
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+
+        return respond(result, "approx", mode, response);
+    }
+
+    private Object transform(String specName, List<Map<String, Object>> rows) {
+        JSONObject input = new JSONObject();
+        input.put("Student[]", rows);
+        return specRegistry.get(specName).getChainr().transform(input);
+    }
+
+    /**
+     * 和 SQL 的 COUNT(*)、COUNT(DISTINCT grade)、AVG(age)、SUM(gender = 0) * 100.0 / COUNT(*) 一致，没有数据时为 null
+     */
+    private static JSONObject computeStats(Map<String, Map<Object, Long>> histogramMap) {
+        long total = 0;
+        long grades = 0;
+        for (Map.Entry<Object, Long> entry : histogramMap.get("grade").entrySet()) {
+            total += entry.getValue();
+            if (entry.getKey() != null) {
+                grades++;
+            }
+        }
+
+        long ageSum = 0;
+        long ageCount = 0;
+        for (Map.Entry<Object, Long> entry : histogramMap.get("age").entrySet()) {
+            if (entry.getKey() != null) {
+                ageSum += ((Number) entry.getKey()).longValue() * entry.getValue();
+                ageCount += entry.getValue();
+            }
+        }
+
+        long male = histogramMap.get("gender").getOrDefault(0, 0L);
+
+        JSONObject stats = new JSONObject(true);
+        stats.put("total", total);
+        stats.put("grades", grades);
+        stats.put("avgAge", ageCount <= 0 ? null : (double) ageSum / ageCount);
+        stats.put("maleRatio", total <= 0 ? null : male * 100.0 / total);
+        return stats;
+    }
+
     /**
      * 测试APIJSON格式数据的JOLT转换
      */
     @PostMapping("/test-jolt-transform")
-    public JSONObject testJoltTransform(@RequestBody JSONObject request) {
+    public JSONObject testJoltTransform(@RequestBody JSONObject request, HttpServletResponse response) throws IOException {
         JSONObject result = new JSONObject();
         
         try {
             Object inputData = request.get("data");
             String transformType = request.getString("type");
             
-            List<Object> joltSpec;
+            String specName;
             switch (transformType) {
                 case "grade":
-                    joltSpec = getGradeDistributionSpec();
+                    specName = "grade-distribution";
                     break;
                 case "gender":
-                    joltSpec = getGenderDistributionSpec();
+                    specName = "gender-name-distribution";
                     break;
                 case "age":
-                    joltSpec = getAgeDistributionSpec();
+                    specName = "age-distribution";
                     break;
                 default:
                     throw new IllegalArgumentException("不支持的转换类型: " + transformType);
             }
             
-            Chainr chainr = Chainr.fromSpec(joltSpec);
-            Object output = chainr.transform(inputData);
+            JoltSpecEntry joltSpec = specRegistry.get(specName);
+            Object output = joltSpec.getChainr().transform(inputData);
             
             result.put("success", true);
             result.put("input", inputData);
-            result.put("jolt_spec", joltSpec);
+            result.put("jolt_spec", joltSpec.getSpec());
             result.put("output", output);
             result.put("transform_type", transformType);
             
@@ -223,85 +551,50 @@ public class DataFlowDemoController {
             result.put("error", e.getMessage());
         }
         
-        return result;
+        return respond(result, "output", request.getString("mode"), response);
     }
 
-    // JOLT转换规格定义
-    private List<Object> getGradeDistributionSpec() {
-        return JsonUtils.jsonToList(
-            "[{" +
-                "\"operation\": \"shift\"," +
-                "\"spec\": {" +
-                    "\"Student\\\\[\\\\]\": {" +
-                        "\"*\": {" +
-                            "\"grade\": \"categories[]\"," +
-                            "\"count\": \"values[]\"" +
-                        "}" +
-                    "}" +
-                "}" +
-            "}]"
-        );
-    }
-    
-    private List<Object> getGenderDistributionSpec() {
-        return JsonUtils.jsonToList(
-            "[{" +
-                "\"operation\": \"shift\"," +
-                "\"spec\": {" +
-                    "\"Student\\\\[\\\\]\": {" +
-                        "\"*\": {" +
-                            "\"gender\": \"[&1].name\"," +
-                            "\"count\": \"[&1].value\"" +
-                        "}" +
-                    "}" +
-                "}" +
-            "}]"
-        );
-    }
-    
-    private List<Object> getAgeDistributionSpec() {
-        return JsonUtils.jsonToList(
-            "[{" +
-                "\"operation\": \"shift\"," +
-                "\"spec\": {" +
-                    "\"Student\\\\[\\\\]\": {" +
-                        "\"*\": {" +
-                            "\"age\": \"categories[]\"," +
-                            "\"count\": \"values[]\"" +
-                        "}" +
-                    "}" +
-                "}" +
-            "}]"
-        );
+    /**
+     * 和 SQL 中 CASE gender WHEN 0 THEN '男' WHEN 1 THEN '女' ELSE '未知' END 一致
+     */
+    private static List<Map<String, Object>> toGenderNameRows(List<Map<String, Object>> rows) {
+        for (Map<String, Object> row : rows) {
+            Object gender = row.get("gender");
+            row.put("gender", gender instanceof Number && ((Number) gender).intValue() == 0 ? "男"
+                : (gender instanceof Number && ((Number) gender).intValue() == 1 ? "女" : "未知"));
+        }
+        return rows;
     }
 
-    // ECharts配置生成方法
-    private JSONObject generateBarChartConfig(Object data, String title) {
-        JSONObject config = JSON.parseObject("{}");
-        config.put("title", JSON.parseObject("{\"text\":\"" + title + "\"}"));
-        config.put("tooltip", JSON.parseObject("{}"));
-        config.put("xAxis", JSON.parseObject("{\"type\":\"category\",\"data\":" + JSON.toJSONString(((JSONObject)data).get("categories")) + "}"));
-        config.put("yAxis", JSON.parseObject("{\"type\":\"value\"}"));
-        config.put("series", JSON.parseArray("[{\"type\":\"bar\",\"data\":" + JSON.toJSONString(((JSONObject)data).get("values")) + "}]"));
-        return config;
-    }
+    /**按 mode 裁剪响应
+     * @param result 包含全部中间数据的结果
+     * @param outputKey 最终结果在 result 中的 key
+     * @return raw 模式成功时已直接写入 response，返回 null
+     */
+    private JSONObject respond(JSONObject result, String outputKey, String mode, HttpServletResponse response) throws IOException {
+        JoltResponseMode responseMode;
+        try {
+            responseMode = JoltResponseMode.of(mode, defaultMode);
+        } catch (IllegalArgumentException e) {
+            JSONObject error = new JSONObject();
+            error.put("success", false);
+            error.put("error", e.getMessage());
+            return error;
+        }
 
-    private JSONObject generatePieChartConfig(Object data, String title) {
-        JSONObject config = JSON.parseObject("{}");
-        config.put("title", JSON.parseObject("{\"text\":\"" + title + "\",\"left\":\"center\"}"));
-        config.put("tooltip", JSON.parseObject("{\"trigger\":\"item\"}"));
-        config.put("series", JSON.parseArray("[{\"type\":\"pie\",\"radius\":\"50%\",\"data\":" + JSON.toJSONString(data) + "}]"));
-        return config;
-    }
+        // 失败时总是返回错误信息
+        if (responseMode == JoltResponseMode.FULL || result.getBooleanValue("success") == false) {
+            return result;
+        }
+        if (responseMode == JoltResponseMode.RAW) {
+            JoltResponseMode.writeRaw(response, result.get(outputKey));
+            return null;
+        }
 
-    private JSONObject generateLineChartConfig(Object data, String title) {
-        JSONObject config = JSON.parseObject("{}");
-        config.put("title", JSON.parseObject("{\"text\":\"" + title + "\"}"));
-        config.put("tooltip", JSON.parseObject("{\"trigger\":\"axis\"}"));
-        config.put("xAxis", JSON.parseObject("{\"type\":\"category\",\"data\":" + JSON.toJSONString(((JSONObject)data).get("categories")) + "}"));
-        config.put("yAxis", JSON.parseObject("{\"type\":\"value\"}"));
-        config.put("series", JSON.parseArray("[{\"type\":\"line\",\"data\":" + JSON.toJSONString(((JSONObject)data).get("values")) + "}]"));
-        return config;
+        JSONObject lean = new JSONObject();
+        lean.put("success", true);
+        lean.put(outputKey, result.get(outputKey));
+        return lean;
     }
 
     /**
@@ -312,24 +605,35 @@ public class DataFlowDemoController {
         JSONObject status = new JSONObject();
         
         try {
-            // 检查数据库连接
-            Integer studentCount = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Student", Integer.class);
-            Integer parentCount = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Parent", Integer.class);
-            
+            // 行数和数据库连接状态来自 TableStatistics 的后台刷新，不在请求中执行 COUNT(*)
             status.put("success", true);
-            status.put("database_connected", true);
-            status.put("student_count", studentCount);
-            status.put("parent_count", parentCount);
+            status.put("database_connected", tableStatistics.isConnected());
+            status.put("student_count", tableStatistics.getRowCount("Student"));
+            status.put("parent_count", tableStatistics.getRowCount("Parent"));
             status.put("dataflow_available", true);
             status.put("jolt_transform_available", true);
             status.put("echarts_config_available", true);
+            status.put("aggregate_cache", aggregateCache.getStats());
+            status.put("histograms", histograms.getStats());
+            status.put("stream", dashboardStream.getStats());
+            status.put("trend", trends.getStats());
+            status.put("dashboard_executor", dashboardExecutor.getStats());
+            status.put("columnar", columns.getStats());
+            status.put("approx", sketches.getStats());
+            status.put("table_stats", tableStatistics.getStats());
             status.put("message", "数据流演示系统正常运行");
             status.put("available_endpoints", new String[]{
                 "/dataflow/grade-distribution",
                 "/dataflow/gender-distribution", 
                 "/dataflow/age-distribution",
+                "/dataflow/enrollment-trend",
+                "/dataflow/dashboard",
+                "/dataflow/stream",
+                "/dataflow/query",
+                "/dataflow/approx",
                 "/dataflow/test-jolt-transform",
-                "/dataflow/status"
+                "/dataflow/status",
+                "/infra/status"
             });
             
         } catch (Exception e) {
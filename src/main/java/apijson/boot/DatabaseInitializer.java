@@ -4,6 +4,10 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import apijson.boot.jolt.JoltSpecRegistry;
+
+import java.util.Map;
+
 /**
  * 数据库初始化器 - 在应用启动时自动创建表和数据
  */
@@ -27,6 +31,9 @@ public class DatabaseInitializer implements CommandLineRunner {
             // 创建家长表
             createParentTable();
             
+            // 创建趋势汇总表
+            createStudentDailyTable();
+            
             // 创建APIJSON配置表
             createApijsonTables();
             
@@ -65,6 +72,19 @@ public class DatabaseInitializer implements CommandLineRunner {
         System.out.println("✓ Student表创建成功");
     }
     
+    private void createStudentDailyTable() {
+        // 由 StudentTrends 回填和增量维护，趋势查询只读这张表
+        String sql = """
+            CREATE TABLE IF NOT EXISTS StudentDaily (
+                stat_date DATE PRIMARY KEY,
+                enrolled INT DEFAULT 0 NOT NULL,
+                churned INT DEFAULT 0 NOT NULL
+            )
+            """;
+        jdbcTemplate.execute(sql);
+        System.out.println("✓ StudentDaily表创建成功");
+    }
+    
     private void createParentTable() {
         String sql = """
             CREATE TABLE IF NOT EXISTS Parent (
@@ -122,6 +142,21 @@ public class DatabaseInitializer implements CommandLineRunner {
             )
             """;
         jdbcTemplate.execute(requestSql);
+
+        // JOLT spec 表，结构参考 Request 表，按 name + version 管理
+        String joltSpecSql = """
+            CREATE TABLE IF NOT EXISTS JoltSpec (
+                id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                debug TINYINT DEFAULT 0 NOT NULL,
+                name VARCHAR(50) NOT NULL,
+                version INT DEFAULT 1 NOT NULL,
+                spec TEXT NOT NULL,
+                detail TEXT,
+                date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                UNIQUE KEY uk_name_version (name, version)
+            )
+            """;
+        jdbcTemplate.execute(joltSpecSql);
         System.out.println("✓ APIJSON配置表创建成功");
     }
     
@@ -178,5 +213,16 @@ public class DatabaseInitializer implements CommandLineRunner {
             jdbcTemplate.execute(sql);
         }
         System.out.println("✓ APIJSON权限配置强制更新完成");
+
+        // 写入内置 JOLT spec，已存在的同名同版本不覆盖，方便在表里修改后 reload
+        for (Map.Entry<String, String> entry : JoltSpecRegistry.BUILTIN_SPEC_MAP.entrySet()) {
+            Integer joltSpecCount = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM JoltSpec WHERE name = ? AND version = 1", Integer.class, entry.getKey());
+            if (joltSpecCount == null || joltSpecCount <= 0) {
+                jdbcTemplate.update("INSERT INTO JoltSpec (name, version, spec, detail) VALUES (?, 1, ?, '内置图表转换规则')",
+                    entry.getKey(), entry.getValue());
+            }
+        }
+        System.out.println("✓ JOLT spec 内置配置写入完成");
     }
 }
\ No newline at end of file
@@ -78,6 +78,9 @@ public class DemoApplication implements WebServerFactoryCustomizer<ConfigurableS
     return APPLICATION_CONTEXT;
   }
 
+  // 启动后取一次，每个请求创建 DemoSQLExecutor 时传入
+  private static DemoSQLExecutorServices SQL_EXECUTOR_SERVICES;
+
   public static void main(String[] args) throws Exception {
     // 设置系统属性避免文件创建问题
     System.setProperty("java.io.tmpdir", "./data");
@@ -89,6 +92,7 @@ public class DemoApplication implements WebServerFactoryCustomizer<ConfigurableS
 
     try {
       APPLICATION_CONTEXT = SpringApplication.run(DemoApplication.class, args);
+      SQL_EXECUTOR_SERVICES = APPLICATION_CONTEXT.getBean(DemoSQLExecutorServices.class);
       System.out.println("🚀 APIJSON应用启动成功!");
       System.out.println("📊 访问数据管理: http://localhost:8080/student-parent-demo.html");
       System.out.println("📈 访问图表页面: http://localhost:8080/charts.html");
@@ -207,7 +211,7 @@ public class DemoApplication implements WebServerFactoryCustomizer<ConfigurableS
 
       @Override
       public SQLExecutor createSQLExecutor() {
-        return new DemoSQLExecutor();
+        return new DemoSQLExecutor(SQL_EXECUTOR_SERVICES);
       }
 
     };
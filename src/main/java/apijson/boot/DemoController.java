@@ -43,6 +43,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
 
 import jakarta.servlet.http.HttpServletRequest;
@@ -53,6 +54,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -75,6 +77,9 @@ import apijson.StringUtil;
 import apijson.boot.DemoFunctionParser;
 import apijson.boot.DemoParser;
 import apijson.boot.DemoVerifier;
+import apijson.boot.jolt.JoltExecutor;
+import apijson.boot.jolt.JoltRequestLimiter;
+import apijson.boot.jolt.JoltSpecRegistry;
 import apijson.boot.model.Privacy;
 import apijson.boot.model.User;
 import apijson.boot.model.Verify;
@@ -355,6 +360,83 @@ public class DemoController extends APIJSONController<Long> {
 
 
 
+	/**查询并转换为图表数据
+	 * 在服务端执行 APIJSON GET 请求，用 JoltSpec 表中的命名 spec 直接转换内存中的查询结果，只返回转换后的数据，
+	 * 省去浏览器先 /get 再把完整结果 POST 到 /jolt/{name} 的往返和重复序列化。
+	 * 转换和 /jolt/transform 一样在 JoltExecutor 中执行，线程池已满返回 429，超过时间预算返回 503，查询结果超出 jolt.limit.* 返回 413
+	 * @param request 只用String，避免encode后未decode
+	 * @param session
+	 * @return
+	 * <pre>
+		{
+			"name": "grade-distribution",  // JoltSpec 表中的 spec 名称
+			"version": 1,  // 非必须，默认最新版本
+			"timeout": 2000,  // 非必须，转换的时间预算（毫秒），默认和最大值为 jolt.transform.timeout-ms
+			"request": {  // APIJSON GET 请求
+				"Student[]": {
+					"Student": {
+						"@column": "grade,count(*):count",
+						"@group": "grade",
+						"@order": "grade+"
+					}
+				}
+			}
+		}
+	 * </pre>
+	 */
+	@PostMapping("jolt/query")
+	public JSONObject joltQuery(@RequestBody String request, HttpSession session) {
+		JSONObject requestObject = null;
+		JoltSpecRegistry.JoltSpecEntry entry;
+		JSONObject query;
+		try {
+			requestObject = DemoParser.parseRequest(request);
+			String name = requestObject.getString(NAME);
+			Integer version = requestObject.getInteger(VERSION);
+			query = requestObject.getJSONObject("request");
+			if (StringUtil.isEmpty(name, true) || query == null) {
+				throw new IllegalArgumentException("name 和 request 都不能为空！");
+			}
+
+			entry = version == null ? joltSpecRegistry.get(name) : joltSpecRegistry.get(name, version);
+			if (entry == null) {
+				throw new NotExistException("未找到 JOLT spec: " + name + (version == null ? "" : "@" + version));
+			}
+		} catch (Exception e) {
+			return DemoParser.extendErrorResult(requestObject, e);
+		}
+
+		JSONObject response = new DemoParser(GET).setSession(session).parseResponse(query);
+		if (JSONResponse.isSuccess(response) == false) {
+			return response;
+		}
+
+		String limitError = joltRequestLimiter.check("查询结果", response);
+		if (limitError != null) {
+			httpServletResponse.setStatus(HttpStatus.PAYLOAD_TOO_LARGE.value());
+			return DemoParser.extendErrorResult(requestObject, new IllegalArgumentException(limitError));
+		}
+
+		long timeout = requestObject.getLongValue("timeout");
+		try {
+			JSONObject result = DemoParser.newSuccessResult();
+			result.put(TYPE, entry.getName());
+			result.put(VERSION, entry.getVersion());
+			result.put("data", joltExecutor.transform(entry.getChainr(), response, timeout));
+			return result;
+		} catch (RejectedExecutionException e) {
+			httpServletResponse.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+			return DemoParser.extendErrorResult(requestObject, new RejectedExecutionException("转换线程池已满，请稍后重试"));
+		} catch (TimeoutException e) {
+			httpServletResponse.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+			return DemoParser.extendErrorResult(requestObject, new TimeoutException("转换超过时间预算 " + joltExecutor.getTimeoutMillis(timeout) + " ms"));
+		} catch (Exception e) {
+			return DemoParser.extendErrorResult(requestObject, e);
+		}
+	}
+
+
+
 
 
 
@@ -387,13 +469,20 @@ public class DemoController extends APIJSONController<Long> {
 
 
 
+	@Autowired
+	JoltSpecRegistry joltSpecRegistry;
+	@Autowired
+	JoltExecutor joltExecutor;
+	@Autowired
+	JoltRequestLimiter joltRequestLimiter;
+
 	/**重新加载配置
 	 * @param request
 	 * @return
 	 * @see
 	 * <pre>
 		{
-			"type": "ALL",  //重载对象，ALL, FUNCTION, REQUEST, ACCESS，非必须
+			"type": "ALL",  //重载对象，ALL, FUNCTION, REQUEST, ACCESS, JOLT，非必须
 			"phone": "13000082001",
 			"verify": "1234567", //验证码，对应类型为 Verify.TYPE_RELOAD
 			"value": {  // 自定义增量更新条件
@@ -457,6 +546,15 @@ public class DemoController extends APIJSONController<Long> {
 			}
 		}
 
+		if (reloadAll || "JOLT".equals(type)) {
+			try {  // 构建好新快照后原子替换，转换请求不需要加锁
+				result.put(JoltSpecRegistry.TABLE, joltSpecRegistry.reload(value));
+			} catch (Exception e) {
+				e.printStackTrace();
+				result.put(JoltSpecRegistry.TABLE, DemoParser.newErrorResult(e));
+			}
+		}
+
 		return result;
 	}
 
@@ -15,12 +15,34 @@ limitations under the License.*/
 package apijson.boot;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
-import javax.sql.DataSource;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.alibaba.fastjson.JSONObject;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
 
 import apijson.Log;
+import apijson.RequestMethod;
 import apijson.boot.DemoApplication;
 import apijson.framework.APIJSONSQLExecutor;
+import apijson.orm.Join;
 import apijson.orm.SQLConfig;
 
 
@@ -31,36 +53,122 @@ import apijson.orm.SQLConfig;
 public class DemoSQLExecutor extends APIJSONSQLExecutor<Long> {
 	public static final String TAG = "DemoSQLExecutor";
 
-	//  可重写以下方法，支持 Redis 等单机全局缓存或分布式缓存
-	//	@Override
-	//	public List<JSONObject> getCache(String sql, int type) {
-	//		return super.getCache(sql, type);
-	//	}
-	//	@Override
-	//	public synchronized void putCache(String sql, List<JSONObject> list, int type) {
-	//		super.putCache(sql, list, type);
-	//	}
-	//	@Override
-	//	public synchronized void removeCache(String sql, int type) {
-	//		super.removeCache(sql, type);
-	//	}
+	private final DemoSQLExecutorServices services;
+
+	public DemoSQLExecutor(DemoSQLExecutorServices services) {
+		this.services = services;
+	}
+
+	/**
+	 * 本次请求写过的表，关闭时（事务已提交或回滚）再递增一次版本，避免提交前读到旧数据的缓存被当成新版本
+	 */
+	private final Set<String> writtenTables = new LinkedHashSet<>();
+
+	/**
+	 * 本次请求 Student 写入前后的行镜像，提交后才应用到 StudentHistograms 和 StudentTrends，回滚则丢弃
+	 */
+	private final List<RowImages> pendingImages = new ArrayList<>();
+	private boolean needReconcile;
+
+	/**
+	 * 本次请求各表 POST、DELETE 影响的行数，提交后才累加到 TableStatistics，回滚则丢弃
+	 */
+	private final Map<String, Long> pendingRowDeltas = new LinkedHashMap<>();
+
+	/**
+	 * 本次请求未命中 QueryCache 的查询，key -> 查询前记录的表和版本，putCache 时放入 QueryCache
+	 */
+	private final Map<String, QueryCache.Pending> pendingQueryMap = new HashMap<>();
+
+	/**
+	 * 只缓存查询，本次请求已有写入时可能读到未提交的数据，不使用跨请求缓存
+	 */
+	private boolean isQueryCacheable(SQLConfig config) {
+		RequestMethod method = config == null ? null : config.getMethod();
+		return method != null && RequestMethod.isQueryMethod(method) && config.isExplain() == false
+				&& writtenTables.isEmpty() && services.getQueryCache().isEnabled();
+	}
 
-	// 适配连接池，如果这里能拿到连接池的有效 Connection，则 SQLConfig 不需要配置 dbVersion, dbUri, dbAccount, dbPassword
+	// 先查本次请求内的缓存，再查本节点的近端缓存 QueryCache，最后查多节点共享的 RemoteQueryCache，
+	// 写入表时两层中读取过该表的结果都立即失效，远程层同时通知其它节点
+	@Override
+	public List<JSONObject> getCache(String sql, SQLConfig config) {
+		List<JSONObject> list = super.getCache(sql, config);
+		if (list != null || isQueryCacheable(config) == false) {
+			return list;
+		}
+
+		String key = QueryCache.keyOf(config.getDatasource(), config.getDatabase(), sql, config.getPreparedValueList());
+		list = services.getQueryCache().get(key);
+		if (list != null) {
+			return list;
+		}
+
+		QueryCache.Pending pending = QueryCache.pending(sql, config.getTable());
+		list = services.getRemoteCache().get(key, pending);
+		if (list != null) {
+			services.getQueryCache().put(key, pending, list);
+		} else {
+			pendingQueryMap.put(key, pending);
+		}
+		return list;
+	}
+
+	@Override
+	public synchronized void putCache(String sql, List<JSONObject> list, SQLConfig config) {
+		super.putCache(sql, list, config);
+		if (list == null || isQueryCacheable(config) == false) {
+			return;
+		}
+
+		String key = QueryCache.keyOf(config.getDatasource(), config.getDatabase(), sql, config.getPreparedValueList());
+		QueryCache.Pending pending = pendingQueryMap.remove(key);
+		// 从还没复制到最近写入的副本读到的结果，放入缓存会在写入后继续返回旧值
+		ConnectionPools.Lease lease = leaseMap.get(config.getDatasource() + "-" + config.getDatabase());
+		if (pending != null && (lease == null || services.getRouter().isCaughtUp(lease.getPoolName()))) {
+			services.getQueryCache().put(key, pending, list);
+			services.getRemoteCache().put(key, pending, list);
+		}
+	}
+
+	@Override
+	public synchronized void removeCache(String sql, SQLConfig config) {
+		super.removeCache(sql, config);
+		if (config != null) {
+			String key = QueryCache.keyOf(config.getDatasource(), config.getDatabase(), sql, config.getPreparedValueList());
+			pendingQueryMap.remove(key);
+			services.getQueryCache().remove(key);
+			services.getRemoteCache().remove(key);
+		}
+	}
+
+	/**
+	 * 本次请求从连接池租借的连接，key 和 connectionMap 相同，close 时归还
+	 */
+	private final Map<String, ConnectionPools.Lease> leaseMap = new LinkedHashMap<>();
+
+	// 每个请求（DemoSQLExecutor 实例）按 @datasource 从对应的 HikariCP 连接池租借自己的连接，不和其它请求共用，
+	// 事务提交或回滚后在 close 中归还，所以 SQLConfig 不需要配置 dbVersion, dbUri, dbAccount, dbPassword。
+	// 默认数据源的查询由 ReplicaRouter 选择只读副本，同一请求中之后有写入时改用主库连接
 	@Override
 	public Connection getConnection(SQLConfig config) throws Exception {
-		Log.d(TAG, "getConnection  config.getDatasource() = " + config.getDatasource());
 		String connectionKey = config.getDatasource() + "-" + config.getDatabase();
 		Connection c = connectionMap.get(connectionKey);
-		if (c == null || c.isClosed()) {
-			try {
-				DataSource ds = DemoApplication.getApplicationContext().getBean(DataSource.class);
-				// 另一种方式是 DruidConfig 初始化获取到 Datasource 后给静态变量 DATA_SOURCE 赋值： ds = DruidConfig.DATA_SOURCE.getConnection();
-				connectionMap.put(connectionKey, ds == null ? null : ds.getConnection());
-			} catch (Exception e) {
-				Log.e(TAG, "getConnection   try { "
-						+ "DataSource ds = DemoApplication.getApplicationContext().getBean(DataSource.class); .."
-						+ "} catch (Exception e) = " + e.getMessage());
+		ConnectionPools.Lease current = leaseMap.get(connectionKey);
+		boolean readable = isReplicaReadable(config);
+		boolean onReplica = current != null && services.getRouter().isReplica(current.getPoolName());
+		if (c == null || c.isClosed() || (onReplica && readable == false)) {
+			ConnectionPools.Lease previous = leaseMap.remove(connectionKey);
+			if (previous != null) {
+				previous.release();
 			}
+
+			ConnectionPools.Lease lease = readable ? leaseReplica() : null;
+			if (lease == null) {
+				lease = services.getPools().lease(config.getDatasource());
+			}
+			leaseMap.put(connectionKey, lease);
+			connectionMap.put(connectionKey, lease.getConnection());
 		}
 
 		// 必须最后执行 super 方法，因为里面还有事务相关处理。
@@ -68,6 +176,295 @@ public class DemoSQLExecutor extends APIJSONSQLExecutor<Long> {
 		return super.getConnection(config);
 	}
 
+	/**
+	 * 默认数据源的查询，且本次请求还没有写入
+	 */
+	private boolean isReplicaReadable(SQLConfig config) {
+		RequestMethod method = config.getMethod();
+		String datasource = config.getDatasource();
+		return (datasource == null || datasource.isEmpty()) && method != null && RequestMethod.isQueryMethod(method)
+				&& writtenTables.isEmpty() && services.getRouter().isEnabled();
+	}
+
+	/**
+	 * @return 没有可用副本或租借失败时为 null，由调用方回退主库
+	 */
+	private ConnectionPools.Lease leaseReplica() {
+		ReplicaRouter router = services.getRouter();
+		String name = router.route(getSessionKey());
+		if (name == null) {
+			return null;
+		}
+		try {
+			return services.getPools().lease(name);
+		} catch (SQLException e) {
+			router.markFailed(name, e);
+			return null;
+		}
+	}
+
+	/**
+	 * 读己之写按会话区分，没有会话时按客户端地址
+	 */
+	private static String getSessionKey() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes instanceof ServletRequestAttributes == false) {
+			return null;
+		}
+		HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+		HttpSession session = request.getSession(false);
+		return session != null ? session.getId() : request.getRemoteAddr();
+	}
+
+	// POST/PUT/DELETE 后递增表版本，使 AggregateCache 等读缓存失效；Student 还要记录写入前后的行镜像，用于增量更新 StudentHistograms
+	@Override
+	public JSONObject execute(SQLConfig config, boolean unknownType) throws Exception {
+		RequestMethod method = config.getMethod();
+		boolean isWrite = method != null && RequestMethod.isQueryMethod(method) == false;
+		boolean isStudent = isWrite && StudentHistograms.TABLE.equalsIgnoreCase(config.getTable());
+
+		// 非事务模式下写入在 super.execute 中就已提交，从这里到应用行镜像都要持有提交锁，见 StudentHistograms.commitLock
+		Lock commitLock = isStudent && getConnection(config).getAutoCommit() ? services.getHistograms().getCommitLock() : null;
+		if (commitLock == null) {
+			return executeAndRecord(config, unknownType, method, isWrite, isStudent);
+		}
+
+		commitLock.lock();
+		try {
+			JSONObject result = executeAndRecord(config, unknownType, method, isWrite, isStudent);
+			applyPendingImages();
+			return result;
+		} finally {
+			commitLock.unlock();
+		}
+	}
+
+	private JSONObject executeAndRecord(SQLConfig config, boolean unknownType, RequestMethod method, boolean isWrite, boolean isStudent) throws Exception {
+		List<Object> ids = isStudent ? getIds(config) : null;
+		// 写入前的行镜像加行锁，并发修改同一行时后者等前者提交后再读，不会两次减去同一个旧值
+		List<Map<String, Object>> before = ids == null || method == RequestMethod.POST ? null : queryStudentImage(config, ids, true);
+
+		JSONObject result = super.execute(config, unknownType);
+
+		if (isWrite) {
+			String table = config.getTable();
+			writtenTables.add(table);
+			TableVersions.increment(table);
+			services.getQueryCache().invalidate(table);
+			services.getRemoteCache().invalidate(table);
+			services.getRouter().markWrite(getSessionKey());
+
+			int count = method == RequestMethod.PUT || result == null ? 0 : result.getIntValue("count");
+			if (count > 0) {
+				pendingRowDeltas.merge(table, method == RequestMethod.POST ? (long) count : -count, Long::sum);
+			}
+		}
+
+		if (isStudent) {
+			if (method == RequestMethod.POST && ids == null) {
+				ids = getIds(result);
+			}
+
+			if (ids == null) {  // 按其它条件批量修改，拿不到受影响的行
+				needReconcile = true;
+			} else {
+				pendingImages.add(new RowImages(before, method == RequestMethod.DELETE ? null : queryStudentImage(config, ids, false)));
+			}
+		}
+		return result;
+	}
+
+	private static List<Object> getIds(SQLConfig config) {
+		Object id = config.getId();
+		if (id != null) {
+			return List.of(id);
+		}
+		Object idIn = config.getIdIn();
+		return idIn instanceof Collection ? new ArrayList<>((Collection<?>) idIn) : null;
+	}
+
+	private static List<Object> getIds(JSONObject result) {
+		Object id = result == null ? null : result.get("id");
+		if (id != null) {
+			return List.of(id);
+		}
+		Object idIn = result == null ? null : result.get("id[]");
+		return idIn instanceof Collection ? new ArrayList<>((Collection<?>) idIn) : null;
+	}
+
+	/**用当前请求的连接查询，事务中也能读到本次写入的结果
+	 * @param forUpdate 写入前的镜像用 SELECT ... FOR UPDATE 锁定这些行直到事务结束
+	 */
+	private List<Map<String, Object>> queryStudentImage(SQLConfig config, List<Object> ids, boolean forUpdate) throws Exception {
+		List<Map<String, Object>> rows = new ArrayList<>();
+		if (ids.isEmpty()) {
+			return rows;
+		}
+
+		StringBuilder sql = new StringBuilder("SELECT " + StudentHistograms.IMAGE_COLUMNS + " FROM " + StudentHistograms.TABLE + " WHERE id IN (");
+		for (int i = 0; i < ids.size(); i++) {
+			sql.append(i <= 0 ? "?" : ",?");
+		}
+		sql.append(forUpdate ? ") FOR UPDATE" : ")");
+
+		try (PreparedStatement statement = getConnection(config).prepareStatement(sql.toString())) {
+			for (int i = 0; i < ids.size(); i++) {
+				statement.setObject(i + 1, ids.get(i));
+			}
+			try (ResultSet rs = statement.executeQuery()) {
+				ResultSetMetaData rsmd = rs.getMetaData();
+				while (rs.next()) {
+					Map<String, Object> row = new LinkedHashMap<>();
+					for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+						row.put(rsmd.getColumnLabel(i).toLowerCase(), rs.getObject(i));
+					}
+					rows.add(row);
+				}
+			}
+		}
+		return rows;
+	}
+
+	// 有 Student 行镜像时从提交到应用完成都持有 StudentHistograms 的提交锁，对账扫描据此判断哪些写入需要重放
+	@Override
+	public void commit() throws SQLException {
+		Lock commitLock = pendingImages.isEmpty() ? null : services.getHistograms().getCommitLock();
+		if (commitLock != null) {
+			commitLock.lock();
+		}
+		try {
+			super.commit();
+			applyPendingImages();
+		} finally {
+			if (commitLock != null) {
+				commitLock.unlock();
+			}
+		}
+		applyRowDeltas();
+	}
+
+	@Override
+	public void rollback() throws SQLException {
+		pendingImages.clear();
+		needReconcile = false;
+		pendingRowDeltas.clear();
+		super.rollback();
+	}
+
+	private void applyPendingImages() {
+		if (pendingImages.isEmpty() && needReconcile == false) {
+			return;
+		}
+
+		try {
+			StudentHistograms histograms = services.getHistograms();
+			StudentTrends trends = services.getTrends();
+			StudentSketches sketches = services.getSketches();
+			for (RowImages images : pendingImages) {
+				histograms.apply(images.before, images.after);
+				trends.apply(images.before, images.after);
+				sketches.apply(images.before, images.after);
+			}
+			if (needReconcile) {
+				histograms.requestReconcile();
+				sketches.requestRebuild();
+			}
+		} catch (Exception e) {
+			Log.e(TAG, "applyPendingImages  catch (Exception e) = " + e.getMessage());
+		} finally {
+			pendingImages.clear();
+			needReconcile = false;
+		}
+	}
+
+	/**
+	 * 一次写入前后的行镜像，POST 没有 before，DELETE 没有 after
+	 */
+	private static final class RowImages {
+		final List<Map<String, Object>> before;
+		final List<Map<String, Object>> after;
+
+		RowImages(List<Map<String, Object>> before, List<Map<String, Object>> after) {
+			this.before = before;
+			this.after = after;
+		}
+	}
+
+	private void applyRowDeltas() {
+		if (pendingRowDeltas.isEmpty()) {
+			return;
+		}
+
+		try {
+			TableStatistics statistics = services.getStatistics();
+			for (Map.Entry<String, Long> entry : pendingRowDeltas.entrySet()) {
+				statistics.addRows(entry.getKey(), entry.getValue());
+			}
+		} catch (Exception e) {
+			Log.e(TAG, "applyRowDeltas  catch (Exception e) = " + e.getMessage());
+		} finally {
+			pendingRowDeltas.clear();
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			super.close();
+		} finally {
+			// super.close 已关闭 connectionMap 中的连接，这里只记录持有时间；super.close 异常时也保证归还
+			for (ConnectionPools.Lease lease : leaseMap.values()) {
+				lease.release();
+			}
+			leaseMap.clear();
+			rowMapper = null;
+			rowMapperResultSet = null;
+
+			// 非事务模式下不会调用 commit，写入已自动提交
+			applyPendingImages();
+			applyRowDeltas();
+			for (String table : writtenTables) {
+				TableVersions.increment(table);
+				services.getQueryCache().invalidate(table);
+				services.getRemoteCache().invalidate(table);
+			}
+			if (writtenTables.isEmpty() == false) {  // 提交后再记录一次，读己之写从提交时间算起
+				services.getRouter().markWrite(getSessionKey());
+			}
+			writtenTables.clear();
+		}
+	}
+
+
+	/**
+	 * 当前 ResultSet 的映射器，以及已整行映射的行号
+	 */
+	private JsonRowMapper rowMapper;
+	private ResultSet rowMapperResultSet;
+	private int mappedRow = -1;
+
+	// 单表查询每行第一次调用时用按形状缓存的 JsonRowMapper 整行映射，之后的列直接返回，不再逐列解析列名、判断隐藏和类型。
+	// JOIN、有 key 映射（函数、别名表达式）的查询仍走逐列处理；启用下方 getKey、isHideColumn 的重写时也需要去掉这里
+	@Override
+	protected JSONObject onPutColumn(SQLConfig config, ResultSet rs, ResultSetMetaData rsmd, int row, JSONObject table
+			, int columnIndex, Join join, Map<String, JSONObject> childMap, Map<String, String> keyMap) throws Exception {
+		List<Join> joinList = config.getJoinList();
+		if (table == null || join != null || (keyMap != null && keyMap.isEmpty() == false)
+				|| (joinList != null && joinList.isEmpty() == false)) {
+			return super.onPutColumn(config, rs, rsmd, row, table, columnIndex, join, childMap, keyMap);
+		}
+
+		if (rs != rowMapperResultSet) {
+			rowMapper = JsonRowMapper.of(config.getTable(), config.getColumn(), config.getJson(), rsmd);
+			rowMapperResultSet = rs;
+			mappedRow = -1;
+		}
+		if (mappedRow != row) {
+			rowMapper.map(rs, table);
+			mappedRow = row;
+		}
+		return table;
+	}
 
 	// 取消注释支持 !key 反选字段 和 字段名映射，需要先依赖插件 https://github.com/APIJSON/apijson-column
 	//	@Override
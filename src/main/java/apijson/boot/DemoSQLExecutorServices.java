@@ -0,0 +1,64 @@
+package apijson.boot;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * DemoSQLExecutor 用到的单例，由 Spring 注入后在 DemoApplication.createSQLExecutor 中传给每个请求的 DemoSQLExecutor，
+ * 请求中不再访问 ApplicationContext
+ */
+@Component
+public class DemoSQLExecutorServices {
+
+    private final QueryCache queryCache;
+    private final RemoteQueryCache remoteCache;
+    private final ConnectionPools pools;
+    private final ReplicaRouter router;
+    private final StudentHistograms histograms;
+    private final StudentTrends trends;
+    private final StudentSketches sketches;
+    private final TableStatistics statistics;
+
+    public DemoSQLExecutorServices(QueryCache queryCache, RemoteQueryCache remoteCache, ConnectionPools pools, ReplicaRouter router
+            , StudentHistograms histograms, StudentTrends trends, StudentSketches sketches, TableStatistics statistics) {
+        this.queryCache = queryCache;
+        this.remoteCache = remoteCache;
+        this.pools = pools;
+        this.router = router;
+        this.histograms = histograms;
+        this.trends = trends;
+        this.sketches = sketches;
+        this.statistics = statistics;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    public RemoteQueryCache getRemoteCache() {
+        return remoteCache;
+    }
+
+    public ConnectionPools getPools() {
+        return pools;
+    }
+
+    public ReplicaRouter getRouter() {
+        return router;
+    }
+
+    public StudentHistograms getHistograms() {
+        return histograms;
+    }
+
+    public StudentTrends getTrends() {
+        return trends;
+    }
+
+    public StudentSketches getSketches() {
+        return sketches;
+    }
+
+    public TableStatistics getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,474 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.serializer.JSONSerializable;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ECharts option 构建器，取代拼接 JSON 字符串再解析的写法
+ * 固定部分（tooltip、坐标轴类型、series.type 等）按模板预先编码，数据部分在序列化时直接写入 fastjson 或 Jackson 的输出流，
+ * 不生成中间字符串或 JSONObject，大数据量的 series 也只遍历一次。
+ * <pre>
+ * EChartsOption.bar("学生年级分布").categories(grades).series(counts)
+ * EChartsOption.stackedBar("各年级男女人数").categories(grades).series("男", male).series("女", female)
+ * EChartsOption.pie("学生性别分布").series(nameValues)
+ * </pre>
+ */
+public final class EChartsOption implements JSONSerializable, JsonSerializable {
+
+    /**
+     * 预先编码的 "name": value，value 为 JSON 字面量
+     */
+    private static final class Fragment {
+        final SerializableString name;
+        final String rawValue;
+        /**
+         * fastjson 直接写入的 "name":value
+         */
+        final String text;
+
+        Fragment(String name, String rawValue) {
+            this.name = new SerializedString(name);
+            this.rawValue = rawValue;
+            this.text = "\"" + name + "\":" + rawValue;
+        }
+    }
+
+    private static final SerializableString TITLE = new SerializedString("title");
+    private static final SerializableString TEXT = new SerializedString("text");
+    private static final SerializableString X_AXIS = new SerializedString("xAxis");
+    private static final SerializableString DATA = new SerializedString("data");
+    private static final SerializableString SERIES = new SerializedString("series");
+    private static final SerializableString NAME = new SerializedString("name");
+
+    private static final Fragment TITLE_CENTER = new Fragment("left", "\"center\"");
+    private static final Fragment TOOLTIP = new Fragment("tooltip", "{}");
+    private static final Fragment TOOLTIP_AXIS = new Fragment("tooltip", "{\"trigger\":\"axis\"}");
+    private static final Fragment TOOLTIP_ITEM = new Fragment("tooltip", "{\"trigger\":\"item\"}");
+    private static final Fragment LEGEND = new Fragment("legend", "{}");
+    private static final Fragment X_AXIS_CATEGORY = new Fragment("type", "\"category\"");
+    private static final Fragment Y_AXIS_VALUE = new Fragment("yAxis", "{\"type\":\"value\"}");
+    private static final Fragment TYPE_BAR = new Fragment("type", "\"bar\"");
+    private static final Fragment TYPE_LINE = new Fragment("type", "\"line\"");
+    private static final Fragment TYPE_PIE = new Fragment("type", "\"pie\"");
+    private static final Fragment STACK_TOTAL = new Fragment("stack", "\"total\"");
+    private static final Fragment PIE_RADIUS = new Fragment("radius", "\"50%\"");
+
+    /**
+     * 图表模板，多个 series 不堆叠时即为分组柱状图或多折线图
+     */
+    public enum Template {
+        BAR(TOOLTIP, TYPE_BAR, false),
+        STACKED_BAR(TOOLTIP_AXIS, TYPE_BAR, true),
+        LINE(TOOLTIP_AXIS, TYPE_LINE, false),
+        STACKED_LINE(TOOLTIP_AXIS, TYPE_LINE, true),
+        PIE(TOOLTIP_ITEM, TYPE_PIE, false);
+
+        private final Fragment tooltip;
+        private final Fragment seriesType;
+        private final boolean stacked;
+
+        Template(Fragment tooltip, Fragment seriesType, boolean stacked) {
+            this.tooltip = tooltip;
+            this.seriesType = seriesType;
+            this.stacked = stacked;
+        }
+
+        boolean hasAxis() {
+            return this != PIE;
+        }
+    }
+
+    /**
+     * 数据为 Iterable、long[]、double[] 之一
+     */
+    private static final class Series {
+        final String name;
+        final Iterable<?> values;
+        final long[] longValues;
+        final double[] doubleValues;
+
+        Series(String name, Iterable<?> values, long[] longValues, double[] doubleValues) {
+            this.name = name;
+            this.values = values;
+            this.longValues = longValues;
+            this.doubleValues = doubleValues;
+        }
+    }
+
+    private final Template template;
+    private final String title;
+    private Iterable<?> categories;
+    private final List<Series> seriesList = new ArrayList<>(1);
+
+    private EChartsOption(Template template, String title) {
+        this.template = template;
+        this.title = title;
+    }
+
+    public static EChartsOption of(Template template, String title) {
+        return new EChartsOption(template, title);
+    }
+
+    public static EChartsOption bar(String title) {
+        return new EChartsOption(Template.BAR, title);
+    }
+
+    public static EChartsOption stackedBar(String title) {
+        return new EChartsOption(Template.STACKED_BAR, title);
+    }
+
+    public static EChartsOption line(String title) {
+        return new EChartsOption(Template.LINE, title);
+    }
+
+    public static EChartsOption stackedLine(String title) {
+        return new EChartsOption(Template.STACKED_LINE, title);
+    }
+
+    public static EChartsOption pie(String title) {
+        return new EChartsOption(Template.PIE, title);
+    }
+
+    public Template getTemplate() {
+        return template;
+    }
+
+    /**
+     * x 轴类目，饼图忽略
+     */
+    public EChartsOption categories(Iterable<?> categories) {
+        this.categories = categories;
+        return this;
+    }
+
+    /**
+     * 饼图的数据为 [{name, value}]
+     */
+    public EChartsOption series(Iterable<?> values) {
+        return series(null, values);
+    }
+
+    public EChartsOption series(String name, Iterable<?> values) {
+        seriesList.add(new Series(name, values, null, null));
+        return this;
+    }
+
+    public EChartsOption series(String name, long[] values) {
+        seriesList.add(new Series(name, null, values, null));
+        return this;
+    }
+
+    public EChartsOption series(String name, double[] values) {
+        seriesList.add(new Series(name, null, null, values));
+        return this;
+    }
+
+    /**
+     * 由 JOLT 转换出的 {categories, values} 生成单 series 的图表配置
+     */
+    public static EChartsOption fromCategoryValues(Template template, String title, Object data) {
+        Map<?, ?> map = (Map<?, ?>) data;
+        return new EChartsOption(template, title)
+                .categories((Iterable<?>) map.get("categories"))
+                .series((Iterable<?>) map.get("values"));
+    }
+
+    private void write(Sink out) throws IOException {
+        out.beginObject();
+
+        out.name(TITLE);
+        out.beginObject();
+        out.name(TEXT);
+        out.string(title);
+        if (template == Template.PIE) {
+            out.fragment(TITLE_CENTER);
+        }
+        out.endObject();
+
+        out.fragment(template.tooltip);
+
+        for (Series series : seriesList) {
+            if (series.name != null) {
+                out.fragment(LEGEND);
+                break;
+            }
+        }
+
+        if (template.hasAxis()) {
+            out.name(X_AXIS);
+            out.beginObject();
+            out.fragment(X_AXIS_CATEGORY);
+            out.name(DATA);
+            writeValues(out, categories);
+            out.endObject();
+            out.fragment(Y_AXIS_VALUE);
+        }
+
+        out.name(SERIES);
+        out.beginArray();
+        for (Series series : seriesList) {
+            out.beginObject();
+            if (series.name != null) {
+                out.name(NAME);
+                out.string(series.name);
+            }
+            out.fragment(template.seriesType);
+            if (template.stacked) {
+                out.fragment(STACK_TOTAL);
+            }
+            if (template == Template.PIE) {
+                out.fragment(PIE_RADIUS);
+            }
+            out.name(DATA);
+            if (series.longValues != null) {
+                out.beginArray();
+                for (long v : series.longValues) {
+                    out.number(v);
+                }
+                out.endArray();
+            } else if (series.doubleValues != null) {
+                out.beginArray();
+                for (double v : series.doubleValues) {
+                    out.number(v);
+                }
+                out.endArray();
+            } else {
+                writeValues(out, series.values);
+            }
+            out.endObject();
+        }
+        out.endArray();
+
+        out.endObject();
+    }
+
+    private static void writeValues(Sink out, Iterable<?> values) throws IOException {
+        if (values == null) {
+            out.value(null);
+            return;
+        }
+
+        out.beginArray();
+        for (Object v : values) {
+            out.value(v);
+        }
+        out.endArray();
+    }
+
+    @Override
+    public void write(JSONSerializer serializer, Object fieldName, Type fieldType, int features) throws IOException {
+        write(new FastjsonSink(serializer));
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        write(new JacksonSink(gen, serializers));
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+        serialize(gen, serializers);
+    }
+
+    /**
+     * 屏蔽 fastjson 和 Jackson 流式写入接口的差异
+     */
+    private interface Sink {
+        void beginObject() throws IOException;
+        void endObject() throws IOException;
+        void beginArray() throws IOException;
+        void endArray() throws IOException;
+        void name(SerializableString name) throws IOException;
+        void fragment(Fragment fragment) throws IOException;
+        void string(String value) throws IOException;
+        void number(long value) throws IOException;
+        void number(double value) throws IOException;
+        void value(Object value) throws IOException;
+    }
+
+    /**
+     * SerializeWriter 不维护嵌套状态，逗号由这里按层记录
+     */
+    private static final class FastjsonSink implements Sink {
+        private final JSONSerializer serializer;
+        private final SerializeWriter out;
+        private boolean[] first = new boolean[8];
+        private int depth;
+        private boolean afterName;
+
+        FastjsonSink(JSONSerializer serializer) {
+            this.serializer = serializer;
+            this.out = serializer.getWriter();
+        }
+
+        private void separate() {
+            if (afterName) {
+                afterName = false;
+                return;
+            }
+            if (depth > 0) {
+                if (first[depth]) {
+                    first[depth] = false;
+                } else {
+                    out.write(',');
+                }
+            }
+        }
+
+        private void push() {
+            if (++depth >= first.length) {
+                first = Arrays.copyOf(first, first.length * 2);
+            }
+            first[depth] = true;
+        }
+
+        @Override
+        public void beginObject() {
+            separate();
+            out.write('{');
+            push();
+        }
+
+        @Override
+        public void endObject() {
+            depth--;
+            out.write('}');
+        }
+
+        @Override
+        public void beginArray() {
+            separate();
+            out.write('[');
+            push();
+        }
+
+        @Override
+        public void endArray() {
+            depth--;
+            out.write(']');
+        }
+
+        @Override
+        public void name(SerializableString name) {
+            separate();
+            out.writeString(name.getValue());
+            out.write(':');
+            afterName = true;
+        }
+
+        @Override
+        public void fragment(Fragment fragment) {
+            separate();
+            out.write(fragment.text);
+        }
+
+        @Override
+        public void string(String value) {
+            separate();
+            if (value == null) {
+                out.writeNull();
+            } else {
+                out.writeString(value);
+            }
+        }
+
+        @Override
+        public void number(long value) {
+            separate();
+            out.writeLong(value);
+        }
+
+        @Override
+        public void number(double value) {
+            separate();
+            out.writeDouble(value, false);
+        }
+
+        @Override
+        public void value(Object value) {
+            separate();
+            serializer.write(value);
+        }
+    }
+
+    private static final class JacksonSink implements Sink {
+        private final JsonGenerator gen;
+        private final SerializerProvider provider;
+
+        JacksonSink(JsonGenerator gen, SerializerProvider provider) {
+            this.gen = gen;
+            this.provider = provider;
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            gen.writeStartObject();
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            gen.writeEndObject();
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            gen.writeStartArray();
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            gen.writeEndArray();
+        }
+
+        @Override
+        public void name(SerializableString name) throws IOException {
+            gen.writeFieldName(name);
+        }
+
+        @Override
+        public void fragment(Fragment fragment) throws IOException {
+            gen.writeFieldName(fragment.name);
+            gen.writeRawValue(fragment.rawValue);
+        }
+
+        @Override
+        public void string(String value) throws IOException {
+            gen.writeString(value);
+        }
+
+        @Override
+        public void number(long value) throws IOException {
+            gen.writeNumber(value);
+        }
+
+        @Override
+        public void number(double value) throws IOException {
+            gen.writeNumber(value);
+        }
+
+        @Override
+        public void value(Object value) throws IOException {
+            if (value instanceof String) {
+                gen.writeString((String) value);
+            } else if (value instanceof Integer || value instanceof Long) {
+                gen.writeNumber(((Number) value).longValue());
+            } else {
+                provider.defaultSerializeValue(value, gen);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 数据访问基础设施状态
+ * 连接池、查询结果缓存、远程缓存、只读副本路由和行映射器是 APIJSON 请求路径上的组件，和 /dataflow 的数据流无关，单独输出
+ */
+@RestController
+@RequestMapping("/infra")
+@CrossOrigin
+public class InfrastructureController {
+
+    private final ConnectionPools connectionPools;
+    private final QueryCache queryCache;
+    private final RemoteQueryCache remoteCache;
+    private final ReplicaRouter replicaRouter;
+
+    public InfrastructureController(ConnectionPools connectionPools, QueryCache queryCache
+            , RemoteQueryCache remoteCache, ReplicaRouter replicaRouter) {
+        this.connectionPools = connectionPools;
+        this.queryCache = queryCache;
+        this.remoteCache = remoteCache;
+        this.replicaRouter = replicaRouter;
+    }
+
+    /**
+     * 获取连接池、缓存、副本和行映射器的统计
+     */
+    @GetMapping("/status")
+    public JSONObject getStatus() {
+        JSONObject status = new JSONObject(true);
+        status.put("success", true);
+        status.put("connection_pools", connectionPools.getStats());
+        status.put("query_cache", queryCache.getStats());
+        status.put("remote_cache", remoteCache.getStats());
+        status.put("replicas", replicaRouter.getStats());
+        status.put("row_mappers", JsonRowMapper.getStats());
+        return status;
+    }
+}
@@ -0,0 +1,220 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ResultSet 行到 JSONObject 的映射器，按 表 + 列列表 + ResultSetMetaData 的形状缓存
+ * 列序号、输出 key、是否隐藏、取值方式在创建时确定一次，之后每行只按数组依次取值，不再读取元数据、比较字符串。
+ * 取值和 APIJSON 的 getValue 一致：日期时间转为字符串，二进制和 Clob 转为字符串，@json 指定的列和 JSON 类型的列解析为 JSON；
+ * 列名以 _ 开头的列隐藏，和 isHideColumn 一致。
+ */
+public final class JsonRowMapper {
+
+    /**
+     * 缓存的形状个数上限，超过后清空重建，避免动态 SQL 让缓存无限增长
+     */
+    static final int MAX_MAPPERS = 1024;
+
+    private static final Map<String, JsonRowMapper> MAPPERS = new ConcurrentHashMap<>();
+    private static final LongAdder HIT_COUNT = new LongAdder();
+    private static final LongAdder CREATE_COUNT = new LongAdder();
+
+    /**
+     * 按列取值，创建映射器时按列类型选定
+     */
+    interface Reader {
+        Object read(ResultSet rs, int index) throws SQLException;
+    }
+
+    private final int[] indexes;
+    private final String[] keys;
+    private final Reader[] readers;
+
+    private JsonRowMapper(int[] indexes, String[] keys, Reader[] readers) {
+        this.indexes = indexes;
+        this.keys = keys;
+        this.readers = readers;
+    }
+
+    /**
+     * @param columns APIJSON 的 @column，只作为缓存 key 的一部分
+     * @param jsonColumns APIJSON 的 @json，这些列解析为 JSON
+     */
+    public static JsonRowMapper of(String table, Object columns, Collection<String> jsonColumns, ResultSetMetaData rsmd) throws SQLException {
+        int count = rsmd.getColumnCount();
+        StringBuilder key = new StringBuilder(64 + count * 16);
+        key.append(table).append('\0').append(columns).append('\0').append(jsonColumns);
+        for (int i = 1; i <= count; i++) {
+            key.append('\0').append(rsmd.getColumnLabel(i)).append(':').append(rsmd.getColumnName(i))
+                    .append(':').append(rsmd.getColumnType(i)).append(':').append(rsmd.getColumnTypeName(i))
+                    .append(':').append(rsmd.isSigned(i));
+        }
+
+        String cacheKey = key.toString();
+        JsonRowMapper mapper = MAPPERS.get(cacheKey);
+        if (mapper != null) {
+            HIT_COUNT.increment();
+            return mapper;
+        }
+
+        mapper = create(jsonColumns, rsmd);
+        if (MAPPERS.size() >= MAX_MAPPERS) {
+            MAPPERS.clear();
+        }
+        MAPPERS.put(cacheKey, mapper);
+        CREATE_COUNT.increment();
+        return mapper;
+    }
+
+    private static JsonRowMapper create(Collection<String> jsonColumns, ResultSetMetaData rsmd) throws SQLException {
+        int count = rsmd.getColumnCount();
+        List<Integer> indexes = new ArrayList<>(count);
+        List<String> keys = new ArrayList<>(count);
+        List<Reader> readers = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            if (rsmd.getColumnName(i).startsWith("_")) {
+                continue;
+            }
+            String label = rsmd.getColumnLabel(i);
+            String typeName = rsmd.getColumnTypeName(i);
+            boolean json = containsIgnoreCase(jsonColumns, label) || (typeName != null && typeName.toLowerCase().contains("json"));
+            indexes.add(i);
+            keys.add(label);
+            readers.add(readerOf(rsmd.getColumnType(i), rsmd.isSigned(i), json));
+        }
+
+        int[] indexArray = new int[indexes.size()];
+        for (int i = 0; i < indexArray.length; i++) {
+            indexArray[i] = indexes.get(i);
+        }
+        return new JsonRowMapper(indexArray, keys.toArray(new String[0]), readers.toArray(new Reader[0]));
+    }
+
+    /**
+     * H2 等数据库的列名默认大写，@json 中的列名不区分大小写
+     */
+    private static boolean containsIgnoreCase(Collection<String> columns, String label) {
+        if (columns != null) {
+            for (String column : columns) {
+                if (column.equalsIgnoreCase(label)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Reader readerOf(int type, boolean signed, boolean json) {
+        switch (type) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return (rs, i) -> {
+                    boolean value = rs.getBoolean(i);
+                    return rs.wasNull() ? null : value;
+                };
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                if (type == Types.INTEGER && signed == false) {  // INT UNSIGNED 超出 int 范围
+                    return JsonRowMapper::readLong;
+                }
+                return (rs, i) -> {
+                    int value = rs.getInt(i);
+                    return rs.wasNull() ? null : value;
+                };
+            case Types.BIGINT:
+                return signed ? JsonRowMapper::readLong : ResultSet::getObject;  // BIGINT UNSIGNED 由驱动返回 BigInteger
+            case Types.REAL:
+                return (rs, i) -> {
+                    float value = rs.getFloat(i);
+                    return rs.wasNull() ? null : value;
+                };
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return (rs, i) -> {
+                    double value = rs.getDouble(i);
+                    return rs.wasNull() ? null : value;
+                };
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return ResultSet::getBigDecimal;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                return json ? (rs, i) -> parseJson(rs.getString(i)) : ResultSet::getString;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return (rs, i) -> {
+                    byte[] bytes = rs.getBytes(i);
+                    String value = bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+                    return json ? parseJson(value) : value;
+                };
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+            case Types.TIME_WITH_TIMEZONE:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return (rs, i) -> {
+                    Object value = rs.getObject(i);
+                    return value == null ? null : value.toString();
+                };
+            default:
+                return json ? (rs, i) -> {
+                    Object value = rs.getObject(i);
+                    return value instanceof String ? parseJson((String) value) : value;
+                } : ResultSet::getObject;
+        }
+    }
+
+    private static Object readLong(ResultSet rs, int index) throws SQLException {
+        long value = rs.getLong(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Object parseJson(String value) {
+        return value == null ? null : JSON.parse(value);
+    }
+
+    /**
+     * 把 rs 当前行的全部非隐藏列放入 row
+     */
+    public JSONObject map(ResultSet rs, JSONObject row) throws SQLException {
+        for (int i = 0; i < indexes.length; i++) {
+            row.put(keys[i], readers[i].read(rs, indexes[i]));
+        }
+        return row;
+    }
+
+    public JSONObject map(ResultSet rs) throws SQLException {
+        return map(rs, new JSONObject(keys.length, true));
+    }
+
+    public static JSONObject getStats() {
+        JSONObject stats = new JSONObject(true);
+        stats.put("size", MAPPERS.size());
+        stats.put("maxSize", MAX_MAPPERS);
+        stats.put("hitCount", HIT_COUNT.sum());
+        stats.put("createCount", CREATE_COUNT.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,372 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * APIJSON 查询结果缓存，由 DemoSQLExecutor 的 getCache、putCache、removeCache 使用，跨请求共享
+ * key 为数据源 + 数据库 + 空白规范化后的 SQL + 预编译参数，缓存项记录读取的表及其查询前的 TableVersions 版本：
+ * DemoSQLExecutor 写入表时立即移除相关缓存项，读取时版本不一致的也视为失效。
+ * 每张表可单独设置过期时间，缓存项取所读表中最短的；按估算的内存字节数限制容量，超出后按 LRU 淘汰。
+ * 只有经过本节点 DemoSQLExecutor 的写入会让缓存失效，多节点或有其它程序直接写库时最多读到 TTL 内的旧数据，所以默认关闭。
+ * Access、Request、Function 等 APIJSON 系统表始终不缓存，/reload 总是读到最新配置。
+ */
+@Component
+public class QueryCache {
+
+    private static final Pattern TABLE_PATTERN = Pattern.compile("(?i)\\b(?:FROM|JOIN)\\s+(?:[`\"]?\\w+[`\"]?\\s*\\.\\s*)?[`\"]?(\\w+)[`\"]?");
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+    /**
+     * APIJSON 的系统表，表名小写，不受 apijson.query-cache.table-ttl 影响
+     */
+    static final Set<String> SYSTEM_TABLES = Set.of("access", "request", "function", "script", "verify");
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long ttlMillis;
+    /**
+     * 表名小写 -> 过期时间，0 表示读取该表的查询不缓存
+     */
+    private final Map<String, Long> tableTtlMap = new HashMap<>();
+
+    /**
+     * accessOrder = true，迭代顺序即 LRU 顺序。entryMap、tableIndex、totalBytes 都由 this 保护
+     */
+    private final LinkedHashMap<String, Entry> entryMap = new LinkedHashMap<>(64, 0.75f, true);
+    /**
+     * 表名小写 -> 读取了该表的缓存 key
+     */
+    private final Map<String, Set<String>> tableIndex = new HashMap<>();
+    private long totalBytes;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder putCount = new LongAdder();
+    private final LongAdder skipCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expiredCount = new LongAdder();
+    private final LongAdder invalidationCount = new LongAdder();
+
+    /**
+     * @param tableTtl 例如 Student:30,Parent:0，单位秒
+     */
+    public QueryCache(@Value("${apijson.query-cache.enabled:false}") boolean enabled
+            , @Value("${apijson.query-cache.max-bytes:33554432}") long maxBytes
+            , @Value("${apijson.query-cache.ttl-seconds:60}") long ttlSeconds
+            , @Value("${apijson.query-cache.table-ttl:}") String tableTtl) {
+        this.enabled = enabled;
+        this.maxBytes = Math.max(0, maxBytes);
+        this.ttlMillis = Math.max(0, ttlSeconds) * 1000;
+
+        for (String item : tableTtl == null ? new String[0] : tableTtl.split(",")) {
+            if (item.isBlank()) {
+                continue;
+            }
+            int colon = item.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("apijson.query-cache.table-ttl 格式应为 表名:秒数，实际 " + item);
+            }
+            tableTtlMap.put(item.substring(0, colon).trim().toLowerCase(), Math.max(0, Long.parseLong(item.substring(colon + 1).trim())) * 1000);
+        }
+        for (String table : SYSTEM_TABLES) {
+            tableTtlMap.put(table, 0L);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && maxBytes > 0 && ttlMillis > 0;
+    }
+
+    /**
+     * 不同 @datasource、数据库或预编译参数的同一 SQL 是不同的 key，APIJSON 生成的 SQL 文本不包含数据源
+     * @param datasource APIJSON 的 @datasource，null 和空字符串都是默认数据源
+     */
+    public static String keyOf(String datasource, String database, String sql, List<?> preparedValues) {
+        String normalized = WHITESPACE_PATTERN.matcher(sql.trim()).replaceAll(" ");
+        StringBuilder key = new StringBuilder(normalized.length() + 32);
+        key.append(datasource == null ? "" : datasource).append('\0').append(database == null ? "" : database).append('\0').append(normalized);
+        if (preparedValues != null && preparedValues.isEmpty() == false) {
+            key.append('\0').append(JSONArray.toJSONString(preparedValues));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 查询执行前记录的读取表和版本，查询完成后 put 时使用，查询期间的写入会让缓存项不被放入
+     */
+    public static final class Pending {
+        final Set<String> tables;
+        final long[] versions;
+        /**
+         * RemoteQueryCache 查询前记录的远程表版本，未使用远程层时为 null
+         */
+        long[] remoteGenerations;
+
+        private Pending(Set<String> tables, long[] versions) {
+            this.tables = tables;
+            this.versions = versions;
+        }
+    }
+
+    /**
+     * @param table APIJSON 的主表名，和 SQL 中 FROM、JOIN 后的表名（包括子查询）一起作为读取的表
+     */
+    public static Pending pending(String sql, String table) {
+        Set<String> tables = new LinkedHashSet<>();
+        if (table != null) {
+            tables.add(table.toLowerCase());
+        }
+        Matcher matcher = TABLE_PATTERN.matcher(sql);
+        while (matcher.find()) {
+            tables.add(matcher.group(1).toLowerCase());
+        }
+
+        long[] versions = new long[tables.size()];
+        int i = 0;
+        for (String t : tables) {
+            versions[i++] = TableVersions.get(t);
+        }
+        return new Pending(tables, versions);
+    }
+
+    /**
+     * @return 未命中、已过期或已失效时为 null；返回的是副本，调用方可以修改
+     */
+    public List<JSONObject> get(String key) {
+        List<JSONObject> value = null;
+        synchronized (this) {
+            Entry entry = entryMap.get(key);
+            if (entry != null) {
+                if (entry.expireTime <= System.currentTimeMillis()) {
+                    remove(key);
+                    expiredCount.increment();
+                } else if (isCurrent(entry) == false) {
+                    remove(key);
+                    invalidationCount.increment();
+                } else {
+                    value = entry.value;
+                }
+            }
+        }
+
+        if (value == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return copy(value);
+    }
+
+    private static boolean isCurrent(Entry entry) {
+        int i = 0;
+        for (String table : entry.tables) {
+            if (TableVersions.get(table) != entry.versions[i++]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 放入缓存，保存副本。单条超过容量上限或读取了 TTL 为 0 的表时不缓存
+     */
+    public void put(String key, Pending pending, List<JSONObject> value) {
+        Set<String> tables = pending.tables;
+        long ttl = ttlMillis(tables, ttlMillis);
+        long bytes = key.length() * 2L + estimateBytes(value);
+        if (ttl <= 0 || bytes > maxBytes) {
+            skipCount.increment();
+            return;
+        }
+
+        Entry entry = new Entry(copy(value), tables, pending.versions, bytes, System.currentTimeMillis() + ttl);
+        if (isCurrent(entry) == false) {  // 查询期间已有写入
+            skipCount.increment();
+            return;
+        }
+
+        synchronized (this) {
+            remove(key);
+            entryMap.put(key, entry);
+            totalBytes += bytes;
+            for (String table : tables) {
+                tableIndex.computeIfAbsent(table, k -> new HashSet<>()).add(key);
+            }
+            putCount.increment();
+
+            Iterator<Map.Entry<String, Entry>> iterator = entryMap.entrySet().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<String, Entry> eldest = iterator.next();
+                iterator.remove();
+                unlink(eldest.getKey(), eldest.getValue());
+                evictionCount.increment();
+            }
+        }
+    }
+
+    /**
+     * @return defaultTtl 和 tables 单独设置的过期时间中最短的，毫秒
+     */
+    long ttlMillis(Set<String> tables, long defaultTtl) {
+        long ttl = defaultTtl;
+        for (String table : tables) {
+            ttl = Math.min(ttl, tableTtlMap.getOrDefault(table, defaultTtl));
+        }
+        return ttl;
+    }
+
+    public synchronized void remove(String key) {
+        Entry old = entryMap.remove(key);
+        if (old != null) {
+            unlink(key, old);
+        }
+    }
+
+    private void unlink(String key, Entry entry) {
+        totalBytes -= entry.bytes;
+        for (String table : entry.tables) {
+            Set<String> keys = tableIndex.get(table);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    tableIndex.remove(table);
+                }
+            }
+        }
+    }
+
+    /**
+     * 移除读取了 table 的全部缓存项，DemoSQLExecutor 写入 table 时调用
+     */
+    public synchronized void invalidate(String table) {
+        Set<String> keys = tableIndex.remove(table.toLowerCase());
+        if (keys == null) {
+            return;
+        }
+        for (String key : new ArrayList<>(keys)) {
+            Entry old = entryMap.remove(key);
+            if (old != null) {
+                unlink(key, old);
+                invalidationCount.increment();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entryMap.clear();
+        tableIndex.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * 只复制 JSONObject、JSONArray 等容器，值本身是不可变的字符串、数字、日期等
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T copy(T value) {
+        if (value instanceof Map) {
+            Map<String, Object> source = (Map<String, Object>) value;
+            JSONObject target = new JSONObject(source.size(), true);
+            for (Map.Entry<String, Object> entry : source.entrySet()) {
+                target.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return (T) target;
+        }
+        if (value instanceof List) {
+            List<Object> source = (List<Object>) value;
+            List<Object> target = value instanceof JSONArray ? new JSONArray(source.size()) : new ArrayList<>(source.size());
+            for (Object item : source) {
+                target.add(copy(item));
+            }
+            return (T) target;
+        }
+        return value;
+    }
+
+    /**
+     * 按 64 位 JVM 的对象头和引用大小粗略估算，只用于容量控制
+     */
+    static long estimateBytes(Object value) {
+        if (value == null) {
+            return 8;
+        }
+        if (value instanceof CharSequence) {
+            return 40 + ((CharSequence) value).length() * 2L;
+        }
+        if (value instanceof Map) {
+            long bytes = 64;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += 32 + estimateBytes(entry.getKey()) + estimateBytes(entry.getValue());
+            }
+            return bytes;
+        }
+        if (value instanceof List) {
+            long bytes = 40;
+            for (Object item : (List<?>) value) {
+                bytes += 8 + estimateBytes(item);
+            }
+            return bytes;
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        return 24;
+    }
+
+    public JSONObject getStats() {
+        long hits = hitCount.sum();
+        long misses = missCount.sum();
+        long total = hits + misses;
+
+        JSONObject stats = new JSONObject(true);
+        stats.put("enabled", isEnabled());
+        stats.put("maxBytes", maxBytes);
+        stats.put("ttlSeconds", ttlMillis / 1000);
+        stats.put("tableTtlSeconds", tableTtlMap.entrySet().stream()
+                .collect(LinkedHashMap::new, (m, e) -> m.put(e.getKey(), e.getValue() / 1000), Map::putAll));
+        synchronized (this) {
+            stats.put("size", entryMap.size());
+            stats.put("bytes", totalBytes);
+            stats.put("tables", tableIndex.size());
+        }
+        stats.put("hitCount", hits);
+        stats.put("missCount", misses);
+        stats.put("hitRatio", total <= 0 ? 0 : (double) hits / total);
+        stats.put("putCount", putCount.sum());
+        stats.put("skipCount", skipCount.sum());
+        stats.put("evictionCount", evictionCount.sum());
+        stats.put("expiredCount", expiredCount.sum());
+        stats.put("invalidationCount", invalidationCount.sum());
+        return stats;
+    }
+
+    private static final class Entry {
+        final List<JSONObject> value;
+        final Set<String> tables;
+        final long[] versions;
+        final long bytes;
+        final long expireTime;
+
+        Entry(List<JSONObject> value, Set<String> tables, long[] versions, long bytes, long expireTime) {
+            this.value = value;
+            this.tables = tables;
+            this.versions = versions;
+            this.bytes = bytes;
+            this.expireTime = expireTime;
+        }
+    }
+}
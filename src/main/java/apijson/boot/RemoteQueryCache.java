@@ -0,0 +1,461 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONObject;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import apijson.Log;
+import apijson.boot.cache.RespConnection;
+import apijson.boot.cache.ResultCodec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 查询结果的远程缓存层，QueryCache 作为各节点的近端缓存，近端未命中时再查这里，多个节点共享，新启动的节点不用从空缓存开始
+ * 通过 Redis 协议访问 Redis 或兼容服务，值为 ResultCodec 编码的二进制，超过阈值时压缩。
+ * 每张表在远程有一个版本号，写入时 INCR 并发布失效消息，各节点收到后移除近端缓存中读取过该表的结果并更新本地记录的版本号；
+ * 缓存值带有查询前各表的版本号，和当前版本不一致时视为未命中。失效消息送达前的短暂时间内其它节点可能读到旧值。
+ * 连接失败、超时或失效消息订阅中断时暂停使用远程层，只用近端缓存，之后自动重连；暂停期间的写入在恢复后补发失效。
+ */
+@Component
+public class RemoteQueryCache {
+    private static final String TAG = "RemoteQueryCache";
+
+    private final QueryCache nearCache;
+    private final boolean enabled;
+    private final String host;
+    private final int port;
+    private final String password;
+    private final int database;
+    private final int timeoutMillis;
+    private final String prefix;
+    private final String channel;
+    private final long ttlMillis;
+    private final int compressThreshold;
+    private final int maxValueBytes;
+    private final long retryMillis;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final BlockingQueue<RespConnection> idleConnections;
+    /**
+     * 表名小写 -> 已知的远程版本号，由失效消息更新，订阅中断后清空
+     */
+    private final Map<String, Long> generationMap = new ConcurrentHashMap<>();
+    /**
+     * 远程层不可用期间写入的表，恢复后补发失效
+     */
+    private final Set<String> missedTables = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running;
+    private volatile boolean subscribed;
+    private volatile long downUntil;
+    private volatile String lastError;
+    private volatile RespConnection subscriber;
+    private Thread subscriberThread;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder staleCount = new LongAdder();
+    private final LongAdder putCount = new LongAdder();
+    private final LongAdder skipCount = new LongAdder();
+    private final LongAdder degradedCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder invalidationSent = new LongAdder();
+    private final LongAdder invalidationReceived = new LongAdder();
+    private final LongAdder compressedCount = new LongAdder();
+    private final LongAdder valueBytes = new LongAdder();
+
+    public RemoteQueryCache(QueryCache nearCache
+            , @Value("${apijson.remote-cache.enabled:false}") boolean enabled
+            , @Value("${apijson.remote-cache.host:127.0.0.1}") String host
+            , @Value("${apijson.remote-cache.port:6379}") int port
+            , @Value("${apijson.remote-cache.password:}") String password
+            , @Value("${apijson.remote-cache.database:0}") int database
+            , @Value("${apijson.remote-cache.timeout-ms:200}") int timeoutMillis
+            , @Value("${apijson.remote-cache.pool-size:8}") int poolSize
+            , @Value("${apijson.remote-cache.key-prefix:apijson:qc:}") String prefix
+            , @Value("${apijson.remote-cache.ttl-seconds:300}") long ttlSeconds
+            , @Value("${apijson.remote-cache.compress-threshold:1024}") int compressThreshold
+            , @Value("${apijson.remote-cache.max-value-bytes:1048576}") int maxValueBytes
+            , @Value("${apijson.remote-cache.retry-seconds:5}") long retrySeconds) {
+        this.nearCache = nearCache;
+        this.enabled = enabled;
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.database = database;
+        this.timeoutMillis = Math.max(1, timeoutMillis);
+        this.prefix = prefix;
+        this.channel = prefix + "invalidate";
+        this.ttlMillis = Math.max(0, ttlSeconds) * 1000;
+        this.compressThreshold = compressThreshold;
+        this.maxValueBytes = maxValueBytes;
+        this.retryMillis = Math.max(1, retrySeconds) * 1000;
+        this.idleConnections = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (enabled == false || running) {
+            return;
+        }
+        running = true;
+        subscriberThread = new Thread(this::subscribeLoop, "remote-query-cache-subscriber");
+        subscriberThread.setDaemon(true);
+        subscriberThread.start();
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        running = false;
+        subscribed = false;
+        RespConnection connection = subscriber;
+        if (connection != null) {
+            connection.close();
+        }
+        if (subscriberThread != null) {
+            subscriberThread.interrupt();
+        }
+        closeIdleConnections();
+    }
+
+    /**
+     * 已连接并订阅了失效消息，且不在出错后的暂停期内
+     */
+    public boolean isAvailable() {
+        return running && subscribed && System.currentTimeMillis() >= downUntil;
+    }
+
+    /**
+     * 近端缓存未命中时调用，同时在 pending 中记录查询前的远程版本号供 put 使用
+     * @return 未命中、已失效或远程层不可用时为 null
+     */
+    public List<JSONObject> get(String key, QueryCache.Pending pending) {
+        if (enabled == false) {
+            return null;
+        }
+        if (isAvailable() == false) {
+            degradedCount.increment();
+            return null;
+        }
+
+        try {
+            flushMissedTables();
+            long[] generations = generations(pending.tables);
+            pending.remoteGenerations = generations;
+
+            byte[] bytes = (byte[]) call("GET", valueKey(key));
+            if (bytes == null) {
+                missCount.increment();
+                return null;
+            }
+
+            ResultCodec.Decoded decoded = ResultCodec.decode(bytes);
+            if (decoded.tables.equals(new ArrayList<>(pending.tables)) == false
+                    || Arrays.equals(decoded.generations, generations) == false) {
+                staleCount.increment();
+                return null;
+            }
+            hitCount.increment();
+            return decoded.rows;
+        } catch (IOException e) {
+            markDown(e);
+            return null;
+        }
+    }
+
+    /**
+     * 查询完成后调用，查询期间已有写入或 get 时远程层不可用的不放入
+     */
+    public void put(String key, QueryCache.Pending pending, List<JSONObject> rows) {
+        long[] generations = pending.remoteGenerations;
+        if (generations == null || isAvailable() == false) {
+            return;
+        }
+
+        long ttl = nearCache.ttlMillis(pending.tables, ttlMillis);
+        if (ttl <= 0 || isCurrent(pending.tables, generations) == false) {
+            skipCount.increment();
+            return;
+        }
+
+        try {
+            byte[] bytes = ResultCodec.encode(pending.tables, generations, rows, compressThreshold);
+            if (bytes.length > maxValueBytes) {
+                skipCount.increment();
+                return;
+            }
+
+            call("SET", valueKey(key), bytes, "PX", ttl);
+            putCount.increment();
+            valueBytes.add(bytes.length);
+            if (ResultCodec.isCompressed(bytes)) {
+                compressedCount.increment();
+            }
+        } catch (IOException e) {
+            markDown(e);
+        }
+    }
+
+    public void remove(String key) {
+        if (isAvailable()) {
+            try {
+                call("DEL", valueKey(key));
+            } catch (IOException e) {
+                markDown(e);
+            }
+        }
+    }
+
+    /**
+     * DemoSQLExecutor 写入 table 时调用，增加远程版本号并通知其它节点
+     */
+    public void invalidate(String table) {
+        if (enabled == false) {
+            return;
+        }
+        String name = table.toLowerCase();
+        if (isAvailable() == false) {
+            missedTables.add(name);
+            return;
+        }
+
+        try {
+            publishInvalidation(name);
+            flushMissedTables();
+        } catch (IOException e) {
+            missedTables.add(name);
+            markDown(e);
+        }
+    }
+
+    private void publishInvalidation(String table) throws IOException {
+        long generation = (Long) call("INCR", prefix + "gen:" + table);
+        generationMap.merge(table, generation, Math::max);
+        call("PUBLISH", channel, nodeId + " " + table + " " + generation);
+        invalidationSent.increment();
+    }
+
+    /**
+     * 补发远程层不可用期间写入的表的失效
+     */
+    private void flushMissedTables() throws IOException {
+        for (String table : new ArrayList<>(missedTables)) {
+            publishInvalidation(table);
+            missedTables.remove(table);
+        }
+    }
+
+    private boolean isCurrent(Set<String> tables, long[] generations) {
+        int i = 0;
+        for (String table : tables) {
+            Long current = generationMap.get(table);
+            if (current == null || current != generations[i++]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 本地没有记录的表版本号用一次 MGET 读取
+     */
+    private long[] generations(Set<String> tables) throws IOException {
+        List<String> missing = new ArrayList<>();
+        for (String table : tables) {
+            if (generationMap.containsKey(table) == false) {
+                missing.add(table);
+            }
+        }
+
+        if (missing.isEmpty() == false) {
+            Object[] args = new Object[missing.size() + 1];
+            args[0] = "MGET";
+            for (int i = 0; i < missing.size(); i++) {
+                args[i + 1] = prefix + "gen:" + missing.get(i);
+            }
+            List<?> values = (List<?>) call(args);
+            for (int i = 0; i < missing.size(); i++) {
+                String value = RespConnection.string(values.get(i));
+                generationMap.merge(missing.get(i), value == null ? 0L : Long.parseLong(value), Math::max);
+            }
+        }
+
+        long[] generations = new long[tables.size()];
+        int i = 0;
+        for (String table : tables) {
+            generations[i++] = generationMap.getOrDefault(table, 0L);
+        }
+        return generations;
+    }
+
+    private String valueKey(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return prefix + "v:" + HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 从空闲连接中取一个执行，出错的连接直接关闭
+     */
+    private Object call(Object... args) throws IOException {
+        RespConnection connection = idleConnections.poll();
+        if (connection == null) {
+            connection = open();
+        }
+
+        Object reply;
+        try {
+            reply = connection.call(args);
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        if (idleConnections.offer(connection) == false) {
+            connection.close();
+        }
+        return reply;
+    }
+
+    private RespConnection open() throws IOException {
+        RespConnection connection = new RespConnection(host, port, timeoutMillis);
+        try {
+            if (password != null && password.isEmpty() == false) {
+                connection.call("AUTH", password);
+            }
+            if (database != 0) {
+                connection.call("SELECT", database);
+            }
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    private void markDown(IOException e) {
+        errorCount.increment();
+        lastError = e.getMessage();
+        downUntil = System.currentTimeMillis() + retryMillis;
+        closeIdleConnections();
+        Log.w(TAG, "远程缓存不可用，" + retryMillis / 1000 + " 秒内只使用近端缓存：" + e.getMessage());
+    }
+
+    private void closeIdleConnections() {
+        RespConnection connection;
+        while ((connection = idleConnections.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * 订阅失效消息，断开后等待 retry-seconds 重连。未订阅时不使用远程层，因为可能错过其它节点的失效消息
+     */
+    private void subscribeLoop() {
+        while (running) {
+            RespConnection connection = null;
+            try {
+                connection = open();
+                subscriber = connection;
+                connection.call("SUBSCRIBE", channel);
+                connection.setReadTimeout(0);
+
+                // 订阅前可能错过了失效消息，已知的版本号和近端缓存都不再可信
+                generationMap.clear();
+                nearCache.clear();
+                flushMissedTables();
+                downUntil = 0;
+                subscribed = true;
+                Log.d(TAG, "subscribeLoop  已订阅 " + channel + ", node = " + nodeId);
+
+                while (running) {
+                    onMessage(connection.read());
+                }
+            } catch (IOException e) {
+                if (running) {
+                    markDown(e);
+                }
+            } finally {
+                subscribed = false;
+                subscriber = null;
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void onMessage(Object message) {
+        if (message instanceof List == false || ((List<?>) message).size() < 3
+                || "message".equals(RespConnection.string(((List<?>) message).get(0))) == false) {
+            return;
+        }
+
+        String[] parts = RespConnection.string(((List<?>) message).get(2)).split(" ");
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        String table = parts[1];
+        generationMap.merge(table, Long.parseLong(parts[2]), Math::max);
+        // 其它节点写入的表，本节点依赖 TableVersions 的缓存也一起失效
+        TableVersions.increment(table);
+        nearCache.invalidate(table);
+        invalidationReceived.increment();
+    }
+
+    public JSONObject getStats() {
+        long hits = hitCount.sum();
+        long lookups = hits + missCount.sum() + staleCount.sum();
+        long puts = putCount.sum();
+
+        JSONObject stats = new JSONObject(true);
+        stats.put("enabled", enabled);
+        stats.put("available", isAvailable());
+        stats.put("subscribed", subscribed);
+        stats.put("node", nodeId);
+        stats.put("server", host + ":" + port);
+        stats.put("idleConnections", idleConnections.size());
+        stats.put("knownTables", generationMap.size());
+        stats.put("missedTables", missedTables.size());
+        stats.put("hitCount", hits);
+        stats.put("missCount", missCount.sum());
+        stats.put("staleCount", staleCount.sum());
+        stats.put("hitRatio", lookups <= 0 ? 0 : (double) hits / lookups);
+        stats.put("putCount", puts);
+        stats.put("skipCount", skipCount.sum());
+        stats.put("compressedCount", compressedCount.sum());
+        stats.put("avgValueBytes", puts <= 0 ? 0 : valueBytes.sum() / puts);
+        stats.put("degradedCount", degradedCount.sum());
+        stats.put("errorCount", errorCount.sum());
+        stats.put("invalidationSent", invalidationSent.sum());
+        stats.put("invalidationReceived", invalidationReceived.sum());
+        stats.put("lastError", lastError);
+        return stats;
+    }
+}
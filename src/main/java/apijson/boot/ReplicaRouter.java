@@ -0,0 +1,325 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONObject;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import apijson.Log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 读写分离：APIJSON 的查询方法（GET、GETS、HEAD、HEADS）由 DemoSQLExecutor 按这里的选择从只读副本的连接池租借连接
+ * 副本为 apijson.pools.名称.* 配置的连接池，apijson.replicas.names 列出。
+ * 延迟用心跳表测量：后台定期在主库写入当前时间，再从各副本读出，差值即为复制延迟，超过 max-lag-ms、读取失败或租借失败的副本暂不使用。
+ * 会话写入后，在副本的心跳时间追上写入时间之前，该会话的查询仍走主库（读己之写）。没有可用副本时回退主库。
+ */
+@Component
+public class ReplicaRouter {
+    private static final String TAG = "ReplicaRouter";
+
+    /**
+     * 一个副本的状态，由心跳和租借失败更新
+     */
+    static final class Replica {
+        final String name;
+        /**
+         * 副本上读到的本节点最近心跳时间，主库时钟，没有读到时为 0
+         */
+        volatile long heartbeatTime;
+        volatile long lagMillis = -1;
+        volatile boolean healthy;
+        volatile String lastError;
+        final AtomicLong routeCount = new AtomicLong();
+        final AtomicLong failureCount = new AtomicLong();
+
+        Replica(String name) {
+            this.name = name;
+        }
+    }
+
+    private final ConnectionPools pools;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis;
+    private final long heartbeatIntervalMillis;
+    private final String heartbeatTable;
+    private final long stickyMillis;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    /**
+     * 会话 -> 最近一次写入的时间，超过 sticky-seconds 后清除
+     */
+    private final Map<String, Long> sessionWriteMap = new ConcurrentHashMap<>();
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final AtomicLong primaryCount = new AtomicLong();
+    private final AtomicLong stickyCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+    /**
+     * 本节点最近一次写入主库的时间
+     */
+    private volatile long lastWriteTime;
+    private volatile boolean tableCreated;
+    private volatile String lastError;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replica-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param names 逗号分隔的 apijson.pools 连接池名称，为空时不做读写分离
+     */
+    public ReplicaRouter(ConnectionPools pools
+            , @Value("${apijson.replicas.names:}") String names
+            , @Value("${apijson.replicas.max-lag-ms:3000}") long maxLagMillis
+            , @Value("${apijson.replicas.heartbeat-interval-ms:1000}") long heartbeatIntervalMillis
+            , @Value("${apijson.replicas.heartbeat-table:apijson_heartbeat}") String heartbeatTable
+            , @Value("${apijson.replicas.sticky-seconds:10}") long stickySeconds) {
+        this.pools = pools;
+        for (String name : names == null ? new String[0] : names.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (pools.contains(name) == false || ConnectionPools.DEFAULT.equals(name)) {
+                throw new IllegalArgumentException("apijson.replicas.names 中的 " + name + " 没有对应的 apijson.pools." + name + ".* 配置");
+            }
+            replicas.add(new Replica(name));
+        }
+        this.maxLagMillis = maxLagMillis;
+        this.heartbeatIntervalMillis = Math.max(100, heartbeatIntervalMillis);
+        this.heartbeatTable = heartbeatTable;
+        this.stickyMillis = Math.max(0, stickySeconds) * 1000;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (isEnabled()) {
+            scheduler.scheduleWithFixedDelay(this::heartbeatQuietly, 0, heartbeatIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return replicas.isEmpty() == false;
+    }
+
+    public boolean isReplica(String poolName) {
+        for (Replica replica : replicas) {
+            if (replica.name.equals(poolName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 为一次查询选择连接池：在延迟合格且已包含该会话最近写入的副本中选租借中连接最少的，相同时轮流
+     * @param session 会话标识，为 null 时不做读己之写
+     * @return 副本的连接池名称，走主库时为 null
+     */
+    public String route(String session) {
+        if (isEnabled() == false) {
+            return null;
+        }
+
+        Long writeTime = session == null ? null : sessionWriteMap.get(session);
+        if (writeTime != null && System.currentTimeMillis() - writeTime > stickyMillis) {
+            sessionWriteMap.remove(session, writeTime);
+            writeTime = null;
+        }
+
+        int size = replicas.size();
+        int start = Math.floorMod(nextIndex.getAndIncrement(), size);
+        Replica best = null;
+        long bestOutstanding = Long.MAX_VALUE;
+        boolean behindWrite = false;
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy == false) {
+                continue;
+            }
+            if (writeTime != null && replica.heartbeatTime < writeTime) {
+                behindWrite = true;
+                continue;
+            }
+            long outstanding = pools.getOutstanding(replica.name);
+            if (outstanding < bestOutstanding) {
+                best = replica;
+                bestOutstanding = outstanding;
+            }
+        }
+
+        if (best == null) {
+            (behindWrite ? stickyCount : fallbackCount).incrementAndGet();
+            primaryCount.incrementAndGet();
+            return null;
+        }
+        best.routeCount.incrementAndGet();
+        return best.name;
+    }
+
+    /**
+     * 会话写入主库后调用，事务提交后再调用一次
+     */
+    public void markWrite(String session) {
+        if (isEnabled() == false) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        lastWriteTime = now;
+        if (session != null) {
+            sessionWriteMap.put(session, now);
+        }
+    }
+
+    /**
+     * @return 副本是否已包含本节点最近一次写入，未包含时从该副本读到的结果不应放入跨请求缓存
+     */
+    public boolean isCaughtUp(String poolName) {
+        for (Replica replica : replicas) {
+            if (replica.name.equals(poolName)) {
+                return replica.heartbeatTime >= lastWriteTime;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 从副本租借连接失败时调用，下次心跳成功前不再使用
+     */
+    public void markFailed(String name, Exception e) {
+        for (Replica replica : replicas) {
+            if (replica.name.equals(name)) {
+                replica.healthy = false;
+                replica.lastError = e.getMessage();
+                replica.failureCount.incrementAndGet();
+                Log.w(TAG, "markFailed  副本 " + name + " 暂不使用：" + e.getMessage());
+            }
+        }
+    }
+
+    private void heartbeatQuietly() {
+        try {
+            heartbeat();
+        } catch (Exception e) {
+            Log.e(TAG, "heartbeatQuietly  catch (Exception e) = " + e.getMessage());
+        }
+    }
+
+    /**
+     * 在主库写入本节点的心跳时间，再读取各副本上的心跳时间计算延迟。主库写入失败时无法判断延迟，全部副本暂不使用
+     */
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        try (Connection connection = pools.getDataSource(null).getConnection()) {
+            if (tableCreated == false) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("CREATE TABLE IF NOT EXISTS " + heartbeatTable + " (id VARCHAR(64) PRIMARY KEY, ts BIGINT NOT NULL)");
+                }
+                tableCreated = true;
+            }
+
+            int count;
+            try (PreparedStatement statement = connection.prepareStatement("UPDATE " + heartbeatTable + " SET ts = ? WHERE id = ?")) {
+                statement.setLong(1, now);
+                statement.setString(2, nodeId);
+                count = statement.executeUpdate();
+            }
+            if (count <= 0) {
+                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + heartbeatTable + " (id, ts) VALUES (?, ?)")) {
+                    statement.setString(1, nodeId);
+                    statement.setLong(2, now);
+                    statement.executeUpdate();
+                }
+            }
+            if (connection.getAutoCommit() == false) {
+                connection.commit();
+            }
+            lastError = null;
+        } catch (SQLException e) {
+            lastError = e.getMessage();
+            for (Replica replica : replicas) {
+                replica.healthy = false;
+            }
+            Log.e(TAG, "heartbeat  主库心跳写入失败，全部副本暂不使用：" + e.getMessage());
+            return;
+        }
+
+        for (Replica replica : replicas) {
+            check(replica);
+        }
+        sessionWriteMap.values().removeIf(time -> now - time > stickyMillis);
+    }
+
+    private void check(Replica replica) {
+        try (Connection connection = pools.getDataSource(replica.name).getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT ts FROM " + heartbeatTable + " WHERE id = ?")) {
+            statement.setString(1, nodeId);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next() == false) {
+                    throw new SQLException("副本上还没有本节点的心跳，可能尚未复制");
+                }
+                long time = rs.getLong(1);
+                replica.heartbeatTime = time;
+                replica.lagMillis = Math.max(0, System.currentTimeMillis() - time);
+            }
+
+            replica.healthy = replica.lagMillis <= maxLagMillis;
+            replica.lastError = replica.healthy ? null : "复制延迟 " + replica.lagMillis + " ms 超过 " + maxLagMillis + " ms";
+        } catch (SQLException e) {
+            replica.healthy = false;
+            replica.lastError = e.getMessage();
+        }
+    }
+
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject(true);
+        stats.put("enabled", isEnabled());
+        stats.put("maxLagMillis", maxLagMillis);
+        stats.put("heartbeatIntervalMillis", heartbeatIntervalMillis);
+        stats.put("stickySeconds", stickyMillis / 1000);
+        stats.put("stickySessions", sessionWriteMap.size());
+        stats.put("primaryCount", primaryCount.get());
+        stats.put("stickyCount", stickyCount.get());
+        stats.put("fallbackCount", fallbackCount.get());
+        stats.put("lastError", lastError);
+
+        Map<String, JSONObject> replicaStats = new LinkedHashMap<>();
+        for (Replica replica : replicas) {
+            JSONObject item = new JSONObject(true);
+            item.put("healthy", replica.healthy);
+            item.put("lagMillis", replica.lagMillis);
+            item.put("outstanding", pools.getOutstanding(replica.name));
+            item.put("routeCount", replica.routeCount.get());
+            item.put("failureCount", replica.failureCount.get());
+            item.put("lastError", replica.lastError);
+            replicaStats.put(replica.name, item);
+        }
+        stats.put("replicas", replicaStats);
+        return stats;
+    }
+}
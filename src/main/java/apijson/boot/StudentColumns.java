@@ -0,0 +1,256 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONObject;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import apijson.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Student 的列式内存快照，用于 /dataflow/query 任意组合的过滤、分组、聚合，不访问数据库
+ * age 为 int[]，gender、status 为 byte[]，grade、class_name 按字典序编码为 int[]，null 分别记为 NULL_INT、NULL_BYTE、-1。
+ * 快照不可变，刷新时整体重建后替换：Student 版本变化后最多每 min-interval-ms 重建一次，
+ * 超过 max-age-seconds 没有重建时也重建一次，以包含不经过 APIJSON 的写入。
+ */
+@Component
+public class StudentColumns {
+    private static final String TAG = "StudentColumns";
+
+    public static final int NULL_INT = Integer.MIN_VALUE;
+    public static final byte NULL_BYTE = Byte.MIN_VALUE;
+
+    /**
+     * 不可变快照，数组长度都不小于 size
+     */
+    public static final class Snapshot {
+        public final int size;
+        public final int[] age;
+        public final byte[] gender;
+        public final byte[] status;
+        public final int[] grade;
+        public final String[] gradeDict;
+        public final int[] className;
+        public final String[] classNameDict;
+        /**
+         * 非 null 的 age 最小、最大值，用于分组时计算桶的个数
+         */
+        public final int minAge;
+        public final int maxAge;
+        public final long version;
+        public final long loadTime;
+
+        Snapshot(int size, int[] age, byte[] gender, byte[] status, int[] grade, String[] gradeDict
+                , int[] className, String[] classNameDict, long version, long loadTime) {
+            this.size = size;
+            this.age = age;
+            this.gender = gender;
+            this.status = status;
+            this.grade = grade;
+            this.gradeDict = gradeDict;
+            this.className = className;
+            this.classNameDict = classNameDict;
+            this.version = version;
+            this.loadTime = loadTime;
+
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                int v = age[i];
+                if (v != NULL_INT) {
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                }
+            }
+            this.minAge = min <= max ? min : 0;
+            this.maxAge = min <= max ? max : 0;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final long minIntervalMillis;
+    private final long maxAgeMillis;
+    private final int parallelThreshold;
+
+    private volatile Snapshot snapshot;
+    private long loadCount;
+    private long lastLoadMillis;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "student-columns");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StudentColumns(JdbcTemplate jdbcTemplate
+            , @Value("${dataflow.columnar.enabled:false}") boolean enabled
+            , @Value("${dataflow.columnar.min-interval-ms:1000}") long minIntervalMillis
+            , @Value("${dataflow.columnar.max-age-seconds:300}") long maxAgeSeconds
+            , @Value("${dataflow.columnar.parallel-threshold:200000}") int parallelThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.minIntervalMillis = minIntervalMillis > 0 ? minIntervalMillis : 1000;
+        this.maxAgeMillis = TimeUnit.SECONDS.toMillis(maxAgeSeconds);
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled == false) {
+            return;
+        }
+
+        refreshQuietly();
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, minIntervalMillis, minIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 行数不少于该值时查询分段并行，0 表示总是串行
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * @return 未启用或尚未加载时为 null
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private void refreshQuietly() {
+        try {
+            Snapshot current = snapshot;
+            if (current == null || current.version != TableVersions.get(StudentHistograms.TABLE)
+                    || (maxAgeMillis > 0 && System.currentTimeMillis() - current.loadTime >= maxAgeMillis)) {
+                load();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "refreshQuietly  catch (Exception e) = " + e.getMessage());
+        }
+    }
+
+    /**
+     * 流式扫描一次 Student 重建快照，先取版本号，扫描期间的写入会使下次检查时再重建
+     */
+    public synchronized Snapshot load() {
+        long version = TableVersions.get(StudentHistograms.TABLE);
+        long start = System.currentTimeMillis();
+
+        Builder builder = new Builder();
+        jdbcTemplate.query(con -> StudentHistograms.prepareStreaming(con, "SELECT age, gender, status, grade, class_name FROM " + StudentHistograms.TABLE)
+                , rs -> {
+                    builder.add(rs.getObject("age"), rs.getObject("gender"), rs.getObject("status")
+                            , rs.getString("grade"), rs.getString("class_name"));
+                });
+
+        snapshot = builder.build(version, start);
+        loadCount++;
+        lastLoadMillis = System.currentTimeMillis() - start;
+        return snapshot;
+    }
+
+    /**
+     * 按行追加，数组按 1.5 倍扩容；字符串先按出现顺序编码，build 时重新编码为字典序
+     */
+    static final class Builder {
+        private int size;
+        private int[] age = new int[1024];
+        private byte[] gender = new byte[1024];
+        private byte[] status = new byte[1024];
+        private int[] grade = new int[1024];
+        private int[] className = new int[1024];
+        private final Map<String, Integer> gradeCodeMap = new HashMap<>();
+        private final Map<String, Integer> classNameCodeMap = new HashMap<>();
+
+        void add(Object age, Object gender, Object status, String grade, String className) {
+            if (size >= this.age.length) {
+                int capacity = size + (size >> 1);
+                this.age = Arrays.copyOf(this.age, capacity);
+                this.gender = Arrays.copyOf(this.gender, capacity);
+                this.status = Arrays.copyOf(this.status, capacity);
+                this.grade = Arrays.copyOf(this.grade, capacity);
+                this.className = Arrays.copyOf(this.className, capacity);
+            }
+
+            this.age[size] = age == null ? NULL_INT : ((Number) toNumber(age)).intValue();
+            this.gender[size] = gender == null ? NULL_BYTE : ((Number) toNumber(gender)).byteValue();
+            this.status[size] = status == null ? NULL_BYTE : ((Number) toNumber(status)).byteValue();
+            this.grade[size] = encode(gradeCodeMap, grade);
+            this.className[size] = encode(classNameCodeMap, className);
+            size++;
+        }
+
+        private static Object toNumber(Object value) {
+            return value instanceof Boolean ? ((Boolean) value ? 1 : 0) : value;
+        }
+
+        private static int encode(Map<String, Integer> codeMap, String value) {
+            return value == null ? -1 : codeMap.computeIfAbsent(value, k -> codeMap.size());
+        }
+
+        Snapshot build(long version, long loadTime) {
+            String[] gradeDict = sortedDict(gradeCodeMap);
+            String[] classNameDict = sortedDict(classNameCodeMap);
+            recode(grade, size, gradeCodeMap, gradeDict);
+            recode(className, size, classNameCodeMap, classNameDict);
+            return new Snapshot(size, age, gender, status, grade, gradeDict, className, classNameDict, version, loadTime);
+        }
+
+        private static String[] sortedDict(Map<String, Integer> codeMap) {
+            String[] dict = codeMap.keySet().toArray(new String[0]);
+            Arrays.sort(dict);
+            return dict;
+        }
+
+        /**
+         * 把出现顺序的编码替换为字典序编码，分组结果因此按值升序
+         */
+        private static void recode(int[] codes, int size, Map<String, Integer> codeMap, String[] dict) {
+            int[] mapping = new int[dict.length];
+            for (int i = 0; i < dict.length; i++) {
+                mapping[codeMap.get(dict[i])] = i;
+            }
+            for (int i = 0; i < size; i++) {
+                if (codes[i] >= 0) {
+                    codes[i] = mapping[codes[i]];
+                }
+            }
+        }
+    }
+
+    public synchronized JSONObject getStats() {
+        Snapshot current = snapshot;
+        JSONObject stats = new JSONObject(true);
+        stats.put("enabled", enabled);
+        stats.put("rows", current == null ? 0 : current.size);
+        stats.put("grades", current == null ? 0 : current.gradeDict.length);
+        stats.put("classNames", current == null ? 0 : current.classNameDict.length);
+        stats.put("version", current == null ? null : current.version);
+        stats.put("loadTime", current == null ? null : current.loadTime);
+        stats.put("loadCount", loadCount);
+        stats.put("lastLoadMillis", lastLoadMillis);
+        stats.put("parallelThreshold", parallelThreshold);
+        return stats;
+    }
+}
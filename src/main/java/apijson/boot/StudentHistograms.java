@@ -0,0 +1,389 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONObject;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import apijson.Log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Student 的 grade、gender、age 计数直方图，只统计 status = 1 的学生
+ * 启动时扫描一次建立，之后由 DemoSQLExecutor 在事务提交后按写入前后的行镜像增量更新，并定期与数据库对账。
+ * 对账扫描期间应用的增量会记录下来，扫描完成后重放到扫描结果上，持续写入时对账也不会被跳过。
+ * 读取只需 O(不同值个数)，不再执行 SQL。
+ */
+@Component
+public class StudentHistograms {
+    private static final String TAG = "StudentHistograms";
+
+    public static final String TABLE = "Student";
+    public static final String[] COLUMNS = {"grade", "gender", "age"};
+    /**
+     * 行镜像需要的列
+     */
+    public static final String IMAGE_COLUMNS = "id, grade, gender, age, status";
+
+    private static final Comparator<Object> VALUE_COMPARATOR = Comparator.nullsFirst(StudentHistograms::compareValues);
+
+    @SuppressWarnings("unchecked")  // 同一列的值来自同一个 JDBC 类型（String 或同一种 Number），都实现 Comparable
+    private static int compareValues(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final long reconcileSeconds;
+
+    /**
+     * column -> (value -> count)，都由 this 保护
+     */
+    private final Map<String, Map<Object, Long>> histogramMap = new LinkedHashMap<>();
+    private volatile boolean ready;
+    /**
+     * 对账扫描开始后应用的增量，扫描完成后重放，不在对账时为 null
+     */
+    private List<Delta> recording;
+
+    /**
+     * 写入方从提交到 apply 完成期间持有读锁；对账只在扫描语句开始时短暂持有写锁，
+     * 所以每次写入要么在扫描开始前已提交并应用（扫描结果已包含），要么在扫描开始后才提交（被记录并重放）。
+     * 公平锁，持续写入时对账也能拿到写锁
+     */
+    private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock(true);
+    /**
+     * 启动时和定时、请求触发的对账不同时进行，recording 只有一份
+     */
+    private final Object reconcileLock = new Object();
+
+    private long deltaCount;
+    private long reconcileCount;
+    private long replayCount;
+    private long driftCount;
+    private long lastReconcileTime;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "student-histograms");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StudentHistograms(JdbcTemplate jdbcTemplate
+            , @Value("${dataflow.histogram.enabled:true}") boolean enabled
+            , @Value("${dataflow.histogram.reconcile-seconds:300}") long reconcileSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.reconcileSeconds = reconcileSeconds;
+    }
+
+    /**
+     * DatabaseInitializer 等 CommandLineRunner 建表完成后再扫描
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled == false) {
+            return;
+        }
+
+        reconcileQuietly();
+        if (reconcileSeconds > 0) {
+            scheduler.scheduleWithFixedDelay(this::reconcileQuietly, reconcileSeconds, reconcileSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * 无法取得写入前后的行镜像时调用，尽快异步对账
+     */
+    public void requestReconcile() {
+        if (enabled && scheduler.isShutdown() == false) {
+            scheduler.execute(this::reconcileQuietly);
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            Log.e(TAG, "reconcile  catch (Exception e) = " + e.getMessage());
+        }
+    }
+
+    /**
+     * 提交 Student 写入时持有，直到 apply 完成后释放，见 commitLock
+     */
+    public Lock getCommitLock() {
+        return commitLock.readLock();
+    }
+
+    /**
+     * 扫描一次数据库重建直方图，扫描开始后应用的增量重放到扫描结果上
+     */
+    public void reconcile() {
+        synchronized (reconcileLock) {
+            Map<String, Map<Object, Long>> scanned;
+            try {
+                scanned = scan(jdbcTemplate, 1, true);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    recording = null;
+                }
+                throw e;
+            } finally {
+                if (commitLock.isWriteLockedByCurrentThread()) {
+                    commitLock.writeLock().unlock();
+                }
+            }
+            install(scanned);
+        }
+    }
+
+    /**
+     * 把扫描开始后记录的增量重放到扫描结果上，再替换当前直方图
+     */
+    private synchronized void install(Map<String, Map<Object, Long>> scanned) {
+        List<Delta> deltas = recording;
+        recording = null;
+        for (Delta delta : deltas) {
+            add(scanned, delta.before, -1);
+            add(scanned, delta.after, 1);
+        }
+
+        lastReconcileTime = System.currentTimeMillis();
+        if (ready && scanned.equals(histogramMap) == false) {
+            driftCount++;
+            Log.w(TAG, "reconcile  直方图与数据库不一致，已按数据库重建");
+        }
+        histogramMap.clear();
+        histogramMap.putAll(scanned);
+        reconcileCount++;
+        replayCount += deltas.size();
+        ready = true;
+    }
+
+    /**一次扫描同时得到 grade、gender、age 的计数，MySQL 逐行流式读取，不把整张表读进内存
+     * @param status 为空时统计全部学生
+     * @return column -> (value -> count)
+     */
+    public Map<String, Map<Object, Long>> scan(Integer status) {
+        return scan(jdbcTemplate, status, false);
+    }
+
+    /**
+     * 用 template 执行扫描，例如 DashboardExecutor.withDeadline 返回的带查询超时的 JdbcTemplate
+     */
+    public Map<String, Map<Object, Long>> scan(JdbcTemplate template, Integer status) {
+        return scan(template, status, false);
+    }
+
+    /**
+     * @param reconcile 对账时在取得连接后持有 commitLock 的写锁开始记录增量，扫描语句开始执行（已确定读取的快照）后释放
+     */
+    private Map<String, Map<Object, Long>> scan(JdbcTemplate template, Integer status, boolean reconcile) {
+        Map<String, Map<Object, Long>> scanned = new LinkedHashMap<>();
+        for (String column : COLUMNS) {
+            scanned.put(column, new HashMap<>());
+        }
+
+        String sql = "SELECT grade, gender, age FROM " + TABLE + (status == null ? "" : " WHERE status = ?");
+        template.query(con -> {
+            PreparedStatement ps = prepareStreaming(con, sql);
+            if (status != null) {
+                ps.setInt(1, status);
+            }
+            if (reconcile) {  // 先取得连接再加锁，等待提交的请求占满连接池时不会互相等待
+                commitLock.writeLock().lock();
+                synchronized (this) {
+                    recording = new ArrayList<>();
+                }
+            }
+            return ps;
+        }, (ResultSet rs) -> {
+            if (reconcile) {
+                commitLock.writeLock().unlock();
+                onScanStarted();
+            }
+            while (rs.next()) {
+                for (String column : COLUMNS) {
+                    scanned.get(column).merge(normalize(column, rs.getObject(column)), 1L, Long::sum);
+                }
+            }
+            return null;
+        });
+        return scanned;
+    }
+
+    /**
+     * 对账的扫描语句已开始、还没读取行时调用，测试用来模拟扫描期间的写入
+     */
+    void onScanStarted() {
+    }
+
+    /**
+     * 只读、只向前的语句，MySQL 驱动在 fetchSize 为 Integer.MIN_VALUE 时才逐行读取，其它数据库按 1000 行一批
+     */
+    static PreparedStatement prepareStreaming(Connection con, String sql) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        String product = con.getMetaData().getDatabaseProductName();
+        ps.setFetchSize(product != null && product.toLowerCase().contains("mysql") ? Integer.MIN_VALUE : 1000);
+        return ps;
+    }
+
+    /**按行镜像应用一次写入，before 和 after 中 status = 1 的行分别减去和加上
+     * @param before 写入前的行，POST 时为空
+     * @param after 写入后的行，DELETE 时为空
+     */
+    public synchronized void apply(List<Map<String, Object>> before, List<Map<String, Object>> after) {
+        if (recording != null) {
+            recording.add(new Delta(before, after));
+        }
+        if (ready == false) {
+            return;
+        }
+
+        add(histogramMap, before, -1);
+        add(histogramMap, after, 1);
+        deltaCount++;
+    }
+
+    private static void add(Map<String, Map<Object, Long>> histogramMap, List<Map<String, Object>> rows, long delta) {
+        if (rows == null) {
+            return;
+        }
+
+        for (Map<String, Object> row : rows) {
+            if (isActive(row.get("status")) == false) {
+                continue;
+            }
+            for (String column : COLUMNS) {
+                Map<Object, Long> histogram = histogramMap.get(column);
+                Object value = normalize(column, row.get(column));
+                long count = histogram.getOrDefault(value, 0L) + delta;
+                if (count > 0) {
+                    histogram.put(value, count);
+                } else {
+                    histogram.remove(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 和 SELECT column, COUNT(*) AS count ... GROUP BY column ORDER BY column 结果一致，null 在最前面
+     */
+    public List<Map<String, Object>> getRows(String column) {
+        Map<Object, Long> histogram;
+        synchronized (this) {
+            histogram = histogramMap.get(column);
+            if (histogram == null) {
+                throw new IllegalArgumentException("不支持的列: " + column);
+            }
+            histogram = new HashMap<>(histogram);
+        }
+        return toRows(column, histogram);
+    }
+
+    /**
+     * 同一时刻的全部直方图副本，column -> (value -> count)
+     */
+    public synchronized Map<String, Map<Object, Long>> getSnapshot() {
+        Map<String, Map<Object, Long>> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<Object, Long>> entry : histogramMap.entrySet()) {
+            snapshot.put(entry.getKey(), new HashMap<>(entry.getValue()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * 转为按值升序的 [{column: value, count: n}]
+     */
+    static List<Map<String, Object>> toRows(String column, Map<Object, Long> histogram) {
+        List<Map.Entry<Object, Long>> entries = new ArrayList<>(histogram.entrySet());
+        entries.sort((a, b) -> VALUE_COMPARATOR.compare(a.getKey(), b.getKey()));
+        List<Map<String, Object>> rows = new ArrayList<>(entries.size());
+        for (Map.Entry<Object, Long> entry : entries) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put(column, entry.getKey());
+            row.put("count", entry.getValue());
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static boolean isActive(Object status) {
+        return status instanceof Number ? ((Number) status).intValue() == 1 : Boolean.TRUE.equals(status);
+    }
+
+    /**
+     * 不同驱动返回的 TINYINT、INT 类型不同，统一为 Integer，保证镜像和扫描结果的 key 一致
+     */
+    static Object normalize(String column, Object value) {
+        if (value == null) {
+            return null;
+        }
+        if ("grade".equals(column)) {
+            return value.toString();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return ((Number) value).intValue();
+    }
+
+    /**
+     * 一次写入的行镜像
+     */
+    private static final class Delta {
+        final List<Map<String, Object>> before;
+        final List<Map<String, Object>> after;
+
+        Delta(List<Map<String, Object>> before, List<Map<String, Object>> after) {
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    public synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject(true);
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        stats.put("reconcileSeconds", reconcileSeconds);
+        for (String column : COLUMNS) {
+            Map<Object, Long> histogram = histogramMap.get(column);
+            stats.put(column + "Distinct", histogram == null ? 0 : histogram.size());
+        }
+        stats.put("deltaCount", deltaCount);
+        stats.put("reconcileCount", reconcileCount);
+        stats.put("replayCount", replayCount);
+        stats.put("driftCount", driftCount);
+        stats.put("lastReconcileTime", lastReconcileTime);
+        return stats;
+    }
+}
@@ -0,0 +1,365 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONObject;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import apijson.Log;
+import apijson.boot.sketch.CountMinSketch;
+import apijson.boot.sketch.HyperLogLog;
+import apijson.boot.sketch.TDigest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Student 各列的近似统计草图，和 StudentHistograms 一样只统计 status = 1 的学生
+ * 每列一个 HyperLogLog（不同值个数）和 Count-Min（高频值），数值列再加一个 t-digest（分位数、平均值），
+ * 占用内存固定，不随数据量和不同值个数增长。启动时扫描一次建立，之后由 DemoSQLExecutor 在事务提交后按行镜像更新。
+ * Count-Min 支持删除；HyperLogLog 和 t-digest 不支持，修改、删除前的旧值记为 staleRows，定期重建时清零。
+ */
+@Component
+public class StudentSketches {
+    private static final String TAG = "StudentSketches";
+
+    /**
+     * 建立 t-digest 的数值列
+     */
+    public static final String[] QUANTILE_COLUMNS = {"age"};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int precision;
+    private final double compression;
+    private final int depth;
+    private final int width;
+    private final int topK;
+    private final long rebuildSeconds;
+
+    /**
+     * 当前草图；重建期间的写入同时记到 pending，重建完成后合并进新草图。都由 this 保护
+     */
+    private Map<String, ColumnSketch> sketchMap;
+    private Map<String, ColumnSketch> pending;
+    private long staleRows;
+    private volatile boolean ready;
+
+    private long deltaCount;
+    private long rebuildCount;
+    private long lastRebuildTime;
+    private long lastRebuildMillis;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "student-sketches");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 一列的全部草图
+     */
+    static final class ColumnSketch {
+        final HyperLogLog distinct;
+        final CountMinSketch frequency;
+        final TDigest quantiles;
+
+        ColumnSketch(int precision, int depth, int width, int topK, double compression, boolean numeric) {
+            distinct = new HyperLogLog(precision);
+            frequency = new CountMinSketch(depth, width, topK);
+            quantiles = numeric ? new TDigest(compression) : null;
+        }
+
+        void add(Object value) {
+            distinct.add(value);
+            frequency.add(value, 1);
+            if (quantiles != null && value instanceof Number) {
+                quantiles.add(((Number) value).doubleValue());
+            }
+        }
+
+        void remove(Object value) {
+            frequency.add(value, -1);
+        }
+
+        void merge(ColumnSketch other) {
+            distinct.merge(other.distinct);
+            frequency.merge(other.frequency);
+            if (quantiles != null) {
+                quantiles.merge(other.quantiles);
+            }
+        }
+    }
+
+    public StudentSketches(JdbcTemplate jdbcTemplate
+            , @Value("${dataflow.approx.enabled:true}") boolean enabled
+            , @Value("${dataflow.approx.hll-precision:14}") int precision
+            , @Value("${dataflow.approx.tdigest-compression:100}") double compression
+            , @Value("${dataflow.approx.cms-depth:5}") int depth
+            , @Value("${dataflow.approx.cms-width:2048}") int width
+            , @Value("${dataflow.approx.top-k:20}") int topK
+            , @Value("${dataflow.approx.rebuild-seconds:600}") long rebuildSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.precision = precision;
+        this.compression = compression;
+        this.depth = depth;
+        this.width = width;
+        this.topK = topK;
+        this.rebuildSeconds = rebuildSeconds;
+        // 配置不合法时启动即失败
+        newSketchMap();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled == false) {
+            return;
+        }
+
+        rebuildQuietly();
+        if (rebuildSeconds > 0) {
+            scheduler.scheduleWithFixedDelay(this::rebuildQuietly, rebuildSeconds, rebuildSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * 无法取得写入前后的行镜像时调用，尽快异步重建
+     */
+    public void requestRebuild() {
+        if (enabled && scheduler.isShutdown() == false) {
+            scheduler.execute(this::rebuildQuietly);
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            Log.e(TAG, "rebuild  catch (Exception e) = " + e.getMessage());
+        }
+    }
+
+    private Map<String, ColumnSketch> newSketchMap() {
+        Map<String, ColumnSketch> map = new LinkedHashMap<>();
+        for (String column : StudentHistograms.COLUMNS) {
+            map.put(column, new ColumnSketch(precision, depth, width, topK, compression
+                    , Arrays.asList(QUANTILE_COLUMNS).contains(column)));
+        }
+        return map;
+    }
+
+    /**
+     * 流式扫描一次 Student 重建草图。扫描期间的写入可能已被扫描到，合并 pending 后会多计一次，误差在下次重建时消除
+     */
+    public void rebuild() {
+        synchronized (this) {
+            if (pending != null) {  // 已有重建在进行
+                return;
+            }
+            pending = newSketchMap();
+        }
+
+        long start = System.currentTimeMillis();
+        Map<String, ColumnSketch> scanned = newSketchMap();
+        try {
+            String sql = "SELECT grade, gender, age FROM " + StudentHistograms.TABLE + " WHERE status = 1";
+            jdbcTemplate.query(con -> StudentHistograms.prepareStreaming(con, sql), rs -> {
+                for (Map.Entry<String, ColumnSketch> entry : scanned.entrySet()) {
+                    entry.getValue().add(StudentHistograms.normalize(entry.getKey(), rs.getObject(entry.getKey())));
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pending = null;
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            for (Map.Entry<String, ColumnSketch> entry : scanned.entrySet()) {
+                entry.getValue().merge(pending.get(entry.getKey()));
+            }
+            sketchMap = scanned;
+            pending = null;
+            staleRows = 0;
+            ready = true;
+            rebuildCount++;
+            lastRebuildTime = System.currentTimeMillis();
+            lastRebuildMillis = lastRebuildTime - start;
+        }
+    }
+
+    /**按行镜像应用一次写入，值没有变化的列不更新
+     * @param before 写入前的行，POST 时为空
+     * @param after 写入后的行，DELETE 时为空
+     */
+    public synchronized void apply(List<Map<String, Object>> before, List<Map<String, Object>> after) {
+        if (ready == false && pending == null) {
+            return;
+        }
+
+        Map<Object, Map<String, Object>> beforeMap = new HashMap<>();
+        if (before != null) {
+            for (Map<String, Object> row : before) {
+                if (isActive(row.get("status"))) {
+                    beforeMap.put(row.get("id"), row);
+                }
+            }
+        }
+
+        if (after != null) {
+            for (Map<String, Object> row : after) {
+                if (isActive(row.get("status")) == false) {
+                    continue;
+                }
+
+                Map<String, Object> previous = beforeMap.remove(row.get("id"));
+                boolean changed = false;
+                for (String column : StudentHistograms.COLUMNS) {
+                    Object value = StudentHistograms.normalize(column, row.get(column));
+                    if (previous != null) {
+                        Object old = StudentHistograms.normalize(column, previous.get(column));
+                        if (Objects.equals(old, value)) {
+                            continue;
+                        }
+                        remove(column, old);
+                        changed = true;
+                    }
+                    add(column, value);
+                }
+                if (changed) {
+                    staleRows++;
+                }
+            }
+        }
+        // 删除或 status 不再为 1 的行
+        for (Map<String, Object> row : beforeMap.values()) {
+            for (String column : StudentHistograms.COLUMNS) {
+                remove(column, StudentHistograms.normalize(column, row.get(column)));
+            }
+            staleRows++;
+        }
+        deltaCount++;
+    }
+
+    private void add(String column, Object value) {
+        if (sketchMap != null) {
+            sketchMap.get(column).add(value);
+        }
+        if (pending != null) {
+            pending.get(column).add(value);
+        }
+    }
+
+    private void remove(String column, Object value) {
+        if (sketchMap != null) {
+            sketchMap.get(column).remove(value);
+        }
+        if (pending != null) {
+            pending.get(column).remove(value);
+        }
+    }
+
+    private static boolean isActive(Object status) {
+        return status instanceof Number ? ((Number) status).intValue() == 1 : Boolean.TRUE.equals(status);
+    }
+
+    /**查询一列的近似统计，每项都带误差范围
+     * @param quantiles 分位数，0 ~ 1，只对数值列有效
+     * @param top 返回的高频值个数，不超过 top-k
+     */
+    public synchronized JSONObject query(String column, double[] quantiles, int top) {
+        ColumnSketch sketch = sketchMap == null ? null : sketchMap.get(column);
+        if (sketch == null) {
+            throw new IllegalArgumentException("不支持的列: " + column + "，可选 " + String.join(", ", StudentHistograms.COLUMNS));
+        }
+
+        JSONObject result = new JSONObject(true);
+        // Count-Min 的总数由每次加减精确维护
+        result.put("count", sketch.frequency.getTotal());
+
+        long estimate = sketch.distinct.estimate();
+        double relativeError = sketch.distinct.getRelativeError();
+        JSONObject distinct = new JSONObject(true);
+        distinct.put("estimate", estimate);
+        distinct.put("relative_error", relativeError);
+        distinct.put("lower", (long) Math.floor(estimate * Math.max(0, 1 - 2 * relativeError)));
+        distinct.put("upper", (long) Math.ceil(estimate * (1 + 2 * relativeError)));
+        distinct.put("confidence", 0.95);
+        result.put("distinct", distinct);
+
+        JSONObject frequency = new JSONObject(true);
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (Map.Entry<Object, Long> entry : sketch.frequency.getHeavyHitters(Math.min(top, topK)).entrySet()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put(column, entry.getKey());
+            item.put("count", entry.getValue());
+            items.add(item);
+        }
+        frequency.put("items", items);
+        // 估计值只会偏大，真实值在 [count - max_overcount, count] 之间
+        frequency.put("max_overcount", sketch.frequency.getMaxOvercount());
+        frequency.put("confidence", sketch.frequency.getConfidence());
+        result.put("heavy_hitters", frequency);
+
+        TDigest digest = sketch.quantiles;
+        if (digest != null && digest.getCount() > 0) {
+            result.put("avg", digest.getMean());
+            result.put("min", digest.getMin());
+            result.put("max", digest.getMax());
+
+            List<Map<String, Object>> values = new ArrayList<>();
+            for (double q : quantiles) {
+                Map<String, Object> value = new LinkedHashMap<>();
+                value.put("q", q);
+                value.put("value", digest.quantile(q));
+                value.put("rank_error", digest.getRankError(q));
+                values.add(value);
+            }
+            result.put("quantiles", values);
+            result.put("centroids", digest.getCentroidCount());
+        }
+
+        // 大于 0 时 distinct、avg、quantiles 还包含已修改或删除的旧值，重建后恢复
+        result.put("stale_rows", staleRows);
+        return result;
+    }
+
+    public synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject(true);
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        stats.put("rebuildSeconds", rebuildSeconds);
+        stats.put("hllPrecision", precision);
+        stats.put("tdigestCompression", compression);
+        stats.put("cmsDepth", depth);
+        stats.put("cmsWidth", width);
+        stats.put("staleRows", staleRows);
+        stats.put("deltaCount", deltaCount);
+        stats.put("rebuildCount", rebuildCount);
+        stats.put("lastRebuildTime", lastRebuildTime);
+        stats.put("lastRebuildMillis", lastRebuildMillis);
+        return stats;
+    }
+}
@@ -0,0 +1,338 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import apijson.Log;
+
+import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 学生入学、离校趋势
+ * 按天汇总到 StudentDaily 表：enrolled 为当天变为在读（status = 1）的人数，churned 为当天不再在读的人数。
+ * 表为空时按 Student.create_time、update_time 回填一次，之后由 DemoSQLExecutor 在事务提交后按行镜像增量累加，查询只读汇总表。
+ * 周、月由日汇总合并，点数超过 maxPoints 时用 LTTB 降采样。
+ */
+@Component
+public class StudentTrends {
+    private static final String TAG = "StudentTrends";
+
+    public static final String TABLE = "StudentDaily";
+
+    /**
+     * 时间粒度，week 从周一开始
+     */
+    public enum Unit {
+        DAY, WEEK, MONTH;
+
+        public static Unit of(String unit) {
+            if (unit == null || unit.isBlank()) {
+                return DAY;
+            }
+            try {
+                return valueOf(unit.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的 unit: " + unit + "，可选 day, week, month");
+            }
+        }
+
+        LocalDate start(LocalDate date) {
+            switch (this) {
+                case WEEK:
+                    return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH:
+                    return date.withDayOfMonth(1);
+                default:
+                    return date;
+            }
+        }
+
+        LocalDate next(LocalDate start) {
+            switch (this) {
+                case WEEK:
+                    return start.plusWeeks(1);
+                case MONTH:
+                    return start.plusMonths(1);
+                default:
+                    return start.plusDays(1);
+            }
+        }
+
+        /**
+         * 未指定 from 时的默认范围
+         */
+        LocalDate defaultFrom(LocalDate to) {
+            switch (this) {
+                case WEEK:
+                    return to.minusWeeks(25);
+                case MONTH:
+                    return to.minusMonths(11);
+                default:
+                    return to.minusDays(29);
+            }
+        }
+    }
+
+    /**
+     * 降采样时用于选点的序列
+     */
+    public static final String[] METRICS = {"enrolled", "churned", "net", "total"};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int maxPoints;
+    private final long maxDays;
+
+    private volatile boolean ready;
+    private long applyCount;
+    private long skipCount;
+
+    public StudentTrends(JdbcTemplate jdbcTemplate
+            , @Value("${dataflow.trend.enabled:true}") boolean enabled
+            , @Value("${dataflow.trend.max-points:200}") int maxPoints
+            , @Value("${dataflow.trend.max-days:3660}") long maxDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.maxPoints = maxPoints;
+        this.maxDays = maxDays;
+    }
+
+    /**
+     * DatabaseInitializer 建表和写入测试数据后再回填
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled == false) {
+            return;
+        }
+
+        try {
+            backfill();
+        } catch (Exception e) {
+            Log.e(TAG, "onApplicationReady  catch (Exception e) = " + e.getMessage());
+        }
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    public int getMaxPoints() {
+        return maxPoints;
+    }
+
+    /**
+     * 汇总表为空时从 Student 回填，之前被跳过的增量也包含在内
+     */
+    public synchronized void backfill() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + TABLE, Integer.class);
+        if (count != null && count > 0) {
+            ready = true;
+            return;
+        }
+
+        Map<LocalDate, long[]> dayMap = new TreeMap<>();
+        jdbcTemplate.query("SELECT CAST(create_time AS DATE) AS d, COUNT(*) AS c FROM " + StudentHistograms.TABLE
+                + " WHERE create_time IS NOT NULL GROUP BY CAST(create_time AS DATE)", rs -> {
+            dayMap.computeIfAbsent(rs.getDate("d").toLocalDate(), k -> new long[2])[0] += rs.getLong("c");
+        });
+        // 离校时间没有单独记录，以最后修改时间为准
+        jdbcTemplate.query("SELECT CAST(update_time AS DATE) AS d, COUNT(*) AS c FROM " + StudentHistograms.TABLE
+                + " WHERE status <> 1 AND update_time IS NOT NULL GROUP BY CAST(update_time AS DATE)", rs -> {
+            dayMap.computeIfAbsent(rs.getDate("d").toLocalDate(), k -> new long[2])[1] += rs.getLong("c");
+        });
+
+        List<Object[]> args = new ArrayList<>(dayMap.size());
+        for (Map.Entry<LocalDate, long[]> entry : dayMap.entrySet()) {
+            args.add(new Object[]{Date.valueOf(entry.getKey()), entry.getValue()[0], entry.getValue()[1]});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO " + TABLE + " (stat_date, enrolled, churned) VALUES (?, ?, ?)", args);
+        ready = true;
+        Log.d(TAG, "backfill  回填 " + args.size() + " 天");
+    }
+
+    /**按行镜像累加当天的入学、离校人数，行以 id 对应
+     * @param before 写入前的行，POST 时为空
+     * @param after 写入后的行，DELETE 时为空
+     */
+    public synchronized void apply(List<Map<String, Object>> before, List<Map<String, Object>> after) {
+        if (ready == false) {
+            // 回填前的写入由回填覆盖
+            skipCount++;
+            return;
+        }
+
+        Map<String, Boolean> activeMap = new HashMap<>();
+        if (before != null) {
+            for (Map<String, Object> row : before) {
+                activeMap.put(String.valueOf(row.get("id")), isActive(row.get("status")));
+            }
+        }
+
+        long enrolled = 0;
+        long churned = 0;
+        if (after != null) {
+            for (Map<String, Object> row : after) {
+                Boolean wasActive = activeMap.remove(String.valueOf(row.get("id")));
+                boolean active = isActive(row.get("status"));
+                if (active && Boolean.TRUE.equals(wasActive) == false) {
+                    enrolled++;
+                } else if (active == false && Boolean.TRUE.equals(wasActive)) {
+                    churned++;
+                }
+            }
+        }
+        // 已删除的行
+        for (Boolean wasActive : activeMap.values()) {
+            if (wasActive) {
+                churned++;
+            }
+        }
+
+        if (enrolled > 0 || churned > 0) {
+            add(LocalDate.now(), enrolled, churned);
+            applyCount++;
+        }
+    }
+
+    private void add(LocalDate day, long enrolled, long churned) {
+        String updateSql = "UPDATE " + TABLE + " SET enrolled = enrolled + ?, churned = churned + ? WHERE stat_date = ?";
+        if (jdbcTemplate.update(updateSql, enrolled, churned, Date.valueOf(day)) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update("INSERT INTO " + TABLE + " (stat_date, enrolled, churned) VALUES (?, ?, ?)", Date.valueOf(day), enrolled, churned);
+        } catch (DuplicateKeyException e) {
+            // 其它实例刚插入了同一天
+            jdbcTemplate.update(updateSql, enrolled, churned, Date.valueOf(day));
+        }
+    }
+
+    private static boolean isActive(Object status) {
+        return status instanceof Number ? ((Number) status).intValue() == 1 : Boolean.TRUE.equals(status);
+    }
+
+    /**按粒度汇总 [from, to] 的趋势，没有数据的区间补 0
+     * @return [{date, enrolled, churned, net, total}]，total 为区间结束时的在读人数
+     */
+    public List<Map<String, Object>> query(Unit unit, LocalDate from, LocalDate to) {
+        LocalDate start = unit.start(from);
+        LocalDate end = unit.next(unit.start(to));
+        if (start.isAfter(to)) {
+            throw new IllegalArgumentException("from 不能晚于 to");
+        }
+        if (maxDays > 0 && ChronoUnit.DAYS.between(start, end) > maxDays) {
+            throw new IllegalArgumentException("时间范围超过 " + maxDays + " 天");
+        }
+
+        Long base = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(enrolled - churned), 0) FROM " + TABLE
+                + " WHERE stat_date < ?", Long.class, Date.valueOf(start));
+
+        Map<LocalDate, long[]> bucketMap = new LinkedHashMap<>();
+        for (LocalDate d = start; d.isBefore(end); d = unit.next(d)) {
+            bucketMap.put(d, new long[2]);
+        }
+        jdbcTemplate.query("SELECT stat_date, enrolled, churned FROM " + TABLE + " WHERE stat_date >= ? AND stat_date < ?", rs -> {
+            long[] bucket = bucketMap.get(unit.start(rs.getDate("stat_date").toLocalDate()));
+            if (bucket != null) {
+                bucket[0] += rs.getLong("enrolled");
+                bucket[1] += rs.getLong("churned");
+            }
+        }, Date.valueOf(start), Date.valueOf(end));
+
+        long total = base == null ? 0 : base;
+        List<Map<String, Object>> rows = new ArrayList<>(bucketMap.size());
+        for (Map.Entry<LocalDate, long[]> entry : bucketMap.entrySet()) {
+            long[] bucket = entry.getValue();
+            total += bucket[0] - bucket[1];
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("date", entry.getKey().toString());
+            row.put("enrolled", bucket[0]);
+            row.put("churned", bucket[1]);
+            row.put("net", bucket[0] - bucket[1]);
+            row.put("total", total);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**Largest-Triangle-Three-Buckets 降采样，保留首尾点，按 metric 序列选出视觉上最重要的点
+     * @param rows query 的结果，下标作为 x
+     * @param metric 选点依据的序列，见 METRICS
+     * @param threshold 目标点数，小于 3 或不少于 rows 个数时原样返回
+     */
+    public static List<Map<String, Object>> downsample(List<Map<String, Object>> rows, String metric, int threshold) {
+        int size = rows.size();
+        if (threshold < 3 || threshold >= size) {
+            return rows;
+        }
+
+        double[] y = new double[size];
+        for (int i = 0; i < size; i++) {
+            y[i] = ((Number) rows.get(i).get(metric)).doubleValue();
+        }
+
+        List<Map<String, Object>> sampled = new ArrayList<>(threshold);
+        sampled.add(rows.get(0));
+
+        // 除首尾外分为 threshold - 2 个桶，每个桶选与上一个选中点、下一个桶均值构成三角形面积最大的点
+        double every = (double) (size - 2) / (threshold - 2);
+        int a = 0;
+        for (int i = 0; i < threshold - 2; i++) {
+            int nextStart = (int) Math.floor((i + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((i + 2) * every) + 1, size);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += j;
+                avgY += y[j];
+            }
+            int nextCount = nextEnd - nextStart;
+            avgX /= nextCount;
+            avgY /= nextCount;
+
+            int start = (int) Math.floor(i * every) + 1;
+            int end = (int) Math.floor((i + 1) * every) + 1;
+            double maxArea = -1;
+            int maxIndex = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((a - avgX) * (y[j] - y[a]) - (a - j) * (avgY - y[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = j;
+                }
+            }
+            sampled.add(rows.get(maxIndex));
+            a = maxIndex;
+        }
+
+        sampled.add(rows.get(size - 1));
+        return sampled;
+    }
+
+    public synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject(true);
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        stats.put("maxPoints", maxPoints);
+        stats.put("applyCount", applyCount);
+        stats.put("skipCount", skipCount);
+        return stats;
+    }
+}
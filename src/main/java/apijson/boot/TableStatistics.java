@@ -0,0 +1,299 @@
+package apijson.boot;
+
+import com.alibaba.fastjson.JSONObject;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import apijson.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 表统计信息：行数、各列不同值个数、数据和索引大小
+ * 后台定期从数据库的统计信息读取，不扫描表：MySQL 读 information_schema.TABLES 和 STATISTICS（只有索引列有不同值个数），
+ * H2 先 ANALYZE 抽样再读 INFORMATION_SCHEMA.TABLES 和 COLUMNS.SELECTIVITY，其它数据库后台执行 COUNT(*)。
+ * 两次刷新之间经 DemoSQLExecutor 提交的 POST、DELETE 按影响行数累加到行数上。请求只读内存，同时返回数据的时效。
+ */
+@Component
+public class TableStatistics {
+    private static final String TAG = "TableStatistics";
+
+    /**
+     * 一次刷新得到的一张表的统计，不可变
+     */
+    static final class Stat {
+        final Long rows;
+        final Long dataBytes;
+        final Long indexBytes;
+        final Map<String, Long> cardinality;
+        final boolean estimated;
+        final long refreshTime;
+
+        Stat(Long rows, Long dataBytes, Long indexBytes, Map<String, Long> cardinality, boolean estimated, long refreshTime) {
+            this.rows = rows;
+            this.dataBytes = dataBytes;
+            this.indexBytes = indexBytes;
+            this.cardinality = cardinality;
+            this.estimated = estimated;
+            this.refreshTime = refreshTime;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final List<String> tables;
+    private final long refreshSeconds;
+    private final boolean exactCount;
+    private final int analyzeSampleSize;
+
+    private volatile Map<String, Stat> statMap = Map.of();
+    /**
+     * 上次刷新以来提交的行数变化，表名小写
+     */
+    private final Map<String, AtomicLong> deltaMap = new ConcurrentHashMap<>();
+    private volatile String source;
+    private volatile boolean connected;
+    private volatile String lastError;
+    private volatile long lastRefreshMillis;
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "table-statistics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TableStatistics(JdbcTemplate jdbcTemplate
+            , @Value("${dataflow.table-stats.tables:Student,Parent}") String tables
+            , @Value("${dataflow.table-stats.refresh-seconds:60}") long refreshSeconds
+            , @Value("${dataflow.table-stats.exact-count:false}") boolean exactCount
+            , @Value("${dataflow.table-stats.analyze-sample-size:10000}") int analyzeSampleSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tables = new ArrayList<>();
+        for (String table : tables.split(",")) {
+            if (table.isBlank() == false) {
+                this.tables.add(table.trim());
+            }
+        }
+        this.refreshSeconds = refreshSeconds > 0 ? refreshSeconds : 60;
+        this.exactCount = exactCount;
+        this.analyzeSampleSize = analyzeSampleSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 事务提交后由 DemoSQLExecutor 调用，POST 为正数，DELETE 为负数
+     */
+    public void addRows(String table, long delta) {
+        if (delta != 0) {
+            deltaMap.computeIfAbsent(table.toLowerCase(), k -> new AtomicLong()).addAndGet(delta);
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+            connected = true;
+            lastError = null;
+        } catch (Exception e) {
+            connected = false;
+            lastError = e.getMessage();
+            Log.e(TAG, "refresh  catch (Exception e) = " + e.getMessage());
+        }
+    }
+
+    /**
+     * 刷新开始前记下各表已累加的变化，刷新后只减去这部分，刷新期间的写入继续保留
+     */
+    public void refresh() {
+        long start = System.currentTimeMillis();
+        Map<String, Long> baseDeltas = new LinkedHashMap<>();
+        for (String table : tables) {
+            AtomicLong delta = deltaMap.get(table.toLowerCase());
+            baseDeltas.put(table, delta == null ? 0 : delta.get());
+        }
+
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) con -> con.getMetaData().getDatabaseProductName());
+        String name = product == null ? "" : product.toLowerCase();
+        Map<String, Stat> refreshed;
+        if (exactCount == false && name.contains("mysql")) {
+            refreshed = readMySQL(start);
+            source = "information_schema";
+        } else if (exactCount == false && name.contains("h2")) {
+            refreshed = readH2(start);
+            source = "h2_information_schema";
+        } else {
+            refreshed = readCount(start);
+            source = "count";
+        }
+
+        statMap = refreshed;
+        for (Map.Entry<String, Long> entry : baseDeltas.entrySet()) {
+            if (entry.getValue() != 0) {
+                deltaMap.get(entry.getKey().toLowerCase()).addAndGet(-entry.getValue());
+            }
+        }
+        refreshCount.incrementAndGet();
+        lastRefreshMillis = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * InnoDB 的 TABLE_ROWS 是抽样估计值，误差可能较大；索引列的 CARDINALITY 同样是估计值，取索引第一列
+     */
+    private Map<String, Stat> readMySQL(long refreshTime) {
+        Map<String, Map<String, Long>> cardinalityMap = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT TABLE_NAME, COLUMN_NAME, MAX(CARDINALITY) AS CARDINALITY FROM information_schema.STATISTICS"
+                + " WHERE TABLE_SCHEMA = DATABASE() AND SEQ_IN_INDEX = 1 GROUP BY TABLE_NAME, COLUMN_NAME", rs -> {
+            String table = find(rs.getString("TABLE_NAME"));
+            if (table != null) {
+                cardinalityMap.computeIfAbsent(table, k -> new LinkedHashMap<>())
+                        .put(rs.getString("COLUMN_NAME").toLowerCase(), toLong(rs.getObject("CARDINALITY")));
+            }
+        });
+
+        Map<String, Stat> map = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT TABLE_NAME, TABLE_ROWS, DATA_LENGTH, INDEX_LENGTH FROM information_schema.TABLES"
+                + " WHERE TABLE_SCHEMA = DATABASE()", rs -> {
+            String table = find(rs.getString("TABLE_NAME"));
+            if (table != null) {
+                map.put(table, new Stat(toLong(rs.getObject("TABLE_ROWS")), toLong(rs.getObject("DATA_LENGTH"))
+                        , toLong(rs.getObject("INDEX_LENGTH")), cardinalityMap.getOrDefault(table, Map.of()), true, refreshTime));
+            }
+        });
+        return map;
+    }
+
+    /**
+     * H2 的 ROW_COUNT_ESTIMATE 对 MVStore 表是准确的；SELECTIVITY 为不同值占行数的百分比（整数），ANALYZE 后才有意义
+     */
+    private Map<String, Stat> readH2(long refreshTime) {
+        Map<String, Long> rowMap = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT TABLE_NAME, ROW_COUNT_ESTIMATE FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = SCHEMA()", rs -> {
+            String table = find(rs.getString("TABLE_NAME"));
+            if (table != null) {
+                rowMap.put(table, toLong(rs.getObject("ROW_COUNT_ESTIMATE")));
+            }
+        });
+
+        for (String table : rowMap.keySet()) {
+            jdbcTemplate.execute("ANALYZE TABLE " + table + " SAMPLE_SIZE " + analyzeSampleSize);
+        }
+
+        Map<String, Map<String, Long>> cardinalityMap = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT TABLE_NAME, COLUMN_NAME, SELECTIVITY FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = SCHEMA()", rs -> {
+            String table = find(rs.getString("TABLE_NAME"));
+            Long rows = table == null ? null : rowMap.get(table);
+            if (rows != null) {
+                long selectivity = rs.getLong("SELECTIVITY");
+                cardinalityMap.computeIfAbsent(table, k -> new LinkedHashMap<>())
+                        .put(rs.getString("COLUMN_NAME").toLowerCase(), rows <= 0 ? 0 : Math.max(1, rows * selectivity / 100));
+            }
+        });
+
+        Map<String, Stat> map = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : rowMap.entrySet()) {
+            String table = entry.getKey();
+            Long bytes = jdbcTemplate.queryForObject("SELECT DISK_SPACE_USED(?)", Long.class, table.toUpperCase());
+            map.put(table, new Stat(entry.getValue(), bytes, null, cardinalityMap.getOrDefault(table, Map.of()), false, refreshTime));
+        }
+        return map;
+    }
+
+    /**
+     * 没有可用的统计信息或配置了 exact-count 时在后台精确计数，不提供不同值个数和大小
+     */
+    private Map<String, Stat> readCount(long refreshTime) {
+        Map<String, Stat> map = new LinkedHashMap<>();
+        for (String table : tables) {
+            Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+            map.put(table, new Stat(rows, null, null, Map.of(), false, refreshTime));
+        }
+        return map;
+    }
+
+    /**
+     * @return 配置中的表名，不在配置中时为 null
+     */
+    private String find(String table) {
+        for (String t : tables) {
+            if (t.equalsIgnoreCase(table)) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    private static Long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+
+    /**
+     * @return 最近一次刷新的行数加上之后提交的变化，尚未刷新或表不存在时为 null
+     */
+    public Long getRowCount(String table) {
+        String name = find(table);
+        Stat stat = name == null ? null : statMap.get(name);
+        if (stat == null || stat.rows == null) {
+            return null;
+        }
+        AtomicLong delta = deltaMap.get(table.toLowerCase());
+        return Math.max(0, stat.rows + (delta == null ? 0 : delta.get()));
+    }
+
+    /**
+     * 最近一次刷新是否成功，用于健康检查
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public JSONObject getStats() {
+        long now = System.currentTimeMillis();
+        JSONObject stats = new JSONObject(true);
+        stats.put("source", source);
+        stats.put("refreshSeconds", refreshSeconds);
+        stats.put("connected", connected);
+        stats.put("lastError", lastError);
+        stats.put("refreshCount", refreshCount.get());
+        stats.put("lastRefreshMillis", lastRefreshMillis);
+
+        JSONObject tableStats = new JSONObject(true);
+        for (String table : tables) {
+            Stat stat = statMap.get(table);
+            AtomicLong delta = deltaMap.get(table.toLowerCase());
+            JSONObject item = new JSONObject(true);
+            item.put("rows", getRowCount(table));
+            item.put("estimated", stat != null && stat.estimated);
+            item.put("delta_since_refresh", delta == null ? 0 : delta.get());
+            item.put("data_bytes", stat == null ? null : stat.dataBytes);
+            item.put("index_bytes", stat == null ? null : stat.indexBytes);
+            item.put("cardinality", stat == null ? Map.of() : stat.cardinality);
+            item.put("refresh_time", stat == null ? null : stat.refreshTime);
+            item.put("staleness_millis", stat == null ? null : now - stat.refreshTime);
+            tableStats.put(table, item);
+        }
+        stats.put("tables", tableStats);
+        return stats;
+    }
+}
@@ -0,0 +1,43 @@
+package apijson.boot;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 表数据版本号
+ * 经 DemoSQLExecutor 执行的 POST/PUT/DELETE 会递增对应表的版本，读缓存据此判断是否需要重新计算。
+ * 表名忽略大小写
+ */
+public class TableVersions {
+
+    private static final Map<String, AtomicLong> VERSION_MAP = new ConcurrentHashMap<>();
+
+    private TableVersions() {
+    }
+
+    public static long get(String table) {
+        AtomicLong version = VERSION_MAP.get(normalize(table));
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * @return 递增后的版本号
+     */
+    public static long increment(String table) {
+        return VERSION_MAP.computeIfAbsent(normalize(table), k -> new AtomicLong()).incrementAndGet();
+    }
+
+    public static Map<String, Long> getAll() {
+        Map<String, Long> map = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : VERSION_MAP.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().get());
+        }
+        return map;
+    }
+
+    private static String normalize(String table) {
+        return table == null ? "" : table.toLowerCase();
+    }
+}
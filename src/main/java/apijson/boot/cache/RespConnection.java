@@ -0,0 +1,143 @@
+package apijson.boot.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Redis 协议（RESP2）的单个连接，只实现缓存需要的请求和回复解析，可连接 Redis、KeyDB、Valkey 等兼容服务
+ * 参数为 String（按 UTF-8）、byte[] 或数字；回复中简单字符串为 String，整数为 Long，批量字符串为 byte[]，数组为 List，空值为 null。
+ * 错误回复和网络错误都抛出 IOException，出错后连接不可再用。非线程安全。
+ */
+public class RespConnection implements Closeable {
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    public RespConnection(String host, int port, int timeoutMillis) throws IOException {
+        socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = new BufferedOutputStream(socket.getOutputStream());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 读取回复的超时时间，0 表示一直等待，订阅时使用
+     */
+    public void setReadTimeout(int timeoutMillis) throws IOException {
+        socket.setSoTimeout(timeoutMillis);
+    }
+
+    /**
+     * 发送一个命令并读取回复
+     */
+    public Object call(Object... args) throws IOException {
+        send(args);
+        return read();
+    }
+
+    public void send(Object... args) throws IOException {
+        writeLine('*', args.length);
+        for (Object arg : args) {
+            byte[] bytes = arg instanceof byte[] ? (byte[]) arg : String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+            writeLine('$', bytes.length);
+            out.write(bytes);
+            out.write('\r');
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    private void writeLine(char type, int value) throws IOException {
+        out.write(type);
+        out.write(Integer.toString(value).getBytes(StandardCharsets.US_ASCII));
+        out.write('\r');
+        out.write('\n');
+    }
+
+    public Object read() throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            throw new EOFException("连接已关闭");
+        }
+
+        String line = readLine();
+        switch (type) {
+            case '+':
+                return line;
+            case '-':
+                throw new IOException("Redis 返回错误 " + line);
+            case ':':
+                return Long.parseLong(line);
+            case '$': {
+                int length = Integer.parseInt(line);
+                if (length < 0) {
+                    return null;
+                }
+                byte[] bytes = in.readNBytes(length);
+                if (bytes.length < length || in.read() != '\r' || in.read() != '\n') {
+                    throw new EOFException("批量字符串不完整");
+                }
+                return bytes;
+            }
+            case '*': {
+                int count = Integer.parseInt(line);
+                if (count < 0) {
+                    return null;
+                }
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(read());
+                }
+                return list;
+            }
+            default:
+                throw new IOException("无法识别的回复类型 " + (char) type);
+        }
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b < 0) {
+                throw new EOFException("连接已关闭");
+            }
+            sb.append((char) b);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("回复行没有以 CRLF 结尾");
+        }
+        return sb.toString();
+    }
+
+    public static String string(Object reply) {
+        return reply instanceof byte[] ? new String((byte[]) reply, StandardCharsets.UTF_8) : (reply == null ? null : reply.toString());
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 关闭失败不影响调用方，连接已不再使用
+        }
+    }
+}
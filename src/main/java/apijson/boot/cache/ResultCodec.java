@@ -0,0 +1,357 @@
+package apijson.boot.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 查询结果的二进制编码，用于远程缓存
+ * 格式：'Q'、版本、标志，之后为正文（超过阈值且压缩后更小时为 Deflate 压缩）：
+ * 读取的表和版本，列名字典，各行按 列序号 + 类型标记 + 值 写入，整数用 zigzag 变长编码。
+ * 值只保留 JDBC 和 APIJSON 常见的类型，其它类型按 JSON 字符串保存。
+ */
+public final class ResultCodec {
+
+    private static final int MAGIC = 'Q';
+    private static final int VERSION = 1;
+    private static final int FLAG_DEFLATE = 1;
+
+    private static final int NULL = 0, TRUE = 1, FALSE = 2, INT = 3, LONG = 4, DOUBLE = 5, FLOAT = 6, STRING = 7
+            , DECIMAL = 8, BIG_INTEGER = 9, TIMESTAMP = 10, SQL_DATE = 11, SQL_TIME = 12, DATE = 13
+            , LOCAL_DATE_TIME = 14, LOCAL_DATE = 15, BYTES = 16, OBJECT = 17, ARRAY = 18, JSON_STRING = 19;
+
+    private ResultCodec() {
+    }
+
+    /**
+     * 解码结果
+     */
+    public static final class Decoded {
+        public final List<String> tables;
+        public final long[] generations;
+        public final List<JSONObject> rows;
+
+        Decoded(List<String> tables, long[] generations, List<JSONObject> rows) {
+            this.tables = tables;
+            this.generations = generations;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * @param tables 读取的表，和 generations 一一对应
+     * @param compressThreshold 正文超过该字节数时尝试压缩，小于等于 0 表示不压缩
+     */
+    public static byte[] encode(Collection<String> tables, long[] generations, List<JSONObject> rows, int compressThreshold) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(body);
+
+        writeVarLong(out, tables.size());
+        int i = 0;
+        for (String table : tables) {
+            writeString(out, table);
+            writeVarLong(out, generations[i++]);
+        }
+
+        Map<String, Integer> columnMap = new LinkedHashMap<>();
+        for (JSONObject row : rows) {
+            if (row != null) {
+                for (String key : row.keySet()) {
+                    columnMap.putIfAbsent(key, columnMap.size());
+                }
+            }
+        }
+        writeVarLong(out, columnMap.size());
+        for (String column : columnMap.keySet()) {
+            writeString(out, column);
+        }
+
+        writeVarLong(out, rows.size());
+        for (JSONObject row : rows) {
+            if (row == null) {
+                writeVarLong(out, -1);
+                continue;
+            }
+            writeVarLong(out, row.size());
+            for (Map.Entry<String, Object> entry : row.entrySet()) {
+                writeVarLong(out, columnMap.get(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        }
+        out.flush();
+
+        byte[] raw = body.toByteArray();
+        int flags = 0;
+        if (compressThreshold > 0 && raw.length > compressThreshold) {
+            byte[] compressed = deflate(raw);
+            if (compressed.length < raw.length) {
+                raw = compressed;
+                flags |= FLAG_DEFLATE;
+            }
+        }
+
+        byte[] bytes = new byte[raw.length + 3];
+        bytes[0] = (byte) MAGIC;
+        bytes[1] = (byte) VERSION;
+        bytes[2] = (byte) flags;
+        System.arraycopy(raw, 0, bytes, 3, raw.length);
+        return bytes;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2);
+            byte[] buffer = new byte[4096];
+            while (deflater.finished() == false) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static boolean isCompressed(byte[] bytes) {
+        return bytes.length >= 3 && (bytes[2] & FLAG_DEFLATE) != 0;
+    }
+
+    public static Decoded decode(byte[] bytes) throws IOException {
+        if (bytes.length < 3 || bytes[0] != MAGIC || bytes[1] != VERSION) {
+            throw new IOException("不是可识别的缓存数据");
+        }
+
+        InputStream body = new ByteArrayInputStream(bytes, 3, bytes.length - 3);
+        if ((bytes[2] & FLAG_DEFLATE) != 0) {
+            body = new InflaterInputStream(body);
+        }
+        try (DataInputStream in = new DataInputStream(body)) {
+            int tableCount = (int) readVarLong(in);
+            List<String> tables = new ArrayList<>(tableCount);
+            long[] generations = new long[tableCount];
+            for (int i = 0; i < tableCount; i++) {
+                tables.add(readString(in));
+                generations[i] = readVarLong(in);
+            }
+
+            int columnCount = (int) readVarLong(in);
+            String[] columns = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columns[i] = readString(in);
+            }
+
+            int rowCount = (int) readVarLong(in);
+            List<JSONObject> rows = new ArrayList<>(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                int size = (int) readVarLong(in);
+                if (size < 0) {
+                    rows.add(null);
+                    continue;
+                }
+                JSONObject row = new JSONObject(size, true);
+                for (int j = 0; j < size; j++) {
+                    String column = columns[(int) readVarLong(in)];
+                    row.put(column, readValue(in));
+                }
+                rows.add(row);
+            }
+            return new Decoded(tables, generations, rows);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(INT);
+            writeVarLong(out, ((Number) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            writeVarLong(out, (Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            writeString(out, value.toString());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeString(out, value.toString());
+        } else if (value instanceof java.sql.Timestamp) {
+            java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+            out.writeByte(TIMESTAMP);
+            writeVarLong(out, timestamp.getTime());
+            writeVarLong(out, timestamp.getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(SQL_DATE);
+            writeVarLong(out, ((java.sql.Date) value).getTime());
+        } else if (value instanceof java.sql.Time) {
+            out.writeByte(SQL_TIME);
+            writeVarLong(out, ((java.sql.Time) value).getTime());
+        } else if (value instanceof java.util.Date) {
+            out.writeByte(DATE);
+            writeVarLong(out, ((java.util.Date) value).getTime());
+        } else if (value instanceof LocalDateTime) {
+            out.writeByte(LOCAL_DATE_TIME);
+            writeString(out, value.toString());
+        } else if (value instanceof LocalDate) {
+            out.writeByte(LOCAL_DATE);
+            writeString(out, value.toString());
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(OBJECT);
+            writeVarLong(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> list = (Collection<?>) value;
+            out.writeByte(ARRAY);
+            writeVarLong(out, list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else {
+            out.writeByte(JSON_STRING);
+            writeString(out, JSON.toJSONString(value));
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return (int) readVarLong(in);
+            case LONG:
+                return readVarLong(in);
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case STRING:
+            case JSON_STRING:
+                return readString(in);
+            case DECIMAL:
+                return new BigDecimal(readString(in));
+            case BIG_INTEGER:
+                return new BigInteger(readString(in));
+            case TIMESTAMP: {
+                java.sql.Timestamp timestamp = new java.sql.Timestamp(readVarLong(in));
+                timestamp.setNanos((int) readVarLong(in));
+                return timestamp;
+            }
+            case SQL_DATE:
+                return new java.sql.Date(readVarLong(in));
+            case SQL_TIME:
+                return new java.sql.Time(readVarLong(in));
+            case DATE:
+                return new java.util.Date(readVarLong(in));
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.parse(readString(in));
+            case LOCAL_DATE:
+                return LocalDate.parse(readString(in));
+            case BYTES:
+                return readBytes(in, (int) readVarLong(in));
+            case OBJECT: {
+                int size = (int) readVarLong(in);
+                JSONObject object = new JSONObject(size, true);
+                for (int i = 0; i < size; i++) {
+                    String key = readString(in);
+                    object.put(key, readValue(in));
+                }
+                return object;
+            }
+            case ARRAY: {
+                int size = (int) readVarLong(in);
+                JSONArray array = new JSONArray(size);
+                for (int i = 0; i < size; i++) {
+                    array.add(readValue(in));
+                }
+                return array;
+            }
+            default:
+                throw new IOException("无法识别的值类型 " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in, (int) readVarLong(in)), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * zigzag 变长编码，绝对值小的数（包括负数）占用字节少
+     */
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IOException("变长整数过长");
+    }
+}
@@ -1,12 +1,22 @@
 package apijson.boot.jolt;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.bazaarvoice.jolt.Chainr;
-import com.bazaarvoice.jolt.JsonUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import apijson.boot.StudentHistograms;
+
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * JOLT JSON转换控制器 - 独立版本
@@ -15,99 +25,268 @@ import java.util.List;
 @RequestMapping("/jolt")
 @CrossOrigin(origins = "*")
 public class JoltController {
+
+    private final JoltSpecCache specCache;
+    private final JoltSpecRegistry specRegistry;
+    private final JoltExecutor joltExecutor;
+    private final JoltResultCache resultCache;
+    private final JoltRequestLimiter requestLimiter;
+    private final ObjectMapper objectMapper;
+    private final StudentHistograms histograms;
+    private final JoltResponseMode defaultMode;
+
+    public JoltController(JoltSpecCache specCache, JoltSpecRegistry specRegistry, JoltExecutor joltExecutor
+            , JoltResultCache resultCache, JoltRequestLimiter requestLimiter, ObjectMapper objectMapper
+            , StudentHistograms histograms, @Value("${jolt.response.default-mode:full}") String defaultMode) {
+        this.specCache = specCache;
+        this.specRegistry = specRegistry;
+        this.joltExecutor = joltExecutor;
+        this.resultCache = resultCache;
+        this.requestLimiter = requestLimiter;
+        this.objectMapper = objectMapper;
+        this.histograms = histograms;
+        this.defaultMode = JoltResponseMode.of(defaultMode, JoltResponseMode.OUTPUT_ONLY);
+    }
     
+    /**
+     * 单次转换，请求中 "cache": false 可跳过结果缓存，"timeout": 1000 可缩短时间预算（毫秒）。
+     * "mode" 指定响应格式：full 回显 input 和 spec，output-only 只返回 output，raw 直接返回 output 本身，默认见 jolt.response.default-mode。
+     * 命中缓存时直接写出之前序列化好的响应字节，响应头 X-Jolt-Cache 为 HIT 或 MISS。
+     * 输入超限返回 413，转换线程池已满返回 429，超过时间预算返回 503
+     */
     @PostMapping("/transform")
-    public JSONObject transform(@RequestBody JSONObject request) {
+    public ResponseEntity<?> transform(@RequestBody JSONObject request, HttpServletResponse servletResponse) {
         try {
+            JoltResponseMode mode = JoltResponseMode.of(request.getString("mode"), defaultMode);
             Object input = request.get("input");
             Object specObject = request.get("spec");
             
             if (input == null || specObject == null) {
-                return createErrorResponse("缺少必要参数: input 或 spec");
+                return ResponseEntity.ok(createErrorResponse("缺少必要参数: input 或 spec"));
             }
             
             List<Object> spec;
             if (specObject instanceof List) {
                 spec = (List<Object>) specObject;
             } else {
-                return createErrorResponse("spec必须是数组格式");
+                return ResponseEntity.ok(createErrorResponse("spec必须是数组格式"));
             }
             
-            Chainr chainr = Chainr.fromSpec(spec);
-            Object output = chainr.transform(input);
+            String limitError = checkLimit("spec", spec, "input", input);
+            if (limitError != null) {
+                return createErrorResponse(HttpStatus.PAYLOAD_TOO_LARGE, limitError);
+            }
             
-            JSONObject response = new JSONObject();
-            response.put("success", true);
-            response.put("input", input);
-            response.put("spec", spec);
-            response.put("output", output);
-            response.put("message", "转换成功");
+            // default/remove 会直接修改 input，必须在转换前计算 key
+            JoltResultCache.Key key = null;
+            if (resultCache.isEnabled(request.getBoolean("cache"))) {
+                key = JoltResultCache.keyOf(mode.name(), spec, input);
+                byte[] cached = resultCache.get(key);
+                if (cached != null) {
+                    return ResponseEntity.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .header("X-Jolt-Cache", "HIT")
+                            .body(cached);
+                }
+            }
             
-            return response;
+            Chainr chainr = specCache.get(spec);
+            Object output = joltExecutor.transform(chainr, input, request.getLongValue("timeout"));
             
+            if (mode == JoltResponseMode.RAW && key == null) {
+                JoltResponseMode.writeRaw(servletResponse, output);
+                return null;
+            }
+
+            JSONObject response = null;
+            if (mode != JoltResponseMode.RAW) {
+                response = new JSONObject();
+                response.put("success", true);
+                if (mode == JoltResponseMode.FULL) {
+                    response.put("input", input);
+                    response.put("spec", spec);
+                }
+                response.put("output", output);
+                if (mode == JoltResponseMode.FULL) {
+                    response.put("message", "转换成功");
+                }
+
+                if (key == null) {
+                    return ResponseEntity.ok(response);
+                }
+            }
+
+            byte[] body = response == null ? JoltResponseMode.toRawBytes(output) : objectMapper.writeValueAsBytes(response);
+            resultCache.put(key, body);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header("X-Jolt-Cache", "MISS")
+                    .body(body);
+            
+        } catch (RejectedExecutionException e) {
+            return createErrorResponse(HttpStatus.TOO_MANY_REQUESTS, "转换线程池已满，请稍后重试");
+        } catch (TimeoutException e) {
+            return createErrorResponse(HttpStatus.SERVICE_UNAVAILABLE, "转换超过时间预算 " + joltExecutor.getTimeoutMillis(request.getLongValue("timeout")) + " ms");
         } catch (Exception e) {
             e.printStackTrace();
-            return createErrorResponse("转换失败: " + e.getMessage());
+            return ResponseEntity.ok(createErrorResponse("转换失败: " + e.getMessage()));
         }
     }
     
-    @PostMapping("/grade-distribution")
-    public JSONObject transformGradeDistribution(@RequestBody JSONObject request) {
+    /**
+     * 批量转换：spec 只编译一次，inputs 在 JOLT 专用线程池中分块并行转换，outputs 与 inputs 顺序一致
+     * <pre>
+        {
+            "spec": [...],  // 与 /transform 相同，也可以用 "name": "grade-distribution" 引用 JoltSpec 表
+            "inputs": [{...}, {...}],
+            "parallelism": 4,  // 非必须，默认为线程池大小
+            "chunkSize": 64,  // 非必须
+            "timeout": 1000  // 非必须，时间预算（毫秒），超时后未开始的项返回错误
+        }
+     * </pre>
+     */
+    @PostMapping("/transform/batch")
+    public ResponseEntity<JSONObject> transformBatch(@RequestBody JSONObject request) {
         try {
-            List<Object> spec = getGradeDistributionSpec();
-            Chainr chainr = Chainr.fromSpec(spec);
-            Object output = chainr.transform(request);
-            
+            Object specObject = request.get("spec");
+            String name = request.getString("name");
+            JSONArray inputs = request.getJSONArray("inputs");
+
+            if (inputs == null || (specObject == null && name == null)) {
+                return ResponseEntity.ok(createErrorResponse("缺少必要参数: inputs 或 spec/name"));
+            }
+
+            String limitError = checkLimit("spec", specObject, "inputs", inputs);
+            if (limitError != null) {
+                return createErrorResponse(HttpStatus.PAYLOAD_TOO_LARGE, limitError);
+            }
+
+            Chainr chainr;
+            if (specObject instanceof List) {
+                @SuppressWarnings("unchecked")  // 请求体中的 JSON 数组，元素类型只能按 Object 处理
+                List<Object> spec = (List<Object>) specObject;
+                chainr = specCache.get(spec);
+            } else if (specObject != null) {
+                return ResponseEntity.ok(createErrorResponse("spec必须是数组格式"));
+            } else {
+                JoltSpecRegistry.JoltSpecEntry entry = specRegistry.get(name);
+                if (entry == null) {
+                    return ResponseEntity.ok(createErrorResponse("未找到 JOLT spec: " + name));
+                }
+                chainr = entry.getChainr();
+            }
+
+            int parallelism = request.getIntValue("parallelism");
+            int chunkSize = request.getIntValue("chunkSize");
+            List<JSONObject> results = joltExecutor.transformBatch(chainr, inputs, parallelism, chunkSize, request.getLongValue("timeout"));
+
+            JSONArray outputs = new JSONArray(results.size());
+            JSONArray errors = new JSONArray();
+            for (int i = 0; i < results.size(); i++) {
+                JSONObject item = results.get(i);
+                outputs.add(item.get("output"));
+                if (item.containsKey("error")) {
+                    JSONObject error = new JSONObject(true);
+                    error.put("index", i);
+                    error.put("error", item.getString("error"));
+                    errors.add(error);
+                }
+            }
+
             JSONObject response = new JSONObject();
-            response.put("success", true);
-            response.put("type", "grade-distribution");
-            response.put("chartType", "bar");
-            response.put("data", output);
-            
-            return response;
-            
+            response.put("success", errors.isEmpty());
+            response.put("count", outputs.size());
+            response.put("failedCount", errors.size());
+            response.put("outputs", outputs);
+            if (errors.isEmpty() == false) {
+                response.put("errors", errors);
+            }
+            response.put("message", errors.isEmpty() ? "转换成功" : "部分转换失败");
+
+            return ResponseEntity.ok(response);
+
+        } catch (RejectedExecutionException e) {
+            return createErrorResponse(HttpStatus.TOO_MANY_REQUESTS, "批量转换线程池已满，请稍后重试");
         } catch (Exception e) {
-            return createErrorResponse("年级分布数据转换失败: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseEntity.ok(createErrorResponse("批量转换失败: " + e.getMessage()));
         }
     }
     
+    /**
+     * 年级、性别、年龄分布：请求体没有 Student[] 时直接用 StudentHistograms 的计数转换，不需要先查询 APIJSON
+     */
+    @PostMapping("/grade-distribution")
+    public ResponseEntity<JSONObject> transformGradeDistribution(@RequestBody(required = false) JSONObject request) {
+        return transformByName("grade-distribution", null, withHistogram(request, "grade"), "bar", "年级分布数据转换失败: ");
+    }
+    
     @PostMapping("/gender-distribution")
-    public JSONObject transformGenderDistribution(@RequestBody JSONObject request) {
-        try {
-            List<Object> spec = getGenderDistributionSpec();
-            Chainr chainr = Chainr.fromSpec(spec);
-            Object output = chainr.transform(request);
-            
-            JSONObject response = new JSONObject();
-            response.put("success", true);
-            response.put("type", "gender-distribution");
-            response.put("chartType", "pie");
-            response.put("data", output);
-            
-            return response;
-            
-        } catch (Exception e) {
-            return createErrorResponse("性别分布数据转换失败: " + e.getMessage());
-        }
+    public ResponseEntity<JSONObject> transformGenderDistribution(@RequestBody(required = false) JSONObject request) {
+        return transformByName("gender-distribution", null, withHistogram(request, "gender"), "pie", "性别分布数据转换失败: ");
     }
     
     @PostMapping("/age-distribution")
-    public JSONObject transformAgeDistribution(@RequestBody JSONObject request) {
+    public ResponseEntity<JSONObject> transformAgeDistribution(@RequestBody(required = false) JSONObject request) {
+        return transformByName("age-distribution", null, withHistogram(request, "age"), "line", "年龄分布数据转换失败: ");
+    }
+
+    private JSONObject withHistogram(JSONObject request, String column) {
+        if ((request == null || request.containsKey("Student[]") == false) && histograms.isReady()) {
+            JSONObject input = new JSONObject(true);
+            input.put("Student[]", histograms.getRows(column));
+            return input;
+        }
+        return request == null ? new JSONObject() : request;
+    }
+
+    /**
+     * 使用 JoltSpec 表中最新版本的命名 spec 转换
+     */
+    @PostMapping("/{name}")
+    public ResponseEntity<JSONObject> transformByName(@PathVariable String name, @RequestBody JSONObject request) {
+        return transformByName(name, null, request, null, "转换失败: ");
+    }
+
+    /**
+     * 使用 JoltSpec 表中指定版本的命名 spec 转换
+     */
+    @PostMapping("/{name}/{version}")
+    public ResponseEntity<JSONObject> transformByNameAndVersion(@PathVariable String name, @PathVariable int version, @RequestBody JSONObject request) {
+        return transformByName(name, version, request, null, "转换失败: ");
+    }
+
+    private ResponseEntity<JSONObject> transformByName(String name, Integer version, JSONObject request, String chartType, String errorPrefix) {
         try {
-            List<Object> spec = getAgeDistributionSpec();
-            Chainr chainr = Chainr.fromSpec(spec);
-            Object output = chainr.transform(request);
+            JoltSpecRegistry.JoltSpecEntry entry = version == null ? specRegistry.get(name) : specRegistry.get(name, version);
+            if (entry == null) {
+                return ResponseEntity.ok(createErrorResponse("未找到 JOLT spec: " + name + (version == null ? "" : "@" + version)));
+            }
+
+            String limitError = requestLimiter.check("request", request);
+            if (limitError != null) {
+                return createErrorResponse(HttpStatus.PAYLOAD_TOO_LARGE, limitError);
+            }
+
+            Object output = joltExecutor.transform(entry.getChainr(), request, 0);
             
             JSONObject response = new JSONObject();
             response.put("success", true);
-            response.put("type", "age-distribution");
-            response.put("chartType", "line");
+            response.put("type", name);
+            response.put("version", entry.getVersion());
+            if (chartType != null) {
+                response.put("chartType", chartType);
+            }
             response.put("data", output);
             
-            return response;
+            return ResponseEntity.ok(response);
             
+        } catch (RejectedExecutionException e) {
+            return createErrorResponse(HttpStatus.TOO_MANY_REQUESTS, "转换线程池已满，请稍后重试");
+        } catch (TimeoutException e) {
+            return createErrorResponse(HttpStatus.SERVICE_UNAVAILABLE, errorPrefix + "超过时间预算 " + joltExecutor.getTimeoutMillis(0) + " ms");
         } catch (Exception e) {
-            return createErrorResponse("年龄分布数据转换失败: " + e.getMessage());
+            return ResponseEntity.ok(createErrorResponse(errorPrefix + e.getMessage()));
         }
     }
     
@@ -118,13 +297,32 @@ public class JoltController {
         response.put("service", "JOLT JSON转换服务");
         response.put("version", "1.0.0");
         response.put("description", "基于Bazaarvoice JOLT的JSON转换服务，专用于APIJSON数据格式转换");
-        response.put("supportedTransforms", new String[]{
-            "grade-distribution", "gender-distribution", "age-distribution"
-        });
+        response.put("supportedTransforms", specRegistry.getInfo());
         response.put("joltVersion", "0.1.7");
+        response.put("specCache", specCache.getStats());
+        response.put("resultCache", resultCache.getStats());
+        response.put("executor", joltExecutor.getStats());
+        response.put("limits", requestLimiter.getStats());
         
         return response;
     }
+
+    @GetMapping("/specs")
+    public JSONObject getSpecs() {
+        JSONObject response = new JSONObject();
+        response.put("success", true);
+        response.put("specs", specRegistry.getInfo());
+        return response;
+    }
+
+    @GetMapping("/cache")
+    public JSONObject getCacheStats() {
+        JSONObject response = new JSONObject();
+        response.put("success", true);
+        response.put("specCache", specCache.getStats());
+        response.put("resultCache", resultCache.getStats());
+        return response;
+    }
     
     @GetMapping("/test")
     public JSONObject test() {
@@ -134,9 +332,9 @@ public class JoltController {
                 "[{\"grade\":\"七年级\",\"count\":3},{\"grade\":\"八年级\",\"count\":2}]"
             ));
             
-            List<Object> spec = getGradeDistributionSpec();
-            Chainr chainr = Chainr.fromSpec(spec);
-            Object output = chainr.transform(testInput);
+            JoltSpecRegistry.JoltSpecEntry entry = specRegistry.get("grade-distribution");
+            List<Object> spec = entry.getSpec();
+            Object output = entry.getChainr().transform(testInput);
             
             JSONObject response = new JSONObject();
             response.put("success", true);
@@ -152,6 +350,15 @@ public class JoltController {
         }
     }
     
+    private String checkLimit(String name, Object value, String name2, Object value2) {
+        String error = requestLimiter.check(name, value);
+        return error != null ? error : requestLimiter.check(name2, value2);
+    }
+
+    private ResponseEntity<JSONObject> createErrorResponse(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(createErrorResponse(message));
+    }
+
     private JSONObject createErrorResponse(String message) {
         JSONObject response = new JSONObject();
         response.put("success", false);
@@ -159,52 +366,4 @@ public class JoltController {
         response.put("timestamp", System.currentTimeMillis());
         return response;
     }
-    
-    private List<Object> getGradeDistributionSpec() {
-        return JsonUtils.jsonToList(
-            "[{" +
-                "\"operation\": \"shift\"," +
-                "\"spec\": {" +
-                    "\"Student[]\": {" +
-                        "\"*\": {" +
-                            "\"grade\": \"categories[]\"," +
-                            "\"count\": \"values[]\"" +
-                        "}" +
-                    "}" +
-                "}" +
-            "}]"
-        );
-    }
-    
-    private List<Object> getGenderDistributionSpec() {
-        return JsonUtils.jsonToList(
-            "[{" +
-                "\"operation\": \"shift\"," +
-                "\"spec\": {" +
-                    "\"Student[]\": {" +
-                        "\"*\": {" +
-                            "\"gender\": \"[&1].gender\"," +
-                            "\"count\": \"[&1].value\"" +
-                        "}" +
-                    "}" +
-                "}" +
-            "}]"
-        );
-    }
-    
-    private List<Object> getAgeDistributionSpec() {
-        return JsonUtils.jsonToList(
-            "[{" +
-                "\"operation\": \"shift\"," +
-                "\"spec\": {" +
-                    "\"Student[]\": {" +
-                        "\"*\": {" +
-                            "\"age\": \"categories[]\"," +
-                            "\"count\": \"values[]\"" +
-                        "}" +
-                    "}" +
-                "}" +
-            "}]"
-        );
-    }
 }
\ No newline at end of file
@@ -0,0 +1,207 @@
+package apijson.boot.jolt;
+
+import com.alibaba.fastjson.JSONObject;
+import com.bazaarvoice.jolt.Chainr;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JOLT 转换专用线程池
+ * 单次转换和批量转换都在独立的有界线程池中执行，不占用 Tomcat 请求线程，也不和 commonPool 上的其它任务抢占。
+ * 排队已满时立即拒绝（RejectedExecutionException），超过时间预算时取消并抛出 TimeoutException。
+ */
+@Component
+public class JoltExecutor {
+
+    private final int maxParallelism;
+    private final int defaultChunkSize;
+    private final int queueCapacity;
+    private final long maxTimeoutMillis;
+    private final ForkJoinPool batchPool;
+    private final ThreadPoolExecutor transformPool;
+
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+
+    public JoltExecutor(@Value("${jolt.batch.max-parallelism:0}") int maxParallelism
+            , @Value("${jolt.batch.default-chunk-size:64}") int defaultChunkSize
+            , @Value("${jolt.transform.pool-size:0}") int poolSize
+            , @Value("${jolt.transform.queue-capacity:64}") int queueCapacity
+            , @Value("${jolt.transform.timeout-ms:5000}") long maxTimeoutMillis) {
+        this.maxParallelism = maxParallelism > 0 ? maxParallelism : Runtime.getRuntime().availableProcessors();
+        this.defaultChunkSize = Math.max(1, defaultChunkSize);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.maxTimeoutMillis = maxTimeoutMillis > 0 ? maxTimeoutMillis : 5000;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.batchPool = new ForkJoinPool(this.maxParallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("jolt-batch-" + threadCount.incrementAndGet());
+            return thread;
+        }, null, false);
+
+        int size = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        AtomicInteger transformThreadCount = new AtomicInteger();
+        this.transformPool = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS
+                , new ArrayBlockingQueue<>(this.queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "jolt-transform-" + transformThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchPool.shutdownNow();
+        transformPool.shutdownNow();
+    }
+
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    public int getDefaultChunkSize() {
+        return defaultChunkSize;
+    }
+
+    /**
+     * 实际使用的时间预算，请求未指定或超过配置上限时使用上限
+     */
+    public long getTimeoutMillis(long timeoutMillis) {
+        return timeoutMillis > 0 ? Math.min(timeoutMillis, maxTimeoutMillis) : maxTimeoutMillis;
+    }
+
+    /**在转换线程池中执行单次转换，调用方线程只等待结果
+     * @param timeoutMillis 时间预算，<= 0 时使用配置上限
+     * @throws RejectedExecutionException 线程池和队列都已满
+     * @throws TimeoutException 超过时间预算，任务已被中断取消
+     */
+    public Object transform(Chainr chainr, Object input, long timeoutMillis) throws Exception {
+        Future<Object> future;
+        try {
+            future = transformPool.submit(() -> chainr.transform(input));
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            throw e;
+        }
+
+        try {
+            return future.get(getTimeoutMillis(timeoutMillis), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // JOLT 内部不响应中断，中断只能让排队中的任务不再执行，运行中的任务靠输入大小限制保证能结束
+            future.cancel(true);
+            timeoutCount.increment();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**批量转换，inputs 按 chunkSize 分块，最多 parallelism 个任务并行领取分块
+     * @param chainr 已编译的转换器，线程安全
+     * @param inputs 待转换的输入
+     * @param parallelism 并行度，<= 0 或超过线程池大小时使用线程池大小
+     * @param chunkSize 每块大小，<= 0 时使用默认值
+     * @param timeoutMillis 时间预算，<= 0 时使用配置上限，超时后未开始的项不再转换
+     * @return 与 inputs 顺序一致的结果，失败的项为 {"error": "..."}，成功的项为 {"output": ...}
+     * @throws RejectedExecutionException 批量线程池排队的任务已达上限
+     */
+    public List<JSONObject> transformBatch(Chainr chainr, List<Object> inputs, int parallelism, int chunkSize, long timeoutMillis) {
+        int size = inputs.size();
+        JSONObject[] results = new JSONObject[size];
+        if (size <= 0) {
+            return new ArrayList<>();
+        }
+
+        if (batchPool.getQueuedSubmissionCount() >= queueCapacity) {
+            rejectedCount.increment();
+            throw new RejectedExecutionException("JOLT 批量转换线程池已满");
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getTimeoutMillis(timeoutMillis));
+        int chunk = chunkSize > 0 ? chunkSize : defaultChunkSize;
+        int chunkCount = (size + chunk - 1) / chunk;
+        int workers = Math.max(1, Math.min(chunkCount, parallelism > 0 ? Math.min(parallelism, maxParallelism) : maxParallelism));
+
+        AtomicInteger nextChunk = new AtomicInteger();
+        Runnable worker = () -> {
+            int c;
+            while ((c = nextChunk.getAndIncrement()) < chunkCount) {
+                int end = Math.min(size, (c + 1) * chunk);
+                for (int i = c * chunk; i < end; i++) {
+                    results[i] = deadline - System.nanoTime() > 0 ? transformItem(chainr, inputs.get(i)) : timeoutItem();
+                }
+            }
+        };
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            tasks.add(batchPool.submit(worker));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();  // join 保证各 worker 写入 results 的可见性
+        }
+
+        for (JSONObject result : results) {
+            if (result.containsKey("timeout")) {
+                timeoutCount.increment();
+                break;
+            }
+        }
+        return List.of(results);
+    }
+
+    private static JSONObject timeoutItem() {
+        JSONObject item = new JSONObject(true);
+        item.put("error", "超过时间预算，未转换");
+        item.put("timeout", true);
+        return item;
+    }
+
+    private static JSONObject transformItem(Chainr chainr, Object input) {
+        JSONObject item = new JSONObject(true);
+        try {
+            item.put("output", chainr.transform(input));
+        } catch (Exception e) {
+            item.put("error", e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+        }
+        return item;
+    }
+
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject(true);
+        stats.put("maxParallelism", maxParallelism);
+        stats.put("defaultChunkSize", defaultChunkSize);
+        stats.put("activeThreadCount", batchPool.getActiveThreadCount());
+        stats.put("queuedSubmissionCount", batchPool.getQueuedSubmissionCount());
+        stats.put("transformPoolSize", transformPool.getMaximumPoolSize());
+        stats.put("transformActiveCount", transformPool.getActiveCount());
+        stats.put("transformQueuedCount", transformPool.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("timeoutMillis", maxTimeoutMillis);
+        stats.put("rejectedCount", rejectedCount.sum());
+        stats.put("timeoutCount", timeoutCount.sum());
+        return stats;
+    }
+}
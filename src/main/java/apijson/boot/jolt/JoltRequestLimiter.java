@@ -0,0 +1,206 @@
+package apijson.boot.jolt;
+
+import com.alibaba.fastjson.JSONObject;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * JOLT 请求大小限制
+ * 请求体字节数在解析前由过滤器检查：有 Content-Length 时直接比较；分块传输等长度未知的请求体边读边计数，超过上限立即停止读取，
+ * 未超过时缓存后交给后续处理。嵌套深度和节点数在解析后由 check 检查，超出都返回 HTTP 413。
+ * /jolt/stream 本身按元素流式处理，不限制请求体大小。
+ */
+@Component
+public class JoltRequestLimiter extends OncePerRequestFilter {
+
+    private final long maxBytes;
+    private final int maxDepth;
+    private final int maxNodes;
+
+    public JoltRequestLimiter(@Value("${jolt.limit.max-bytes:10485760}") long maxBytes
+            , @Value("${jolt.limit.max-depth:64}") int maxDepth
+            , @Value("${jolt.limit.max-nodes:1000000}") int maxNodes) {
+        this.maxBytes = maxBytes;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * 只限制 /jolt/**（包括 DemoController 的 /jolt/query），/jolt/stream/** 除外
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return maxBytes <= 0 || path.startsWith("/jolt/") == false || path.startsWith("/jolt/stream/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        long length = request.getContentLengthLong();
+        if (length > maxBytes) {
+            reject(response, "请求体 " + length + " 字节，超过上限 " + maxBytes + " 字节");
+            return;
+        }
+        if (length >= 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // 长度未知，最多读取 maxBytes + 1 字节
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        InputStream in = request.getInputStream();
+        int n;
+        while ((n = in.read(buffer, 0, (int) Math.min(buffer.length, maxBytes + 1 - body.size()))) > 0) {
+            body.write(buffer, 0, n);
+            if (body.size() > maxBytes) {
+                reject(response, "请求体超过上限 " + maxBytes + " 字节");
+                return;
+            }
+        }
+        chain.doFilter(new CachedBodyRequest(request, body.toByteArray()), response);
+    }
+
+    private static void reject(HttpServletResponse response, String message) throws IOException {
+        JSONObject error = new JSONObject();
+        error.put("success", false);
+        error.put("error", message);
+        error.put("timestamp", System.currentTimeMillis());
+
+        response.setStatus(HttpStatus.PAYLOAD_TOO_LARGE.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(error.toJSONString());
+    }
+
+    /**
+     * 已读取并缓存的请求体
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() <= 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException("请求体已缓存，不支持异步读取");
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+
+    /**检查已解析的 JSON 的嵌套深度和节点数
+     * @param name 参数名，用于错误信息
+     * @return 超出限制时的错误信息，未超出返回 null
+     */
+    public String check(String name, Object value) {
+        if (value == null) {
+            return null;
+        }
+
+        // 迭代遍历，避免深层嵌套的输入导致栈溢出
+        Deque<Object> valueStack = new ArrayDeque<>();
+        Deque<Integer> depthStack = new ArrayDeque<>();
+        valueStack.push(value);
+        depthStack.push(1);
+
+        int nodes = 0;
+        while (valueStack.isEmpty() == false) {
+            Object v = valueStack.pop();
+            int depth = depthStack.pop();
+
+            if (maxNodes > 0 && ++nodes > maxNodes) {
+                return name + " 节点数超过上限 " + maxNodes;
+            }
+            if (maxDepth > 0 && depth > maxDepth) {
+                return name + " 嵌套深度超过上限 " + maxDepth;
+            }
+
+            Collection<?> children = v instanceof Map ? ((Map<?, ?>) v).values() : (v instanceof Collection ? (Collection<?>) v : null);
+            if (children != null) {
+                for (Object child : children) {
+                    if (child != null) {
+                        valueStack.push(child);
+                        depthStack.push(depth + 1);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject(true);
+        stats.put("maxBytes", maxBytes);
+        stats.put("maxDepth", maxDepth);
+        stats.put("maxNodes", maxNodes);
+        return stats;
+    }
+}
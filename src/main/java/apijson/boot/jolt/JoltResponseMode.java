@@ -0,0 +1,65 @@
+package apijson.boot.jolt;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+
+/**
+ * 转换接口的响应格式
+ */
+public enum JoltResponseMode {
+    /**
+     * 调试用，回显 input、spec 等中间数据
+     */
+    FULL,
+    /**
+     * 只返回 success 和转换结果
+     */
+    OUTPUT_ONLY,
+    /**
+     * 不包装，直接把转换结果流式写入响应
+     */
+    RAW;
+
+    /**
+     * 保留 null 值，和 Jackson 默认输出一致；JOLT 结果中同一对象可能出现多次，不能输出 $ref
+     */
+    public static final SerializerFeature[] RAW_FEATURES = {SerializerFeature.WriteMapNullValue, SerializerFeature.DisableCircularReferenceDetect};
+
+    public static byte[] toRawBytes(Object output) {
+        return JSON.toJSONBytes(output, RAW_FEATURES);
+    }
+
+    /**
+     * 直接写入 servlet 输出流，fastjson 用线程复用的缓冲区序列化，不构造响应包装对象
+     */
+    public static void writeRaw(HttpServletResponse response, Object output) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        JSON.writeJSONString(response.getOutputStream(), output, RAW_FEATURES);
+    }
+
+    /**解析请求参数，支持 full、output-only、raw，忽略大小写
+     * @param mode 为空时返回 defaultMode
+     * @throws IllegalArgumentException 不支持的值
+     */
+    public static JoltResponseMode of(String mode, JoltResponseMode defaultMode) {
+        if (mode == null || mode.isBlank()) {
+            return defaultMode;
+        }
+
+        switch (mode.trim().toLowerCase()) {
+            case "full":
+                return FULL;
+            case "output-only":
+            case "output_only":
+                return OUTPUT_ONLY;
+            case "raw":
+                return RAW;
+            default:
+                throw new IllegalArgumentException("不支持的 mode: " + mode + "，可选 full, output-only, raw");
+        }
+    }
+}
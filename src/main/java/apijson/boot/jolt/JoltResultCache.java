@@ -0,0 +1,273 @@
+package apijson.boot.jolt;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JOLT 转换结果缓存
+ * 以规范化（key 排序）后的 spec + input 的 128 位 MurmurHash3 为 key，缓存序列化好的响应字节，命中时直接写出，不再转换和序列化。
+ * 按总字节数限制容量，超出后按 LRU 淘汰，过期条目在读取时移除。
+ */
+@Component
+public class JoltResultCache {
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long ttlMillis;
+
+    /**
+     * accessOrder = true，迭代顺序即 LRU 顺序
+     */
+    private final LinkedHashMap<Key, Entry> entryMap = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expiredCount = new LongAdder();
+
+    public JoltResultCache(@Value("${jolt.result-cache.enabled:true}") boolean enabled
+            , @Value("${jolt.result-cache.max-bytes:67108864}") long maxBytes
+            , @Value("${jolt.result-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.enabled = enabled;
+        this.maxBytes = Math.max(0, maxBytes);
+        this.ttlMillis = Math.max(0, ttlSeconds) * 1000;
+    }
+
+    /**是否对本次请求使用缓存
+     * @param cache 请求中的 cache 参数，为 null 时默认使用
+     */
+    public boolean isEnabled(Boolean cache) {
+        return enabled && maxBytes > 0 && (cache == null || cache);
+    }
+
+    /**
+     * 获取缓存的响应字节，未命中或已过期返回 null
+     */
+    public byte[] get(Key key) {
+        byte[] value = null;
+        synchronized (this) {
+            Entry entry = entryMap.get(key);
+            if (entry != null) {
+                if (entry.expireTime > System.currentTimeMillis()) {
+                    value = entry.value;
+                } else {
+                    remove(key);
+                    expiredCount.increment();
+                }
+            }
+        }
+
+        if (value == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+            bytesSaved.add(value.length);
+        }
+        return value;
+    }
+
+    /**
+     * 放入缓存，单条超过容量上限的不缓存
+     */
+    public void put(Key key, byte[] value) {
+        if (value.length > maxBytes) {
+            return;
+        }
+
+        synchronized (this) {
+            remove(key);
+            entryMap.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+            totalBytes += value.length;
+
+            Iterator<Map.Entry<Key, Entry>> iterator = entryMap.entrySet().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                totalBytes -= iterator.next().getValue().value.length;
+                iterator.remove();
+                evictionCount.increment();
+            }
+        }
+    }
+
+    private void remove(Key key) {
+        Entry old = entryMap.remove(key);
+        if (old != null) {
+            totalBytes -= old.value.length;
+        }
+    }
+
+    public synchronized void clear() {
+        entryMap.clear();
+        totalBytes = 0;
+    }
+
+    public JSONObject getStats() {
+        long hits = hitCount.sum();
+        long misses = missCount.sum();
+        long total = hits + misses;
+
+        JSONObject stats = new JSONObject(true);
+        stats.put("enabled", enabled);
+        stats.put("maxBytes", maxBytes);
+        stats.put("ttlSeconds", ttlMillis / 1000);
+        synchronized (this) {
+            stats.put("size", entryMap.size());
+            stats.put("bytes", totalBytes);
+        }
+        stats.put("hitCount", hits);
+        stats.put("missCount", misses);
+        stats.put("hitRatio", total <= 0 ? 0 : (double) hits / total);
+        stats.put("bytesSaved", bytesSaved.sum());
+        stats.put("evictionCount", evictionCount.sum());
+        stats.put("expiredCount", expiredCount.sum());
+        return stats;
+    }
+
+    /**spec 和 input 分别规范化序列化后，和 variant 一起用 JSON 中不会出现的 0 字节分隔再计算哈希
+     * @param variant 区分同一 spec + input 的不同响应格式，例如 JoltResponseMode 的名称
+     */
+    public static Key keyOf(String variant, Object spec, Object input) {
+        byte[] variantBytes = variant.getBytes(StandardCharsets.UTF_8);
+        byte[] specBytes = JSON.toJSONBytes(spec, SerializerFeature.MapSortField, SerializerFeature.SortField, SerializerFeature.WriteMapNullValue);
+        byte[] inputBytes = JSON.toJSONBytes(input, SerializerFeature.MapSortField, SerializerFeature.SortField, SerializerFeature.WriteMapNullValue);
+
+        byte[] data = new byte[variantBytes.length + 1 + specBytes.length + 1 + inputBytes.length];
+        System.arraycopy(variantBytes, 0, data, 0, variantBytes.length);
+        System.arraycopy(specBytes, 0, data, variantBytes.length + 1, specBytes.length);
+        System.arraycopy(inputBytes, 0, data, variantBytes.length + 1 + specBytes.length + 1, inputBytes.length);
+        return murmur3Hash128(data);
+    }
+
+    /**
+     * MurmurHash3 x64 128 位，seed 为 0
+     */
+    @SuppressWarnings("fallthrough")  // 尾部字节的 switch 按参考实现逐个 case 贯穿
+    static Key murmur3Hash128(byte[] data) {
+        final long c1 = 0x87c37b91114253d5L;
+        final long c2 = 0x4cf5ad432745937fL;
+        int length = data.length;
+        int blocks = length / 16;
+        long h1 = 0;
+        long h2 = 0;
+
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLongLittleEndian(data, i * 16);
+            long k2 = getLongLittleEndian(data, i * 16 + 8);
+
+            k1 *= c1; k1 = Long.rotateLeft(k1, 31); k1 *= c2; h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27); h1 += h2; h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= c2; k2 = Long.rotateLeft(k2, 33); k2 *= c1; h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31); h2 += h1; h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        int tail = blocks * 16;
+        switch (length & 15) {
+            case 15: k2 ^= (long) (data[tail + 14] & 0xff) << 48;
+            case 14: k2 ^= (long) (data[tail + 13] & 0xff) << 40;
+            case 13: k2 ^= (long) (data[tail + 12] & 0xff) << 32;
+            case 12: k2 ^= (long) (data[tail + 11] & 0xff) << 24;
+            case 11: k2 ^= (long) (data[tail + 10] & 0xff) << 16;
+            case 10: k2 ^= (long) (data[tail + 9] & 0xff) << 8;
+            case 9:
+                k2 ^= data[tail + 8] & 0xff;
+                k2 *= c2; k2 = Long.rotateLeft(k2, 33); k2 *= c1; h2 ^= k2;
+                // fall through
+            case 8: k1 ^= (long) (data[tail + 7] & 0xff) << 56;
+            case 7: k1 ^= (long) (data[tail + 6] & 0xff) << 48;
+            case 6: k1 ^= (long) (data[tail + 5] & 0xff) << 40;
+            case 5: k1 ^= (long) (data[tail + 4] & 0xff) << 32;
+            case 4: k1 ^= (long) (data[tail + 3] & 0xff) << 24;
+            case 3: k1 ^= (long) (data[tail + 2] & 0xff) << 16;
+            case 2: k1 ^= (long) (data[tail + 1] & 0xff) << 8;
+            case 1:
+                k1 ^= data[tail] & 0xff;
+                k1 *= c1; k1 = Long.rotateLeft(k1, 31); k1 *= c2; h1 ^= k1;
+                // fall through
+            default:
+                break;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        return new Key(h1, h2);
+    }
+
+    private static long getLongLittleEndian(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+
+    public static final class Key {
+        private final long high;
+        private final long low;
+
+        Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o instanceof Key == false) {
+                return false;
+            }
+            Key key = (Key) o;
+            return high == key.high && low == key.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high ^ low);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x%016x", high, low);
+        }
+    }
+
+    private static final class Entry {
+        final byte[] value;
+        final long expireTime;
+
+        Entry(byte[] value, long expireTime) {
+            this.value = value;
+            this.expireTime = expireTime;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package apijson.boot.jolt;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.bazaarvoice.jolt.Chainr;
+import com.fasterxml.jackson.databind.util.LRUMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import apijson.Log;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 已编译 JOLT 转换器缓存
+ * 以 spec 规范化 JSON（key 排序）的 SHA-256 为 key，避免每次请求都 Chainr.fromSpec 重新编译。
+ * Chainr 编译后无状态且线程安全，可被所有请求共享。
+ * 开启 jolt.compiler.enabled 时，shift/default/remove 常见子集的 spec 会再经 JoltSpecCompiler 编译，见 {@link JoltSpecCompiler}
+ */
+@Component
+public class JoltSpecCache {
+    private static final String TAG = "JoltSpecCache";
+
+    private final int maxSize;
+    private final boolean compilerEnabled;
+    private final LRUMap<String, Chainr> chainrMap;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder compiledCount = new LongAdder();
+
+    public JoltSpecCache(@Value("${jolt.spec-cache.max-size:256}") int maxSize
+            , @Value("${jolt.compiler.enabled:true}") boolean compilerEnabled) {
+        this.maxSize = Math.max(1, maxSize);
+        this.compilerEnabled = compilerEnabled;
+        this.chainrMap = new LRUMap<>(Math.min(16, this.maxSize), this.maxSize);
+    }
+
+    /**
+     * 获取 spec 对应的 Chainr，未命中时编译并放入缓存
+     */
+    public Chainr get(List<Object> spec) {
+        String key = keyOf(spec);
+        Chainr chainr = chainrMap.get(key);
+        if (chainr != null) {
+            hitCount.increment();
+            return chainr;
+        }
+
+        missCount.increment();
+        chainr = compile(spec);  // 并发下可能重复编译，但结果等价，不需要加锁
+        chainrMap.put(key, chainr);
+        return chainr;
+    }
+
+    /**
+     * 启动时预编译内置 spec，首个请求不再承担编译开销。
+     * 编译失败只记录日志，不影响启动，请求时会再次编译并返回错误信息
+     */
+    public void precompile(List<Object> spec) {
+        try {
+            String key = keyOf(spec);
+            if (chainrMap.get(key) == null) {
+                chainrMap.put(key, compile(spec));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "precompile  catch (Exception e) = " + e.getMessage());
+        }
+    }
+
+    /**
+     * 先用 Chainr.fromSpec 校验 spec，错误信息与未编译时一致；支持的子集再编译，失败时仍用 Chainr
+     */
+    private Chainr compile(List<Object> spec) {
+        Chainr chainr = Chainr.fromSpec(spec);
+        if (compilerEnabled == false) {
+            return chainr;
+        }
+
+        Chainr compiled = JoltSpecCompiler.compile(spec, chainr);
+        if (compiled == null) {
+            return chainr;
+        }
+        compiledCount.increment();
+        return compiled;
+    }
+
+    public void clear() {
+        chainrMap.clear();
+    }
+
+    public JSONObject getStats() {
+        long hits = hitCount.sum();
+        long misses = missCount.sum();
+        long total = hits + misses;
+
+        JSONObject stats = new JSONObject(true);
+        stats.put("maxSize", maxSize);
+        stats.put("size", chainrMap.size());
+        stats.put("hitCount", hits);
+        stats.put("missCount", misses);
+        stats.put("hitRatio", total <= 0 ? 0 : (double) hits / total);
+        stats.put("compilerEnabled", compilerEnabled);
+        stats.put("compiledCount", compiledCount.sum());
+        stats.put("bailoutCount", JoltSpecCompiler.getBailoutCount());
+        return stats;
+    }
+
+    /**
+     * spec 的规范化哈希，key 顺序不同但内容相同的 spec 得到相同的 key
+     */
+    public static String keyOf(Object spec) {
+        byte[] canonical = JSON.toJSONBytes(spec, SerializerFeature.MapSortField, SerializerFeature.SortField);
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(canonical));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);  // JDK 规范要求必须支持 SHA-256
+        }
+    }
+}
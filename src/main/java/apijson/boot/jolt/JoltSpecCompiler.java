@@ -0,0 +1,741 @@
+package apijson.boot.jolt;
+
+import com.bazaarvoice.jolt.Chainr;
+import com.bazaarvoice.jolt.Transform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JOLT spec 编译器
+ * 把只用到 shift/default/remove 常见子集的 spec 预先编译为一棵闭包树，转换时对输入只遍历一次，
+ * 字面量 key 直接 get，不再走 Shiftr 通用的逐层匹配和路径求值。
+ * 编译期不支持的 spec 返回原 Chainr；运行期遇到编译时无法确定结果的情况（例如 [&1] 取到非数字 key、
+ * 写入目标已被输入中的对象占用）会放弃编译结果，用原 Chainr 对原始输入重新执行，保证结果与 Chainr 一致。
+ */
+public final class JoltSpecCompiler {
+
+    private static final LongAdder BAILOUT_COUNT = new LongAdder();
+
+    /**
+     * LHS 中除了转义的 \[ \] 外不允许出现的字符，出现则说明用到了通配、引用等未支持的语法
+     */
+    private static final Pattern SPECIAL_KEY_PATTERN = Pattern.compile("[*&@$#|()\\[\\]\\\\.]");
+    private static final Pattern KEY_REF_PATTERN = Pattern.compile("&(\\d*)");
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("([^\\[\\]]*)(?:\\[(\\d{1,9}|&\\d*|)\\])?");
+
+    private JoltSpecCompiler() {
+    }
+
+    public static long getBailoutCount() {
+        return BAILOUT_COUNT.sum();
+    }
+
+    /**编译 spec
+     * @param spec Chainr spec，调用方应先用 Chainr.fromSpec 校验过
+     * @param fallback 同一 spec 的 Chainr，不支持编译或运行期放弃时使用
+     * @return 编译成功返回包装了编译结果的 Chainr，不支持编译返回 null
+     */
+    public static Chainr compile(List<Object> spec, Chainr fallback) {
+        List<Op> ops = compileOps(spec);
+        if (ops == null) {
+            return null;
+        }
+        return new Chainr(List.of(new CompiledTransform(ops.toArray(new Op[0]), fallback)));
+    }
+
+    /**
+     * 编译整个链，任何一步不支持都返回 null
+     */
+    static List<Op> compileOps(List<Object> spec) {
+        if (spec == null || spec.isEmpty()) {
+            return null;
+        }
+
+        List<Op> ops = new ArrayList<>(spec.size());
+        for (Object item : spec) {
+            if (item instanceof Map == false) {
+                return null;
+            }
+            Map<?, ?> operation = (Map<?, ?>) item;
+            Object opSpec = operation.get("spec");
+            if (opSpec instanceof Map == false) {
+                return null;
+            }
+
+            Op op;
+            Object name = operation.get("operation");
+            if ("shift".equals(name)) {
+                op = compileShift((Map<?, ?>) opSpec);
+            } else if ("default".equals(name)) {
+                op = compileDefault((Map<?, ?>) opSpec);
+            } else if ("remove".equals(name)) {
+                op = compileRemove((Map<?, ?>) opSpec);
+            } else {
+                return null;
+            }
+            if (op == null) {
+                return null;
+            }
+            ops.add(op);
+        }
+        return ops;
+    }
+
+
+    // shift <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
+
+    private static Op compileShift(Map<?, ?> spec) {
+        ShiftNode root = compileShiftNode(spec);
+        if (root == null) {
+            return null;
+        }
+        int depth = depthOf(spec) + 1;
+
+        return input -> {
+            String[] keys = new String[depth + 1];
+            keys[0] = "root";
+            ShiftOutput output = new ShiftOutput();
+            root.apply(input, keys, 0, output);
+            return output.root;
+        };
+    }
+
+    private static int depthOf(Object spec) {
+        if (spec instanceof Map == false) {
+            return 0;
+        }
+        int max = 0;
+        for (Object value : ((Map<?, ?>) spec).values()) {
+            max = Math.max(max, depthOf(value));
+        }
+        return max + 1;
+    }
+
+    private static ShiftNode compileShiftNode(Object spec) {
+        if (spec instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) spec;
+            Map<String, ShiftNode> literals = new LinkedHashMap<>();
+            ShiftNode star = null;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                ShiftNode child = compileShiftNode(entry.getValue());
+                if (child == null) {
+                    return null;
+                }
+                if ("*".equals(key)) {
+                    star = child;
+                } else {
+                    String literal = unescapeLiteral(key);
+                    if (literal == null || literals.put(literal, child) != null) {
+                        return null;
+                    }
+                }
+            }
+            return new CompositeShiftNode(literals, star);
+        }
+
+        List<OutputStep[]> paths = new ArrayList<>();
+        if (spec instanceof String) {
+            paths.add(parseOutputPath((String) spec));
+        } else if (spec instanceof List) {
+            for (Object path : (List<?>) spec) {
+                paths.add(path instanceof String ? parseOutputPath((String) path) : null);
+            }
+        } else if (spec != null) {
+            return null;
+        }
+        if (paths.contains(null)) {
+            return null;
+        }
+        return new LeafShiftNode(paths.toArray(new OutputStep[0][]));
+    }
+
+    /**
+     * 字面量 key 去掉 \[ \] 转义，含其它特殊字符返回 null
+     */
+    private static String unescapeLiteral(String key) {
+        String literal = key.replace("\\[", "[").replace("\\]", "]");
+        if (key.isEmpty() || SPECIAL_KEY_PATTERN.matcher(key.replace("\\[", "").replace("\\]", "")).find()) {
+            return null;
+        }
+        return literal;
+    }
+
+    /**
+     * 解析 RHS 输出路径，只支持 a.b、&、&1、a[]、a[0]、a[&1]、[0]、[&1] 这些形式
+     */
+    private static OutputStep[] parseOutputPath(String path) {
+        if (path.isEmpty()) {
+            return null;
+        }
+
+        String[] segments = path.split("\\.", -1);
+        List<OutputStep> steps = new ArrayList<>(segments.length + 1);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            Matcher refMatcher = KEY_REF_PATTERN.matcher(segment);
+            if (refMatcher.matches()) {
+                steps.add(OutputStep.keyRef(parseLevel(refMatcher.group(1))));
+                continue;
+            }
+
+            Matcher matcher = SEGMENT_PATTERN.matcher(segment);
+            if (matcher.matches() == false) {
+                return null;
+            }
+            String name = matcher.group(1);
+            String index = matcher.group(2);
+            if (name.isEmpty() && index == null) {
+                return null;
+            }
+            if (name.isEmpty() == false) {
+                if (SPECIAL_KEY_PATTERN.matcher(name).find()) {
+                    return null;
+                }
+                steps.add(OutputStep.key(name));
+            }
+            if (index != null) {
+                if (index.isEmpty()) {
+                    if (i < segments.length - 1) {
+                        return null;  // [] 只能在最后
+                    }
+                    steps.add(OutputStep.append());
+                } else if (index.startsWith("&")) {
+                    steps.add(OutputStep.indexRef(parseLevel(index.substring(1))));
+                } else {
+                    steps.add(OutputStep.index(Integer.parseInt(index)));
+                }
+            }
+        }
+        return steps.toArray(new OutputStep[0]);
+    }
+
+    private static int parseLevel(String level) {
+        return level.isEmpty() ? 0 : Integer.parseInt(level);
+    }
+
+    private interface ShiftNode {
+        /**
+         * @param keys 匹配路径，keys[level] 为当前节点匹配到的 key，&n 即 keys[level - n]
+         */
+        void apply(Object input, String[] keys, int level, ShiftOutput output);
+    }
+
+    private static final class CompositeShiftNode implements ShiftNode {
+        final String[] literalKeys;
+        final ShiftNode[] literalNodes;
+        final Map<String, ShiftNode> literalMap;
+        final ShiftNode star;
+
+        CompositeShiftNode(Map<String, ShiftNode> literals, ShiftNode star) {
+            this.literalKeys = literals.keySet().toArray(new String[0]);
+            this.literalNodes = literals.values().toArray(new ShiftNode[0]);
+            this.literalMap = literals;
+            this.star = star;
+        }
+
+        @Override
+        public void apply(Object input, String[] keys, int level, ShiftOutput output) {
+            int next = level + 1;
+            if (input instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) input;
+                if (star == null) {
+                    for (int i = 0; i < literalKeys.length; i++) {
+                        String key = literalKeys[i];
+                        if (map.containsKey(key)) {
+                            keys[next] = key;
+                            literalNodes[i].apply(map.get(key), keys, next, output);
+                        }
+                    }
+                    return;
+                }
+
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    if (entry.getKey() instanceof String == false) {
+                        throw Bailout.INSTANCE;
+                    }
+                    String key = (String) entry.getKey();
+                    ShiftNode node = literalMap.get(key);
+                    keys[next] = key;
+                    (node == null ? star : node).apply(entry.getValue(), keys, next, output);
+                }
+                return;
+            }
+
+            if (input instanceof List) {
+                List<?> list = (List<?>) input;
+                int size = list.size();
+                if (star == null) {
+                    // 与 Shiftr 相同，字面量 key 作为下标取数组元素，非数字的 key 忽略
+                    for (int i = 0; i < literalKeys.length; i++) {
+                        int index;
+                        try {
+                            index = Integer.parseInt(literalKeys[i]);
+                        } catch (NumberFormatException e) {
+                            continue;
+                        }
+                        if (index >= 0 && index < size) {
+                            keys[next] = literalKeys[i];
+                            literalNodes[i].apply(list.get(index), keys, next, output);
+                        }
+                    }
+                    return;
+                }
+
+                for (int i = 0; i < size; i++) {
+                    String key = Integer.toString(i);
+                    ShiftNode node = literalMap.isEmpty() ? null : literalMap.get(key);
+                    keys[next] = key;
+                    (node == null ? star : node).apply(list.get(i), keys, next, output);
+                }
+                return;
+            }
+
+            if (input != null) {
+                // 标量按字符串匹配子 key，匹配到的子节点没有输入值
+                String key = input.toString();
+                ShiftNode node = literalMap.get(key);
+                if (node == null) {
+                    node = star;
+                }
+                if (node != null) {
+                    keys[next] = key;
+                    node.apply(null, keys, next, output);
+                }
+            }
+        }
+    }
+
+    private static final class LeafShiftNode implements ShiftNode {
+        final OutputStep[][] paths;
+
+        LeafShiftNode(OutputStep[][] paths) {
+            this.paths = paths;
+        }
+
+        @Override
+        public void apply(Object input, String[] keys, int level, ShiftOutput output) {
+            for (OutputStep[] path : paths) {
+                output.write(path, keys, level, input);
+            }
+        }
+    }
+
+    private static final class OutputStep {
+        static final int KEY = 0;
+        static final int KEY_REF = 1;
+        static final int INDEX = 2;
+        static final int INDEX_REF = 3;
+        static final int APPEND = 4;
+
+        final int type;
+        final String key;
+        final int value;
+
+        private OutputStep(int type, String key, int value) {
+            this.type = type;
+            this.key = key;
+            this.value = value;
+        }
+
+        static OutputStep key(String key) {
+            return new OutputStep(KEY, key, 0);
+        }
+        static OutputStep keyRef(int level) {
+            return new OutputStep(KEY_REF, null, level);
+        }
+        static OutputStep index(int index) {
+            return new OutputStep(INDEX, null, index);
+        }
+        static OutputStep indexRef(int level) {
+            return new OutputStep(INDEX_REF, null, level);
+        }
+        static OutputStep append() {
+            return new OutputStep(APPEND, null, 0);
+        }
+
+        boolean isMap() {
+            return type == KEY || type == KEY_REF;
+        }
+
+        Object newContainer() {
+            return isMap() ? new LinkedHashMap<String, Object>() : new ArrayList<>();
+        }
+
+        boolean accepts(Object container) {
+            return isMap() ? container instanceof Map : container instanceof List;
+        }
+
+        String resolveKey(String[] keys, int level) {
+            if (type == KEY) {
+                return key;
+            }
+            if (level - value < 0) {
+                throw Bailout.INSTANCE;
+            }
+            return keys[level - value];
+        }
+
+        int resolveIndex(String[] keys, int level) {
+            if (type == INDEX) {
+                return value;
+            }
+            if (level - value < 0) {
+                throw Bailout.INSTANCE;
+            }
+            String key = keys[level - value];
+            int index = 0;
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(i);
+                if (c < '0' || c > '9' || i >= 9) {
+                    throw Bailout.INSTANCE;  // 非数字或过大的下标按 Chainr 的行为处理
+                }
+                index = index * 10 + (c - '0');
+            }
+            if (key.isEmpty()) {
+                throw Bailout.INSTANCE;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 一次 shift 的输出，只修改自己创建的容器，遇到输入中的对象需要被修改时放弃编译结果，保证输入不被修改
+     */
+    private static final class ShiftOutput {
+        final Set<Object> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        Object root;
+
+        @SuppressWarnings("unchecked")
+        void write(OutputStep[] path, String[] keys, int level, Object data) {
+            if (root == null) {
+                root = own(path[0].newContainer());
+            } else if (path[0].accepts(root) == false) {
+                return;  // 与 Shiftr 相同，类型不符的写入直接忽略
+            }
+
+            Object container = root;
+            int last = path.length - 1;
+            for (int i = 0; i < last; i++) {
+                OutputStep step = path[i];
+                OutputStep next = path[i + 1];
+                Object sub;
+                if (step.isMap()) {
+                    Map<String, Object> map = (Map<String, Object>) container;
+                    String key = step.resolveKey(keys, level);
+                    sub = map.get(key);
+                    if (sub == null) {
+                        map.put(key, sub = own(next.newContainer()));
+                    }
+                } else {
+                    List<Object> list = (List<Object>) container;
+                    int index = step.type == OutputStep.APPEND ? list.size() : step.resolveIndex(keys, level);
+                    sub = index < list.size() ? list.get(index) : null;
+                    if (sub == null) {
+                        setIndex(list, index, sub = own(next.newContainer()));
+                    }
+                }
+                if (next.accepts(sub) == false) {
+                    return;
+                }
+                if (owned.contains(sub) == false) {
+                    throw Bailout.INSTANCE;  // 目标是输入中的对象，继续写会修改输入
+                }
+                container = sub;
+            }
+
+            OutputStep step = path[last];
+            if (step.type == OutputStep.APPEND) {
+                ((List<Object>) container).add(data);
+                return;
+            }
+
+            if (step.isMap()) {
+                Map<String, Object> map = (Map<String, Object>) container;
+                String key = step.resolveKey(keys, level);
+                map.put(key, merge(map.get(key), data));
+            } else {
+                List<Object> list = (List<Object>) container;
+                int index = step.resolveIndex(keys, level);
+                setIndex(list, index, merge(index < list.size() ? list.get(index) : null, data));
+            }
+        }
+
+        /**
+         * 与 Shiftr 相同：目标为空则直接写入，已是数组则追加，否则合并为数组
+         */
+        @SuppressWarnings("unchecked")
+        private Object merge(Object existing, Object data) {
+            if (existing == null) {
+                return data;
+            }
+            if (existing instanceof List) {
+                if (owned.contains(existing) == false) {
+                    throw Bailout.INSTANCE;
+                }
+                ((List<Object>) existing).add(data);
+                return existing;
+            }
+            List<Object> list = own(new ArrayList<>());
+            list.add(existing);
+            list.add(data);
+            return list;
+        }
+
+        private static void setIndex(List<Object> list, int index, Object value) {
+            while (list.size() <= index) {
+                list.add(null);
+            }
+            list.set(index, value);
+        }
+
+        private <T> T own(T container) {
+            owned.add(container);
+            return container;
+        }
+    }
+
+
+    // default <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
+
+    private static Op compileDefault(Map<?, ?> spec) {
+        DefaultNode root = compileDefaultNode(spec);
+        if (root == null) {
+            return null;
+        }
+        return input -> {
+            if (input == null) {
+                input = new LinkedHashMap<String, Object>();
+            } else if (input instanceof List) {
+                throw Bailout.INSTANCE;  // 顶层数组由 Defaultr 报错
+            }
+            root.apply(input);
+            return input;
+        };
+    }
+
+    private static DefaultNode compileDefaultNode(Map<?, ?> spec) {
+        List<String> keys = new ArrayList<>(spec.size());
+        List<Object> values = new ArrayList<>(spec.size());
+        for (Map.Entry<?, ?> entry : spec.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            if (key.isEmpty() || SPECIAL_KEY_PATTERN.matcher(key).find()) {
+                return null;
+            }
+            Object value = entry.getValue();
+            if (value instanceof Map) {
+                value = compileDefaultNode((Map<?, ?>) value);
+                if (value == null) {
+                    return null;
+                }
+            }
+            keys.add(key);
+            values.add(value);
+        }
+        return new DefaultNode(keys.toArray(new String[0]), values.toArray());
+    }
+
+    private static final class DefaultNode {
+        final String[] keys;
+        /**
+         * DefaultNode 为子级默认值，其它为字面量默认值
+         */
+        final Object[] values;
+
+        DefaultNode(String[] keys, Object[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @SuppressWarnings("unchecked")
+        void apply(Object container) {
+            if (container instanceof Map == false) {
+                return;
+            }
+
+            Map<String, Object> map = (Map<String, Object>) container;
+            for (int i = 0; i < keys.length; i++) {
+                Object value = values[i];
+                Object existing = map.get(keys[i]);
+                if (value instanceof DefaultNode) {
+                    if (existing == null) {
+                        map.put(keys[i], existing = new LinkedHashMap<String, Object>());
+                    }
+                    ((DefaultNode) value).apply(existing);
+                } else if (existing == null) {
+                    map.put(keys[i], copy(value));
+                }
+            }
+        }
+    }
+
+    private static Object copy(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(String.valueOf(entry.getKey()), copy(entry.getValue()));
+            }
+            return map;
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                list.add(copy(item));
+            }
+            return list;
+        }
+        return value;
+    }
+
+
+    // remove <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
+
+    private static Op compileRemove(Map<?, ?> spec) {
+        RemoveNode root = compileRemoveNode(spec);
+        if (root == null) {
+            return null;
+        }
+        return input -> {
+            root.apply(input);
+            return input;
+        };
+    }
+
+    private static RemoveNode compileRemoveNode(Map<?, ?> spec) {
+        List<String> keys = new ArrayList<>(spec.size());
+        List<RemoveNode> children = new ArrayList<>(spec.size());
+        RemoveNode star = null;
+        for (Map.Entry<?, ?> entry : spec.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            RemoveNode child = null;
+            if (value instanceof Map) {
+                child = compileRemoveNode((Map<?, ?>) value);
+                if (child == null) {
+                    return null;
+                }
+            } else if ("".equals(value) == false) {
+                return null;
+            }
+
+            if ("*".equals(key) && child != null) {
+                star = child;
+            } else if (key.isEmpty() || SPECIAL_KEY_PATTERN.matcher(key).find()) {
+                return null;
+            } else {
+                keys.add(key);
+                children.add(child);
+            }
+        }
+        return new RemoveNode(keys.toArray(new String[0]), children.toArray(new RemoveNode[0]), star);
+    }
+
+    private static final class RemoveNode {
+        final String[] keys;
+        /**
+         * null 表示删除该 key，否则对子级递归删除
+         */
+        final RemoveNode[] children;
+        final RemoveNode star;
+        final boolean hasIndexKey;
+
+        RemoveNode(String[] keys, RemoveNode[] children, RemoveNode star) {
+            this.keys = keys;
+            this.children = children;
+            this.star = star;
+
+            boolean hasIndexKey = false;
+            for (String key : keys) {
+                hasIndexKey |= key.chars().allMatch(Character::isDigit);
+            }
+            this.hasIndexKey = hasIndexKey;
+        }
+
+        void apply(Object container) {
+            if (container instanceof List) {
+                if (hasIndexKey) {
+                    throw Bailout.INSTANCE;  // 数字 key 在数组上按下标删除，交给 Removr
+                }
+                if (star != null) {
+                    for (Object value : (List<?>) container) {
+                        star.apply(value);
+                    }
+                }
+                return;
+            }
+            if (container instanceof Map == false) {
+                return;
+            }
+
+            Map<?, ?> map = (Map<?, ?>) container;
+            for (int i = 0; i < keys.length; i++) {
+                if (children[i] == null) {
+                    map.remove(keys[i]);
+                } else {
+                    children[i].apply(map.get(keys[i]));
+                }
+            }
+            if (star != null) {
+                for (Object value : map.values()) {
+                    star.apply(value);
+                }
+            }
+        }
+    }
+
+
+    // runtime <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
+
+    interface Op {
+        Object apply(Object input);
+    }
+
+    /**
+     * 运行期放弃编译结果，不需要堆栈
+     */
+    private static final class Bailout extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        static final Bailout INSTANCE = new Bailout();
+
+        private Bailout() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * shift 不修改输入，default/remove 只修改输入且重复执行结果不变，所以放弃后可以直接用 Chainr 对原始输入重新执行
+     */
+    private static final class CompiledTransform implements Transform {
+        final Op[] ops;
+        final Chainr fallback;
+
+        CompiledTransform(Op[] ops, Chainr fallback) {
+            this.ops = ops;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public Object transform(Object input) {
+            try {
+                Object data = input;
+                for (Op op : ops) {
+                    data = op.apply(data);
+                }
+                return data;
+            } catch (Bailout e) {
+                BAILOUT_COUNT.increment();
+                return fallback.transform(input);
+            }
+        }
+    }
+}
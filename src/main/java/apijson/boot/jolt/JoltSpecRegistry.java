@@ -0,0 +1,295 @@
+package apijson.boot.jolt;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.bazaarvoice.jolt.Chainr;
+import com.bazaarvoice.jolt.JsonUtils;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import apijson.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 命名 JOLT spec 注册表
+ * 数据来自 JoltSpec 表（结构参考 Request/Access 表），按 name + version 管理，启动和 reload 时整体加载为不可变快照。
+ * 读路径只读 volatile 快照，不加锁；reload 构建好新快照后原子替换。
+ */
+@Component
+public class JoltSpecRegistry {
+    private static final String TAG = "JoltSpecRegistry";
+
+    public static final String TABLE = "JoltSpec";
+
+    /**
+     * 内置图表 spec，建表后作为 version 1 写入 JoltSpec 表，数据库不可用时也作为兜底。
+     * 注意 LHS 的 Student[] 必须转义为 Student\\[\\]，否则 JOLT 会把 [] 当成数组下标解析而报错
+     */
+    public static final Map<String, String> BUILTIN_SPEC_MAP;
+    static {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("grade-distribution", """
+            [{
+                "operation": "shift",
+                "spec": {
+                    "Student\\\\[\\\\]": {
+                        "*": {
+                            "grade": "categories[]",
+                            "count": "values[]"
+                        }
+                    }
+                }
+            }]""");
+        map.put("gender-distribution", """
+            [{
+                "operation": "shift",
+                "spec": {
+                    "Student\\\\[\\\\]": {
+                        "*": {
+                            "gender": "[&1].gender",
+                            "count": "[&1].value"
+                        }
+                    }
+                }
+            }]""");
+        map.put("gender-name-distribution", """
+            [{
+                "operation": "shift",
+                "spec": {
+                    "Student\\\\[\\\\]": {
+                        "*": {
+                            "gender": "[&1].name",
+                            "count": "[&1].value"
+                        }
+                    }
+                }
+            }]""");
+        map.put("age-distribution", """
+            [{
+                "operation": "shift",
+                "spec": {
+                    "Student\\\\[\\\\]": {
+                        "*": {
+                            "age": "categories[]",
+                            "count": "values[]"
+                        }
+                    }
+                }
+            }]""");
+        map.put("enrollment-trend", """
+            [{
+                "operation": "shift",
+                "spec": {
+                    "Student\\\\[\\\\]": {
+                        "*": {
+                            "date": "categories[]",
+                            "enrolled": "enrolled[]",
+                            "churned": "churned[]",
+                            "total": "total[]"
+                        }
+                    }
+                }
+            }]""");
+        BUILTIN_SPEC_MAP = Collections.unmodifiableMap(map);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JoltSpecCache specCache;
+
+    private volatile Snapshot snapshot;
+
+    public JoltSpecRegistry(JdbcTemplate jdbcTemplate, JoltSpecCache specCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.specCache = specCache;
+        this.snapshot = new Snapshot(builtinEntries());
+    }
+
+    /**
+     * DatabaseInitializer 等 CommandLineRunner 建表完成后再从数据库加载
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            reload(null);
+        } catch (Exception e) {
+            Log.e(TAG, "onApplicationReady  catch (Exception e) = " + e.getMessage() + "，继续使用内置 spec");
+        }
+    }
+
+    /**
+     * 获取最新版本
+     */
+    public JoltSpecEntry get(String name) {
+        return snapshot.latestMap.get(name);
+    }
+
+    /**
+     * 获取指定版本
+     */
+    public JoltSpecEntry get(String name, int version) {
+        Map<Integer, JoltSpecEntry> versions = snapshot.versionMap.get(name);
+        return versions == null ? null : versions.get(version);
+    }
+
+    /**重新加载 JoltSpec 表
+     * @param value 自定义增量更新条件，目前支持 {"name": "grade-distribution"} 只重载指定名称，为 null 则全量重载
+     * @return
+     */
+    public synchronized JSONObject reload(JSONObject value) {
+        String name = value == null ? null : value.getString("name");
+
+        List<Map<String, Object>> rows = name == null
+            ? jdbcTemplate.queryForList("SELECT name, version, spec, detail FROM " + TABLE + " WHERE debug = 0")
+            : jdbcTemplate.queryForList("SELECT name, version, spec, detail FROM " + TABLE + " WHERE debug = 0 AND name = ?", name);
+
+        // 全量重载以内置 spec 为底；按名称重载以当前快照为底，只替换该名称
+        Map<String, Map<Integer, JoltSpecEntry>> versionMap = new HashMap<>();
+        if (name == null) {
+            putAll(versionMap, builtinEntries());
+        } else {
+            for (Map.Entry<String, Map<Integer, JoltSpecEntry>> entry : snapshot.versionMap.entrySet()) {
+                if (name.equals(entry.getKey()) == false) {
+                    versionMap.put(entry.getKey(), new TreeMap<>(entry.getValue()));
+                }
+            }
+        }
+
+        JSONArray errors = new JSONArray();
+        int count = 0;
+        for (Map<String, Object> row : rows) {
+            String rowName = (String) row.get("name");
+            int version = ((Number) row.get("version")).intValue();
+            try {
+                List<Object> spec = JsonUtils.jsonToList((String) row.get("spec"));
+                JoltSpecEntry entry = new JoltSpecEntry(rowName, version, spec, specCache.get(spec), (String) row.get("detail"));
+                versionMap.computeIfAbsent(rowName, k -> new TreeMap<>()).put(version, entry);
+                count ++;
+            } catch (Exception e) {
+                // 单条 spec 错误不影响其它 spec 生效
+                Log.e(TAG, "reload  name = " + rowName + ", version = " + version + "; catch (Exception e) = " + e.getMessage());
+                errors.add(rowName + "@" + version + ": " + e.getMessage());
+            }
+        }
+
+        if (name != null && versionMap.containsKey(name) == false) {
+            putAll(versionMap, builtinEntries(name));
+        }
+
+        Snapshot newSnapshot = new Snapshot(versionMap);
+        this.snapshot = newSnapshot;
+
+        JSONObject result = new JSONObject(true);
+        result.put("ok", errors.isEmpty());
+        result.put("count", count);
+        result.put("names", newSnapshot.latestMap.keySet());
+        if (errors.isEmpty() == false) {
+            result.put("errors", errors);
+        }
+        return result;
+    }
+
+    public JSONObject getInfo() {
+        Snapshot s = snapshot;
+        JSONObject info = new JSONObject(true);
+        for (Map.Entry<String, Map<Integer, JoltSpecEntry>> entry : s.versionMap.entrySet()) {
+            JSONObject item = new JSONObject(true);
+            item.put("latestVersion", s.latestMap.get(entry.getKey()).getVersion());
+            item.put("versions", entry.getValue().keySet());
+            info.put(entry.getKey(), item);
+        }
+        return info;
+    }
+
+    private List<JoltSpecEntry> builtinEntries(String... names) {
+        List<JoltSpecEntry> list = new ArrayList<>();
+        for (Map.Entry<String, String> entry : BUILTIN_SPEC_MAP.entrySet()) {
+            if (names.length > 0 && List.of(names).contains(entry.getKey()) == false) {
+                continue;
+            }
+            List<Object> spec = JsonUtils.jsonToList(entry.getValue());
+            list.add(new JoltSpecEntry(entry.getKey(), 1, spec, specCache.get(spec), "内置"));
+        }
+        return list;
+    }
+
+    private static void putAll(Map<String, Map<Integer, JoltSpecEntry>> versionMap, List<JoltSpecEntry> entries) {
+        for (JoltSpecEntry entry : entries) {
+            versionMap.computeIfAbsent(entry.getName(), k -> new TreeMap<>()).put(entry.getVersion(), entry);
+        }
+    }
+
+
+    /**
+     * 不可变快照，构造后不再修改
+     */
+    private static final class Snapshot {
+        final Map<String, JoltSpecEntry> latestMap;
+        final Map<String, Map<Integer, JoltSpecEntry>> versionMap;
+
+        Snapshot(List<JoltSpecEntry> entries) {
+            this(toVersionMap(entries));
+        }
+
+        Snapshot(Map<String, Map<Integer, JoltSpecEntry>> versionMap) {
+            Map<String, JoltSpecEntry> latest = new HashMap<>();
+            Map<String, Map<Integer, JoltSpecEntry>> versions = new HashMap<>();
+            for (Map.Entry<String, Map<Integer, JoltSpecEntry>> entry : versionMap.entrySet()) {
+                TreeMap<Integer, JoltSpecEntry> sorted = new TreeMap<>(entry.getValue());
+                latest.put(entry.getKey(), sorted.lastEntry().getValue());
+                versions.put(entry.getKey(), Collections.unmodifiableMap(sorted));
+            }
+            this.latestMap = Map.copyOf(latest);
+            this.versionMap = Map.copyOf(versions);
+        }
+
+        private static Map<String, Map<Integer, JoltSpecEntry>> toVersionMap(List<JoltSpecEntry> entries) {
+            Map<String, Map<Integer, JoltSpecEntry>> versionMap = new HashMap<>();
+            putAll(versionMap, entries);
+            return versionMap;
+        }
+    }
+
+    /**
+     * 一条已编译的命名 spec
+     */
+    public static final class JoltSpecEntry {
+        private final String name;
+        private final int version;
+        private final List<Object> spec;
+        private final Chainr chainr;
+        private final String detail;
+
+        public JoltSpecEntry(String name, int version, List<Object> spec, Chainr chainr, String detail) {
+            this.name = name;
+            this.version = version;
+            this.spec = spec;
+            this.chainr = chainr;
+            this.detail = detail;
+        }
+
+        public String getName() {
+            return name;
+        }
+        public int getVersion() {
+            return version;
+        }
+        public List<Object> getSpec() {
+            return spec;
+        }
+        public Chainr getChainr() {
+            return chainr;
+        }
+        public String getDetail() {
+            return detail;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package apijson.boot.jolt;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.bazaarvoice.jolt.Chainr;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JOLT 流式转换控制器
+ * 对 "Student[]": {"*": {...}} 这类逐元素的 spec，输入边读边转换，输出边转换边写出（NDJSON 或流式 JSON 数组），
+ * 不在内存中保留完整的 input/output，堆占用与行数无关。
+ * 每个元素单独转换，输出的第 i 项等于只有该元素时 /jolt/{name} 的结果。输出路径跨元素累积的 spec（categories[]、[&1] 等，
+ * 包括内置的图表 spec）逐元素执行时结果和 /jolt/{name} 不同，不支持流式，返回 400。
+ */
+@RestController
+@RequestMapping("/jolt/stream")
+@CrossOrigin(origins = "*")
+public class JoltStreamController {
+
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_ARRAY = "array";
+
+    public static final String CONTENT_TYPE_NDJSON = "application/x-ndjson";
+
+    /**
+     * JDBC 游标数据源允许查询的 Student 字段
+     */
+    public static final Set<String> STUDENT_COLUMN_SET = Set.of(
+        "id", "student_no", "name", "gender", "age", "grade", "class_name"
+        , "phone", "email", "address", "status", "create_time", "update_time"
+    );
+
+    private static final Pattern REFERENCE_PATTERN = Pattern.compile("[&$](?:\\(\\s*(\\d+)|(\\d+))?");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    static {
+        MAPPER.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        MAPPER.getFactory().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JoltSpecRegistry specRegistry;
+
+    public JoltStreamController(JdbcTemplate jdbcTemplate, JoltSpecRegistry specRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.specRegistry = specRegistry;
+    }
+
+    /**从请求体流式读取并转换
+     * 请求体可以是 {"Student[]": [...]}、顶层数组 [...]，或 Content-Type 为 application/x-ndjson 的逐行元素
+     * @param name JoltSpec 表中的 spec 名称，必须是逐元素的 spec
+     * @param format 输出格式，ndjson 或 array
+     */
+    @PostMapping("/{name}")
+    public void streamBody(@PathVariable String name, @RequestParam(value = "format", defaultValue = FORMAT_NDJSON) String format
+            , HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ElementTransformer transformer = prepare(name, response);
+        if (transformer == null) {
+            return;
+        }
+
+        boolean ndjsonInput = request.getContentType() != null && request.getContentType().startsWith(CONTENT_TYPE_NDJSON);
+
+        try (JsonParser parser = MAPPER.getFactory().createParser(request.getInputStream());
+             ElementWriter writer = new ElementWriter(response, format)) {
+            try {
+                JsonToken token = parser.nextToken();
+                if (ndjsonInput) {
+                    // NDJSON 即多个顶层值，逐个读取
+                    while (token != null) {
+                        writer.write(transformer.transform(MAPPER.readValue(parser, Object.class)));
+                        token = parser.nextToken();
+                    }
+                } else if (token == JsonToken.START_ARRAY) {
+                    transformArray(parser, transformer, writer);
+                } else if (token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = parser.getCurrentName();
+                        if (parser.nextToken() == JsonToken.START_ARRAY && transformer.arrayKey.equals(field)) {
+                            transformArray(parser, transformer, writer);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                writer.writeError(e);
+            }
+        }
+    }
+
+    /**直接从数据库游标流式读取 Student 并转换
+     * @param name JoltSpec 表中的 spec 名称，必须是逐元素的 spec
+     * @param columns 查询字段，逗号分隔，只允许 Student 表中的字段
+     * @param status 非必须，按状态过滤
+     * @param format 输出格式，ndjson 或 array
+     */
+    @GetMapping("/{name}/student")
+    public void streamStudent(@PathVariable String name, @RequestParam(value = "columns", defaultValue = "id,name,gender,age,grade,class_name") String columns
+            , @RequestParam(value = "status", required = false) Integer status
+            , @RequestParam(value = "format", defaultValue = FORMAT_NDJSON) String format, HttpServletResponse response) throws IOException {
+        List<String> columnList = new ArrayList<>();
+        for (String column : columns.split(",")) {
+            String c = column.trim();
+            if (STUDENT_COLUMN_SET.contains(c) == false) {
+                writeError(response, HttpServletResponse.SC_BAD_REQUEST, "不支持的字段: " + c);
+                return;
+            }
+            columnList.add(c);
+        }
+
+        ElementTransformer transformer = prepare(name, response);
+        if (transformer == null) {
+            return;
+        }
+
+        String sql = "SELECT " + String.join(", ", columnList) + " FROM Student" + (status == null ? "" : " WHERE status = ?");
+        try (ElementWriter writer = new ElementWriter(response, format)) {
+            try {
+                jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    // MySQL 驱动只有 fetchSize 为 Integer.MIN_VALUE 时才逐行流式读取，否则会一次读完整个结果集
+                    String product = con.getMetaData().getDatabaseProductName();
+                    ps.setFetchSize(product != null && product.toLowerCase().contains("mysql") ? Integer.MIN_VALUE : 1000);
+                    if (status != null) {
+                        ps.setInt(1, status);
+                    }
+                    return ps;
+                }, rs -> {
+                    ResultSetMetaData rsmd = rs.getMetaData();
+                    int count = rsmd.getColumnCount();
+                    Map<String, Object> row = new LinkedHashMap<>(count * 2);
+                    for (int i = 1; i <= count; i++) {
+                        row.put(JdbcUtils.lookupColumnName(rsmd, i), JdbcUtils.getResultSetValue(rs, i));
+                    }
+                    try {
+                        writer.write(transformer.transform(row));
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);  // 客户端断开时中止查询
+                    }
+                });
+            } catch (Exception e) {
+                writer.writeError(e);
+            }
+        }
+    }
+
+    private static void transformArray(JsonParser parser, ElementTransformer transformer, ElementWriter writer) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            writer.write(transformer.transform(MAPPER.readValue(parser, Object.class)));
+        }
+    }
+
+    /**
+     * 查找 spec 并校验是否可逐元素执行，不满足时直接写出错误响应并返回 null
+     */
+    private ElementTransformer prepare(String name, HttpServletResponse response) throws IOException {
+        JoltSpecRegistry.JoltSpecEntry entry = specRegistry.get(name);
+        if (entry == null) {
+            writeError(response, HttpServletResponse.SC_NOT_FOUND, "未找到 JOLT spec: " + name);
+            return null;
+        }
+
+        String arrayKey = getElementArrayKey(entry.getSpec());
+        if (arrayKey == null) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST
+                , "JOLT spec: " + name + " 不是逐元素的 spec，流式模式只支持 {\"operation\": \"shift\", \"spec\": {\"Xxx[]\": {\"*\": {...}}}} 开头、后续只有 default/remove 的 spec，"
+                + "且输出路径不能跨元素累积（不能有 []、[#N]，也不能用 &N 引用元素下标）");
+            return null;
+        }
+        return new ElementTransformer(arrayKey, entry.getChainr());
+    }
+
+    /**获取逐元素 spec 遍历的数组 key
+     * 第一个操作必须是 shift 且只有 "Xxx[]": {"*": {...}} 一层数组遍历，后续操作只能是按元素局部生效的 default/remove。
+     * 元素内的输出路径不能跨元素累积：不能追加到数组（[]、[#N]），也不能引用 "*" 匹配到的元素下标或更上层（&N、$N），
+     * 否则逐元素执行时每个元素都会输出到下标 0，和整体执行的结果不同
+     * @return 输入中的数组 key（已去掉转义符），不是逐元素 spec 时返回 null
+     */
+    static String getElementArrayKey(List<Object> spec) {
+        if (spec == null || spec.isEmpty()) {
+            return null;
+        }
+
+        for (int i = 1; i < spec.size(); i++) {
+            Object operation = spec.get(i) instanceof Map ? ((Map<?, ?>) spec.get(i)).get("operation") : null;
+            if ("default".equals(operation) == false && "remove".equals(operation) == false) {
+                return null;
+            }
+        }
+
+        if (spec.get(0) instanceof Map == false) {
+            return null;
+        }
+        Map<?, ?> first = (Map<?, ?>) spec.get(0);
+        if ("shift".equals(first.get("operation")) == false || first.get("spec") instanceof Map == false) {
+            return null;
+        }
+
+        Map<?, ?> shiftSpec = (Map<?, ?>) first.get("spec");
+        if (shiftSpec.size() != 1) {
+            return null;
+        }
+        Map.Entry<?, ?> entry = shiftSpec.entrySet().iterator().next();
+        if (entry.getValue() instanceof Map == false) {
+            return null;
+        }
+        Map<?, ?> arraySpec = (Map<?, ?>) entry.getValue();
+        if (arraySpec.size() != 1 || arraySpec.containsKey("*") == false || isElementLocal(arraySpec.get("*"), 0) == false) {
+            return null;
+        }
+
+        String key = String.valueOf(entry.getKey());
+        // 只接受普通字面量 key，例如 Student\[\]，不接受 * & @ $ # | 等通配和引用
+        String literal = key.replace("\\[", "").replace("\\]", "");
+        if (literal.matches(".*[\\\\*&@$#|\\[\\]].*")) {
+            return null;
+        }
+        return key.replace("\\", "");
+    }
+
+    /**
+     * @param depth node 在 "*" 以下的层数，"*" 本身为 0，引用层数 N >= depth 时指向元素下标或更上层
+     */
+    private static boolean isElementLocal(Object node, int depth) {
+        if (node instanceof Map) {
+            for (Map.Entry<?, ?> child : ((Map<?, ?>) node).entrySet()) {
+                String key = String.valueOf(child.getKey());
+                if (key.startsWith("$") && referencesElement(key, depth + 1)) {
+                    return false;
+                }
+                if (isElementLocal(child.getValue(), depth + 1) == false) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (node instanceof List) {
+            for (Object path : (List<?>) node) {
+                if (isElementLocal(path, depth) == false) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String path = String.valueOf(node);
+        return path.contains("[]") == false && path.contains("[#") == false && referencesElement(path, depth) == false;
+    }
+
+    /**
+     * &、$ 不带数字时为 0，&(N,M) 取 N
+     */
+    private static boolean referencesElement(String path, int depth) {
+        Matcher matcher = REFERENCE_PATTERN.matcher(path);
+        while (matcher.find()) {
+            String level = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+            if ((level == null ? 0 : Integer.parseInt(level)) >= depth) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        JSONObject error = new JSONObject();
+        error.put("success", false);
+        error.put("error", message);
+        error.put("timestamp", System.currentTimeMillis());
+
+        response.setStatus(status);
+        response.setContentType("application/json;charset=UTF-8");
+        response.getOutputStream().write(JSON.toJSONBytes(error));
+    }
+
+
+    /**
+     * 把单个元素包装为只有一个元素的数组后，用原 spec 转换
+     * 包装容器复用，Shiftr 输出只引用叶子值，不引用包装容器，所以写出后即可复用
+     */
+    private static final class ElementTransformer {
+        final String arrayKey;
+        final Chainr chainr;
+        final Map<String, Object> wrapper = new HashMap<>(2);
+        final List<Object> singleton = new ArrayList<>(1);
+
+        ElementTransformer(String arrayKey, Chainr chainr) {
+            this.arrayKey = arrayKey;
+            this.chainr = chainr;
+            this.wrapper.put(arrayKey, singleton);
+        }
+
+        Object transform(Object element) {
+            singleton.clear();
+            singleton.add(element);
+            return chainr.transform(wrapper);
+        }
+    }
+
+    /**
+     * 逐个写出转换结果，NDJSON 每行一个，array 为流式 JSON 数组
+     */
+    private static final class ElementWriter implements AutoCloseable {
+        final JsonGenerator generator;
+        final boolean ndjson;
+
+        ElementWriter(HttpServletResponse response, String format) throws IOException {
+            this.ndjson = FORMAT_ARRAY.equals(format) == false;
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.setContentType(ndjson ? CONTENT_TYPE_NDJSON : "application/json");
+
+            OutputStream os = response.getOutputStream();
+            this.generator = MAPPER.getFactory().createGenerator(os);
+            if (ndjson) {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+            } else {
+                generator.writeStartArray();
+            }
+        }
+
+        void write(Object output) throws IOException {
+            MAPPER.writeValue(generator, output);
+        }
+
+        /**
+         * 响应已开始写出，无法再改状态码，错误作为最后一个元素写出
+         */
+        void writeError(Exception e) throws IOException {
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("success", false);
+            error.put("error", e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+            write(error);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (ndjson) {
+                generator.writeRaw('\n');
+            } else {
+                generator.writeEndArray();
+            }
+            generator.close();  // 不关闭底层输出流，只 flush
+        }
+    }
+}
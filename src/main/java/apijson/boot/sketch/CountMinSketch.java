@@ -0,0 +1,161 @@
+package apijson.boot.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Count-Min 频次估计，depth 行 × width 列计数器，并维护最多 topK 个候选值用于返回高频值
+ * 计数器允许减少，支持删除。估计值不小于真实值，以 1 - e^-depth 的概率不超过真实值 + e / width × 总数。
+ * 同样大小的两个实例可以合并。非线程安全。
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final long[][] counters;
+    private final int topK;
+    /**
+     * 候选高频值 -> 加入或更新时的估计值，只用于淘汰，返回时重新估计
+     */
+    private final Map<Object, Long> candidates = new HashMap<>();
+    private long total;
+
+    public CountMinSketch(int depth, int width, int topK) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("depth 和 width 必须大于 0");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new long[depth][width];
+        this.topK = Math.max(0, topK);
+    }
+
+    /**
+     * @param delta 为负数时表示删除；null 不计入
+     */
+    public void add(Object value, long delta) {
+        if (value == null || delta == 0) {
+            return;
+        }
+
+        long hash = HyperLogLog.hash64(value);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            int index = index(hash, i);
+            counters[i][index] += delta;
+            min = Math.min(min, counters[i][index]);
+        }
+        total += delta;
+
+        if (delta > 0 && topK > 0) {
+            offer(value, min);
+        }
+    }
+
+    private void offer(Object value, long estimate) {
+        if (candidates.containsKey(value) || candidates.size() < topK) {
+            candidates.put(value, estimate);
+            return;
+        }
+
+        Map.Entry<Object, Long> smallest = null;
+        for (Map.Entry<Object, Long> entry : candidates.entrySet()) {
+            if (smallest == null || entry.getValue() < smallest.getValue()) {
+                smallest = entry;
+            }
+        }
+        if (smallest != null && estimate > smallest.getValue()) {
+            candidates.remove(smallest.getKey());
+            candidates.put(value, estimate);
+        }
+    }
+
+    /**
+     * 两个哈希组合出第 i 行的列下标
+     */
+    private int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return Math.floorMod(h1 + row * h2, width);
+    }
+
+    public long estimate(Object value) {
+        if (value == null) {
+            return 0;
+        }
+
+        long hash = HyperLogLog.hash64(value);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters[i][index(hash, i)]);
+        }
+        return Math.max(0, min);
+    }
+
+    /**
+     * @return 按估计值降序的 value -> 估计值，最多 limit 个
+     */
+    public Map<Object, Long> getHeavyHitters(int limit) {
+        List<Map.Entry<Object, Long>> entries = new ArrayList<>();
+        for (Object value : candidates.keySet()) {
+            long estimate = estimate(value);
+            if (estimate > 0) {
+                entries.add(Map.entry(value, estimate));
+            }
+        }
+        entries.sort(Map.Entry.<Object, Long>comparingByValue(Comparator.reverseOrder()));
+
+        Map<Object, Long> heavyHitters = new LinkedHashMap<>();
+        for (Map.Entry<Object, Long> entry : entries) {
+            if (heavyHitters.size() >= limit) {
+                break;
+            }
+            heavyHitters.put(entry.getKey(), entry.getValue());
+        }
+        return heavyHitters;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * 单个估计值最多高出真实值的部分，e / width × 总数
+     */
+    public long getMaxOvercount() {
+        return (long) Math.ceil(Math.E / width * Math.max(0, total));
+    }
+
+    /**
+     * 估计值不超过 getMaxOvercount 误差的概率，1 - e^-depth
+     */
+    public double getConfidence() {
+        return 1 - Math.exp(-depth);
+    }
+
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("depth 或 width 不同，无法合并");
+        }
+        for (int i = 0; i < depth; i++) {
+            for (int j = 0; j < width; j++) {
+                counters[i][j] += other.counters[i][j];
+            }
+        }
+        total += other.total;
+
+        List<Object> values = new ArrayList<>(candidates.keySet());
+        values.addAll(other.candidates.keySet());
+        candidates.clear();
+        for (Object value : values) {
+            long estimate = estimate(value);
+            if (estimate > 0) {
+                offer(value, estimate);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package apijson.boot.sketch;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HyperLogLog 不同值个数估计，2^precision 个 6 位寄存器（按 byte 存放），占用固定 2^precision 字节
+ * 相对标准误差约 1.04 / sqrt(2^precision)，precision = 14 时约 0.81%。只能添加，不能删除。
+ * 同一 precision 的两个实例可以合并，结果和把两边的值都加到一个实例中相同。非线程安全。
+ */
+public class HyperLogLog {
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * @param precision 4 ~ 18
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("precision 必须在 4 ~ 18 之间: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * null 不计入
+     */
+    public void add(Object value) {
+        if (value == null) {
+            return;
+        }
+
+        long hash = hash64(value);
+        int index = (int) (hash >>> (64 - precision));
+        // 剩余位中第一个 1 的位置，补一个哨兵位保证不超过 64 - precision + 1
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // 小基数时用线性计数修正
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * 相对标准误差，约 68% 的估计值落在 ±1 倍、约 95% 落在 ±2 倍以内
+     */
+    public double getRelativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("precision 不同，无法合并: " + precision + " != " + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    /**
+     * 加上后 0 的哈希不再是 0
+     */
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    /**
+     * 整数按 long 取值，Integer 10 和 Long 10 的哈希相同，其它按字符串的 UTF-8 字节
+     */
+    static long hash64(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return mix64(((Number) value).longValue() + GOLDEN);
+        }
+        if (value instanceof Boolean) {
+            return mix64(((Boolean) value ? 1 : 0) + GOLDEN);
+        }
+
+        // FNV-1a 后再做一次 mix，使高位分布均匀
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.toString().getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix64(hash);
+    }
+
+    /**
+     * MurmurHash3 的 fmix64
+     */
+    static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,229 @@
+package apijson.boot.sketch;
+
+import java.util.Arrays;
+
+/**
+ * t-digest 分位数估计（合并式实现），质心个数约为 compression 的 1 ~ 2 倍，和数据量无关
+ * 两端的质心更小，p1、p99 等尾部分位数比中位数更准。只能添加，不能删除。
+ * 两个实例可以合并，合并后的精度和直接添加所有值相近。非线程安全。
+ */
+public class TDigest {
+
+    private final double compression;
+
+    private double[] means;
+    private double[] weights;
+    private int centroidCount;
+
+    private final double[] bufferValues;
+    private final double[] bufferWeights;
+    private int bufferCount;
+
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param compression 常用 100，越大越准，质心越多
+     */
+    public TDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("compression 不能小于 10: " + compression);
+        }
+        this.compression = compression;
+        int capacity = (int) Math.ceil(2 * compression) + 10;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.bufferValues = new double[capacity * 5];
+        this.bufferWeights = new double[capacity * 5];
+        Arrays.fill(bufferWeights, 1);
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (bufferCount >= bufferValues.length) {
+            compress();
+        }
+        bufferValues[bufferCount++] = value;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(TDigest other) {
+        other.compress();
+        if (other.centroidCount <= 0) {
+            return;
+        }
+        compress();
+
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        rebuild(other.means, other.weights, other.centroidCount);
+    }
+
+    /**
+     * 把缓冲区中的值并入质心
+     */
+    private void compress() {
+        if (bufferCount <= 0) {
+            return;
+        }
+
+        Arrays.sort(bufferValues, 0, bufferCount);
+        int n = bufferCount;
+        bufferCount = 0;
+        rebuild(bufferValues, bufferWeights, n);
+    }
+
+    /**
+     * 把按均值升序的另一组质心和现有质心归并，再从左到右合并相邻质心，
+     * 质心的权重上限由 k1 尺度函数决定：q 越接近 0 或 1 越小
+     */
+    private void rebuild(double[] otherMeans, double[] otherWeights, int otherCount) {
+        double total = 0;
+        for (int i = 0; i < centroidCount; i++) {
+            total += weights[i];
+        }
+        for (int i = 0; i < otherCount; i++) {
+            total += otherWeights[i];
+        }
+
+        double[] newMeans = new double[Math.max(means.length, 16)];
+        double[] newWeights = new double[newMeans.length];
+        int size = 0;
+        double done = 0;
+        double limit = 0;
+        for (int a = 0, b = 0; a < centroidCount || b < otherCount; ) {
+            double mean;
+            double weight;
+            if (b >= otherCount || (a < centroidCount && means[a] <= otherMeans[b])) {
+                mean = means[a];
+                weight = weights[a++];
+            } else {
+                mean = otherMeans[b];
+                weight = otherWeights[b++];
+            }
+
+            if (size > 0 && done + weight <= limit) {
+                // 并入当前质心
+                int last = size - 1;
+                newWeights[last] += weight;
+                newMeans[last] += (mean - newMeans[last]) * weight / newWeights[last];
+            } else {
+                if (size >= newMeans.length) {
+                    newMeans = Arrays.copyOf(newMeans, size * 2);
+                    newWeights = Arrays.copyOf(newWeights, size * 2);
+                }
+                limit = total * limitQ(done / total);
+                newMeans[size] = mean;
+                newWeights[size] = weight;
+                size++;
+            }
+            done += weight;
+        }
+
+        means = newMeans;
+        weights = newWeights;
+        centroidCount = size;
+    }
+
+    /**
+     * 从分位 q 开始的质心最多累计到的分位，k1(q) = compression / (2π) × asin(2q - 1)，k 每增加 1 开始一个新质心
+     */
+    private double limitQ(double q) {
+        double k = compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, Math.max(0, q)) - 1);
+        double next = Math.sin(Math.min(Math.PI / 2, (k + 1) * 2 * Math.PI / compression));
+        return (next + 1) / 2;
+    }
+
+    /**
+     * @param q 0 ~ 1
+     * @return 没有数据时为 NaN
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("q 必须在 0 ~ 1 之间: " + q);
+        }
+        compress();
+        if (centroidCount <= 0) {
+            return Double.NaN;
+        }
+        if (centroidCount == 1) {
+            return means[0];
+        }
+
+        double target = q * count;
+        if (target <= weights[0] / 2) {
+            return interpolate(min, means[0], target / (weights[0] / 2));
+        }
+
+        double cumulative = weights[0] / 2;  // 到第 i 个质心中心为止的累计权重
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double gap = (weights[i] + weights[i + 1]) / 2;
+            if (cumulative + gap >= target) {
+                return interpolate(means[i], means[i + 1], (target - cumulative) / gap);
+            }
+            cumulative += gap;
+        }
+
+        int last = centroidCount - 1;
+        double tail = weights[last] / 2;
+        return interpolate(means[last], max, tail <= 0 ? 1 : Math.min(1, (target - cumulative) / tail));
+    }
+
+    private static double interpolate(double from, double to, double ratio) {
+        return from + (to - from) * ratio;
+    }
+
+    /**
+     * 分位 q 处的排名误差上限（占总数的比例），为包含该位置的质心权重的一半；
+     * 返回值的真实分位通常在 q ± 该值以内
+     */
+    public double getRankError(double q) {
+        compress();
+        if (centroidCount <= 0 || count <= 0) {
+            return 0;
+        }
+
+        double target = q * count;
+        double cumulative = 0;
+        for (int i = 0; i < centroidCount; i++) {
+            cumulative += weights[i];
+            if (cumulative >= target) {
+                return weights[i] / 2 / count;
+            }
+        }
+        return weights[centroidCount - 1] / 2 / count;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return 没有数据时为 NaN
+     */
+    public double getMean() {
+        return count <= 0 ? Double.NaN : sum / count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public int getCentroidCount() {
+        compress();
+        return centroidCount;
+    }
+}
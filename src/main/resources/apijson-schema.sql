@@ -114,4 +114,17 @@ CREATE TABLE IF NOT EXISTS `Document` (
     `header` VARCHAR(2000) NULL DEFAULT NULL COMMENT '请求头Request Header',
     `date` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建日期',
     PRIMARY KEY (`id`)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='接口文档';
\ No newline at end of file
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='接口文档';
+
+-- JOLT 转换规则表
+CREATE TABLE IF NOT EXISTS `JoltSpec` (
+    `id` BIGINT(20) NOT NULL AUTO_INCREMENT COMMENT '唯一标识',
+    `debug` TINYINT(4) NOT NULL DEFAULT '0' COMMENT '是否为调试，0-否，1-是，调试数据不会被加载',
+    `name` VARCHAR(50) NOT NULL COMMENT '名称，对应 /jolt/{name}',
+    `version` INT(11) NOT NULL DEFAULT '1' COMMENT '版本号，/jolt/{name} 使用最新版本，/jolt/{name}/{version} 使用指定版本',
+    `spec` TEXT NOT NULL COMMENT 'JOLT Chainr spec JSON 数组',
+    `detail` VARCHAR(1000) NULL DEFAULT NULL COMMENT '详细说明',
+    `date` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_name_version` (`name`, `version`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='JOLT转换规则';
@@ -8,6 +8,9 @@
 const ChartsConfig = {
     baseUrl: 'http://localhost:8080',
     joltTransformUrl: '/jolt/transform',
+    joltQueryUrl: '/jolt/query',  // 服务端查询并转换，一次请求拿到图表数据
+    dashboardUrl: '/dataflow/dashboard?status=1',  // 一次扫描返回全部图表和统计数据，和实时推送一样只统计在读学生
+    streamUrl: '/dataflow/stream',  // SSE 推送分布变化，不再轮询
     apiGetUrl: '/get',  // 回到原来的APIJSON标准端点
     colors: {
         primary: ['#5470c6', '#91cc75', '#fac858', '#ee6666', '#73c0de', '#3ba272', '#fc8452', '#9a60b4'],
@@ -34,8 +37,8 @@ document.addEventListener('DOMContentLoaded', function() {
     // 初始化所有图表
     initializeCharts();
     
-    // 加载数据并渲染图表
-    loadAllChartsData();
+    // 加载数据并渲染图表，之后由服务端推送变化
+    loadAllChartsData().then(connectDashboardStream);
     
     console.log('✅ ECharts图表系统初始化完成');
 });
@@ -98,7 +101,13 @@ function initializeCharts() {
 async function loadAllChartsData() {
     console.log('📈 开始加载所有图表数据...');
     
-    // 并行加载所有数据
+    // 优先一次请求拿到全部数据，失败时回退到逐个加载
+    if (await loadDashboard()) {
+        console.log('✅ 所有图表数据加载完成');
+        return;
+    }
+    
+    // 并行加载所有数据，和仪表盘接口一样只统计在读学生（status = 1）
     await Promise.all([
         loadGradeDistribution(),
         loadGenderDistribution(),
@@ -109,6 +118,47 @@ async function loadAllChartsData() {
     console.log('✅ 所有图表数据加载完成');
 }
 
+/**
+ * 从仪表盘接口加载全部图表和统计数据，服务端只扫描一次 Student
+ * @returns 是否加载成功
+ */
+async function loadDashboard() {
+    ['gradeLoading', 'genderLoading', 'ageLoading'].forEach(showLoading);
+    
+    try {
+        const response = await fetch(`${ChartsConfig.baseUrl}${ChartsConfig.dashboardUrl}`);
+        if (!response.ok) {
+            throw new Error(`HTTP ${response.status}`);
+        }
+        
+        const result = await response.json();
+        if (!result.success || !result.dashboard) {
+            throw new Error(result.error || '仪表盘数据为空');
+        }
+        
+        const { charts, stats } = result.dashboard;
+        console.log('🔄 仪表盘数据:', result.dashboard);
+        
+        renderGradeChart(charts.grade);
+        renderGenderChart(charts.gender);
+        renderAgeChart(postProcessJoltData(charts.age, 'age-distribution'));
+        
+        updateStatsDisplay({
+            total: stats.total || 0,
+            grades: stats.grades || 0,
+            avgAge: Math.round(stats.avgAge || 0),
+            maleRatio: Math.round(stats.maleRatio || 0)
+        });
+        return true;
+        
+    } catch (error) {
+        console.warn('⚠️ 仪表盘数据加载失败，改为逐个加载:', error);
+        return false;
+    } finally {
+        ['gradeLoading', 'genderLoading', 'ageLoading'].forEach(hideLoading);
+    }
+}
+
 /**
  * 加载年级分布数据并渲染柱状图
  */
@@ -116,21 +166,17 @@ async function loadGradeDistribution() {
     showLoading('gradeLoading');
     
     try {
-        // APIJSON查询年级分布数据
-        const apiData = await fetchApiData({
+        // 服务端APIJSON查询并JOLT转换为ECharts格式
+        const chartData = await queryChartData({
             "Student[]": {
                 "Student": {
+                    "status": 1,
                     "@column": "grade, count(*):count",
                     "@group": "grade",
                     "@order": "grade+"
                 }
             }
-        });
-        
-        console.log('📊 年级分布原始数据:', apiData);
-        
-        // JOLT转换为ECharts格式
-        const chartData = await transformDataWithJolt(apiData, 'grade-distribution');
+        }, 'grade-distribution');
         
         console.log('🔄 年级分布转换后数据:', chartData);
         
@@ -152,21 +198,17 @@ async function loadGenderDistribution() {
     showLoading('genderLoading');
     
     try {
-        // APIJSON查询性别分布数据
-        const apiData = await fetchApiData({
+        // 服务端APIJSON查询并JOLT转换为ECharts格式
+        const chartData = await queryChartData({
             "Student[]": {
                 "Student": {
+                    "status": 1,
                     "@column": "gender, count(*):count",
                     "@group": "gender",
                     "@order": "gender+"
                 }
             }
-        });
-        
-        console.log('📊 性别分布原始数据:', apiData);
-        
-        // JOLT转换为ECharts格式
-        const chartData = await transformDataWithJolt(apiData, 'gender-distribution');
+        }, 'gender-distribution');
         
         console.log('🔄 性别分布转换后数据:', chartData);
         
@@ -188,21 +230,17 @@ async function loadAgeDistribution() {
     showLoading('ageLoading');
     
     try {
-        // APIJSON查询年龄分布数据
-        const apiData = await fetchApiData({
+        // 服务端APIJSON查询并JOLT转换为ECharts格式
+        const chartData = await queryChartData({
             "Student[]": {
                 "Student": {
+                    "status": 1,
                     "@column": "age, count(*):count",
                     "@group": "age",
                     "@order": "age+"
                 }
             }
-        });
-        
-        console.log('📊 年龄分布原始数据:', apiData);
-        
-        // JOLT转换为ECharts格式
-        const chartData = await transformDataWithJolt(apiData, 'age-distribution');
+        }, 'age-distribution');
         
         console.log('🔄 年龄分布转换后数据:', chartData);
         
@@ -225,6 +263,7 @@ async function loadStatsOverview() {
         // 获取学生总数
         const totalData = await fetchApiData({
             "Student": {
+                "status": 1,
                 "@count": 1
             }
         });
@@ -233,6 +272,7 @@ async function loadStatsOverview() {
         const gradeData = await fetchApiData({
             "Student[]": {
                 "Student": {
+                    "status": 1,
                     "@column": "count(distinct grade):grade_count"
                 }
             }
@@ -242,6 +282,7 @@ async function loadStatsOverview() {
         const avgAgeData = await fetchApiData({
             "Student[]": {
                 "Student": {
+                    "status": 1,
                     "@column": "avg(age):avg_age"
                 }
             }
@@ -251,6 +292,7 @@ async function loadStatsOverview() {
         const maleData = await fetchApiData({
             "Student[]": {
                 "Student": {
+                    "status": 1,
                     "@column": "sum(case when gender=0 then 1 else 0 end)*100.0/count(*):male_ratio"
                 }
             }
@@ -288,6 +330,39 @@ async function fetchApiData(requestBody) {
     return await response.json();
 }
 
+/**
+ * 服务端执行APIJSON查询并用命名spec转换，失败时回退到先查询再转换的两步请求
+ */
+async function queryChartData(requestBody, transformType) {
+    try {
+        const response = await fetch(`${ChartsConfig.baseUrl}${ChartsConfig.joltQueryUrl}`, {
+            method: 'POST',
+            headers: {
+                'Content-Type': 'application/json'
+            },
+            body: JSON.stringify({
+                name: transformType,
+                request: requestBody
+            })
+        });
+        
+        if (response.ok) {
+            const result = await response.json();
+            if (result.code === 200) {
+                return postProcessJoltData(result.data, transformType);
+            } else {
+                throw new Error(result.msg || 'JOLT查询转换失败');
+            }
+        } else {
+            throw new Error(`JOLT查询请求失败: ${response.status}`);
+        }
+    } catch (error) {
+        console.warn('⚠️ 服务端查询转换不可用，回退到分步请求:', error);
+        const apiData = await fetchApiData(requestBody);
+        return transformDataWithJolt(apiData, transformType);
+    }
+}
+
 /**
  * 使用JOLT转换数据
  */
@@ -717,6 +792,104 @@ function showErrorInChart(chart, message) {
     chart.setOption(option);
 }
 
+// 实时推送的分布，column -> Map(value -> count)
+const liveHistograms = { grade: new Map(), gender: new Map(), age: new Map() };
+let dashboardStream = null;
+
+/**
+ * 订阅服务端推送：snapshot 事件替换全部分布，delta 事件只包含变化的值，count 为 0 表示该值已没有学生
+ */
+function connectDashboardStream() {
+    if (!window.EventSource || dashboardStream) {
+        return;
+    }
+    
+    dashboardStream = new EventSource(`${ChartsConfig.baseUrl}${ChartsConfig.streamUrl}`);
+    
+    dashboardStream.addEventListener('snapshot', event => {
+        Object.values(liveHistograms).forEach(histogram => histogram.clear());
+        applyHistogramRows(JSON.parse(event.data));
+        renderLiveCharts();
+    });
+    
+    dashboardStream.addEventListener('delta', event => {
+        applyHistogramRows(JSON.parse(event.data));
+        renderLiveCharts();
+    });
+    
+    dashboardStream.onerror = () => {
+        // 断开后 EventSource 会自动重连并重新收到 snapshot，被拒绝（如连接数已满）时不再重连
+        if (dashboardStream.readyState === EventSource.CLOSED) {
+            console.warn('⚠️ 实时推送不可用，可点击刷新按钮手动更新');
+            dashboardStream = null;
+        }
+    };
+}
+
+function applyHistogramRows(data) {
+    Object.keys(data).forEach(column => {
+        const histogram = liveHistograms[column];
+        if (!histogram) {
+            return;
+        }
+        data[column].forEach(row => {
+            if (row.count > 0) {
+                histogram.set(row[column], row.count);
+            } else {
+                histogram.delete(row[column]);
+            }
+        });
+    });
+}
+
+/**
+ * 按值升序排列，null 在最前面，和服务端一致
+ */
+function sortedEntries(histogram) {
+    return [...histogram.entries()].sort(([a], [b]) => {
+        if (a === b) return 0;
+        if (a === null) return -1;
+        if (b === null) return 1;
+        return a < b ? -1 : 1;
+    });
+}
+
+function renderLiveCharts() {
+    const grades = sortedEntries(liveHistograms.grade);
+    renderGradeChart({
+        categories: grades.map(([grade]) => grade),
+        values: grades.map(([, count]) => count)
+    });
+    
+    const genders = sortedEntries(liveHistograms.gender);
+    renderGenderChart(genders.map(([gender, count]) => ({
+        name: gender === 0 ? '男' : (gender === 1 ? '女' : '未知'),
+        value: count
+    })));
+    
+    const ages = sortedEntries(liveHistograms.age);
+    renderAgeChart({
+        categories: ages.map(([age]) => `${age}岁`),
+        values: ages.map(([, count]) => count)
+    });
+    
+    const total = grades.reduce((sum, [, count]) => sum + count, 0);
+    let ageSum = 0;
+    let ageCount = 0;
+    ages.forEach(([age, count]) => {
+        if (age !== null) {
+            ageSum += age * count;
+            ageCount += count;
+        }
+    });
+    updateStatsDisplay({
+        total: total,
+        grades: grades.filter(([grade]) => grade !== null).length,
+        avgAge: ageCount > 0 ? Math.round(ageSum / ageCount) : 0,
+        maleRatio: total > 0 ? Math.round((liveHistograms.gender.get(0) || 0) * 100 / total) : 0
+    });
+}
+
 /**
  * 刷新所有图表
  */
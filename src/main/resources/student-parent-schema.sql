@@ -23,6 +23,14 @@ CREATE TABLE IF NOT EXISTS `Student` (
     KEY `idx_status` (`status`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='学生信息表';
 
+-- 学生每日入学、离校人数汇总表，由应用增量维护
+CREATE TABLE IF NOT EXISTS `StudentDaily` (
+    `stat_date` DATE NOT NULL COMMENT '日期',
+    `enrolled` INT(11) NOT NULL DEFAULT '0' COMMENT '当天变为在读的人数',
+    `churned` INT(11) NOT NULL DEFAULT '0' COMMENT '当天不再在读的人数',
+    PRIMARY KEY (`stat_date`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='学生每日趋势汇总';
+
 -- 家长表  
 CREATE TABLE IF NOT EXISTS `Parent` (
     `id` BIGINT(20) NOT NULL AUTO_INCREMENT COMMENT '家长ID，主键',
@@ -0,0 +1,96 @@
+package apijson.boot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ColumnarQuery 测试
+ * 过滤、分组、聚合结果和逐行计算一致，null 不满足条件且单独成组，并行和串行结果相同
+ */
+@DisplayName("列式快照查询测试")
+public class ColumnarQueryTest {
+
+    private static StudentColumns.Snapshot sample() {
+        StudentColumns.Builder builder = new StudentColumns.Builder();
+        builder.add(10, 0, 1, "八年级", "八年级(1)班");
+        builder.add(12, 1, 1, "七年级", "七年级(1)班");
+        builder.add(13, 0, 1, "八年级", "八年级(2)班");
+        builder.add(null, 1, 1, "八年级", "八年级(1)班");
+        builder.add(15, 0, 0, null, null);
+        builder.add(11, null, 1, "七年级", "七年级(1)班");
+        return builder.build(1, System.currentTimeMillis());
+    }
+
+    @Test
+    @DisplayName("过滤和分组聚合")
+    public void testFilterGroupAggregate() {
+        List<Map<String, Object>> rows = ColumnarQuery.parse("status=1", "grade", "count,avg(age),max(age)").execute(sample(), 0);
+
+        assertEquals(2, rows.size());
+        assertEquals("七年级", rows.get(0).get("grade"));  // 字典序
+        assertEquals(2L, rows.get(0).get("count"));
+        assertEquals(11.5, rows.get(0).get("avg_age"));
+        assertEquals("八年级", rows.get(1).get("grade"));
+        assertEquals(3L, rows.get(1).get("count"));
+        assertEquals(11.5, rows.get(1).get("avg_age"));  // null 的 age 不参与平均
+        assertEquals(13, rows.get(1).get("max_age"));
+
+        rows = ColumnarQuery.parse("age>=11,age<15,grade!=七年级", null, null).execute(sample(), 0);
+        assertEquals(1, rows.size());
+        assertEquals(1L, rows.get(0).get("count"));
+
+        rows = ColumnarQuery.parse("gender=0|1,grade=九年级", null, null).execute(sample(), 0);
+        assertTrue(rows.isEmpty(), "字典中不存在的值不匹配任何行");
+    }
+
+    @Test
+    @DisplayName("null 分组和 age 区间")
+    public void testNullGroupAndBuckets() {
+        List<Map<String, Object>> rows = ColumnarQuery.parse(null, "gender", null).execute(sample(), 0);
+        assertEquals(3, rows.size());
+        assertNull(rows.get(0).get("gender"));
+        assertEquals(1L, rows.get(0).get("count"));
+        assertEquals(0, rows.get(1).get("gender"));
+        assertEquals(3L, rows.get(1).get("count"));
+
+        rows = ColumnarQuery.parse(null, "age:5", null).execute(sample(), 0);
+        assertEquals(3, rows.size());
+        assertNull(rows.get(0).get("age"));
+        assertEquals(10, rows.get(1).get("age"));
+        assertEquals(4L, rows.get(1).get("count"));
+        assertEquals(15, rows.get(2).get("age"));
+
+        assertThrows(IllegalArgumentException.class, () -> ColumnarQuery.parse("grade>七年级", null, null));
+        assertThrows(IllegalArgumentException.class, () -> ColumnarQuery.parse(null, null, "avg(grade)"));
+    }
+
+    @Test
+    @DisplayName("并行和串行结果一致")
+    public void testParallel() {
+        Random random = new Random(7);
+        StudentColumns.Builder builder = new StudentColumns.Builder();
+        long expected = 0;
+        for (int i = 0; i < 300_000; i++) {
+            int age = 6 + random.nextInt(14);
+            int status = random.nextInt(2);
+            builder.add(age, random.nextInt(2), status, (age % 6) + "年级", null);
+            if (status == 1 && age >= 10) {
+                expected++;
+            }
+        }
+        StudentColumns.Snapshot snapshot = builder.build(1, System.currentTimeMillis());
+
+        ColumnarQuery query = ColumnarQuery.parse("status=1,age>=10", "grade,gender", "count,sum(age),min(age)");
+        List<Map<String, Object>> serial = query.execute(snapshot, 0);
+        List<Map<String, Object>> parallel = query.execute(snapshot, 1);
+
+        assertEquals(serial, parallel);
+        assertEquals(expected, serial.stream().mapToLong(row -> (Long) row.get("count")).sum());
+    }
+}
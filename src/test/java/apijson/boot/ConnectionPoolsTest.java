@@ -0,0 +1,78 @@
+package apijson.boot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.alibaba.fastjson.JSONObject;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * ConnectionPools 测试
+ * 按名称配置的连接池单独设置大小，租借、归还和等待超时都计入统计
+ */
+@DisplayName("连接池测试")
+public class ConnectionPoolsTest {
+
+    private HikariDataSource primary;
+    private ConnectionPools pools;
+
+    @BeforeEach
+    public void setUp() {
+        String url = "jdbc:h2:mem:pools" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+        primary = new HikariDataSource();
+        primary.setJdbcUrl(url);
+        primary.setMaximumPoolSize(2);
+
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("apijson.pools.report.jdbc-url", url)
+                .withProperty("apijson.pools.report.maximum-pool-size", "1")
+                .withProperty("apijson.pools.report.connection-timeout", "250");
+        pools = new ConnectionPools(primary, environment);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pools.shutdown();
+        primary.close();
+    }
+
+    @Test
+    @DisplayName("租借、归还和等待超时")
+    public void testLeaseAndTimeout() throws Exception {
+        assertSame(primary, pools.getDataSource(null));
+        assertSame(primary, pools.getDataSource("unknown"));
+
+        ConnectionPools.Lease lease = pools.lease("report");
+        assertEquals("report", lease.getPoolName());
+        Connection connection = lease.getConnection();
+        assertFalse(connection.isClosed());
+
+        // report 只有 1 个连接，被占用时等待 connection-timeout 后失败
+        assertThrows(SQLTransientConnectionException.class, () -> pools.lease("report"));
+
+        lease.release();
+        lease.release();
+        assertTrue(connection.isClosed());
+        pools.lease("report").release();
+
+        JSONObject report = pools.getStats().getJSONObject("report");
+        assertEquals(1, report.getIntValue("maximumPoolSize"));
+        assertEquals(2, report.getLongValue("leaseCount"));
+        assertEquals(0, report.getLongValue("outstanding"));
+        assertEquals(1, report.getLongValue("timeoutCount"));
+        assertEquals(1, report.getIntValue("idle"));
+
+        ConnectionPools.Lease defaultLease = pools.lease(null);
+        assertEquals(ConnectionPools.DEFAULT, defaultLease.getPoolName());
+        assertEquals(1, pools.getStats().getJSONObject(ConnectionPools.DEFAULT).getIntValue("active"));
+        defaultLease.release();
+    }
+}
@@ -0,0 +1,143 @@
+package apijson.boot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * DashboardExecutor 测试
+ * 各部分同时执行，总耗时接近最慢的部分；超时和异常的部分不影响其它部分返回；
+ * 超时的慢查询在数据库端被取消并归还连接，平台线程池排满时新的部分直接失败
+ */
+@DisplayName("仪表盘组合查询执行器测试")
+public class DashboardExecutorTest {
+
+    private final DashboardExecutor executor = new DashboardExecutor(5000, true, 4, 64);
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    @DisplayName("并行执行")
+    public void testParallel() {
+        long start = System.nanoTime();
+        DashboardExecutor.Result result = executor.fanout()
+                .add("a", () -> { Thread.sleep(300); return 1; }, 2000)
+                .add("b", () -> { Thread.sleep(300); return 2; }, 2000)
+                .add("c", () -> { Thread.sleep(300); return 3; }, 2000)
+                .join();
+        long elapsedMillis = (System.nanoTime() - start) / 1000_000;
+
+        assertFalse(result.isPartial());
+        assertEquals(3, result.getValues().size());
+        assertEquals(2, result.getValues().get("b"));
+        assertTrue(elapsedMillis < 800, "串行执行需要 900 毫秒，实际 " + elapsedMillis);
+    }
+
+    @Test
+    @DisplayName("部分超时和失败")
+    public void testPartial() {
+        long start = System.nanoTime();
+        DashboardExecutor.Result result = executor.fanout()
+                .add("fast", () -> "ok", 1000)
+                .add("slow", () -> { Thread.sleep(5000); return "late"; }, 200)
+                .add("broken", () -> { throw new IllegalStateException("boom"); }, 1000)
+                .join();
+        long elapsedMillis = (System.nanoTime() - start) / 1000_000;
+
+        assertTrue(result.isPartial());
+        assertEquals("ok", result.getValues().get("fast"));
+        assertEquals(1, result.getValues().size());
+        assertEquals(List.of("slow"), result.getTimeouts());
+        assertEquals("boom", result.getErrors().get("broken"));
+        assertTrue(elapsedMillis < 2000, "不能等待超时的部分，实际 " + elapsedMillis);
+    }
+
+    @Test
+    @DisplayName("单个任务按截止时间执行")
+    public void testCall() throws Exception {
+        assertEquals("ok", executor.call("fast", () -> "ok", 1000));
+
+        long start = System.nanoTime();
+        assertThrows(TimeoutException.class, () -> executor.call("slow", () -> { Thread.sleep(5000); return "late"; }, 200));
+        assertTrue((System.nanoTime() - start) / 1000_000 < 2000);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> executor.call("broken", () -> { throw new IllegalStateException("boom"); }, 1000));
+        assertEquals("boom", e.getCause().getMessage());
+        assertEquals(1, executor.getStats().getLongValue("timeoutCount"));
+        assertEquals(1, executor.getStats().getLongValue("failureCount"));
+    }
+
+    @Test
+    @DisplayName("请求 timeout 不超过上限")
+    public void testTimeoutMillis() {
+        assertEquals(5000, executor.getTimeoutMillis(null));
+        assertEquals(100, executor.getTimeoutMillis(100L));
+        assertEquals(5000, executor.getTimeoutMillis(60000L));
+    }
+
+    @Test
+    @DisplayName("超时的慢查询归还连接")
+    public void testSlowQueryReleasesConnection() throws Exception {
+        DashboardExecutor platform = new DashboardExecutor(5000, false, 2, 4);
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:dashboard" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(1);
+        dataSource.setConnectionTimeout(1000);
+        try {
+            JdbcTemplate jdbcTemplate = platform.withDeadline(new JdbcTemplate(dataSource));
+            long start = System.nanoTime();
+            DashboardExecutor.Result result = platform.fanout()
+                    .add("slow", () -> jdbcTemplate.queryForObject("SELECT SUM(a.X * b.X) FROM SYSTEM_RANGE(1, 100000) a, SYSTEM_RANGE(1, 100000) b", Long.class), 300)
+                    .join();
+            assertEquals(List.of("slow"), result.getTimeouts());
+
+            // 只有一个连接，慢查询不结束的话下面的查询会等待连接超时
+            long deadline = System.nanoTime() + 2000_000_000L;
+            while (dataSource.getHikariPoolMXBean().getActiveConnections() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, dataSource.getHikariPoolMXBean().getActiveConnections(), "超时后连接被归还");
+            assertEquals(1, jdbcTemplate.queryForObject("SELECT 1", Integer.class));
+            long elapsedMillis = (System.nanoTime() - start) / 1000_000;
+            assertTrue(elapsedMillis < 2000, "慢查询需要在截止时间附近被取消，实际 " + elapsedMillis);
+            assertEquals(1, platform.getStats().getLongValue("cancelledStatementCount"));
+        } finally {
+            platform.shutdown();
+            dataSource.close();
+        }
+    }
+
+    @Test
+    @DisplayName("平台线程池排满时拒绝")
+    public void testBoundedQueue() {
+        DashboardExecutor platform = new DashboardExecutor(5000, false, 1, 1);
+        try {
+            DashboardExecutor.Result result = platform.fanout()
+                    .add("running", () -> { Thread.sleep(200); return 1; }, 1000)
+                    .add("queued", () -> 2, 1000)
+                    .add("rejected", () -> 3, 1000)
+                    .join();
+
+            assertTrue(result.isPartial());
+            assertEquals(1, result.getValues().get("running"));
+            assertEquals(2, result.getValues().get("queued"));
+            assertTrue(result.getErrors().containsKey("rejected"));
+            assertEquals(1, platform.getStats().getLongValue("rejectedCount"));
+        } finally {
+            platform.shutdown();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package apijson.boot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * EChartsOption 测试
+ * fastjson 和 Jackson 的输出都要和原来拼接字符串生成的配置一致
+ */
+@DisplayName("ECharts 配置构建器测试")
+public class EChartsOptionTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static void assertJson(String expected, EChartsOption option) throws Exception {
+        Object expectedObject = JSON.parse(expected);
+        assertEquals(expectedObject, JSON.parse(JSON.toJSONString(option)), "fastjson");
+        assertEquals(expectedObject, JSON.parse(MAPPER.writeValueAsString(option)), "Jackson");
+    }
+
+    @Test
+    @DisplayName("柱状图")
+    public void testBar() throws Exception {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("categories", List.of("一年级", "二年级\"A\""));
+        data.put("values", List.of(3, 5L));
+
+        assertJson("""
+            {"title":{"text":"学生年级分布"},"tooltip":{},
+             "xAxis":{"type":"category","data":["一年级","二年级\\"A\\""]},"yAxis":{"type":"value"},
+             "series":[{"type":"bar","data":[3,5]}]}""",
+            EChartsOption.fromCategoryValues(EChartsOption.Template.BAR, "学生年级分布", data));
+    }
+
+    @Test
+    @DisplayName("饼图")
+    public void testPie() throws Exception {
+        List<Map<String, Object>> data = List.of(Map.of("name", "男", "value", 2), Map.of("name", "女", "value", 1));
+
+        assertJson("""
+            {"title":{"text":"学生性别分布","left":"center"},"tooltip":{"trigger":"item"},
+             "series":[{"type":"pie","radius":"50%","data":[{"name":"男","value":2},{"name":"女","value":1}]}]}""",
+            EChartsOption.pie("学生性别分布").series(data));
+    }
+
+    @Test
+    @DisplayName("堆叠柱状图和分组折线图")
+    public void testMultiSeries() throws Exception {
+        assertJson("""
+            {"title":{"text":"t"},"tooltip":{"trigger":"axis"},"legend":{},
+             "xAxis":{"type":"category","data":[1,2]},"yAxis":{"type":"value"},
+             "series":[{"name":"a","type":"bar","stack":"total","data":[1,2]},{"name":"b","type":"bar","stack":"total","data":[1.5,null]}]}""",
+            EChartsOption.stackedBar("t").categories(List.of(1, 2))
+                .series("a", new long[]{1, 2})
+                .series("b", Arrays.asList(1.5, null)));
+
+        assertJson("""
+            {"title":{"text":"t"},"tooltip":{"trigger":"axis"},"legend":{},
+             "xAxis":{"type":"category","data":["x"]},"yAxis":{"type":"value"},
+             "series":[{"name":"a","type":"line","data":[0.25]},{"name":"b","type":"line","data":[2]}]}""",
+            EChartsOption.line("t").categories(List.of("x"))
+                .series("a", new double[]{0.25})
+                .series("b", new long[]{2}));
+    }
+
+    @Test
+    @DisplayName("嵌套在 JSONObject 中序列化")
+    public void testNested() throws Exception {
+        JSONObject result = new JSONObject(true);
+        result.put("success", true);
+        result.put("config", EChartsOption.bar("t").categories(List.of()).series(List.of()));
+
+        String expected = """
+            {"success":true,"config":{"title":{"text":"t"},"tooltip":{},"xAxis":{"type":"category","data":[]},
+             "yAxis":{"type":"value"},"series":[{"type":"bar","data":[]}]}}""";
+        assertEquals(JSON.parse(expected), JSON.parse(result.toJSONString()));
+        assertEquals(JSON.parse(expected), JSON.parse(MAPPER.writeValueAsString(result)));
+    }
+}
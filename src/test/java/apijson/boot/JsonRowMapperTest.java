@@ -0,0 +1,94 @@
+package apijson.boot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * JsonRowMapper 测试
+ * 验证各类型的取值和 APIJSON 一致、隐藏列，以及同一形状复用映射器
+ */
+@DisplayName("行映射器测试")
+public class JsonRowMapperTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:mapper" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE MapperStudent (id BIGINT PRIMARY KEY, name VARCHAR(20), age INT, score DECIMAL(5, 2)"
+                    + ", active BOOLEAN, tags VARCHAR(100), photo VARBINARY(20), created TIMESTAMP, birthday DATE, \"_secret\" VARCHAR(20))");
+            statement.execute("INSERT INTO MapperStudent VALUES (1, '张三', 12, 95.50, TRUE, '[\"a\",\"b\"]', X'616263'"
+                    + ", TIMESTAMP '2024-01-02 03:04:05', DATE '2012-05-06', 'x')");
+            statement.execute("INSERT INTO MapperStudent (id) VALUES (2)");
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    @DisplayName("取值、隐藏列和复用")
+    public void testMap() throws Exception {
+        JsonRowMapper mapper;
+        JSONObject first;
+        JSONObject second;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT * FROM MapperStudent ORDER BY id")) {
+            mapper = JsonRowMapper.of("MapperStudent", null, List.of("tags"), rs.getMetaData());
+            assertTrue(rs.next());
+            first = mapper.map(rs);
+            assertTrue(rs.next());
+            second = mapper.map(rs);
+        }
+
+        assertEquals(1L, first.get("ID"));
+        assertEquals("张三", first.get("NAME"));
+        assertEquals(12, first.get("AGE"));
+        assertEquals(new BigDecimal("95.50"), first.get("SCORE"));
+        assertEquals(Boolean.TRUE, first.get("ACTIVE"));
+        assertEquals(JSONArray.parseArray("[\"a\",\"b\"]"), first.get("TAGS"), "@json 指定的列解析为 JSON");
+        assertEquals("abc", first.get("PHOTO"));
+        assertEquals("2024-01-02 03:04:05.0", first.get("CREATED"));
+        assertEquals("2012-05-06", first.get("BIRTHDAY"));
+        assertFalse(first.containsKey("_secret"), "_ 开头的列隐藏");
+        assertEquals(9, first.size());
+
+        // 空值保持为 null，不会变成 0 或 false
+        assertEquals(2L, second.get("ID"));
+        assertTrue(second.containsKey("AGE"));
+        assertNull(second.get("AGE"));
+        assertNull(second.get("ACTIVE"));
+        assertNull(second.get("TAGS"));
+
+        long created = JsonRowMapper.getStats().getLongValue("createCount");
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT * FROM MapperStudent WHERE id = 2")) {
+            assertSame(mapper, JsonRowMapper.of("MapperStudent", null, List.of("tags"), rs.getMetaData()), "同一形状复用");
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT id, name FROM MapperStudent")) {
+            JsonRowMapper other = JsonRowMapper.of("MapperStudent", "id,name", null, rs.getMetaData());
+            assertNotSame(mapper, other);
+            assertTrue(rs.next());
+            assertEquals(2, other.map(rs).size());
+        }
+        assertEquals(created + 1, JsonRowMapper.getStats().getLongValue("createCount"));
+    }
+}
@@ -0,0 +1,136 @@
+package apijson.boot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * QueryCache 测试
+ * 验证 key 规范化、按表失效、按表过期时间跳过、系统表不缓存和按字节数淘汰
+ */
+@DisplayName("查询结果缓存测试")
+public class QueryCacheTest {
+
+    private static List<JSONObject> rows(int count, String prefix) {
+        List<JSONObject> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            JSONObject row = new JSONObject(true);
+            row.put("id", i);
+            row.put("name", prefix + i);
+            list.add(row);
+        }
+        return list;
+    }
+
+    @Test
+    @DisplayName("命中、按表失效和版本校验")
+    public void testHitAndInvalidate() {
+        QueryCache cache = new QueryCache(true, 1 << 20, 60, "");
+        String sql = "SELECT * FROM `apijson`.`QcStudent` s\n  LEFT JOIN `apijson`.`QcParent` p ON p.id = s.parentId WHERE s.id = ?";
+        String key = QueryCache.keyOf(null, null, sql, Arrays.asList(1));
+        assertEquals(key, QueryCache.keyOf(null, null, "SELECT * FROM `apijson`.`QcStudent` s LEFT JOIN `apijson`.`QcParent` p ON p.id = s.parentId WHERE s.id = ?", Arrays.asList(1)));
+        assertNotEquals(key, QueryCache.keyOf(null, null, sql, Arrays.asList(2)));
+
+        QueryCache.Pending pending = QueryCache.pending(sql, "QcStudent");
+        assertEquals(Arrays.asList("qcstudent", "qcparent"), new ArrayList<>(pending.tables));
+
+        assertNull(cache.get(key));
+        cache.put(key, pending, rows(2, "a"));
+        List<JSONObject> hit = cache.get(key);
+        assertEquals("a1", hit.get(1).getString("name"));
+
+        // 返回副本，调用方修改不影响缓存
+        hit.get(0).put("name", "changed");
+        assertEquals("a0", cache.get(key).get(0).getString("name"));
+
+        // 写入 JOIN 的表后失效
+        cache.invalidate("QcParent");
+        assertNull(cache.get(key));
+
+        // 不经过 invalidate 的版本变化也会失效
+        cache.put(key, QueryCache.pending(sql, "QcStudent"), rows(2, "b"));
+        TableVersions.increment("QcStudent");
+        assertNull(cache.get(key));
+
+        // 查询期间有写入时不放入
+        QueryCache.Pending stale = QueryCache.pending(sql, "QcStudent");
+        TableVersions.increment("QcStudent");
+        cache.put(key, stale, rows(2, "c"));
+        assertNull(cache.get(key));
+
+        JSONObject stats = cache.getStats();
+        assertEquals(2, stats.getLongValue("hitCount"));
+        assertEquals(2, stats.getLongValue("invalidationCount"));
+        assertEquals(1, stats.getLongValue("skipCount"));
+        assertEquals(0, stats.getIntValue("size"));
+        assertEquals(0, stats.getLongValue("bytes"));
+    }
+
+    @Test
+    @DisplayName("同一 SQL 在不同数据源是不同的缓存项")
+    public void testDatasourceKey() {
+        QueryCache cache = new QueryCache(true, 1 << 20, 60, "");
+        String sql = "SELECT * FROM QcStudent WHERE id = ?";
+        String primary = QueryCache.keyOf(null, "apijson", sql, Arrays.asList(1));
+        String report = QueryCache.keyOf("report", "apijson", sql, Arrays.asList(1));
+        assertEquals(primary, QueryCache.keyOf("", "apijson", sql, Arrays.asList(1)), "null 和空字符串都是默认数据源");
+        assertNotEquals(primary, report);
+        assertNotEquals(primary, QueryCache.keyOf(null, "report", sql, Arrays.asList(1)));
+
+        cache.put(primary, QueryCache.pending(sql, "QcStudent"), rows(1, "primary"));
+        assertNull(cache.get(report), "其它数据源的结果不能命中");
+        cache.put(report, QueryCache.pending(sql, "QcStudent"), rows(1, "report"));
+
+        assertEquals(2, cache.getStats().getIntValue("size"));
+        assertEquals("primary0", cache.get(primary).get(0).getString("name"));
+        assertEquals("report0", cache.get(report).get(0).getString("name"));
+    }
+
+    @Test
+    @DisplayName("按表过期时间跳过和按字节数淘汰")
+    public void testTableTtlAndEviction() {
+        QueryCache noAccess = new QueryCache(true, 1 << 20, 60, "QcAccess:0, QcStudent:30");
+        String sql = "SELECT * FROM QcAccess";
+        noAccess.put(QueryCache.keyOf(null, null, sql, null), QueryCache.pending(sql, "QcAccess"), rows(1, "x"));
+        assertNull(noAccess.get(QueryCache.keyOf(null, null, sql, null)));
+        assertEquals(30, noAccess.getStats().getJSONObject("tableTtlSeconds").getLongValue("qcstudent"));
+
+        // /reload 通过 DemoSQLExecutor 读取 Access、Request 等系统表，配置里不能重新开启它们的缓存
+        QueryCache system = new QueryCache(true, 1 << 20, 60, "Access:60");
+        String accessSql = "SELECT * FROM `apijson`.`Access`";
+        system.put(QueryCache.keyOf(null, null, accessSql, null), QueryCache.pending(accessSql, "Access"), rows(1, "x"));
+        String joinSql = "SELECT * FROM QcStudent s JOIN `Request` r ON r.id = s.id";
+        system.put(QueryCache.keyOf(null, null, joinSql, null), QueryCache.pending(joinSql, "QcStudent"), rows(1, "x"));
+        assertEquals(0, system.getStats().getIntValue("size"));
+        assertEquals(2, system.getStats().getLongValue("skipCount"));
+
+        List<JSONObject> value = rows(10, "row");
+        long bytes = QueryCache.estimateBytes(value) + QueryCache.keyOf(null, null, "SELECT * FROM QcStudent WHERE id = 0", null).length() * 2L;
+        QueryCache cache = new QueryCache(true, bytes * 3, 60, "");
+        for (int i = 0; i < 5; i++) {
+            String each = "SELECT * FROM QcStudent WHERE id = " + i;
+            cache.put(QueryCache.keyOf(null, null, each, null), QueryCache.pending(each, "QcStudent"), value);
+            if (i == 2) {
+                assertNotNull(cache.get(QueryCache.keyOf(null, null, "SELECT * FROM QcStudent WHERE id = 0", null)));  // 0 变为最近使用
+            }
+        }
+
+        JSONObject stats = cache.getStats();
+        assertEquals(bytes * 3, stats.getLongValue("bytes"));
+        assertEquals(2, stats.getLongValue("evictionCount"));
+        assertNotNull(cache.get(QueryCache.keyOf(null, null, "SELECT * FROM QcStudent WHERE id = 0", null)));
+        assertNull(cache.get(QueryCache.keyOf(null, null, "SELECT * FROM QcStudent WHERE id = 1", null)));
+        assertNull(cache.get(QueryCache.keyOf(null, null, "SELECT * FROM QcStudent WHERE id = 2", null)));
+        assertNotNull(cache.get(QueryCache.keyOf(null, null, "SELECT * FROM QcStudent WHERE id = 4", null)));
+
+        cache.invalidate("qcstudent");
+        assertEquals(0, cache.getStats().getIntValue("size"));
+    }
+}
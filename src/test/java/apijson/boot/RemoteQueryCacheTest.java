@@ -0,0 +1,342 @@
+package apijson.boot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import apijson.boot.cache.ResultCodec;
+
+/**
+ * RemoteQueryCache 测试
+ * 用 JVM 内的 Redis 协议服务代替 Redis，验证两个节点共享结果、写入后跨节点失效，以及服务停止后只用近端缓存
+ */
+@DisplayName("远程查询缓存测试")
+public class RemoteQueryCacheTest {
+
+    private static final String SQL = "SELECT * FROM `apijson`.`RqStudent` WHERE grade = ?";
+
+    private EmbeddedRespServer server;
+    private QueryCache nearA;
+    private QueryCache nearB;
+    private RemoteQueryCache nodeA;
+    private RemoteQueryCache nodeB;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new EmbeddedRespServer();
+        nearA = new QueryCache(true, 1 << 20, 60, "");
+        nearB = new QueryCache(true, 1 << 20, 60, "");
+        nodeA = new RemoteQueryCache(nearA, true, "127.0.0.1", server.getPort(), "", 0, 500, 2, "test:qc:", 60, 64, 1 << 20, 1);
+        nodeB = new RemoteQueryCache(nearB, true, "127.0.0.1", server.getPort(), "", 0, 500, 2, "test:qc:", 60, 64, 1 << 20, 1);
+        nodeA.start();
+        nodeB.start();
+        await(() -> nodeA.isAvailable() && nodeB.isAvailable(), "两个节点都应订阅成功");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        nodeA.shutdown();
+        nodeB.shutdown();
+        server.stop();
+    }
+
+    private static void await(BooleanSupplier condition, String message) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (condition.getAsBoolean() == false) {
+            assertTrue(System.currentTimeMillis() < deadline, message);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static List<JSONObject> rows(int count) {
+        List<JSONObject> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            JSONObject row = new JSONObject(true);
+            row.put("id", (long) i);
+            row.put("name", "学生" + i);
+            row.put("grade", "一年级");
+            row.put("score", new BigDecimal("95.50"));
+            row.put("createTime", new Timestamp(1700000000000L + i));
+            row.put("parentId", null);
+            list.add(row);
+        }
+        return list;
+    }
+
+    @Test
+    @DisplayName("两个节点共享结果，写入后跨节点失效")
+    public void testShareAndInvalidate() {
+        String key = QueryCache.keyOf(null, null, SQL, Arrays.asList("一年级"));
+        List<JSONObject> value = rows(20);
+
+        QueryCache.Pending pendingA = QueryCache.pending(SQL, "RqStudent");
+        assertNull(nodeA.get(key, pendingA));
+        nodeA.put(key, pendingA, value);
+        assertEquals(1, nodeA.getStats().getLongValue("compressedCount"), "超过 compress-threshold 时压缩");
+
+        // 另一个节点的近端缓存为空，从远程层取得并放入近端
+        QueryCache.Pending pendingB = QueryCache.pending(SQL, "RqStudent");
+        assertNull(nearB.get(key));
+        List<JSONObject> remote = nodeB.get(key, pendingB);
+        assertEquals(JSONArray.toJSONString(value), JSONArray.toJSONString(remote));
+        nearB.put(key, pendingB, remote);
+        assertNotNull(nearB.get(key));
+
+        // 节点 A 写入后，节点 B 收到失效消息，近端和远程都不再命中
+        nodeA.invalidate("RqStudent");
+        await(() -> nearB.get(key) == null, "节点 B 的近端缓存应失效");
+        assertNull(nodeB.get(key, QueryCache.pending(SQL, "RqStudent")));
+
+        JSONObject statsB = nodeB.getStats();
+        assertEquals(1, statsB.getLongValue("hitCount"));
+        assertEquals(1, statsB.getLongValue("staleCount"));
+        assertEquals(1, statsB.getLongValue("invalidationReceived"));
+        assertEquals(1, nodeA.getStats().getLongValue("invalidationSent"));
+    }
+
+    @Test
+    @DisplayName("远程服务停止后只用近端缓存")
+    public void testDegrade() {
+        String key = QueryCache.keyOf(null, null, SQL, Arrays.asList("二年级"));
+        server.stop();
+        await(() -> nodeA.isAvailable() == false, "订阅断开后不再使用远程层");
+
+        QueryCache.Pending pending = QueryCache.pending(SQL, "RqStudent");
+        assertNull(nodeA.get(key, pending));
+        nodeA.put(key, pending, rows(1));
+        nodeA.invalidate("RqStudent");
+
+        nearA.put(key, pending, rows(1));
+        assertNotNull(nearA.get(key), "近端缓存不受影响");
+
+        JSONObject stats = nodeA.getStats();
+        assertEquals(1, stats.getLongValue("degradedCount"));
+        assertEquals(0, stats.getLongValue("putCount"));
+        assertEquals(1, stats.getIntValue("missedTables"), "恢复后补发失效");
+    }
+
+    @Test
+    @DisplayName("二进制编码往返")
+    public void testCodec() throws IOException {
+        List<JSONObject> value = rows(3);
+        JSONObject nested = new JSONObject(true);
+        nested.put("tags", new JSONArray(Arrays.asList("a", 1, true)));
+        value.get(0).put("extra", nested);
+        value.get(1).put("photo", new byte[]{1, 2, 3});
+
+        byte[] plain = ResultCodec.encode(Arrays.asList("rqstudent"), new long[]{7}, value, 0);
+        byte[] compressed = ResultCodec.encode(Arrays.asList("rqstudent"), new long[]{7}, rows(200), 64);
+        assertFalse(ResultCodec.isCompressed(plain));
+        assertTrue(ResultCodec.isCompressed(compressed));
+        assertTrue(compressed.length < JSONArray.toJSONString(rows(200)).length() / 3, "重复值较多时压缩后明显更小");
+
+        ResultCodec.Decoded decoded = ResultCodec.decode(plain);
+        assertEquals(Arrays.asList("rqstudent"), decoded.tables);
+        assertEquals(7, decoded.generations[0]);
+        assertEquals(JSONArray.toJSONString(value), JSONArray.toJSONString(decoded.rows));
+        assertEquals(Timestamp.class, decoded.rows.get(2).get("createTime").getClass());
+        assertEquals(new BigDecimal("95.50"), decoded.rows.get(2).get("score"));
+        assertEquals(200, ResultCodec.decode(compressed).rows.size());
+    }
+
+    /**
+     * JVM 内的 Redis 协议服务，只实现 RemoteQueryCache 用到的命令，不处理过期
+     */
+    private static final class EmbeddedRespServer {
+        private final ServerSocket serverSocket = new ServerSocket(0);
+        private final Map<String, byte[]> data = new ConcurrentHashMap<>();
+        private final Map<String, List<OutputStream>> subscribers = new ConcurrentHashMap<>();
+        private final List<Socket> clients = new CopyOnWriteArrayList<>();
+
+        EmbeddedRespServer() throws IOException {
+            Thread acceptor = new Thread(() -> {
+                while (serverSocket.isClosed() == false) {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        clients.add(socket);
+                        Thread handler = new Thread(() -> serve(socket), "resp-client");
+                        handler.setDaemon(true);
+                        handler.start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }, "resp-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void stop() {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // 已关闭
+            }
+            for (Socket socket : clients) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // 已关闭
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            try (Socket s = socket) {
+                InputStream in = new BufferedInputStream(s.getInputStream());
+                OutputStream out = s.getOutputStream();
+                List<byte[]> command;
+                while ((command = readCommand(in)) != null) {
+                    byte[] reply = execute(command, out);
+                    synchronized (out) {
+                        out.write(reply);
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // 客户端断开
+            }
+        }
+
+        private byte[] execute(List<byte[]> command, OutputStream out) {
+            String name = new String(command.get(0), StandardCharsets.UTF_8).toUpperCase();
+            String key = command.size() > 1 ? new String(command.get(1), StandardCharsets.UTF_8) : null;
+            switch (name) {
+                case "PING":
+                    return "+PONG\r\n".getBytes(StandardCharsets.UTF_8);
+                case "SET":
+                    data.put(key, command.get(2));
+                    return "+OK\r\n".getBytes(StandardCharsets.UTF_8);
+                case "AUTH":
+                case "SELECT":
+                    return "+OK\r\n".getBytes(StandardCharsets.UTF_8);
+                case "GET":
+                    return bulk(data.get(key));
+                case "DEL":
+                    return integer(data.remove(key) == null ? 0 : 1);
+                case "INCR": {
+                    byte[] value = data.compute(key, (k, old) -> String.valueOf(
+                            (old == null ? 0 : Long.parseLong(new String(old, StandardCharsets.UTF_8))) + 1).getBytes(StandardCharsets.UTF_8));
+                    return integer(Long.parseLong(new String(value, StandardCharsets.UTF_8)));
+                }
+                case "MGET": {
+                    List<byte[]> parts = new ArrayList<>();
+                    parts.add(("*" + (command.size() - 1) + "\r\n").getBytes(StandardCharsets.UTF_8));
+                    for (int i = 1; i < command.size(); i++) {
+                        parts.add(bulk(data.get(new String(command.get(i), StandardCharsets.UTF_8))));
+                    }
+                    return concat(parts);
+                }
+                case "SUBSCRIBE":
+                    subscribers.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(out);
+                    return concat(Arrays.asList("*3\r\n".getBytes(StandardCharsets.UTF_8), bulk("subscribe".getBytes(StandardCharsets.UTF_8))
+                            , bulk(command.get(1)), integer(1)));
+                case "PUBLISH": {
+                    List<OutputStream> targets = subscribers.getOrDefault(key, List.of());
+                    byte[] message = concat(Arrays.asList("*3\r\n".getBytes(StandardCharsets.UTF_8), bulk("message".getBytes(StandardCharsets.UTF_8))
+                            , bulk(command.get(1)), bulk(command.get(2))));
+                    int count = 0;
+                    for (OutputStream target : targets) {
+                        try {
+                            synchronized (target) {
+                                target.write(message);
+                                target.flush();
+                            }
+                            count++;
+                        } catch (IOException e) {
+                            targets.remove(target);
+                        }
+                    }
+                    return integer(count);
+                }
+                default:
+                    return ("-ERR unknown command " + name + "\r\n").getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        private static List<byte[]> readCommand(InputStream in) throws IOException {
+            String head = readLine(in);
+            if (head == null) {
+                return null;
+            }
+            int count = Integer.parseInt(head.substring(1));
+            List<byte[]> args = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = Integer.parseInt(readLine(in).substring(1));
+                args.add(in.readNBytes(length));
+                in.readNBytes(2);
+            }
+            return args;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\r') {
+                if (b < 0) {
+                    return null;
+                }
+                sb.append((char) b);
+            }
+            in.read();
+            return sb.toString();
+        }
+
+        private static byte[] bulk(byte[] value) {
+            if (value == null) {
+                return "$-1\r\n".getBytes(StandardCharsets.UTF_8);
+            }
+            return concat(Arrays.asList(("$" + value.length + "\r\n").getBytes(StandardCharsets.UTF_8), value, "\r\n".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        private static byte[] integer(long value) {
+            return (":" + value + "\r\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static byte[] concat(List<byte[]> parts) {
+            int length = 0;
+            for (byte[] part : parts) {
+                length += part.length;
+            }
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            for (byte[] part : parts) {
+                System.arraycopy(part, 0, bytes, offset, part.length);
+                offset += part.length;
+            }
+            return bytes;
+        }
+    }
+}
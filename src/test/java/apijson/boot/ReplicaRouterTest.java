@@ -0,0 +1,129 @@
+package apijson.boot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.alibaba.fastjson.JSONObject;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * ReplicaRouter 测试
+ * 用三个 H2 内存库分别代替主库和两个副本，手动复制心跳表模拟复制，验证负载均衡、延迟排除、读己之写和回退主库
+ */
+@DisplayName("读写分离测试")
+public class ReplicaRouterTest {
+
+    private HikariDataSource primary;
+    private ConnectionPools pools;
+    private ReplicaRouter router;
+    private JdbcTemplate primaryTemplate;
+    private JdbcTemplate r1Template;
+    private JdbcTemplate r2Template;
+
+    @BeforeEach
+    public void setUp() {
+        long id = System.nanoTime();
+        primary = new HikariDataSource();
+        primary.setJdbcUrl("jdbc:h2:mem:primary" + id + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("apijson.pools.r1.jdbc-url", "jdbc:h2:mem:r1" + id + ";MODE=MySQL;DB_CLOSE_DELAY=-1")
+                .withProperty("apijson.pools.r2.jdbc-url", "jdbc:h2:mem:r2" + id + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        pools = new ConnectionPools(primary, environment);
+        router = new ReplicaRouter(pools, "r1,r2", 3000, 1000, "apijson_heartbeat", 10);
+
+        primaryTemplate = new JdbcTemplate(primary);
+        r1Template = new JdbcTemplate(pools.getDataSource("r1"));
+        r2Template = new JdbcTemplate(pools.getDataSource("r2"));
+        for (JdbcTemplate replica : new JdbcTemplate[]{r1Template, r2Template}) {
+            replica.execute("CREATE TABLE apijson_heartbeat (id VARCHAR(64) PRIMARY KEY, ts BIGINT NOT NULL)");
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        router.shutdown();
+        pools.shutdown();
+        primary.close();
+    }
+
+    /**
+     * 把主库的心跳表复制到副本
+     */
+    private void replicate(JdbcTemplate replica) {
+        for (Map<String, Object> row : primaryTemplate.queryForList("SELECT id, ts FROM apijson_heartbeat")) {
+            replica.update("MERGE INTO apijson_heartbeat (id, ts) KEY(id) VALUES (?, ?)", row.get("ID"), row.get("TS"));
+        }
+    }
+
+    @Test
+    @DisplayName("负载均衡、延迟排除、读己之写和回退主库")
+    public void testRoute() throws Exception {
+        assertNull(router.route(null), "心跳前不知道副本延迟，走主库");
+
+        router.heartbeat();
+        assertNull(router.route(null), "副本上还没有心跳");
+        assertNotNull(router.getStats().getJSONObject("replicas").getJSONObject("r1").getString("lastError"));
+
+        replicate(r1Template);
+        replicate(r2Template);
+        router.heartbeat();
+        assertTrue(List.of("r1", "r2").contains(router.route(null)));
+
+        // r1 有租借中的连接，选择 r2
+        ConnectionPools.Lease lease = pools.lease("r1");
+        for (int i = 0; i < 5; i++) {
+            assertEquals("r2", router.route(null));
+        }
+        lease.release();
+
+        // 写入后，副本追上前该会话走主库，其它会话不受影响
+        router.markWrite("s1");
+        assertNull(router.route("s1"));
+        assertNotNull(router.route("s2"));
+        assertFalse(router.isCaughtUp("r1"));
+
+        router.heartbeat();
+        replicate(r1Template);
+        replicate(r2Template);
+        router.heartbeat();
+        assertNotNull(router.route("s1"));
+        assertTrue(router.isCaughtUp("r1"));
+
+        // r1 延迟超过 max-lag-ms
+        r1Template.update("UPDATE apijson_heartbeat SET ts = ?", System.currentTimeMillis() - 10000);
+        router.heartbeat();
+        for (int i = 0; i < 5; i++) {
+            assertEquals("r2", router.route(null));
+        }
+        assertTrue(router.getStats().getJSONObject("replicas").getJSONObject("r1").getLongValue("lagMillis") >= 10000);
+
+        // r2 租借失败，没有可用副本时回退主库
+        router.markFailed("r2", new SQLException("连接被拒绝"));
+        assertNull(router.route(null));
+
+        JSONObject stats = router.getStats();
+        assertEquals(1, stats.getLongValue("stickyCount"));
+        assertTrue(stats.getLongValue("fallbackCount") >= 3);
+        assertEquals(1, stats.getJSONObject("replicas").getJSONObject("r2").getLongValue("failureCount"));
+    }
+
+    @Test
+    @DisplayName("未配置副本时都走主库")
+    public void testDisabled() {
+        ReplicaRouter disabled = new ReplicaRouter(pools, "", 3000, 1000, "apijson_heartbeat", 10);
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.route("s1"));
+        assertThrows(IllegalArgumentException.class, () -> new ReplicaRouter(pools, "unknown", 3000, 1000, "apijson_heartbeat", 10));
+    }
+}
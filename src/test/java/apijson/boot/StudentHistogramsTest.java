@@ -0,0 +1,115 @@
+package apijson.boot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * StudentHistograms 测试
+ * 用 H2 内存库验证对账修复漂移，以及对账扫描期间提交的写入被重放而不是让对账被跳过
+ */
+@DisplayName("Student 直方图测试")
+public class StudentHistogramsTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private StudentHistograms histograms;
+    private Runnable duringScan;
+
+    @BeforeEach
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:histograms" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE Student (id BIGINT PRIMARY KEY, grade VARCHAR(20), gender TINYINT, age INT, status TINYINT)");
+        jdbcTemplate.update("INSERT INTO Student VALUES (1, '一年级', 0, 7, 1), (2, '一年级', 1, 7, 1), (3, '二年级', 0, 8, 1), (4, '三年级', 1, 9, 0)");
+
+        histograms = new StudentHistograms(jdbcTemplate, true, 0) {
+            @Override
+            void onScanStarted() {
+                if (duringScan != null) {
+                    duringScan.run();
+                }
+            }
+        };
+    }
+
+    @AfterEach
+    public void tearDown() {
+        histograms.shutdown();
+    }
+
+    private long count(String column, Object value) {
+        for (Map<String, Object> row : histograms.getRows(column)) {
+            if (value.equals(row.get(column))) {
+                return (Long) row.get("count");
+            }
+        }
+        return 0;
+    }
+
+    private List<Map<String, Object>> image(long id) {
+        return jdbcTemplate.queryForList("SELECT " + StudentHistograms.IMAGE_COLUMNS + " FROM Student WHERE id = ?", id).stream()
+                .map(row -> {
+                    Map<String, Object> lower = new LinkedHashMap<>();
+                    row.forEach((key, value) -> lower.put(key.toLowerCase(), value));
+                    return lower;
+                }).toList();
+    }
+
+    @Test
+    @DisplayName("对账期间的写入被重放，漂移被修复")
+    public void testUpdateDuringReconcile() throws Exception {
+        histograms.reconcile();
+        assertTrue(histograms.isReady());
+        assertEquals(2, count("grade", "一年级"));
+        assertEquals(1, count("grade", "二年级"));
+        assertEquals(0, count("grade", "三年级"), "只统计 status = 1");
+
+        // 模拟增量漂移：同一个旧值被减了两次
+        histograms.apply(image(1), null);
+        assertEquals(1, count("grade", "一年级"));
+
+        // 对账的扫描语句开始后，另一个请求提交修改并应用增量，和 DemoSQLExecutor 一样持有提交锁
+        duringScan = () -> {
+            Thread writer = new Thread(() -> {
+                Lock lock = histograms.getCommitLock();
+                lock.lock();
+                try {
+                    List<Map<String, Object>> before = image(2);
+                    jdbcTemplate.update("UPDATE Student SET grade = '二年级' WHERE id = 2");
+                    histograms.apply(before, image(2));
+                } finally {
+                    lock.unlock();
+                }
+            });
+            writer.start();
+            try {
+                writer.join(5000);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            assertFalse(writer.isAlive(), "扫描期间不持有写锁，提交不会被阻塞");
+        };
+        histograms.reconcile();
+
+        assertEquals(1, count("grade", "一年级"), "扫描结果 + 重放的增量和数据库一致");
+        assertEquals(2, count("grade", "二年级"));
+        assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Student WHERE status = 1 AND grade = '二年级'", Long.class), count("grade", "二年级"));
+
+        JSONObject stats = histograms.getStats();
+        assertEquals(2, stats.getLongValue("reconcileCount"), "写入期间也不跳过对账");
+        assertEquals(1, stats.getLongValue("replayCount"));
+        assertEquals(1, stats.getLongValue("driftCount"));
+    }
+}
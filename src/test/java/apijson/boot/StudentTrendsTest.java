@@ -0,0 +1,108 @@
+package apijson.boot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * StudentTrends 测试
+ * 用 H2 内存库验证回填、按行镜像增量累加、按周合并，以及 LTTB 降采样
+ */
+@DisplayName("学生趋势汇总测试")
+public class StudentTrendsTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private StudentTrends trends;
+
+    @BeforeEach
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:trend" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE Student (id BIGINT AUTO_INCREMENT PRIMARY KEY, status TINYINT DEFAULT 1"
+                + ", create_time TIMESTAMP, update_time TIMESTAMP)");
+        jdbcTemplate.execute("CREATE TABLE StudentDaily (stat_date DATE PRIMARY KEY, enrolled INT DEFAULT 0 NOT NULL, churned INT DEFAULT 0 NOT NULL)");
+        trends = new StudentTrends(jdbcTemplate, true, 200, 3660);
+    }
+
+    private static Map<String, Object> row(long id, int status) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("status", status);
+        return row;
+    }
+
+    @Test
+    @DisplayName("回填和增量")
+    public void testBackfillAndApply() {
+        jdbcTemplate.update("INSERT INTO Student (status, create_time, update_time) VALUES (1, '2024-01-01 08:00:00', '2024-01-01 08:00:00')");
+        jdbcTemplate.update("INSERT INTO Student (status, create_time, update_time) VALUES (1, '2024-01-02 08:00:00', '2024-01-02 08:00:00')");
+        jdbcTemplate.update("INSERT INTO Student (status, create_time, update_time) VALUES (0, '2024-01-01 09:00:00', '2024-01-03 09:00:00')");
+
+        trends.apply(null, List.of(row(9, 1)));  // 回填前跳过
+        trends.backfill();
+        assertTrue(trends.isReady());
+
+        List<Map<String, Object>> rows = trends.query(StudentTrends.Unit.DAY, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 3));
+        assertEquals(3, rows.size());
+        assertEquals(2L, rows.get(0).get("enrolled"));
+        assertEquals(1L, rows.get(1).get("enrolled"));
+        assertEquals(1L, rows.get(2).get("churned"));
+        assertEquals(2L, rows.get(2).get("total"));
+
+        // 新增 1 个，1 个在读改为离校，删除 1 个在读
+        trends.apply(null, List.of(row(4, 1)));
+        trends.apply(List.of(row(1, 1)), List.of(row(1, 0)));
+        trends.apply(List.of(row(2, 1)), null);
+        trends.apply(List.of(row(3, 0)), List.of(row(3, 0)));
+
+        LocalDate today = LocalDate.now();
+        rows = trends.query(StudentTrends.Unit.DAY, today, today);
+        assertEquals(1L, rows.get(0).get("enrolled"));
+        assertEquals(2L, rows.get(0).get("churned"));
+        assertEquals(1L, rows.get(0).get("total"));
+
+        // 按周合并，2024-01-01 是周一
+        rows = trends.query(StudentTrends.Unit.WEEK, LocalDate.of(2024, 1, 3), LocalDate.of(2024, 1, 10));
+        assertEquals(2, rows.size());
+        assertEquals("2024-01-01", rows.get(0).get("date"));
+        assertEquals(3L, rows.get(0).get("enrolled"));
+        assertEquals(0L, rows.get(1).get("enrolled"));
+    }
+
+    @Test
+    @DisplayName("LTTB 降采样")
+    public void testDownsample() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("date", "d" + i);
+            row.put("total", i == 500 ? 10000L : (long) i % 7);
+            rows.add(row);
+        }
+
+        List<Map<String, Object>> sampled = StudentTrends.downsample(rows, "total", 50);
+        assertEquals(50, sampled.size());
+        assertSame(rows.get(0), sampled.get(0));
+        assertSame(rows.get(999), sampled.get(49));
+        assertTrue(sampled.contains(rows.get(500)), "峰值必须保留");
+
+        int last = -1;
+        for (Map<String, Object> row : sampled) {
+            int index = rows.indexOf(row);
+            assertTrue(index > last, "保持原顺序");
+            last = index;
+        }
+
+        assertSame(rows, StudentTrends.downsample(rows, "total", 2000));
+    }
+}
@@ -0,0 +1,71 @@
+package apijson.boot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * TableStatistics 测试
+ * 用 H2 内存库验证从 INFORMATION_SCHEMA 读取行数和不同值个数，以及刷新之间的写入增量
+ */
+@DisplayName("表统计信息测试")
+public class TableStatisticsTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private TableStatistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:stats" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE Student (id BIGINT AUTO_INCREMENT PRIMARY KEY, grade VARCHAR(20))");
+        jdbcTemplate.execute("CREATE TABLE Parent (id BIGINT AUTO_INCREMENT PRIMARY KEY)");
+        for (int i = 0; i < 500; i++) {
+            jdbcTemplate.update("INSERT INTO Student (grade) VALUES (?)", "年级" + (i % 5));
+        }
+        statistics = new TableStatistics(jdbcTemplate, "Student,Parent", 60, false, 10000);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        statistics.shutdown();
+    }
+
+    @Test
+    @DisplayName("读取统计信息和增量")
+    public void testRefreshAndDelta() {
+        assertNull(statistics.getRowCount("Student"), "刷新前没有数据");
+
+        statistics.refresh();
+        assertEquals(500L, statistics.getRowCount("Student"));
+        assertEquals(0L, statistics.getRowCount("Parent"));
+        assertNull(statistics.getRowCount("Access"), "不在配置中的表");
+
+        JSONObject stats = statistics.getStats();
+        assertEquals("h2_information_schema", stats.getString("source"));
+        Map<?, ?> cardinality = (Map<?, ?>) stats.getJSONObject("tables").getJSONObject("Student").get("cardinality");
+        assertEquals(500L, cardinality.get("id"));
+        assertTrue((Long) cardinality.get("grade") < 50, "grade 只有 5 个不同值，实际估计 " + cardinality.get("grade"));
+
+        // 刷新之间的写入只按增量累加，不访问数据库
+        jdbcTemplate.update("INSERT INTO Student (grade) VALUES ('年级0')");
+        statistics.addRows("student", 1);
+        statistics.addRows("Student", -3);
+        assertEquals(498L, statistics.getRowCount("Student"));
+
+        // 刷新后以数据库为准，已计入的增量清零
+        jdbcTemplate.update("DELETE FROM Student WHERE id <= 3");
+        statistics.refresh();
+        assertEquals(498L, statistics.getRowCount("Student"));
+        assertEquals(0L, statistics.getStats().getJSONObject("tables").getJSONObject("Student").getLongValue("delta_since_refresh"));
+    }
+}
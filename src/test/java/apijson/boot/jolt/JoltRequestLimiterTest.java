@@ -0,0 +1,73 @@
+package apijson.boot.jolt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * JoltRequestLimiter 测试
+ * 验证有 Content-Length 和长度未知（分块传输）的请求体都按字节数上限拒绝，未超出的请求体原样传给后续处理
+ */
+@DisplayName("JOLT 请求大小限制测试")
+public class JoltRequestLimiterTest {
+
+    private final JoltRequestLimiter limiter = new JoltRequestLimiter(16, 64, 1000);
+
+    /**
+     * MockHttpServletRequest 设置内容时会同时设置 Content-Length，去掉后模拟分块传输
+     */
+    private static MockHttpServletRequest request(String uri, String body, boolean chunked) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri) {
+            @Override
+            public long getContentLengthLong() {
+                return chunked ? -1 : super.getContentLengthLong();
+            }
+
+            @Override
+            public int getContentLength() {
+                return chunked ? -1 : super.getContentLength();
+            }
+        };
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    @Test
+    @DisplayName("按字节数上限拒绝")
+    public void testLimit() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        limiter.doFilter(request("/jolt/transform", "{\"input\": \"0123456789\"}", false), response, chain);
+        assertEquals(413, response.getStatus());
+        assertNull(chain.getRequest(), "有 Content-Length 时不读取请求体直接拒绝");
+
+        response = new MockHttpServletResponse();
+        chain = new MockFilterChain();
+        limiter.doFilter(request("/jolt/query", "{\"input\": \"0123456789\"}", true), response, chain);
+        assertEquals(413, response.getStatus(), "长度未知的请求体边读边计数");
+        assertNull(chain.getRequest());
+
+        response = new MockHttpServletResponse();
+        chain = new MockFilterChain();
+        limiter.doFilter(request("/jolt/transform", "{\"a\": 1}", true), response, chain);
+        assertEquals(200, response.getStatus());
+        HttpServletRequest passed = (HttpServletRequest) chain.getRequest();
+        assertEquals("{\"a\": 1}", StreamUtils.copyToString(passed.getInputStream(), StandardCharsets.UTF_8), "未超出时请求体原样传递");
+        assertEquals(8, passed.getContentLengthLong());
+
+        response = new MockHttpServletResponse();
+        chain = new MockFilterChain();
+        limiter.doFilter(request("/jolt/stream/transform", "{\"input\": \"0123456789\"}", true), response, chain);
+        assertEquals(200, response.getStatus(), "/jolt/stream 不限制");
+        assertNotNull(chain.getRequest());
+    }
+}
@@ -0,0 +1,241 @@
+package apijson.boot.jolt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.bazaarvoice.jolt.Chainr;
+import com.bazaarvoice.jolt.JsonUtils;
+
+/**
+ * JoltSpecCompiler 差异测试
+ * 同一 spec 分别用 Chainr 和编译结果转换随机输入，序列化后逐字节比较。
+ * Defaultr 写入 key 的顺序不固定，含 default 的 spec 只比较结构
+ */
+@DisplayName("JOLT spec 编译器差异测试")
+public class JoltSpecCompilerTest {
+
+    private static final int INPUT_COUNT = 500;
+
+    private static final String[] COMPILABLE_SPECS = {
+        // 字面量 + 通配 + 引用
+        """
+        [{"operation": "shift", "spec": {"Student\\\\[\\\\]": {"*": {"name": "&1.name", "grade": "byGrade.&", "age": "ages[&1]"}}}}]""",
+        // 多层字面量，数组下标写入
+        """
+        [{"operation": "shift", "spec": {"data": {"items": {"*": {"id": "ids[]", "v": "rows[&1].value"}}}, "meta": {"total": "total"}}}]""",
+        // 多个输入写同一路径，合并为数组
+        """
+        [{"operation": "shift", "spec": {"a": "x", "b": "x", "c": ["x", "y"], "d": "y.z"}}]""",
+        // 字面量优先于通配
+        """
+        [{"operation": "shift", "spec": {"*": "others.&", "special": "special", "a": "others.a"}}]""",
+        // 固定下标
+        """
+        [{"operation": "shift", "spec": {"a": "arr[0]", "b": "arr[2]", "c": "[1]"}}]""",
+        // shift + default + remove
+        """
+        [{"operation": "shift", "spec": {"Student\\\\[\\\\]": {"*": {"grade": "categories[]", "count": "values[]", "name": "tmp.&1"}}}},
+         {"operation": "default", "spec": {"summary": {"count": 0, "label": "n/a"}, "categories": [], "tmp": {"x": 1}}},
+         {"operation": "remove", "spec": {"tmp": ""}}]""",
+        // default 在前
+        """
+        [{"operation": "default", "spec": {"meta": {"source": "db", "tags": ["a"]}, "a": 1}},
+         {"operation": "shift", "spec": {"meta": {"source": "source", "tags": "tags"}, "a": "a", "data": {"*": {"id": "[&1].id"}}}}]""",
+        // remove 通配，包括数组元素
+        """
+        [{"operation": "remove", "spec": {"data": {"*": {"secret": ""}}, "a": ""}}]""",
+        """
+        [{"operation": "remove", "spec": {"data": {"items": {"*": {"secret": "", "v": ""}}}, "rows": {"id": "", "0": ""}}}]"""
+    };
+
+    private static final String[] UNSUPPORTED_SPECS = {
+        """
+        [{"operation": "shift", "spec": {"*": {"@": "values[]"}}}]""",
+        """
+        [{"operation": "shift", "spec": {"*": {"$": "keys[]"}}}]""",
+        """
+        [{"operation": "shift", "spec": {"*": {"*": "&(1,0).&"}}}]""",
+        """
+        [{"operation": "shift", "spec": {"a-*": "a"}}]""",
+        """
+        [{"operation": "shift", "spec": {"a|b": "a"}}]""",
+        """
+        [{"operation": "cardinality", "spec": {"a": "ONE"}}]""",
+        """
+        [{"operation": "modify-overwrite-beta", "spec": {"a": "=toUpper"}}]"""
+    };
+
+    @Test
+    @DisplayName("内置图表 spec 全部可编译且结果一致")
+    public void testBuiltinSpecs() {
+        for (String spec : JoltSpecRegistry.BUILTIN_SPEC_MAP.values()) {
+            assertSameOutput(spec, true);
+        }
+    }
+
+    @Test
+    @DisplayName("支持的子集结果与 Chainr 一致")
+    public void testCompilableSpecs() {
+        for (String spec : COMPILABLE_SPECS) {
+            assertSameOutput(spec, true);
+        }
+    }
+
+    @Test
+    @DisplayName("不支持的 spec 不编译")
+    public void testUnsupportedSpecs() {
+        for (String spec : UNSUPPORTED_SPECS) {
+            List<Object> list = JsonUtils.jsonToList(spec);
+            assertNull(JoltSpecCompiler.compile(list, Chainr.fromSpec(list)), spec);
+        }
+    }
+
+    @Test
+    @DisplayName("运行期无法确定时回退 Chainr")
+    public void testBailout() {
+        List<Object> spec = JsonUtils.jsonToList("""
+            [{"operation": "shift", "spec": {"rows": {"*": {"v": "[&1].v"}}}}]""");
+        Chainr chainr = Chainr.fromSpec(spec);
+        Chainr compiled = JoltSpecCompiler.compile(spec, chainr);
+        assertNotNull(compiled);
+
+        long before = JoltSpecCompiler.getBailoutCount();
+        Object input = JsonUtils.jsonToObject("{\"rows\": {\"a\": {\"v\": 1}, \"b\": {\"v\": 2}}}");
+        assertEquals(JsonUtils.toJsonString(chainr.transform(JsonUtils.cloneJson(input)))
+            , JsonUtils.toJsonString(compiled.transform(JsonUtils.cloneJson(input))));
+        assertTrue(JoltSpecCompiler.getBailoutCount() > before);
+    }
+
+    private static void assertSameOutput(String specJson, boolean compilable) {
+        List<Object> spec = JsonUtils.jsonToList(specJson);
+        Chainr chainr = Chainr.fromSpec(spec);
+        Chainr compiled = JoltSpecCompiler.compile(spec, chainr);
+        assertEquals(compilable, compiled != null, specJson);
+
+        boolean ordered = specJson.contains("\"default\"") == false;
+        Random random = new Random(specJson.hashCode());
+        for (int i = 0; i < INPUT_COUNT; i++) {
+            Object input = randomInput(random);
+            String expected = transformToString(chainr, JsonUtils.cloneJson(input));
+            String actual = transformToString(compiled, JsonUtils.cloneJson(input));
+            String message = "spec = " + specJson + "\ninput = " + JsonUtils.toJsonString(input);
+            if (ordered || expected.startsWith("error: ")) {
+                assertEquals(expected, actual, message);
+            } else {
+                assertEquals(JsonUtils.jsonToObject(expected), JsonUtils.jsonToObject(actual), message);
+            }
+        }
+    }
+
+    private static String transformToString(Chainr chainr, Object input) {
+        try {
+            return JsonUtils.toJsonString(chainr.transform(input));
+        } catch (Exception e) {
+            return "error: " + e.getClass().getName();
+        }
+    }
+
+    private static Object randomInput(Random random) {
+        Map<String, Object> input = new LinkedHashMap<>();
+        List<Object> students = new ArrayList<>();
+        int size = random.nextInt(6);
+        for (int i = 0; i < size; i++) {
+            students.add(random.nextInt(10) == 0 ? randomValue(random, 1) : randomStudent(random));
+        }
+        if (random.nextInt(8) != 0) {
+            input.put("Student[]", students);
+        }
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        Object items = random.nextBoolean() ? students : randomMap(random, 2);
+        data.put("items", items);
+        input.put("data", random.nextInt(8) == 0 ? randomValue(random, 2) : data);
+        input.put("meta", random.nextInt(4) == 0 ? randomValue(random, 2) : randomMap(random, 1));
+        input.put("rows", random.nextBoolean() ? students : randomMap(random, 2));
+
+        for (String key : new String[]{"a", "b", "c", "d", "special", "x"}) {
+            if (random.nextBoolean()) {
+                input.put(key, randomValue(random, 2));
+            }
+        }
+
+        switch (random.nextInt(20)) {
+            case 0:
+                return null;
+            case 1:
+                return students;
+            case 2:
+                return "Student[]";
+            default:
+                return input;
+        }
+    }
+
+    private static Map<String, Object> randomStudent(Random random) {
+        Map<String, Object> student = new LinkedHashMap<>();
+        String[] grades = {"七年级", "八年级", "九年级"};
+        if (random.nextInt(6) != 0) {
+            student.put("grade", random.nextInt(10) == 0 ? null : grades[random.nextInt(grades.length)]);
+        }
+        if (random.nextInt(6) != 0) {
+            student.put("count", random.nextInt(100));
+        }
+        if (random.nextInt(4) != 0) {
+            student.put("gender", random.nextInt(3));
+        }
+        if (random.nextInt(4) != 0) {
+            student.put("age", 12 + random.nextInt(5));
+        }
+        if (random.nextInt(4) != 0) {
+            student.put("name", "学生" + random.nextInt(1000));
+        }
+        if (random.nextInt(6) == 0) {
+            student.put("id", random.nextInt(1000));
+            student.put("v", randomValue(random, 1));
+            student.put("secret", "s" + random.nextInt(10));
+        }
+        return student;
+    }
+
+    private static Map<String, Object> randomMap(Random random, int depth) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        String[] keys = {"0", "1", "a", "b", "id", "v", "source", "tags", "total", "secret"};
+        int size = random.nextInt(4);
+        for (int i = 0; i < size; i++) {
+            map.put(keys[random.nextInt(keys.length)], randomValue(random, depth - 1));
+        }
+        return map;
+    }
+
+    private static Object randomValue(Random random, int depth) {
+        switch (random.nextInt(depth > 0 ? 7 : 4)) {
+            case 0:
+                return random.nextInt(100);
+            case 1:
+                return "v" + random.nextInt(10);
+            case 2:
+                return random.nextBoolean();
+            case 3:
+                return null;
+            case 4:
+                List<Object> list = new ArrayList<>();
+                int size = random.nextInt(3);
+                for (int i = 0; i < size; i++) {
+                    list.add(randomValue(random, depth - 1));
+                }
+                return list;
+            case 5:
+                return randomStudent(random);
+            default:
+                return randomMap(random, depth - 1);
+        }
+    }
+}
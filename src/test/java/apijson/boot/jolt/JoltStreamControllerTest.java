@@ -0,0 +1,119 @@
+package apijson.boot.jolt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.bazaarvoice.jolt.JsonUtils;
+
+/**
+ * JoltStreamController 测试
+ * 验证只接受逐元素的 spec，以及对象、顶层数组、NDJSON 三种请求体逐元素输出的结果和整体转换一致
+ */
+@DisplayName("JOLT 流式转换测试")
+public class JoltStreamControllerTest {
+
+    private static final String BRIEF_SPEC = """
+        [{"operation": "shift", "spec": {"Student\\\\[\\\\]": {"*": {"id": "id", "name": "student.name", "grade": "student.&"}}}},
+         {"operation": "default", "spec": {"source": "stream"}}]""";
+
+    private JoltStreamController controller;
+
+    @BeforeEach
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:stream" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE JoltSpec (id BIGINT AUTO_INCREMENT PRIMARY KEY, debug TINYINT DEFAULT 0, name VARCHAR(50), version INT, spec TEXT, detail VARCHAR(1000))");
+        jdbcTemplate.update("INSERT INTO JoltSpec (name, version, spec) VALUES ('student-brief', 1, ?)", BRIEF_SPEC);
+
+        JoltSpecRegistry registry = new JoltSpecRegistry(jdbcTemplate, new JoltSpecCache(16, true));
+        registry.reload(null);
+        controller = new JoltStreamController(jdbcTemplate, registry);
+    }
+
+    private static String key(String spec) {
+        return JoltStreamController.getElementArrayKey(JsonUtils.jsonToList(spec));
+    }
+
+    @Test
+    @DisplayName("只接受逐元素且输出不跨元素累积的 spec")
+    public void testGetElementArrayKey() {
+        assertEquals("Student[]", key(BRIEF_SPEC));
+        assertEquals("data", key("""
+            [{"operation": "shift", "spec": {"data": {"*": {"tags": {"*": "tags.&1.&"}, "$": "keys"}}}}]"""), "&N 在元素内部引用元素自己的 key");
+
+        for (String spec : JoltSpecRegistry.BUILTIN_SPEC_MAP.values()) {
+            assertNull(key(spec), "内置图表 spec 的输出跨元素累积：" + spec);
+        }
+        assertNull(key("""
+            [{"operation": "shift", "spec": {"data": {"*": {"id": "ids[]"}}}}]"""));
+        assertNull(key("""
+            [{"operation": "shift", "spec": {"data": {"*": {"id": "rows[&1].id"}}}}]"""));
+        assertNull(key("""
+            [{"operation": "shift", "spec": {"data": {"*": {"id": "byIndex.&(1,0).id"}}}}]"""));
+        assertNull(key("""
+            [{"operation": "shift", "spec": {"data": {"*": {"id": "rows[#2].id"}}}}]"""));
+        assertNull(key("""
+            [{"operation": "shift", "spec": {"data": {"*": {"$1": "indexes"}}}}]"""));
+        assertNull(key("""
+            [{"operation": "shift", "spec": {"data": {"*": "&"}}}]"""), "* 本身的 & 就是元素下标");
+        assertNull(key("""
+            [{"operation": "shift", "spec": {"*": {"*": {"id": "id"}}}}]"""), "数组 key 不能是通配");
+        assertNull(key("""
+            [{"operation": "shift", "spec": {"data": {"*": {"id": "id"}}}}, {"operation": "shift", "spec": {"id": "x"}}]"""), "后续只能是 default/remove");
+    }
+
+    private MockHttpServletResponse stream(String name, String format, String contentType, String body) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/jolt/stream/" + name);
+        request.setContentType(contentType);
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.streamBody(name, format, request, response);
+        return response;
+    }
+
+    @Test
+    @DisplayName("对象、顶层数组和 NDJSON 请求体")
+    public void testStreamBody() throws Exception {
+        String rows = "[{\"id\": 1, \"name\": \"a\", \"grade\": \"一年级\"}, {\"id\": 2, \"name\": \"b\", \"grade\": \"二年级\"}]";
+        List<Object> expected = JsonUtils.jsonToList("""
+            [{"id": 1, "student": {"name": "a", "grade": "一年级"}, "source": "stream"},
+             {"id": 2, "student": {"name": "b", "grade": "二年级"}, "source": "stream"}]""");
+
+        MockHttpServletResponse response = stream("student-brief", JoltStreamController.FORMAT_ARRAY, "application/json"
+            , "{\"total\": 2, \"Student[]\": " + rows + ", \"other\": [1, 2]}");
+        assertEquals(200, response.getStatus());
+        assertEquals(expected, JsonUtils.jsonToList(response.getContentAsString(StandardCharsets.UTF_8)), "只转换数组 key 对应的元素");
+
+        response = stream("student-brief", JoltStreamController.FORMAT_ARRAY, "application/json", rows);
+        assertEquals(expected, JsonUtils.jsonToList(response.getContentAsString(StandardCharsets.UTF_8)));
+
+        response = stream("student-brief", JoltStreamController.FORMAT_NDJSON, JoltStreamController.CONTENT_TYPE_NDJSON
+            , "{\"id\": 1, \"name\": \"a\", \"grade\": \"一年级\"}\n{\"id\": 2, \"name\": \"b\", \"grade\": \"二年级\"}\n");
+        assertTrue(response.getContentType().startsWith(JoltStreamController.CONTENT_TYPE_NDJSON));
+        String[] lines = response.getContentAsString(StandardCharsets.UTF_8).trim().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(expected.get(0), JsonUtils.jsonToMap(lines[0]));
+        assertEquals(expected.get(1), JsonUtils.jsonToMap(lines[1]));
+    }
+
+    @Test
+    @DisplayName("图表 spec 和不存在的 spec 返回错误")
+    public void testRejected() throws Exception {
+        MockHttpServletResponse response = stream("grade-distribution", JoltStreamController.FORMAT_NDJSON, "application/json", "[]");
+        assertEquals(400, response.getStatus());
+        assertTrue(response.getContentAsString(StandardCharsets.UTF_8).contains("不是逐元素的 spec"));
+
+        response = stream("missing", JoltStreamController.FORMAT_NDJSON, "application/json", "[]");
+        assertEquals(404, response.getStatus());
+    }
+}
@@ -0,0 +1,95 @@
+package apijson.boot.sketch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * HyperLogLog、t-digest、Count-Min 测试
+ * 估计值在各自报告的误差范围内，合并结果和直接添加全部值一致
+ */
+@DisplayName("近似统计草图测试")
+public class SketchTest {
+
+    @Test
+    @DisplayName("HyperLogLog 不同值个数")
+    public void testHyperLogLog() {
+        HyperLogLog a = new HyperLogLog(14);
+        HyperLogLog b = new HyperLogLog(14);
+        for (int i = 0; i < 100_000; i++) {
+            a.add("class-" + i);
+            b.add("class-" + (i + 50_000));  // 一半和 a 重复
+        }
+        double bound = 3 * a.getRelativeError();
+        assertEquals(100_000, a.estimate(), 100_000 * bound);
+
+        a.merge(b);
+        assertEquals(150_000, a.estimate(), 150_000 * bound);
+
+        HyperLogLog small = new HyperLogLog(14);
+        for (int i = 0; i < 1000; i++) {
+            small.add(i % 14);
+            small.add((long) (i % 14));  // Integer 和 Long 视为同一个值
+        }
+        assertEquals(14, small.estimate());
+    }
+
+    @Test
+    @DisplayName("t-digest 分位数")
+    public void testTDigest() {
+        Random random = new Random(3);
+        double[] values = new double[200_000];
+        TDigest a = new TDigest(100);
+        TDigest b = new TDigest(100);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * 10 + 50;
+            (i % 2 == 0 ? a : b).add(values[i]);
+        }
+        a.merge(b);
+        Arrays.sort(values);
+
+        assertEquals(values.length, a.getCount());
+        assertEquals(values[0], a.getMin());
+        assertTrue(a.getCentroidCount() <= 300, "质心个数 " + a.getCentroidCount());
+        for (double q : new double[]{0.01, 0.5, 0.9, 0.99}) {
+            double estimate = a.quantile(q);
+            // 估计值在真实分布中的位置和 q 的差距不超过报告的排名误差（留一倍余量）
+            int rank = Arrays.binarySearch(values, estimate);
+            double actualQ = (rank < 0 ? -rank - 1 : rank) / (double) values.length;
+            assertEquals(q, actualQ, 2 * a.getRankError(q) + 0.001, "q = " + q);
+        }
+    }
+
+    @Test
+    @DisplayName("Count-Min 高频值和删除")
+    public void testCountMin() {
+        CountMinSketch sketch = new CountMinSketch(5, 2048, 5);
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add("rare-" + i, 1);
+        }
+        for (int i = 0; i < 3000; i++) {
+            sketch.add("七年级", 1);
+        }
+        for (int i = 0; i < 2000; i++) {
+            sketch.add("八年级", 1);
+        }
+        sketch.add("八年级", -500);
+
+        long estimate = sketch.estimate("八年级");
+        assertTrue(estimate >= 1500 && estimate <= 1500 + sketch.getMaxOvercount(), "估计值 " + estimate);
+
+        Map<Object, Long> heavyHitters = sketch.getHeavyHitters(2);
+        assertEquals(Arrays.asList("七年级", "八年级"), Arrays.asList(heavyHitters.keySet().toArray()));
+
+        CountMinSketch other = new CountMinSketch(5, 2048, 5);
+        other.add("八年级", 2000);
+        sketch.merge(other);
+        assertEquals(16_500, sketch.getTotal());
+        assertEquals("八年级", sketch.getHeavyHitters(1).keySet().iterator().next());
+    }
+}